@@ -1,19 +1,48 @@
 package io.leavesfly.tinyai.agent.context;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 上下文工程引擎
  * 负责构建和管理对话上下文
  * 
+ * 上下文按token预算增量组装：
+ * - 稳定前缀（系统提示 + 工具信息）渲染一次后跨轮复用，内容不变时逐字节一致，便于命中模型侧的前缀/KV缓存
+ * - 对话历史在加入时渲染并计数，记忆和文档片段的token数按文本缓存
+ * - 前缀与当前问题必选，剩余预算用0/1背包在记忆、文档、历史条目之间按优先级选择
+ * - 必选部分本身超出预算时先截断前缀尾部（工具信息在后），仍不够再截断当前问题，输出始终不超过预算
+ * 
  * @author 山泽
  */
 public class ContextEngine {
     
-    private final int maxContextLength;                 // 最大上下文长度
+    private static final double MEMORY_WEIGHT = 3.0;          // 记忆条目的基础价值
+    private static final double RAG_WEIGHT = 2.0;             // 文档片段的基础价值
+    private static final double HISTORY_WEIGHT = 1.5;         // 对话历史的基础价值
+    private static final double RANK_DECAY = 0.85;            // 同一分区内按排名衰减
+    private static final int MAX_KNAPSACK_CELLS = 2048;       // 背包容量离散化上限
+    private static final int TOKEN_CACHE_SIZE = 1024;         // 文本token数缓存容量
+    private static final int MAX_HISTORY_CHARS = 200;         // 单条历史消息的最大字符数
+    
+    private final int maxContextLength;                 // 最大上下文长度（token数）
+    private final TokenCounter tokenCounter;           // token计数器
     private final List<Message> conversationHistory;   // 对话历史
+    private final List<HistoryEntry> historyEntries;   // 对话历史的渲染缓存（与conversationHistory一一对应）
     private final List<String> systemPrompts;          // 系统提示
+    private final Map<String, Integer> tokenCache;     // 文本 -> token数
+    private int historyWindow = 20;                    // 参与选择的最近消息数
+    
+    // 稳定前缀缓存
+    private boolean prefixValid;
+    private String cachedToolsInfo;
+    private String cachedPrefix = "";
+    private int cachedPrefixTokens;
+    private long prefixCacheHits;
+    private long prefixCacheMisses;
+    private long budgetOverflows;
+    
+    // 最近一次构建的分区token统计
+    private final Map<String, Integer> lastSectionTokens;
     
     // 构造函数
     public ContextEngine() {
@@ -21,9 +50,26 @@ public class ContextEngine {
     }
     
     public ContextEngine(int maxContextLength) {
+        this(maxContextLength, TokenCounter.approximate());
+    }
+    
+    /**
+     * @param maxContextLength 上下文token预算
+     * @param tokenCounter token计数器，可接入模型分词器
+     */
+    public ContextEngine(int maxContextLength, TokenCounter tokenCounter) {
         this.maxContextLength = maxContextLength;
+        this.tokenCounter = tokenCounter;
         this.conversationHistory = new ArrayList<>();
+        this.historyEntries = new ArrayList<>();
         this.systemPrompts = new ArrayList<>();
+        this.tokenCache = new LinkedHashMap<String, Integer>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > TOKEN_CACHE_SIZE;
+            }
+        };
+        this.lastSectionTokens = new LinkedHashMap<>();
     }
     
     /**
@@ -32,6 +78,7 @@ public class ContextEngine {
     public void addSystemPrompt(String prompt) {
         if (prompt != null && !prompt.trim().isEmpty()) {
             systemPrompts.add(prompt.trim());
+            prefixValid = false;
         }
     }
     
@@ -41,6 +88,7 @@ public class ContextEngine {
     public void addMessage(Message message) {
         if (message != null) {
             conversationHistory.add(message);
+            historyEntries.add(renderHistory(message));
         }
     }
     
@@ -55,50 +103,100 @@ public class ContextEngine {
      */
     public String buildContext(String currentQuery, List<Memory> relevantMemories, 
                              String ragContext, String toolsInfo) {
-        List<String> contextParts = new ArrayList<>();
+        lastSectionTokens.clear();
         
-        // 1. 系统提示
-        if (!systemPrompts.isEmpty()) {
-            contextParts.add("系统指令：\n" + String.join("\n", systemPrompts));
-        }
+        // 1-2. 稳定前缀：系统提示 + 工具信息
+        String prefix = stablePrefix(toolsInfo);
         
-        // 2. 工具信息
-        if (toolsInfo != null && !toolsInfo.trim().isEmpty()) {
-            contextParts.add("可用工具：\n" + toolsInfo);
+        // 6. 当前查询（必选）
+        String queryPart = null;
+        int queryTokens = 0;
+        if (currentQuery != null && !currentQuery.trim().isEmpty()) {
+            queryPart = "当前问题：" + currentQuery;
+            queryTokens = tokenCounter.count(queryPart);
         }
-        
-        // 3. 相关记忆
-        if (relevantMemories != null && !relevantMemories.isEmpty()) {
-            List<String> memoryTexts = relevantMemories.stream()
-                    .map(memory -> String.format("[%s记忆] %s", memory.getMemoryType(), memory.getContent()))
-                    .collect(Collectors.toList());
-            contextParts.add("相关记忆：\n" + String.join("\n", memoryTexts));
+        int prefixTokens = cachedPrefixTokens;
+        if (prefixTokens + queryTokens > maxContextLength) {
+            // 必选部分超出预算：截断只作用于本次输出，缓存的稳定前缀保持不变
+            budgetOverflows++;
+            if (prefixTokens > maxContextLength - queryTokens) {
+                prefix = truncateToTokens(prefix, maxContextLength - queryTokens);
+                prefixTokens = tokenCounter.count(prefix);
+            }
+            if (queryTokens > maxContextLength - prefixTokens) {
+                queryPart = truncateToTokens(queryPart, maxContextLength - prefixTokens);
+                queryTokens = tokenCounter.count(queryPart);
+                if (queryPart.isEmpty()) {
+                    queryPart = null;
+                }
+            }
         }
+        int remaining = maxContextLength - prefixTokens - queryTokens;
         
-        // 4. RAG上下文
+        // 3-5. 可选条目：记忆、文档片段、对话历史
+        List<Candidate> candidates = new ArrayList<>();
+        if (relevantMemories != null) {
+            for (int i = 0; i < relevantMemories.size(); i++) {
+                Memory memory = relevantMemories.get(i);
+                String text = String.format("[%s记忆] %s", memory.getMemoryType(), memory.getContent());
+                candidates.add(new Candidate(Section.MEMORY, text, cachedTokenCount(text),
+                        MEMORY_WEIGHT * Math.pow(RANK_DECAY, i)));
+            }
+        }
         if (ragContext != null && !ragContext.trim().isEmpty()) {
-            contextParts.add("相关文档：\n" + ragContext);
+            int rank = 0;
+            for (String chunk : ragContext.split("\n\n")) {
+                if (!chunk.trim().isEmpty()) {
+                    candidates.add(new Candidate(Section.RAG, chunk, cachedTokenCount(chunk),
+                            RAG_WEIGHT * Math.pow(RANK_DECAY, rank++)));
+                }
+            }
         }
-        
-        // 5. 对话历史（压缩）
-        String compressedHistory = compressConversationHistory();
-        if (!compressedHistory.isEmpty()) {
-            contextParts.add("对话历史：\n" + compressedHistory);
+        int historyStart = Math.max(0, conversationHistory.size() - historyWindow);
+        for (int i = historyStart; i < conversationHistory.size(); i++) {
+            HistoryEntry entry = historyEntry(i);
+            int age = conversationHistory.size() - 1 - i;
+            candidates.add(new Candidate(Section.HISTORY, entry.line, entry.tokens,
+                    HISTORY_WEIGHT * Math.pow(RANK_DECAY, age)));
         }
         
-        // 6. 当前查询
-        if (currentQuery != null && !currentQuery.trim().isEmpty()) {
-            contextParts.add("当前问题：" + currentQuery);
+        // 为出现的分区预留标题的token
+        EnumSet<Section> present = EnumSet.noneOf(Section.class);
+        for (Candidate candidate : candidates) {
+            present.add(candidate.section);
         }
+        for (Section section : present) {
+            remaining -= cachedTokenCount(section.header);
+        }
+        boolean[] chosen = selectByKnapsack(candidates, remaining);
         
-        // 组合并截断
-        String fullContext = String.join("\n\n", contextParts);
-        
-        if (fullContext.length() > maxContextLength) {
-            fullContext = truncateContext(fullContext);
+        // 按固定的分区顺序输出，分区内保持原有顺序
+        List<String> contextParts = new ArrayList<>();
+        if (!prefix.isEmpty()) {
+            contextParts.add(prefix);
+            lastSectionTokens.put("prefix", prefixTokens);
+        }
+        for (Section section : Section.values()) {
+            List<String> lines = new ArrayList<>();
+            int tokens = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                Candidate candidate = candidates.get(i);
+                if (chosen[i] && candidate.section == section) {
+                    lines.add(candidate.text);
+                    tokens += candidate.tokens;
+                }
+            }
+            if (!lines.isEmpty()) {
+                contextParts.add(section.header + "\n" + String.join(section.separator, lines));
+                lastSectionTokens.put(section.name().toLowerCase(), tokens + cachedTokenCount(section.header));
+            }
+        }
+        if (queryPart != null) {
+            contextParts.add(queryPart);
+            lastSectionTokens.put("query", queryTokens);
         }
         
-        return fullContext;
+        return String.join("\n\n", contextParts);
     }
     
     /**
@@ -113,34 +211,179 @@ public class ContextEngine {
     }
     
     /**
-     * 压缩对话历史
+     * 获取稳定前缀，系统提示与工具信息未变化时直接复用上次的渲染结果
      */
-    private String compressConversationHistory() {
-        if (conversationHistory.isEmpty()) {
+    private String stablePrefix(String toolsInfo) {
+        if (prefixValid && Objects.equals(toolsInfo, cachedToolsInfo)) {
+            prefixCacheHits++;
+            return cachedPrefix;
+        }
+        prefixCacheMisses++;
+        List<String> parts = new ArrayList<>();
+        if (!systemPrompts.isEmpty()) {
+            parts.add("系统指令：\n" + String.join("\n", systemPrompts));
+        }
+        if (toolsInfo != null && !toolsInfo.trim().isEmpty()) {
+            parts.add("可用工具：\n" + toolsInfo);
+        }
+        cachedPrefix = String.join("\n\n", parts);
+        cachedPrefixTokens = tokenCounter.count(cachedPrefix);
+        cachedToolsInfo = toolsInfo;
+        prefixValid = true;
+        return cachedPrefix;
+    }
+    
+    /**
+     * 截取文本的最长前缀，使其token数不超过budget
+     */
+    private String truncateToTokens(String text, int budget) {
+        if (budget <= 0) {
             return "";
         }
+        int lo = 0;
+        int hi = text.length();
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (tokenCounter.count(text.substring(0, mid)) <= budget) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        // 不拆开代理对
+        if (lo > 0 && lo < text.length() && Character.isHighSurrogate(text.charAt(lo - 1))) {
+            lo--;
+        }
+        return text.substring(0, lo);
+    }
+    
+    /**
+     * 获取历史消息的渲染缓存，消息内容被修改过时重新渲染
+     */
+    private HistoryEntry historyEntry(int index) {
+        HistoryEntry entry = historyEntries.get(index);
+        Message message = conversationHistory.get(index);
+        if (entry.message != message || entry.content != message.getContent()) {
+            entry = renderHistory(message);
+            historyEntries.set(index, entry);
+        }
+        return entry;
+    }
+    
+    private HistoryEntry renderHistory(Message message) {
+        String content = message.getContent();
+        String display = content == null ? "" : content;
+        // 截断过长内容
+        if (display.length() > MAX_HISTORY_CHARS) {
+            display = display.substring(0, MAX_HISTORY_CHARS - 3) + "...";
+        }
+        String line = getRoleDisplayName(message.getRole()) + ": " + display;
+        return new HistoryEntry(message, content, line, tokenCounter.count(line));
+    }
+    
+    private int cachedTokenCount(String text) {
+        Integer cached = tokenCache.get(text);
+        if (cached == null) {
+            cached = tokenCounter.count(text);
+            tokenCache.put(text, cached);
+        }
+        return cached;
+    }
+    
+    /**
+     * 0/1背包选择：在token容量内使条目总价值最大
+     * 容量超过 MAX_KNAPSACK_CELLS 时按比例离散化，条目重量向上取整，保证选择结果不超预算
+     */
+    static boolean[] selectByKnapsack(List<Candidate> items, int capacity) {
+        int n = items.size();
+        boolean[] chosen = new boolean[n];
+        if (n == 0 || capacity <= 0) {
+            return chosen;
+        }
+        long total = 0;
+        for (Candidate item : items) {
+            total += item.tokens;
+        }
+        if (total <= capacity) {
+            Arrays.fill(chosen, true);
+            return chosen;
+        }
         
-        // 保留最近的几轮对话
-        int maxMessages = 6;  // 最近3轮对话
-        List<Message> recentMessages = conversationHistory.stream()
-                .skip(Math.max(0, conversationHistory.size() - maxMessages))
-                .collect(Collectors.toList());
+        int scale = (capacity + MAX_KNAPSACK_CELLS - 1) / MAX_KNAPSACK_CELLS;
+        int cells = capacity / scale;
+        double[] best = new double[cells + 1];
+        boolean[][] take = new boolean[n][cells + 1];
+        int[] weights = new int[n];
+        for (int i = 0; i < n; i++) {
+            weights[i] = (items.get(i).tokens + scale - 1) / scale;
+            double value = items.get(i).value;
+            for (int c = cells; c >= weights[i]; c--) {
+                double candidate = best[c - weights[i]] + value;
+                if (candidate > best[c]) {
+                    best[c] = candidate;
+                    take[i][c] = true;
+                }
+            }
+        }
+        int c = cells;
+        for (int i = n - 1; i >= 0; i--) {
+            if (take[i][c]) {
+                chosen[i] = true;
+                c -= weights[i];
+            }
+        }
+        return chosen;
+    }
+    
+    /**
+     * 可选上下文分区（声明顺序即输出顺序）
+     */
+    enum Section {
+        MEMORY("相关记忆：", "\n"),
+        RAG("相关文档：", "\n\n"),
+        HISTORY("对话历史：", "\n");
         
-        List<String> compressed = new ArrayList<>();
+        final String header;
+        final String separator;
         
-        for (Message msg : recentMessages) {
-            String role = getRoleDisplayName(msg.getRole());
-            String content = msg.getContent();
-            
-            // 截断过长内容
-            if (content.length() > 200) {
-                content = content.substring(0, 197) + "...";
-            }
-            
-            compressed.add(role + ": " + content);
+        Section(String header, String separator) {
+            this.header = header;
+            this.separator = separator;
+        }
+    }
+    
+    /**
+     * 候选条目
+     */
+    static class Candidate {
+        final Section section;
+        final String text;
+        final int tokens;
+        final double value;
+        
+        Candidate(Section section, String text, int tokens, double value) {
+            this.section = section;
+            this.text = text;
+            this.tokens = tokens;
+            this.value = value;
         }
+    }
+    
+    /**
+     * 历史消息的渲染结果
+     */
+    private static class HistoryEntry {
+        final Message message;
+        final String content;
+        final String line;
+        final int tokens;
         
-        return String.join("\n", compressed);
+        HistoryEntry(Message message, String content, String line, int tokens) {
+            this.message = message;
+            this.content = content;
+            this.line = line;
+            this.tokens = tokens;
+        }
     }
     
     /**
@@ -166,114 +409,40 @@ public class ContextEngine {
     }
     
     /**
-     * 截断上下文以适应长度限制
+     * 清空对话历史
      */
-    private String truncateContext(String context) {
-        if (context.length() <= maxContextLength) {
-            return context;
-        }
-        
-        String[] lines = context.split("\n");
-        
-        // 找到重要部分的索引
-        int systemEnd = findSectionEnd(lines, "系统指令：");
-        int currentQueryStart = findSectionStart(lines, "当前问题：");
-        
-        // 如果找不到当前问题，则使用最后一行
-        if (currentQueryStart == -1) {
-            currentQueryStart = lines.length - 1;
-        }
-        
-        // 保留系统指令和当前查询
-        List<String> importantParts = new ArrayList<>();
-        
-        // 添加系统指令部分
-        for (int i = 0; i <= systemEnd && i < lines.length; i++) {
-            importantParts.add(lines[i]);
-        }
-        
-        // 添加当前查询部分
-        for (int i = currentQueryStart; i < lines.length; i++) {
-            importantParts.add(lines[i]);
-        }
-        
-        String importantText = String.join("\n", importantParts);
-        
-        // 计算剩余空间
-        int remainingSpace = maxContextLength - importantText.length();
-        
-        if (remainingSpace > 100) {  // 如果还有空间，添加其他内容
-            List<String> middleParts = new ArrayList<>();
-            for (int i = systemEnd + 1; i < currentQueryStart; i++) {
-                middleParts.add(lines[i]);
-            }
-            
-            String middleText = String.join("\n", middleParts);
-            
-            if (middleText.length() <= remainingSpace) {
-                return context;
-            } else {
-                // 截断中间部分
-                String truncatedMiddle = middleText.substring(0, remainingSpace - 50) + "\n\n[内容被截断...]\n";
-                
-                List<String> result = new ArrayList<>();
-                for (int i = 0; i <= systemEnd && i < lines.length; i++) {
-                    result.add(lines[i]);
-                }
-                result.add(truncatedMiddle);
-                for (int i = currentQueryStart; i < lines.length; i++) {
-                    result.add(lines[i]);
-                }
-                
-                return String.join("\n", result);
-            }
-        }
-        
-        return importantText;
+    public void clearConversationHistory() {
+        conversationHistory.clear();
+        historyEntries.clear();
     }
     
     /**
-     * 查找指定部分的结束位置
+     * 清空系统提示
      */
-    private int findSectionEnd(String[] lines, String sectionStart) {
-        for (int i = 0; i < lines.length; i++) {
-            if (lines[i].startsWith(sectionStart)) {
-                // 找到下一个部分的开始或数组结束
-                for (int j = i + 1; j < lines.length; j++) {
-                    if (lines[j].contains("：") && !lines[j].startsWith(" ") && !lines[j].startsWith("\t")) {
-                        return j - 1;
-                    }
-                }
-                return lines.length - 1;
-            }
-        }
-        return 0;
+    public void clearSystemPrompts() {
+        systemPrompts.clear();
+        prefixValid = false;
     }
     
     /**
-     * 查找指定部分的开始位置
+     * 设置参与选择的最近消息数
      */
-    private int findSectionStart(String[] lines, String sectionStart) {
-        for (int i = 0; i < lines.length; i++) {
-            if (lines[i].startsWith(sectionStart)) {
-                return i;
-            }
-        }
-        return -1;
+    public void setHistoryWindow(int historyWindow) {
+        this.historyWindow = Math.max(0, historyWindow);
     }
     
     /**
-     * 清空对话历史
+     * 获取最近一次构建使用的稳定前缀（系统提示 + 工具信息）
      */
-    public void clearConversationHistory() {
-        conversationHistory.clear();
+    public String getStablePrefix() {
+        return cachedPrefix;
     }
     
     /**
-     * 清空系统提示
+     * 获取最近一次构建中各分区的token数
      */
-    public void clearSystemPrompts() {
-        systemPrompts.clear();
+    public Map<String, Integer> getLastSectionTokens() {
+        return new LinkedHashMap<>(lastSectionTokens);
     }
     
     /**
@@ -291,7 +460,7 @@ public class ContextEngine {
     }
     
     /**
-     * 获取最大上下文长度
+     * 获取最大上下文长度（token数）
      */
     public int getMaxContextLength() {
         return maxContextLength;
@@ -305,6 +474,10 @@ public class ContextEngine {
         stats.put("max_context_length", maxContextLength);
         stats.put("conversation_history_count", conversationHistory.size());
         stats.put("system_prompts_count", systemPrompts.size());
+        stats.put("prefix_cache_hits", prefixCacheHits);
+        stats.put("prefix_cache_misses", prefixCacheMisses);
+        stats.put("budget_overflows", budgetOverflows);
+        stats.put("last_section_tokens", getLastSectionTokens());
         
         if (!conversationHistory.isEmpty()) {
             int totalLength = conversationHistory.stream()
@@ -0,0 +1,163 @@
+package io.leavesfly.tinyai.agent.context;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 记忆倒排索引
+ * 记忆在写入时分词一次，检索时只访问查询词命中的倒排表，不再逐条重新分词
+ *
+ * 分词规则：
+ * - 按 [\w一-龥]+ 切出词并转小写（与原有相关性判断一致）
+ * - 含中文的词额外拆出中文单字和相邻双字组合，使"学习"能命中"我喜欢学习java"这类未切分的连续文本
+ * - 中英混合的词额外拆出其中的英文/数字片段
+ *
+ * 相关度为命中词的IDF之和除以查询词IDF之和，取值0-1
+ *
+ * @author 山泽
+ */
+public class MemoryIndex {
+
+    private static final Pattern WORD_PATTERN = Pattern.compile("[\\w\\u4e00-\\u9fa5]+");
+    private static final Pattern CJK_PATTERN = Pattern.compile("[\\u4e00-\\u9fa5]+");
+    private static final Pattern NON_CJK_PATTERN = Pattern.compile("[^\\u4e00-\\u9fa5]+");
+
+    private final Map<String, Set<String>> postings;    // 词 -> 记忆ID集合
+    private final Map<String, String[]> memoryTerms;    // 记忆ID -> 词（用于删除）
+
+    public MemoryIndex() {
+        this.postings = new HashMap<>();
+        this.memoryTerms = new HashMap<>();
+    }
+
+    /**
+     * 索引记忆，已存在时先移除旧的词条
+     */
+    public void add(String memoryId, String content) {
+        remove(memoryId);
+        Set<String> terms = tokenize(content);
+        memoryTerms.put(memoryId, terms.toArray(new String[0]));
+        for (String term : terms) {
+            postings.computeIfAbsent(term, k -> new HashSet<>()).add(memoryId);
+        }
+    }
+
+    /**
+     * 移除记忆，只访问该记忆自身的词条
+     */
+    public boolean remove(String memoryId) {
+        String[] terms = memoryTerms.remove(memoryId);
+        if (terms == null) {
+            return false;
+        }
+        for (String term : terms) {
+            Set<String> ids = postings.get(term);
+            if (ids != null) {
+                ids.remove(memoryId);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean contains(String memoryId) {
+        return memoryTerms.containsKey(memoryId);
+    }
+
+    /**
+     * 查找候选记忆
+     *
+     * @param queryTerms 查询词（通过 {@link #tokenizeQuery(String)} 得到）
+     * @return 记忆ID到相关度（0-1）的映射
+     */
+    public Map<String, Double> search(Set<String> queryTerms) {
+        Map<String, Double> scores = new HashMap<>();
+        if (queryTerms.isEmpty() || memoryTerms.isEmpty()) {
+            return scores;
+        }
+        int total = memoryTerms.size();
+        double totalWeight = 0.0;
+        for (String term : queryTerms) {
+            Set<String> ids = postings.get(term);
+            int docFreq = ids == null ? 0 : ids.size();
+            double idf = Math.log(1.0 + (double) total / (docFreq + 1));
+            totalWeight += idf;
+            if (ids != null) {
+                for (String id : ids) {
+                    scores.merge(id, idf, Double::sum);
+                }
+            }
+        }
+        final double norm = totalWeight;
+        if (norm > 0) {
+            scores.replaceAll((id, score) -> score / norm);
+        }
+        return scores;
+    }
+
+    /**
+     * 已索引的记忆数
+     */
+    public int size() {
+        return memoryTerms.size();
+    }
+
+    /**
+     * 索引中的词数
+     */
+    public int getTermCount() {
+        return postings.size();
+    }
+
+    /**
+     * 记忆内容分词（中文拆出全部单字和双字组合）
+     */
+    public static Set<String> tokenize(String text) {
+        return tokenize(text, false);
+    }
+    
+    /**
+     * 查询分词：连续中文只拆双字组合，单独的中文字才作为单字词，避免单字匹配过宽
+     */
+    public static Set<String> tokenizeQuery(String text) {
+        return tokenize(text, true);
+    }
+
+    private static Set<String> tokenize(String text, boolean query) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher matcher = WORD_PATTERN.matcher(text.toLowerCase());
+        while (matcher.find()) {
+            String word = matcher.group();
+            terms.add(word);
+            if (CJK_PATTERN.matcher(word).find()) {
+                addCjkTerms(word, terms, query);
+            }
+        }
+        return terms;
+    }
+
+    private static void addCjkTerms(String word, Set<String> terms, boolean query) {
+        Matcher cjk = CJK_PATTERN.matcher(word);
+        while (cjk.find()) {
+            String run = cjk.group();
+            for (int i = 0; i < run.length(); i++) {
+                if (!query || run.length() == 1) {
+                    terms.add(run.substring(i, i + 1));
+                }
+                if (i + 1 < run.length()) {
+                    terms.add(run.substring(i, i + 2));
+                }
+            }
+        }
+        Matcher other = NON_CJK_PATTERN.matcher(word);
+        while (other.find()) {
+            terms.add(other.group());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package io.leavesfly.tinyai.agent.context;
+
+import java.sql.*;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * 记忆写回日志（write-behind）
+ * 缓冲记忆的增删改，由后台线程按批次在单个事务中写入SQLite
+ *
+ * 特性：
+ * - 合并：同一记忆ID在两次刷盘之间的多次更新只保留最后一次快照，删除覆盖之前的写入
+ * - 有界延迟：待写记录最多等待 flushIntervalMillis 后落盘；待写条数达到 maxPendingWrites 时立即唤醒刷盘
+ * - 快照：入队时复制记忆字段，后台线程不读取可变的 Memory 对象
+ *
+ * 崩溃安全语义：
+ * - 每个批次在一个事务中提交，数据库中要么是批次前的状态、要么是批次后的状态，不会出现半个批次
+ * - 进程崩溃时，尚未刷盘的变更（最多 flushIntervalMillis 内的写入）会丢失；已提交的批次按SQLite的持久化保证保留
+ * - flush() 返回后之前的所有变更均已提交；close() 会先刷盘再停止线程
+ * - 刷盘失败时事务回滚，未被更新的条目重新放回队列，按指数退避（首次为 flushIntervalMillis，最长30秒）重试
+ * - flushIntervalMillis <= 0 时退化为同步写入（每次变更立即提交），适合需要逐条持久化的场景
+ *
+ * @author 山泽
+ */
+public class MemoryJournal {
+
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO memories " +
+            "(id, content, memory_type, timestamp, importance, access_count, " +
+            "last_accessed, embedding, metadata) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM memories WHERE id = ?";
+
+    /** 连续刷盘失败时的最大退避间隔 */
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final Connection connection;
+    private final long flushIntervalMillis;
+    private final int maxPendingWrites;
+
+    private final Object lock = new Object();          // 保护待写队列
+    private final Object flushLock = new Object();     // 串行化刷盘，保护连接
+    private LinkedHashMap<String, Row> pending = new LinkedHashMap<>();
+    private Thread flusher;
+    private boolean running = true;
+
+    // 统计
+    private long enqueued;
+    private long coalesced;
+    private long flushedRows;
+    private long flushCount;
+    private long failedFlushes;
+
+    /**
+     * 待写记录：deleted为true表示删除，否则为记忆字段快照
+     */
+    private static final class Row {
+        final String id;
+        final boolean deleted;
+        final String content;
+        final String memoryType;
+        final double timestamp;
+        final double importance;
+        final int accessCount;
+        final double lastAccessed;
+
+        Row(Memory memory) {
+            this.id = memory.getId();
+            this.deleted = false;
+            this.content = memory.getContent();
+            this.memoryType = memory.getMemoryType();
+            this.timestamp = memory.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            this.importance = memory.getImportance();
+            this.accessCount = memory.getAccessCount();
+            this.lastAccessed = memory.getLastAccessed().toEpochSecond(ZoneOffset.UTC);
+        }
+
+        Row(String id) {
+            this.id = id;
+            this.deleted = true;
+            this.content = null;
+            this.memoryType = null;
+            this.timestamp = 0;
+            this.importance = 0;
+            this.accessCount = 0;
+            this.lastAccessed = 0;
+        }
+    }
+
+    /**
+     * @param connection 数据库连接（由调用方创建，为null时所有写入被丢弃）
+     * @param flushIntervalMillis 最大刷盘延迟，<=0 表示同步写入
+     * @param maxPendingWrites 待写条数达到该值时立即刷盘
+     */
+    public MemoryJournal(Connection connection, long flushIntervalMillis, int maxPendingWrites) {
+        this.connection = connection;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPendingWrites = Math.max(1, maxPendingWrites);
+        if (connection != null && flushIntervalMillis > 0) {
+            flusher = new Thread(this::flushLoop, "memory-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * 记录写入（新增或更新）
+     */
+    public void upsert(Memory memory) {
+        enqueue(new Row(memory));
+    }
+
+    /**
+     * 记录删除
+     */
+    public void delete(String id) {
+        enqueue(new Row(id));
+    }
+
+    private void enqueue(Row row) {
+        if (connection == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (!running) {
+                System.err.println("MemoryJournal已关闭，忽略记忆写入: " + row.id);
+                return;
+            }
+            enqueued++;
+            // 先移除再放入，使合并后的记录排在队尾，保持与最后一次变更一致的顺序
+            if (pending.remove(row.id) != null) {
+                coalesced++;
+            }
+            pending.put(row.id, row);
+            if (flusher != null && pending.size() >= maxPendingWrites) {
+                lock.notifyAll();
+            }
+        }
+        if (flusher == null) {
+            flush();
+        }
+    }
+
+    /**
+     * 立即把所有待写记录提交到数据库
+     *
+     * @return 本次是否全部写入成功
+     */
+    public boolean flush() {
+        if (connection == null) {
+            return true;
+        }
+        synchronized (flushLock) {
+            LinkedHashMap<String, Row> batch;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    return true;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+            try {
+                writeBatch(batch.values());
+                synchronized (lock) {
+                    flushedRows += batch.size();
+                    flushCount++;
+                }
+                return true;
+            } catch (SQLException e) {
+                System.err.println("记忆批量写入失败: " + e.getMessage());
+                synchronized (lock) {
+                    failedFlushes++;
+                    // 失败的条目放回队首，期间已有更新的ID以新值为准
+                    LinkedHashMap<String, Row> retry = new LinkedHashMap<>(batch);
+                    for (Map.Entry<String, Row> entry : pending.entrySet()) {
+                        retry.remove(entry.getKey());
+                        retry.put(entry.getKey(), entry.getValue());
+                    }
+                    pending = retry;
+                }
+                return false;
+            }
+        }
+    }
+
+    private void writeBatch(Collection<Row> rows) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_SQL);
+             PreparedStatement delete = connection.prepareStatement(DELETE_SQL)) {
+            boolean hasUpserts = false;
+            boolean hasDeletes = false;
+            for (Row row : rows) {
+                if (row.deleted) {
+                    delete.setString(1, row.id);
+                    delete.addBatch();
+                    hasDeletes = true;
+                } else {
+                    upsert.setString(1, row.id);
+                    upsert.setString(2, row.content);
+                    upsert.setString(3, row.memoryType);
+                    upsert.setDouble(4, row.timestamp);
+                    upsert.setDouble(5, row.importance);
+                    upsert.setInt(6, row.accessCount);
+                    upsert.setDouble(7, row.lastAccessed);
+                    upsert.setString(8, null); // embedding暂时为null
+                    upsert.setString(9, "{}"); // metadata简化为空JSON
+                    upsert.addBatch();
+                    hasUpserts = true;
+                }
+            }
+            // 同一ID在批次内只有一条记录，删除与写入互不影响，顺序无关
+            if (hasUpserts) {
+                upsert.executeBatch();
+            }
+            if (hasDeletes) {
+                delete.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void flushLoop() {
+        long backoffMillis = 0;
+        while (true) {
+            synchronized (lock) {
+                // 上次刷盘失败时按退避时间等待，不因待写条数达到阈值而提前唤醒，避免数据库持续故障时空转
+                long waitMillis = backoffMillis > 0 ? backoffMillis : flushIntervalMillis;
+                long deadline = System.currentTimeMillis() + waitMillis;
+                while (running && (backoffMillis > 0 || pending.size() < maxPendingWrites)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            if (flush()) {
+                backoffMillis = 0;
+            } else {
+                backoffMillis = backoffMillis == 0 ? flushIntervalMillis
+                        : Math.min(backoffMillis * 2, Math.max(flushIntervalMillis, MAX_BACKOFF_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * 停止后台线程并写入剩余记录，之后不再接受新的变更
+     */
+    public void close() {
+        Thread thread;
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = flusher;
+            lock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * 待写记录数
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        synchronized (lock) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("enqueued", enqueued);
+            stats.put("coalesced", coalesced);
+            stats.put("pending", pending.size());
+            stats.put("flushed_rows", flushedRows);
+            stats.put("flush_count", flushCount);
+            stats.put("failed_flushes", failedFlushes);
+            stats.put("avg_batch_size", flushCount == 0 ? 0.0 : (double) flushedRows / flushCount);
+            return stats;
+        }
+    }
+}
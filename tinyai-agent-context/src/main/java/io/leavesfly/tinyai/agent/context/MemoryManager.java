@@ -3,13 +3,12 @@ package io.leavesfly.tinyai.agent.context;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * 记忆管理系统
@@ -20,15 +19,26 @@ import java.util.stream.Collectors;
 public class MemoryManager {
     
     private static final int WORKING_MEMORY_MAX_SIZE = 10;  // 工作记忆容量限制
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200; // 默认最大刷盘延迟
+    private static final int MAX_PENDING_WRITES = 256;      // 待写条数上限，达到后立即刷盘
     
     private final String dbPath;
     private Connection connection;
+    private MemoryJournal journal;                       // 写回日志，批量持久化记忆变更
     
     // 不同类型的记忆存储
     private final Deque<Memory> workingMemory;           // 工作记忆（容量受限）
     private final List<Memory> episodicMemory;           // 情节记忆
     private final Map<String, Memory> semanticMemory;    // 语义记忆
     private final Map<String, Memory> memoryIndex;       // 记忆索引
+    private final MemoryIndex searchIndex;               // 可检索记忆的倒排索引
+    private SimpleEmbedding embedding;                   // 可选的向量化器，设置后相关度取词项与向量的较大值
+    
+    // 检索打分权重：相关度、重要性、时近性
+    private double relevanceWeight = 0.6;
+    private double importanceWeight = 0.3;
+    private double recencyWeight = 0.1;
+    private double recencyHalfLifeHours = 24.0;
     
     // 构造函数
     public MemoryManager() {
@@ -36,14 +46,25 @@ public class MemoryManager {
     }
     
     public MemoryManager(String dbPath) {
+        this(dbPath, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+    
+    /**
+     * @param dbPath 数据库路径
+     * @param flushIntervalMillis 记忆变更的最大刷盘延迟，<=0 表示每次变更同步写入
+     * @see MemoryJournal 崩溃安全语义
+     */
+    public MemoryManager(String dbPath, long flushIntervalMillis) {
         this.dbPath = dbPath;
         this.workingMemory = new ConcurrentLinkedDeque<>();
         this.episodicMemory = new ArrayList<>();
         this.semanticMemory = new HashMap<>();
         this.memoryIndex = new HashMap<>();
+        this.searchIndex = new MemoryIndex();
         
         // 初始化数据库
         initDatabase();
+        this.journal = new MemoryJournal(connection, flushIntervalMillis, MAX_PENDING_WRITES);
     }
     
     /**
@@ -97,7 +118,8 @@ public class MemoryManager {
             case "working":
                 // 工作记忆有容量限制
                 if (workingMemory.size() >= WORKING_MEMORY_MAX_SIZE) {
-                    workingMemory.removeFirst();  // 移除最旧的记忆
+                    Memory evicted = workingMemory.removeFirst();  // 移除最旧的记忆
+                    searchIndex.remove(evicted.getId());
                 }
                 workingMemory.addLast(memory);
                 break;
@@ -108,15 +130,22 @@ public class MemoryManager {
                 
             case "semantic":
                 String semanticKey = extractSemanticKey(content);
-                semanticMemory.put(semanticKey, memory);
+                Memory replaced = semanticMemory.put(semanticKey, memory);
+                if (replaced != null) {
+                    searchIndex.remove(replaced.getId());
+                }
                 break;
                 
             default:
                 throw new IllegalArgumentException("不支持的记忆类型: " + memoryType);
         }
         
-        // 添加到索引
+        // 添加到索引（写入时分词一次）
         memoryIndex.put(memoryId, memory);
+        searchIndex.add(memoryId, content);
+        if (embedding != null) {
+            memory.setEmbedding(embedding.encode(content));
+        }
         
         // 保存到数据库
         saveMemoryToDb(memory);
@@ -137,6 +166,8 @@ public class MemoryManager {
     
     /**
      * 检索相关记忆
+     * 只对倒排索引命中的候选打分，按 相关度、重要性、时近性 的加权和用容量为limit的小顶堆取top-k，
+     * 检索开销与命中的候选数相关，而不是与记忆总数线性相关
      * 
      * @param query 查询内容
      * @param memoryType 记忆类型过滤（可选）
@@ -144,49 +175,63 @@ public class MemoryManager {
      * @return 相关记忆列表
      */
     public List<Memory> retrieveMemories(String query, String memoryType, int limit) {
-        List<Memory> memories = new ArrayList<>();
-        
-        // 从工作记忆检索
-        if (memoryType == null || "working".equals(memoryType)) {
-            for (Memory memory : workingMemory) {
-                if (isRelevant(query, memory.getContent())) {
-                    memories.add(memory);
-                }
-            }
+        if (query == null || limit <= 0) {
+            return new ArrayList<>();
         }
         
-        // 从情节记忆检索
-        if (memoryType == null || "episodic".equals(memoryType)) {
-            for (Memory memory : episodicMemory) {
-                if (isRelevant(query, memory.getContent())) {
-                    memories.add(memory);
+        Map<String, Double> candidates;
+        Set<String> queryTerms = MemoryIndex.tokenizeQuery(query);
+        if (queryTerms.isEmpty()) {
+            // 空查询与任何内容都"相关"：退化为按重要性和时近性排序全部记忆
+            candidates = new HashMap<>();
+            for (Memory memory : memoryIndex.values()) {
+                if (searchIndex.contains(memory.getId())) {
+                    candidates.put(memory.getId(), 0.0);
                 }
             }
+        } else {
+            candidates = searchIndex.search(queryTerms);
         }
         
-        // 从语义记忆检索
-        if (memoryType == null || "semantic".equals(memoryType)) {
-            for (Memory memory : semanticMemory.values()) {
-                if (isRelevant(query, memory.getContent())) {
-                    memories.add(memory);
+        List<Double> queryVector = embedding != null && embedding.isTrained() ? embedding.encode(query) : null;
+        LocalDateTime now = LocalDateTime.now();
+        
+        // 小顶堆：堆顶为当前top-k中得分最低者
+        Comparator<ScoredMemory> order = Comparator
+                .comparingDouble((ScoredMemory scored) -> scored.score)
+                .thenComparingInt(scored -> scored.memory.getAccessCount());
+        PriorityQueue<ScoredMemory> top = new PriorityQueue<>(Math.min(limit, 64) + 1, order);
+        for (Map.Entry<String, Double> entry : candidates.entrySet()) {
+            Memory memory = memoryIndex.get(entry.getKey());
+            if (memory == null) {
+                continue;
+            }
+            if (memoryType != null && !memoryType.equals(memory.getMemoryType().toLowerCase())) {
+                continue;
+            }
+            double relevance = entry.getValue();
+            if (queryVector != null) {
+                if (memory.getEmbedding() == null) {
+                    memory.setEmbedding(embedding.encode(memory.getContent()));
                 }
+                relevance = Math.max(relevance, embedding.similarity(queryVector, memory.getEmbedding()));
+            }
+            ScoredMemory scored = new ScoredMemory(memory, score(memory, relevance, now));
+            if (top.size() < limit) {
+                top.add(scored);
+            } else if (order.compare(scored, top.peek()) > 0) {
+                top.poll();
+                top.add(scored);
             }
         }
         
-        // 按重要性和访问次数排序
-        memories.sort((m1, m2) -> {
-            int importanceCompare = Double.compare(m2.getImportance(), m1.getImportance());
-            if (importanceCompare != 0) {
-                return importanceCompare;
-            }
-            return Integer.compare(m2.getAccessCount(), m1.getAccessCount());
-        });
+        List<Memory> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll().memory);
+        }
+        Collections.reverse(result);
         
         // 更新访问统计
-        List<Memory> result = memories.stream()
-                .limit(limit)
-                .collect(Collectors.toList());
-        
         for (Memory memory : result) {
             memory.incrementAccess();
             saveMemoryToDb(memory);
@@ -195,6 +240,61 @@ public class MemoryManager {
         return result;
     }
     
+    /**
+     * 综合得分 = 相关度权重×相关度 + 重要性权重×重要性 + 时近性权重×时近性
+     * 时近性按最后访问时间指数衰减，经过 recencyHalfLifeHours 小时减半
+     */
+    private double score(Memory memory, double relevance, LocalDateTime now) {
+        double ageHours = Math.max(0, Duration.between(memory.getLastAccessed(), now).toMillis()) / 3_600_000.0;
+        double recency = Math.pow(0.5, ageHours / recencyHalfLifeHours);
+        return relevanceWeight * relevance + importanceWeight * memory.getImportance() + recencyWeight * recency;
+    }
+    
+    /**
+     * 设置检索打分权重
+     */
+    public void setScoringWeights(double relevanceWeight, double importanceWeight, double recencyWeight) {
+        this.relevanceWeight = relevanceWeight;
+        this.importanceWeight = importanceWeight;
+        this.recencyWeight = recencyWeight;
+    }
+    
+    /**
+     * 设置时近性半衰期（小时）
+     */
+    public void setRecencyHalfLifeHours(double recencyHalfLifeHours) {
+        if (recencyHalfLifeHours <= 0) {
+            throw new IllegalArgumentException("半衰期必须为正数");
+        }
+        this.recencyHalfLifeHours = recencyHalfLifeHours;
+    }
+    
+    /**
+     * 设置向量化器，之后新增的记忆在写入时计算向量；已有记忆在首次成为候选时补算
+     * 向量只用于对倒排索引的候选重新计算相关度，不扩大候选范围
+     * 
+     * @param embedding 已训练的向量化器，为null时关闭向量相关度
+     */
+    public void setEmbedding(SimpleEmbedding embedding) {
+        this.embedding = embedding;
+        for (Memory memory : memoryIndex.values()) {
+            memory.setEmbedding(null);
+        }
+    }
+    
+    /**
+     * 带得分的检索候选
+     */
+    private static class ScoredMemory {
+        final Memory memory;
+        final double score;
+        
+        ScoredMemory(Memory memory, double score) {
+            this.memory = memory;
+            this.score = score;
+        }
+    }
+    
     /**
      * 检索相关记忆（重载方法）
      */
@@ -224,7 +324,7 @@ public class MemoryManager {
             // 从工作记忆移除
             workingMemory.remove(memory);
             
-            // 转移到情节记忆
+            // 转移到情节记忆（ID与内容不变，倒排索引无需重建，类型过滤在检索时读取）
             memory.setMemoryType("episodic");
             episodicMemory.add(memory);
             
@@ -242,6 +342,8 @@ public class MemoryManager {
         stats.put("episodic_memory_count", episodicMemory.size());
         stats.put("semantic_memory_count", semanticMemory.size());
         stats.put("total_memories", workingMemory.size() + episodicMemory.size() + semanticMemory.size());
+        stats.put("indexed_memories", searchIndex.size());
+        stats.put("indexed_terms", searchIndex.getTermCount());
         return stats;
     }
     
@@ -261,6 +363,8 @@ public class MemoryManager {
             return false;
         }
         
+        searchIndex.remove(id);
+        
         // 从相应的存储中移除
         switch (memory.getMemoryType().toLowerCase()) {
             case "working":
@@ -274,17 +378,8 @@ public class MemoryManager {
                 break;
         }
         
-        // 从数据库删除
-        try {
-            String sql = "DELETE FROM memories WHERE id = ?";
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, id);
-                pstmt.executeUpdate();
-            }
-        } catch (SQLException e) {
-            System.err.println("删除记忆失败: " + e.getMessage());
-            return false;
-        }
+        // 从数据库删除（写回日志异步提交）
+        journal.delete(id);
         
         return true;
     }
@@ -334,81 +429,35 @@ public class MemoryManager {
     }
     
     /**
-     * 判断记忆是否与查询相关
+     * 保存记忆到数据库
+     * 只记入写回日志，同一记忆的多次更新在下次刷盘时合并为一条写入
      */
-    private boolean isRelevant(String query, String content) {
-        if (query == null || content == null) {
-            return false;
-        }
-        
-        // 直接包含关系检查（对中文更友好）
-        if (content.toLowerCase().contains(query.toLowerCase())) {
-            return true;
-        }
-        
-        Set<String> queryWords = extractWords(query.toLowerCase());
-        Set<String> contentWords = extractWords(content.toLowerCase());
-        
-        // 计算词汇重叠度
-        Set<String> intersection = new HashSet<>(queryWords);
-        intersection.retainAll(contentWords);
-        
-        return !intersection.isEmpty();
+    private void saveMemoryToDb(Memory memory) {
+        journal.upsert(memory);
     }
     
     /**
-     * 提取单词集合
+     * 立即提交所有未落盘的记忆变更
+     * 
+     * @return 是否全部写入成功
      */
-    private Set<String> extractWords(String text) {
-        // 支持中英文词汇提取
-        Pattern pattern = Pattern.compile("[\\w\\u4e00-\\u9fa5]+");
-        Matcher matcher = pattern.matcher(text);
-        
-        Set<String> words = new HashSet<>();
-        while (matcher.find()) {
-            String word = matcher.group();
-            // 对中文词汇更宽松的长度要求
-            if (word.length() >= 1) {
-                words.add(word);
-            }
-        }
-        
-        return words;
+    public boolean flush() {
+        return journal.flush();
     }
     
     /**
-     * 保存记忆到数据库
+     * 获取持久化统计信息（合并次数、批次数、平均批大小等）
      */
-    private void saveMemoryToDb(Memory memory) {
-        try {
-            String sql = "INSERT OR REPLACE INTO memories " +
-                    "(id, content, memory_type, timestamp, importance, access_count, " +
-                    "last_accessed, embedding, metadata) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-                pstmt.setString(1, memory.getId());
-                pstmt.setString(2, memory.getContent());
-                pstmt.setString(3, memory.getMemoryType());
-                pstmt.setDouble(4, memory.getTimestamp().toEpochSecond(ZoneOffset.UTC));
-                pstmt.setDouble(5, memory.getImportance());
-                pstmt.setInt(6, memory.getAccessCount());
-                pstmt.setDouble(7, memory.getLastAccessed().toEpochSecond(ZoneOffset.UTC));
-                pstmt.setString(8, null); // embedding暂时为null
-                pstmt.setString(9, "{}"); // metadata简化为空JSON
-                
-                pstmt.executeUpdate();
-            }
-            
-        } catch (SQLException e) {
-            System.err.println("保存记忆到数据库失败: " + e.getMessage());
-        }
+    public Map<String, Object> getPersistenceStats() {
+        return journal.getStats();
     }
     
     /**
      * 关闭资源
      */
     public void close() {
+        // 先写入剩余变更再关闭连接
+        journal.close();
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
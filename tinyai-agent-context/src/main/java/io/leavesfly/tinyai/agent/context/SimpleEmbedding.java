@@ -17,6 +17,11 @@ public class SimpleEmbedding {
     private Map<String, Integer> vocabulary;            // 词汇表
     private Map<String, Double> idf;                    // 逆文档频率
     private boolean isTrained;                          // 是否已训练
+    private final Map<String, List<Double>> encodeCache; // 编码结果LRU缓存（词表变化时清空）
+    private long cacheHits;                             // 缓存命中次数
+    private long cacheMisses;                           // 缓存未命中次数
+    
+    private static final int DEFAULT_CACHE_SIZE = 2048;
     
     // 构造函数
     public SimpleEmbedding() {
@@ -24,10 +29,25 @@ public class SimpleEmbedding {
     }
     
     public SimpleEmbedding(int dimension) {
+        this(dimension, DEFAULT_CACHE_SIZE);
+    }
+    
+    /**
+     * @param dimension 向量维度
+     * @param cacheSize 编码缓存容量，0表示不缓存
+     */
+    public SimpleEmbedding(int dimension, int cacheSize) {
         this.dimension = dimension;
         this.vocabulary = new HashMap<>();
         this.idf = new HashMap<>();
         this.isTrained = false;
+        final int capacity = Math.max(0, cacheSize);
+        this.encodeCache = new LinkedHashMap<String, List<Double>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Double>> eldest) {
+                return size() > capacity;
+            }
+        };
     }
     
     /**
@@ -81,15 +101,39 @@ public class SimpleEmbedding {
         }
         
         this.isTrained = true;
+        clearCache();
     }
     
     /**
      * 编码文本为向量
+     * 同一文本在词表不变期间只计算一次，重复查询直接返回缓存结果的副本
      * 
      * @param text 输入文本
      * @return 向量表示
      */
     public List<Double> encode(String text) {
+        if (text == null) {
+            return computeEncoding(null);
+        }
+        synchronized (encodeCache) {
+            List<Double> cached = encodeCache.get(text);
+            if (cached != null) {
+                cacheHits++;
+                return new ArrayList<>(cached);
+            }
+            cacheMisses++;
+        }
+        List<Double> vector = computeEncoding(text);
+        synchronized (encodeCache) {
+            encodeCache.put(text, new ArrayList<>(vector));
+        }
+        return vector;
+    }
+    
+    /**
+     * 计算文本的TF-IDF向量
+     */
+    private List<Double> computeEncoding(String text) {
         List<Double> vector = new ArrayList<>(Collections.nCopies(dimension, 0.0));
         
         if (!isTrained || vocabulary.isEmpty()) {
@@ -305,6 +349,27 @@ public class SimpleEmbedding {
         return vocabulary.keySet();
     }
     
+    /**
+     * 清空编码缓存
+     */
+    public void clearCache() {
+        synchronized (encodeCache) {
+            encodeCache.clear();
+        }
+    }
+    
+    public long getCacheHits() {
+        synchronized (encodeCache) {
+            return cacheHits;
+        }
+    }
+    
+    public long getCacheMisses() {
+        synchronized (encodeCache) {
+            return cacheMisses;
+        }
+    }
+    
     /**
      * 相似度结果类
      */
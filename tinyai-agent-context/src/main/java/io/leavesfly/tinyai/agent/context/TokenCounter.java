@@ -0,0 +1,50 @@
+package io.leavesfly.tinyai.agent.context;
+
+/**
+ * Token计数器
+ * 上下文预算按token计算。可以接入实际模型的分词器，例如 {@code text -> tokenizer.encode(text).size()}；
+ * 未指定时使用 {@link #approximate()} 的启发式估算。
+ *
+ * @author 山泽
+ */
+@FunctionalInterface
+public interface TokenCounter {
+
+    /**
+     * 统计文本的token数
+     */
+    int count(String text);
+
+    /**
+     * 启发式估算：中文等CJK字符每字1个token，连续的字母数字约每4个字符1个token，其余符号每个1个token，空白不计
+     */
+    static TokenCounter approximate() {
+        return text -> {
+            if (text == null || text.isEmpty()) {
+                return 0;
+            }
+            int tokens = 0;
+            int wordChars = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 128 && Character.isLetterOrDigit(c)) {
+                    wordChars++;
+                    continue;
+                }
+                tokens += (wordChars + 3) / 4;
+                wordChars = 0;
+                if (!Character.isWhitespace(c)) {
+                    tokens++;
+                }
+            }
+            return tokens + (wordChars + 3) / 4;
+        };
+    }
+
+    /**
+     * 按字符计数（与旧版按字符长度限制的行为一致）
+     */
+    static TokenCounter characters() {
+        return text -> text == null ? 0 : text.length();
+    }
+}
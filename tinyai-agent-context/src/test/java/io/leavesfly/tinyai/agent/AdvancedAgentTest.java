@@ -6,15 +6,23 @@ import io.leavesfly.tinyai.agent.context.AdvancedAgent;
 import io.leavesfly.tinyai.agent.context.ContextEngine;
 import io.leavesfly.tinyai.agent.context.LLMSimulator;
 import io.leavesfly.tinyai.agent.context.Memory;
+import io.leavesfly.tinyai.agent.context.MemoryJournal;
 import io.leavesfly.tinyai.agent.context.MemoryManager;
 import io.leavesfly.tinyai.agent.context.Message;
 import io.leavesfly.tinyai.agent.context.RAGSystem;
 import io.leavesfly.tinyai.agent.context.RetrievalResult;
+import io.leavesfly.tinyai.agent.context.TokenCounter;
 import io.leavesfly.tinyai.agent.context.ToolCall;
 import io.leavesfly.tinyai.agent.context.ToolRegistry;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.*;
 
 /**
@@ -88,6 +96,87 @@ public class AdvancedAgentTest {
         assertEquals("记忆类型应匹配", "working", memory.getMemoryType());
     }
     
+    @Test
+    public void testMemoryWriteBehindPersistence() throws Exception {
+        File dbFile = File.createTempFile("memories", ".db");
+        dbFile.deleteOnExit();
+        MemoryManager memoryManager = new MemoryManager(dbFile.getAbsolutePath(), 10_000);
+        
+        String memoryId = memoryManager.addMemory("写回测试记忆", "episodic", 0.5);
+        for (int i = 0; i < 5; i++) {
+            memoryManager.retrieveMemories("写回", 5);
+        }
+        Map<String, Object> stats = memoryManager.getPersistenceStats();
+        assertEquals("同一记忆的多次更新应合并", 5L, stats.get("coalesced"));
+        assertEquals("刷盘前应只有1条待写记录", 1, stats.get("pending"));
+        
+        assertTrue("flush应成功", memoryManager.flush());
+        memoryManager.close();
+        
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+             PreparedStatement stmt = connection.prepareStatement("SELECT access_count FROM memories WHERE id = ?")) {
+            stmt.setString(1, memoryId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue("记忆应已落盘", rs.next());
+                assertEquals("应保存最后一次访问计数", 5, rs.getInt(1));
+            }
+        }
+    }
+    
+    @Test
+    public void testMemoryJournalBacksOffWhileDatabaseFails() throws Exception {
+        File dbFile = File.createTempFile("memories-failing", ".db");
+        dbFile.deleteOnExit();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            // 尚未建表，每次刷盘都会失败；待写条数始终达到阈值
+            MemoryJournal journal = new MemoryJournal(connection, 20, 1);
+            journal.upsert(new Memory("m1", "退避测试记忆", "episodic"));
+            Thread.sleep(500);
+            
+            long failed = (Long) journal.getStats().get("failed_flushes");
+            assertTrue("刷盘失败后应退避而不是空转: " + failed, failed >= 1 && failed <= 10);
+            assertEquals("失败的记录应保留待重试", 1, journal.getPendingCount());
+            
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TABLE memories (id TEXT PRIMARY KEY, content TEXT, memory_type TEXT, " +
+                        "timestamp REAL, importance REAL, access_count INTEGER, last_accessed REAL, " +
+                        "embedding TEXT, metadata TEXT)");
+            }
+            journal.close();
+            assertEquals(0, journal.getPendingCount());
+        }
+    }
+    
+    @Test
+    public void testIndexedMemoryRetrieval() {
+        MemoryManager memoryManager = new MemoryManager();
+        memoryManager.addMemory("我喜欢学习Java编程", "working", 0.3);
+        memoryManager.addMemory("Java泛型比较复杂", "episodic", 0.9);
+        memoryManager.addMemory("今天天气不错", "episodic", 0.8);
+        
+        // 连续中文文本通过双字组合命中
+        List<Memory> memories = memoryManager.retrieveMemories("学习", 5);
+        assertEquals("应只命中包含\"学习\"的记忆", 1, memories.size());
+        
+        // 相关度相同时重要性高的排在前面，类型过滤生效
+        memories = memoryManager.retrieveMemories("java", 5);
+        assertEquals(2, memories.size());
+        assertEquals("Java泛型比较复杂", memories.get(0).getContent());
+        assertEquals(1, memoryManager.retrieveMemories("java", "working", 5).size());
+        assertEquals(1, memoryManager.retrieveMemories("java", 1).size());
+        
+        // 整合后类型变化不影响检索，删除后从索引移除
+        memoryManager.retrieveMemories("编程", 5);
+        memoryManager.retrieveMemories("编程", 5);
+        memoryManager.consolidateMemories();
+        assertEquals(2, memoryManager.retrieveMemories("java", "episodic", 5).size());
+        String id = memoryManager.retrieveMemories("天气", 1).get(0).getId();
+        memoryManager.deleteMemory(id);
+        assertTrue(memoryManager.retrieveMemories("天气", 5).isEmpty());
+        assertEquals(2, memoryManager.getMemoryStats().get("indexed_memories"));
+        memoryManager.close();
+    }
+    
     @Test
     public void testRAGSystem() {
         AdvancedAgent agent = new AdvancedAgent("测试助手");
@@ -143,6 +232,67 @@ public class AdvancedAgentTest {
         assertTrue("上下文应包含当前查询", context.contains("当前查询"));
     }
     
+    @Test
+    public void testTokenBudgetContextAssembly() {
+        ContextEngine contextEngine = new ContextEngine(120);
+        contextEngine.addSystemPrompt("你是一个智能助手");
+        for (int i = 0; i < 10; i++) {
+            contextEngine.addMessage(new Message(i % 2 == 0 ? "user" : "assistant", "第" + i + "轮对话内容，包含一些较长的描述文字"));
+        }
+        List<Memory> memories = Arrays.asList(
+                new Memory("m1", "用户喜欢Java", "episodic"),
+                new Memory("m2", "用户在学习机器学习", "episodic"));
+        
+        String context = contextEngine.buildContext("今天学什么", memories, null, "calculator: 计算器");
+        Map<String, Integer> sections = contextEngine.getLastSectionTokens();
+        int total = 0;
+        for (int tokens : sections.values()) {
+            total += tokens;
+        }
+        assertTrue("分区token之和不应超过预算: " + sections, total <= 120);
+        assertTrue("前缀与当前问题必选", context.startsWith(contextEngine.getStablePrefix()) && context.endsWith("当前问题：今天学什么"));
+        assertTrue("记忆优先级高于久远的历史", context.contains("用户喜欢Java"));
+        assertTrue("最近的历史应被保留", context.contains("第9轮"));
+        assertFalse("预算不足时较早的历史被舍弃", context.contains("第0轮"));
+        
+        // 系统提示和工具不变时复用前缀
+        contextEngine.buildContext("下一个问题", memories, null, "calculator: 计算器");
+        assertEquals(1L, contextEngine.getContextStats().get("prefix_cache_hits"));
+        contextEngine.addSystemPrompt("回答要简洁");
+        assertTrue(contextEngine.buildContext("问题", null, null, "calculator: 计算器").contains("回答要简洁"));
+        assertEquals(2L, contextEngine.getContextStats().get("prefix_cache_misses"));
+    }
+    
+    @Test
+    public void testContextNeverExceedsBudgetWhenRequiredPartsOverflow() {
+        TokenCounter counter = TokenCounter.approximate();
+        ContextEngine contextEngine = new ContextEngine(30, counter);
+        contextEngine.addSystemPrompt("你是一个智能助手");
+        contextEngine.addMessage(new Message("user", "之前的对话"));
+        List<Memory> memories = Collections.singletonList(new Memory("m1", "用户喜欢Java", "episodic"));
+        String toolsInfo = "计算器：执行四则运算并返回结果；时间工具：返回当前的日期与时间；搜索工具：检索网页内容";
+        
+        // 系统提示 + 工具 + 问题超过预算：截断工具信息，保留问题
+        String context = contextEngine.buildContext("今天学什么", memories, null, toolsInfo);
+        assertTrue("上下文不应超过预算: " + counter.count(context), counter.count(context) <= 30);
+        assertTrue("系统提示应保留", context.startsWith("系统指令：\n你是一个智能助手"));
+        assertTrue("当前问题应完整保留", context.endsWith("当前问题：今天学什么"));
+        assertFalse("超出部分的工具信息应被截断", context.contains("搜索工具"));
+        assertFalse("没有剩余预算时不选可选条目", context.contains("用户喜欢Java"));
+        assertEquals(1L, contextEngine.getContextStats().get("budget_overflows"));
+        assertTrue("缓存的稳定前缀不被截断", contextEngine.getStablePrefix().contains("搜索工具"));
+        
+        // 问题本身超过预算：截断问题
+        StringBuilder longQuery = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            longQuery.append('问');
+        }
+        context = contextEngine.buildContext(longQuery.toString(), memories, null, toolsInfo);
+        assertTrue("上下文不应超过预算: " + counter.count(context), counter.count(context) <= 30);
+        assertTrue(context.startsWith("当前问题：问"));
+        assertEquals(2L, contextEngine.getContextStats().get("budget_overflows"));
+    }
+    
     @Test
     public void testAgentStats() {
         AdvancedAgent agent = new AdvancedAgent("测试助手");
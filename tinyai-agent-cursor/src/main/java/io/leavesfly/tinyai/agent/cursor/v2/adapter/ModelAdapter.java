@@ -4,6 +4,9 @@ import io.leavesfly.tinyai.agent.cursor.v2.model.ChatRequest;
 import io.leavesfly.tinyai.agent.cursor.v2.model.ChatResponse;
 import io.leavesfly.tinyai.agent.cursor.v2.service.StreamCallback;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 模型适配器接口
  * 定义不同LLM提供商的统一适配规范
@@ -59,6 +62,21 @@ public interface ModelAdapter {
      */
     double[] embed(String text);
     
+    /**
+     * 批量文本向量化
+     * 默认逐条调用 {@link #embed(String)}，支持批量接口的适配器应覆盖以减少远程调用次数
+     * 
+     * @param texts 待向量化的文本列表
+     * @return 与输入顺序一致的向量列表
+     */
+    default List<double[]> embedBatch(List<String> texts) {
+        List<double[]> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            embeddings.add(embed(text));
+        }
+        return embeddings;
+    }
+    
     /**
      * 检查适配器是否可用
      * 
@@ -0,0 +1,352 @@
+package io.leavesfly.tinyai.agent.cursor.v2.component.rag;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * BM25倒排索引
+ * 每个词维护 (文档序号, 词频) 倒排表，文档频率与平均文档长度随增删增量维护。
+ * 检索按词累加得分，只访问命中词的倒排表，再用容量为k的小顶堆选出top-k，无需对全部候选排序。
+ * 删除只做标记，标记删除的文档多于有效文档时自动压缩。
+ *
+ * @param <T> 文档类型（按对象身份识别）
+ * @author TinyAI
+ * @since 2.0.0
+ */
+public class BM25Index<T> {
+
+    private final double k1;
+    private final double b;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<T, Integer> ordinals = new IdentityHashMap<>();
+
+    private Object[] docs = new Object[0];
+    private int[] lengths = new int[0];
+    private String[][] docTerms = new String[0][];
+    private boolean[] deleted = new boolean[0];
+    private int docCount;
+    private int deletedCount;
+    private long totalLength;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 检索结果
+     */
+    public static class Hit<T> {
+        private final T document;
+        private final double score;
+
+        Hit(T document, double score) {
+            this.document = document;
+            this.score = score;
+        }
+
+        public T getDocument() {
+            return document;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+        int docFreq;
+
+        void append(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size++] = freq;
+        }
+    }
+
+    /**
+     * 使用常用参数 k1=1.2, b=0.75
+     */
+    public BM25Index() {
+        this(1.2, 0.75);
+    }
+
+    public BM25Index(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * 添加文档，已存在时先移除旧的索引
+     */
+    public void add(T document, List<String> tokens) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinals.get(document);
+            if (existing != null) {
+                markDeleted(existing);
+            }
+            insert(document, tokens);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 一次写锁内替换一组文档：先移除旧文档再添加新文档，检索不会看到中间状态
+     */
+    public void replace(Collection<T> removed, Map<T, List<String>> added) {
+        lock.writeLock().lock();
+        try {
+            for (T document : removed) {
+                Integer ordinal = ordinals.get(document);
+                if (ordinal != null) {
+                    markDeleted(ordinal);
+                }
+            }
+            for (Map.Entry<T, List<String>> entry : added.entrySet()) {
+                Integer existing = ordinals.get(entry.getKey());
+                if (existing != null) {
+                    markDeleted(existing);
+                }
+                insert(entry.getKey(), entry.getValue());
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(T document) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(document);
+            if (ordinal == null) {
+                return false;
+            }
+            markDeleted(ordinal);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            ordinals.clear();
+            docs = new Object[0];
+            lengths = new int[0];
+            docTerms = new String[0][];
+            deleted = new boolean[0];
+            docCount = 0;
+            deletedCount = 0;
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 top-k检索
+     *
+     * @param queryTokens 查询词（重复的词按出现次数加权）
+     * @param k           返回数量
+     * @param filter      文档过滤条件，为null时不过滤
+     * @return 按得分降序排列的结果
+     */
+    @SuppressWarnings("unchecked")
+    public List<Hit<T>> search(List<String> queryTokens, int k, Predicate<T> filter) {
+        lock.readLock().lock();
+        try {
+            int live = docCount - deletedCount;
+            if (k <= 0 || live == 0 || queryTokens.isEmpty()) {
+                return new ArrayList<>();
+            }
+            Map<String, Integer> queryCounts = new HashMap<>();
+            for (String token : queryTokens) {
+                queryCounts.merge(token, 1, Integer::sum);
+            }
+
+            double avgLength = (double) totalLength / live;
+            double[] scores = new double[docCount];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (Map.Entry<String, Integer> entry : queryCounts.entrySet()) {
+                Postings list = postings.get(entry.getKey());
+                if (list == null || list.docFreq == 0) {
+                    continue;
+                }
+                double idf = Math.log(1.0 + (live - list.docFreq + 0.5) / (list.docFreq + 0.5));
+                double weight = idf * entry.getValue();
+                for (int i = 0; i < list.size; i++) {
+                    int doc = list.docs[i];
+                    if (deleted[doc]) {
+                        continue;
+                    }
+                    int tf = list.freqs[i];
+                    double norm = k1 * (1.0 - b + b * lengths[doc] / avgLength);
+                    if (scores[doc] == 0.0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    scores[doc] += weight * tf * (k1 + 1.0) / (tf + norm);
+                }
+            }
+
+            PriorityQueue<Long> top = new PriorityQueue<>(k + 1);
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                if (filter != null && !filter.test((T) docs[doc])) {
+                    continue;
+                }
+                long encoded = ((long) Float.floatToIntBits((float) scores[doc]) << 32) | doc;
+                if (top.size() < k) {
+                    top.add(encoded);
+                } else if (encoded > top.peek()) {
+                    top.poll();
+                    top.add(encoded);
+                }
+            }
+
+            List<Hit<T>> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int doc = (int) (long) top.poll();
+                hits.add(new Hit<>((T) docs[doc], scores[doc]));
+            }
+            Collections.reverse(hits);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有效文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 词的文档频率
+     */
+    public int getDocumentFrequency(String term) {
+        lock.readLock().lock();
+        try {
+            Postings list = postings.get(term);
+            return list == null ? 0 : list.docFreq;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(T document, List<String> tokens) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        int ordinal = docCount;
+        ensureCapacity(ordinal + 1);
+        docs[ordinal] = document;
+        lengths[ordinal] = tokens.size();
+        docTerms[ordinal] = counts.keySet().toArray(new String[0]);
+        docCount++;
+        totalLength += tokens.size();
+        ordinals.put(document, ordinal);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Postings list = postings.computeIfAbsent(entry.getKey(), term -> new Postings());
+            list.append(ordinal, entry.getValue());
+            list.docFreq++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void markDeleted(int ordinal) {
+        deleted[ordinal] = true;
+        ordinals.remove((T) docs[ordinal]);
+        totalLength -= lengths[ordinal];
+        for (String term : docTerms[ordinal]) {
+            postings.get(term).docFreq--;
+        }
+        deletedCount++;
+    }
+
+    private void compactIfNeeded() {
+        if (deletedCount > 64 && deletedCount > docCount - deletedCount) {
+            compact();
+        }
+    }
+
+    /**
+     * 去除标记删除的文档，序号映射保持单调，倒排表无需重新排序
+     */
+    @SuppressWarnings("unchecked")
+    private void compact() {
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            remap[doc] = deleted[doc] ? -1 : live++;
+        }
+        Iterator<Postings> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            Postings list = iterator.next();
+            int size = 0;
+            for (int i = 0; i < list.size; i++) {
+                int doc = remap[list.docs[i]];
+                if (doc >= 0) {
+                    list.docs[size] = doc;
+                    list.freqs[size++] = list.freqs[i];
+                }
+            }
+            list.size = size;
+            if (size == 0) {
+                iterator.remove();
+            }
+        }
+        Object[] newDocs = new Object[live];
+        int[] newLengths = new int[live];
+        String[][] newDocTerms = new String[live][];
+        for (int doc = 0; doc < docCount; doc++) {
+            int target = remap[doc];
+            if (target >= 0) {
+                newDocs[target] = docs[doc];
+                newLengths[target] = lengths[doc];
+                newDocTerms[target] = docTerms[doc];
+                ordinals.put((T) docs[doc], target);
+            }
+        }
+        docs = newDocs;
+        lengths = newLengths;
+        docTerms = newDocTerms;
+        deleted = new boolean[live];
+        docCount = live;
+        deletedCount = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= docs.length) {
+            return;
+        }
+        int capacity = Math.max(16, Math.max(required, docs.length * 2));
+        docs = Arrays.copyOf(docs, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        docTerms = Arrays.copyOf(docTerms, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+}
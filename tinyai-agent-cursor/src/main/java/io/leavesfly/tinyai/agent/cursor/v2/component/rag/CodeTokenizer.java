@@ -0,0 +1,105 @@
+package io.leavesfly.tinyai.agent.cursor.v2.component.rag;
+
+import java.util.*;
+
+/**
+ * 代码分词器
+ * 面向源码的词法切分：
+ * - 按非字母数字字符切分出标识符
+ * - 标识符本身（小写）作为一个词，同时按 camelCase / PascalCase / snake_case / 数字边界拆出子词
+ * - 过滤常见语言关键字与过短的片段
+ *
+ * 例如 "getUserById" 产生 getuserbyid、get、user、by、id；"MAX_RETRY_COUNT" 产生 max_retry_count、max、retry、count
+ *
+ * @author TinyAI
+ * @since 2.0.0
+ */
+public class CodeTokenizer {
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "public", "private", "protected", "static", "final", "void", "return", "new", "this",
+            "class", "interface", "extends", "implements", "import", "package", "if", "else", "for",
+            "while", "do", "try", "catch", "finally", "throw", "throws", "null", "true", "false",
+            "int", "long", "double", "float", "boolean", "char", "byte", "short", "var", "let",
+            "const", "def", "self", "function", "the", "and", "or", "not", "in", "is"
+    ));
+
+    private final int minTokenLength;
+
+    public CodeTokenizer() {
+        this(2);
+    }
+
+    /**
+     * @param minTokenLength 子词最短长度
+     */
+    public CodeTokenizer(int minTokenLength) {
+        this.minTokenLength = Math.max(1, minTokenLength);
+    }
+
+    /**
+     * 切分文本
+     *
+     * @param text 源码或自然语言查询
+     * @return 小写词列表（保留重复，用于词频统计）
+     */
+    public List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean identifierChar = i < length && isIdentifierChar(text.charAt(i));
+            if (identifierChar && start < 0) {
+                start = i;
+            } else if (!identifierChar && start >= 0) {
+                addIdentifier(text, start, i, tokens);
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private void addIdentifier(String text, int start, int end, List<String> tokens) {
+        String identifier = text.substring(start, end).toLowerCase(Locale.ROOT);
+        addToken(identifier, tokens);
+
+        // 拆分子词：下划线、小写->大写、连续大写后接小写（如 HTTPServer -> HTTP, Server）、字母<->数字
+        int partStart = start;
+        for (int i = start + 1; i <= end; i++) {
+            boolean boundary;
+            if (i == end) {
+                boundary = true;
+            } else {
+                char previous = text.charAt(i - 1);
+                char current = text.charAt(i);
+                boundary = current == '_' || previous == '_'
+                        || (Character.isLowerCase(previous) && Character.isUpperCase(current))
+                        || (Character.isUpperCase(previous) && Character.isUpperCase(current)
+                            && i + 1 < end && Character.isLowerCase(text.charAt(i + 1)))
+                        || (Character.isDigit(previous) != Character.isDigit(current));
+            }
+            if (boundary) {
+                if (partStart < i && text.charAt(partStart) != '_') {
+                    String part = text.substring(partStart, i).toLowerCase(Locale.ROOT);
+                    if (!part.equals(identifier)) {
+                        addToken(part, tokens);
+                    }
+                }
+                partStart = (i < end && text.charAt(i) == '_') ? i + 1 : i;
+            }
+        }
+    }
+
+    private void addToken(String token, List<String> tokens) {
+        if (token.length() >= minTokenLength && !STOP_WORDS.contains(token)) {
+            tokens.add(token);
+        }
+    }
+}
@@ -1,9 +1,22 @@
 package io.leavesfly.tinyai.agent.cursor.v2.component.rag;
 
 import io.leavesfly.tinyai.agent.cursor.v2.model.Context.CodeSnippet;
+import io.leavesfly.tinyai.agent.cursor.v2.service.EmbeddingService;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * RAG检索引擎
@@ -15,20 +28,91 @@ import java.util.stream.Collectors;
  * - 混合检索策略（精确匹配+语义检索）
  * - 代码片段重排序
  * 
+ * 索引按 (项目, 文件路径) 增量维护：
+ * - 文件内容哈希未变化时跳过，变化时重新分块，内容哈希相同的块复用原有向量
+ * - 每个文件的全部块作为一个不可变条目整体替换，检索不会看到新旧块混杂或重复
+ * - 重新索引整个项目时，不在本次文件列表中的文件会被清除
+ * - 分块与向量化在有界线程池中并行执行，索引可持久化到磁盘，重启后只需处理变化的文件
+ * 
+ * 持久化为 快照文件 + 追加日志（快照文件名加 ".log"）：
+ * - 每次变化只把变化文件的条目（或删除记录）追加到日志，写入开销与变化量成正比，与索引总量无关
+ * - 日志超过 max(compactionMinBytes, 快照大小) 时压缩：重写快照（临时文件原子替换）并清空日志，
+ *   均摊后每次变化的写入量仍与变化量成正比
+ * - 加载时先读快照再按顺序重放日志；日志记录可重复重放，末尾不完整的记录被忽略
+ * - 持久性窗口：索引方法返回前记录已写入并刷到操作系统，进程崩溃不会丢失；
+ *   不做fsync，操作系统崩溃或断电时可能丢失最近尚未落盘的记录，但快照始终完整
+ * 
+ * 与向量索引并行维护BM25词法索引（代码感知分词），混合检索用倒数排名融合（RRF）合并两路结果，
+ * 各路均用有界小顶堆取top-k，并分别统计词法、语义、融合阶段的耗时。
+ * 
  * @author TinyAI
  * @since 2.0.0
  */
 public class RAGEngine {
     
+    private static final int INDEX_MAGIC = 0x52414749;   // "RAGI"
+    private static final int INDEX_VERSION = 1;
+    private static final int LOG_MAGIC = 0x5241474C;     // "RAGL"
+    
+    private static final byte LOG_PUT = 1;
+    private static final byte LOG_REMOVE = 2;
+    
+    /**
+     * 文件索引（项目ID + 文件路径 -> 文件条目），条目不可变，整体替换
+     */
+    private final Map<String, FileEntry> fileIndex;
+    
+    /**
+     * 分块与向量化线程数
+     */
+    private final int indexThreads;
+    
+    /**
+     * 索引线程池（首次并行索引时创建）
+     */
+    private ExecutorService indexExecutor;
+    
     /**
-     * 代码片段索引（filePath -> CodeBlock列表）
+     * 持久化索引文件，为null时不自动保存
      */
-    private final Map<String, List<CodeBlock>> codeIndex;
+    private Path indexFile;
     
     /**
-     * 向量索引（用于语义检索）
+     * 当前日志与快照的字节数，用于判断是否压缩
      */
-    private final List<CodeBlock> vectorIndex;
+    private long logBytes;
+    private long snapshotBytes;
+    
+    /**
+     * 日志压缩的最小阈值（字节）
+     */
+    private long compactionMinBytes = 1L << 20;
+    
+    /**
+     * 词法索引（与向量索引同步增删）
+     */
+    private final BM25Index<CodeBlock> lexicalIndex = new BM25Index<>();
+    
+    private final CodeTokenizer tokenizer = new CodeTokenizer();
+    
+    /**
+     * RRF融合常数：得分 = Σ 1 / (rrfK + 排名)
+     */
+    private int rrfK = 60;
+    
+    private final StageLatency lexicalLatency = new StageLatency();
+    private final StageLatency semanticLatency = new StageLatency();
+    private final StageLatency fusionLatency = new StageLatency();
+    
+    /**
+     * 向量化服务，为null时使用模拟向量
+     */
+    private volatile EmbeddingService embeddingService;
+    
+    private final AtomicLong embeddedBlocks = new AtomicLong();
+    private final AtomicLong reusedBlocks = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong removedFiles = new AtomicLong();
     
     /**
      * 检索策略
@@ -41,38 +125,455 @@ public class RAGEngine {
     private double similarityThreshold = 0.7;
     
     public RAGEngine() {
-        this.codeIndex = new HashMap<>();
-        this.vectorIndex = new ArrayList<>();
+        this(Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
+    }
+    
+    /**
+     * @param indexThreads 分块与向量化的并行线程数
+     */
+    public RAGEngine(int indexThreads) {
+        this.fileIndex = new ConcurrentHashMap<>();
+        this.indexThreads = Math.max(1, indexThreads);
     }
     
     /**
      * 索引代码库
+     * codeFiles 视为项目当前的完整文件列表：未变化的文件跳过，变化的文件整体替换，
+     * 该项目下不在列表中的文件从索引中清除
      * 
      * @param projectId 项目ID
      * @param codeFiles 代码文件列表
      */
-    public void indexCodebase(String projectId, List<CodeFile> codeFiles) {
+    public synchronized void indexCodebase(String projectId, List<CodeFile> codeFiles) {
+        List<Callable<FileEntry>> tasks = new ArrayList<>();
+        Set<String> currentKeys = new HashSet<>();
         for (CodeFile file : codeFiles) {
-            indexFile(projectId, file);
+            String key = key(projectId, file.filePath);
+            currentKeys.add(key);
+            FileEntry previous = fileIndex.get(key);
+            String contentHash = hash(contentOf(file));
+            if (previous != null && previous.contentHash.equals(contentHash)) {
+                skippedFiles.incrementAndGet();
+                continue;
+            }
+            tasks.add(() -> buildEntry(projectId, file, contentHash, previous));
         }
+        
+        List<FileEntry> changedEntries = new ArrayList<>();
+        List<FileEntry> removedEntries = new ArrayList<>();
+        for (FileEntry entry : runIndexTasks(tasks)) {
+            putEntry(key(entry.projectId, entry.filePath), entry);
+            changedEntries.add(entry);
+        }
+        
+        // 清除已删除的文件
+        Iterator<Map.Entry<String, FileEntry>> iterator = fileIndex.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, FileEntry> entry = iterator.next();
+            if (Objects.equals(projectId, entry.getValue().projectId) && !currentKeys.contains(entry.getKey())) {
+                iterator.remove();
+                lexicalIndex.replace(entry.getValue().blocks, Collections.emptyMap());
+                removedFiles.incrementAndGet();
+                removedEntries.add(entry.getValue());
+            }
+        }
+        
+        persistChanges(changedEntries, removedEntries);
     }
     
     /**
-     * 索引单个文件
+     * 索引单个文件，内容未变化时跳过，否则替换该文件原有的全部块
      */
-    public void indexFile(String projectId, CodeFile file) {
-        // 分块
-        List<CodeBlock> blocks = chunkCode(file);
+    public synchronized void indexFile(String projectId, CodeFile file) {
+        String key = key(projectId, file.filePath);
+        FileEntry previous = fileIndex.get(key);
+        String contentHash = hash(contentOf(file));
+        if (previous != null && previous.contentHash.equals(contentHash)) {
+            skippedFiles.incrementAndGet();
+            return;
+        }
+        FileEntry entry = buildEntry(projectId, file, contentHash, previous);
+        putEntry(key, entry);
+        persistChanges(Collections.singletonList(entry), Collections.emptyList());
+    }
+    
+    /**
+     * 从索引中移除文件
+     * 
+     * @return 文件是否存在于索引中
+     */
+    public synchronized boolean removeFile(String projectId, String filePath) {
+        FileEntry removed = fileIndex.remove(key(projectId, filePath));
+        if (removed == null) {
+            return false;
+        }
+        lexicalIndex.replace(removed.blocks, Collections.emptyMap());
+        removedFiles.incrementAndGet();
+        persistChanges(Collections.emptyList(), Collections.singletonList(removed));
+        return true;
+    }
+    
+    /**
+     * 替换文件条目并同步词法索引
+     */
+    private void putEntry(String key, FileEntry entry) {
+        FileEntry previous = fileIndex.put(key, entry);
+        Map<CodeBlock, List<String>> added = new LinkedHashMap<>();
+        for (CodeBlock block : entry.blocks) {
+            added.put(block, block.tokens != null ? block.tokens : tokenizer.tokenize(block.content));
+            block.tokens = null;
+        }
+        lexicalIndex.replace(previous == null ? Collections.<CodeBlock>emptyList() : previous.blocks, added);
+    }
+    
+    /**
+     * 分块并向量化单个文件，内容哈希与旧条目中相同的块直接复用其向量
+     */
+    private FileEntry buildEntry(String projectId, CodeFile file, String contentHash, FileEntry previous) {
+        Map<String, double[]> reusable = new HashMap<>();
+        if (previous != null) {
+            for (CodeBlock block : previous.blocks) {
+                reusable.put(block.contentHash, block.embedding);
+            }
+        }
         
-        // 向量化（TODO: 集成实际的embedding服务）
+        List<CodeBlock> blocks = chunkCode(file);
+        List<CodeBlock> pending = new ArrayList<>();
         for (CodeBlock block : blocks) {
-            block.embedding = generateEmbedding(block.content);
             block.projectId = projectId;
+            block.contentHash = hash(block.content);
+            block.embedding = reusable.get(block.contentHash);
+            if (block.embedding != null) {
+                reusedBlocks.incrementAndGet();
+            } else {
+                pending.add(block);
+            }
+            block.tokens = tokenizer.tokenize(block.content);
         }
         
-        // 添加到索引
-        codeIndex.put(file.filePath, blocks);
-        vectorIndex.addAll(blocks);
+        // 未命中的块一次性批量向量化
+        if (!pending.isEmpty()) {
+            List<String> contents = new ArrayList<>(pending.size());
+            for (CodeBlock block : pending) {
+                contents.add(block.content);
+            }
+            List<double[]> embeddings = generateEmbeddings(contents);
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).embedding = embeddings.get(i);
+            }
+            embeddedBlocks.addAndGet(pending.size());
+        }
+        return new FileEntry(projectId, file.filePath, contentHash, blocks);
+    }
+    
+    /**
+     * 在有界线程池中执行索引任务，任务较少时直接在当前线程执行
+     */
+    private List<FileEntry> runIndexTasks(List<Callable<FileEntry>> tasks) {
+        List<FileEntry> entries = new ArrayList<>(tasks.size());
+        try {
+            if (tasks.size() <= 1 || indexThreads == 1) {
+                for (Callable<FileEntry> task : tasks) {
+                    entries.add(task.call());
+                }
+                return entries;
+            }
+            for (Future<FileEntry> future : executor().invokeAll(tasks)) {
+                entries.add(future.get());
+            }
+            return entries;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("代码库索引被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("代码库索引失败: " + e.getCause().getMessage(), e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("代码库索引失败: " + e.getMessage(), e);
+        }
+    }
+    
+    private ExecutorService executor() {
+        if (indexExecutor == null) {
+            indexExecutor = Executors.newFixedThreadPool(indexThreads, runnable -> {
+                Thread thread = new Thread(runnable, "rag-indexer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return indexExecutor;
+    }
+    
+    /**
+     * 关闭索引线程池
+     */
+    public synchronized void shutdown() {
+        if (indexExecutor != null) {
+            indexExecutor.shutdown();
+            indexExecutor = null;
+        }
+    }
+    
+    /**
+     * 设置持久化索引文件：快照存在时立即加载并重放日志，之后每次索引变化追加到日志
+     */
+    public synchronized void setIndexFile(Path indexFile) throws IOException {
+        this.indexFile = indexFile;
+        if (indexFile == null) {
+            return;
+        }
+        if (Files.exists(indexFile)) {
+            loadIndex(indexFile);
+        }
+        // 建立基准快照：合并已重放的日志，之后的日志都相对于该快照
+        saveIndex(indexFile);
+    }
+    
+    /**
+     * 日志压缩的最小阈值，日志不超过该值且不超过快照大小时不压缩
+     */
+    public synchronized void setCompactionMinBytes(long compactionMinBytes) {
+        this.compactionMinBytes = Math.max(0, compactionMinBytes);
+    }
+    
+    /**
+     * 保存完整快照（先写临时文件再原子替换），并清空该快照对应的日志
+     */
+    public synchronized void saveIndex(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(fileIndex.size());
+            for (FileEntry entry : fileIndex.values()) {
+                writeEntry(out, entry);
+            }
+        }
+        long size = Files.size(temp);
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // 快照已包含日志中的全部变化；在删除日志前崩溃时重放日志得到相同结果
+        Files.deleteIfExists(logFileOf(path));
+        if (path.equals(indexFile)) {
+            snapshotBytes = size;
+            logBytes = 0;
+        }
+    }
+    
+    /**
+     * 加载快照并重放其日志，替换当前内存中的全部条目
+     */
+    public synchronized void loadIndex(Path path) throws IOException {
+        Map<String, FileEntry> loaded = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("不是有效的RAG索引文件: " + path);
+            }
+            int version = in.readInt();
+            if (version != INDEX_VERSION) {
+                throw new IOException("不支持的RAG索引版本: " + version);
+            }
+            int fileCount = in.readInt();
+            for (int f = 0; f < fileCount; f++) {
+                FileEntry entry = readEntry(in);
+                loaded.put(key(entry.projectId, entry.filePath), entry);
+            }
+        }
+        replayLog(logFileOf(path), loaded);
+        fileIndex.clear();
+        lexicalIndex.clear();
+        for (Map.Entry<String, FileEntry> entry : loaded.entrySet()) {
+            putEntry(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * 按顺序重放日志，末尾不完整的记录（写入中途崩溃）被忽略
+     */
+    private static void replayLog(Path log, Map<String, FileEntry> entries) throws IOException {
+        if (!Files.exists(log)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            if (in.readInt() != LOG_MAGIC) {
+                throw new IOException("不是有效的RAG索引日志: " + log);
+            }
+            while (true) {
+                byte type;
+                byte[] payload;
+                try {
+                    type = in.readByte();
+                    payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    return;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                if (type == LOG_PUT) {
+                    FileEntry entry = readEntry(record);
+                    entries.put(key(entry.projectId, entry.filePath), entry);
+                } else if (type == LOG_REMOVE) {
+                    String projectId = readNullable(record);
+                    entries.remove(key(projectId, record.readUTF()));
+                } else {
+                    throw new IOException("未知的RAG索引日志记录类型: " + type);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把一次索引操作的变化追加到日志，必要时压缩
+     */
+    private void persistChanges(List<FileEntry> changed, List<FileEntry> removed) {
+        if (indexFile == null || (changed.isEmpty() && removed.isEmpty())) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            Path log = logFileOf(indexFile);
+            if (logBytes == 0 || !Files.exists(log)) {
+                out.writeInt(LOG_MAGIC);
+            }
+            for (FileEntry entry : removed) {
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream recordOut = new DataOutputStream(record);
+                writeNullable(recordOut, entry.projectId);
+                recordOut.writeUTF(entry.filePath);
+                writeRecord(out, LOG_REMOVE, record);
+            }
+            for (FileEntry entry : changed) {
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                writeEntry(new DataOutputStream(record), entry);
+                writeRecord(out, LOG_PUT, record);
+            }
+            out.flush();
+            try (OutputStream logOut = Files.newOutputStream(log,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                buffer.writeTo(logOut);
+            }
+            logBytes += buffer.size();
+            if (logBytes > Math.max(compactionMinBytes, snapshotBytes)) {
+                saveIndex(indexFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存RAG索引失败: " + indexFile, e);
+        }
+    }
+    
+    private static void writeRecord(DataOutputStream out, byte type, ByteArrayOutputStream record) throws IOException {
+        out.writeByte(type);
+        out.writeInt(record.size());
+        record.writeTo(out);
+    }
+    
+    private static Path logFileOf(Path path) {
+        return path.resolveSibling(path.getFileName() + ".log");
+    }
+    
+    private static void writeEntry(DataOutputStream out, FileEntry entry) throws IOException {
+        writeNullable(out, entry.projectId);
+        out.writeUTF(entry.filePath);
+        out.writeUTF(entry.contentHash);
+        out.writeInt(entry.blocks.size());
+        for (CodeBlock block : entry.blocks) {
+            writeString(out, block.content);
+            out.writeUTF(block.contentHash);
+            out.writeInt(block.startLine);
+            out.writeInt(block.endLine);
+            out.writeInt(block.embedding.length);
+            for (double value : block.embedding) {
+                out.writeDouble(value);
+            }
+        }
+    }
+    
+    private static FileEntry readEntry(DataInputStream in) throws IOException {
+        String projectId = readNullable(in);
+        String filePath = in.readUTF();
+        String contentHash = in.readUTF();
+        int blockCount = in.readInt();
+        List<CodeBlock> blocks = new ArrayList<>(blockCount);
+        for (int b = 0; b < blockCount; b++) {
+            CodeBlock block = new CodeBlock();
+            block.projectId = projectId;
+            block.filePath = filePath;
+            block.content = readString(in);
+            block.contentHash = in.readUTF();
+            block.startLine = in.readInt();
+            block.endLine = in.readInt();
+            block.embedding = new double[in.readInt()];
+            for (int i = 0; i < block.embedding.length; i++) {
+                block.embedding[i] = in.readDouble();
+            }
+            blocks.add(block);
+        }
+        return new FileEntry(projectId, filePath, contentHash, blocks);
+    }
+    
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    /**
+     * 写入任意长度字符串（writeUTF限制64KB）
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static String key(String projectId, String filePath) {
+        return (projectId == null ? "" : projectId) + '\u0000' + filePath;
+    }
+    
+    private static String contentOf(CodeFile file) {
+        return file.content == null ? "" : file.content;
+    }
+    
+    /**
+     * 计算内容的SHA-256哈希
+     */
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+    
+    /**
+     * 当前索引中的全部代码块
+     */
+    private Stream<CodeBlock> allBlocks() {
+        return fileIndex.values().stream().flatMap(entry -> entry.blocks.stream());
     }
     
     /**
@@ -90,22 +591,7 @@ public class RAGEngine {
      * 语义检索（指定项目）
      */
     public List<CodeSnippet> semanticSearch(String query, int topK, String projectId) {
-        // 向量化查询
-        double[] queryEmbedding = generateEmbedding(query);
-        
-        // 计算相似度并排序
-        List<ScoredBlock> scoredBlocks = vectorIndex.stream()
-                .filter(block -> projectId == null || projectId.equals(block.projectId))
-                .map(block -> new ScoredBlock(block, cosineSimilarity(queryEmbedding, block.embedding)))
-                .filter(sb -> sb.score >= similarityThreshold)
-                .sorted(Comparator.comparingDouble(sb -> -sb.score))
-                .limit(topK)
-                .collect(Collectors.toList());
-        
-        // 转换为CodeSnippet
-        return scoredBlocks.stream()
-                .map(sb -> new CodeSnippet(sb.block.filePath, sb.block.content, sb.score))
-                .collect(Collectors.toList());
+        return toSnippets(semanticTop(query, topK, projectFilter(projectId)));
     }
     
     /**
@@ -121,74 +607,121 @@ public class RAGEngine {
     
     /**
      * 精确匹配检索（指定项目）
+     * 关键词经代码分词后在BM25索引中检索，得分为BM25分数
      */
     public List<CodeSnippet> exactSearch(List<String> keywords, int topK, String projectId) {
-        List<ScoredBlock> scoredBlocks = new ArrayList<>();
-        
-        for (CodeBlock block : vectorIndex) {
-            if (projectId != null && !projectId.equals(block.projectId)) {
-                continue;
-            }
-            
-            double score = calculateKeywordScore(block.content, keywords);
-            if (score > 0) {
-                scoredBlocks.add(new ScoredBlock(block, score));
-            }
+        if (keywords == null || keywords.isEmpty()) {
+            return new ArrayList<>();
         }
-        
-        return scoredBlocks.stream()
-                .sorted(Comparator.comparingDouble(sb -> -sb.score))
-                .limit(topK)
-                .map(sb -> new CodeSnippet(sb.block.filePath, sb.block.content, sb.score))
-                .collect(Collectors.toList());
+        return toSnippets(lexicalTop(tokenizer.tokenize(String.join(" ", keywords)), topK,
+                projectFilter(projectId)));
     }
     
     /**
      * 混合检索
-     * 结合精确匹配和语义检索
+     * 语义检索与BM25词法检索各取 2*topK 个候选，按倒数排名融合，得分为RRF分数
      */
     public List<CodeSnippet> hybridSearch(String query, List<String> keywords, int topK, String projectId) {
-        // 语义检索结果
-        List<CodeSnippet> semanticResults = semanticSearch(query, topK * 2, projectId);
-        
-        // 精确匹配结果
-        List<CodeSnippet> exactResults = exactSearch(keywords, topK * 2, projectId);
-        
-        // 合并和去重
-        Map<String, CodeSnippet> merged = new HashMap<>();
-        
-        for (CodeSnippet snippet : semanticResults) {
-            String key = snippet.getFilePath() + ":" + snippet.getContent().hashCode();
-            merged.put(key, snippet);
-        }
-        
-        for (CodeSnippet snippet : exactResults) {
-            String key = snippet.getFilePath() + ":" + snippet.getContent().hashCode();
-            CodeSnippet existing = merged.get(key);
-            if (existing != null) {
-                // 融合分数
-                snippet.setScore((existing.getScore() + snippet.getScore()) / 2.0);
+        List<String> lexicalTokens = tokenizer.tokenize(query);
+        if (keywords != null) {
+            for (String keyword : keywords) {
+                lexicalTokens.addAll(tokenizer.tokenize(keyword));
             }
-            merged.put(key, snippet);
         }
-        
-        // 重新排序
-        return merged.values().stream()
-                .sorted(Comparator.comparingDouble(s -> -s.getScore()))
-                .limit(topK)
-                .collect(Collectors.toList());
+        return toSnippets(hybridTop(query, lexicalTokens, topK, projectFilter(projectId)));
     }
     
     /**
      * 查找相关代码片段
-     * 根据当前上下文查找相关代码
+     * 以当前代码同时作为语义查询和词法查询，排除当前文件后再取top-k
      */
     public List<CodeSnippet> findRelated(String currentFile, String currentCode, int topK) {
-        // 使用当前代码作为查询
-        List<String> keywords = extractKeywords(currentCode);
+        return toSnippets(hybridTop(currentCode, tokenizer.tokenize(currentCode), topK,
+                block -> !block.filePath.equals(currentFile)));
+    }
+    
+    private List<ScoredBlock> semanticTop(String query, int topK, Predicate<CodeBlock> filter) {
+        long start = System.nanoTime();
+        // 向量化查询
+        double[] queryEmbedding = generateEmbedding(query);
         
-        return hybridSearch(currentCode, keywords, topK, null).stream()
-                .filter(snippet -> !currentFile.equals(snippet.getFilePath()))
+        PriorityQueue<ScoredBlock> top = new PriorityQueue<>(Comparator.comparingDouble(sb -> sb.score));
+        allBlocks().filter(filter).forEach(block -> {
+            double score = cosineSimilarity(queryEmbedding, block.embedding);
+            if (score >= similarityThreshold) {
+                offer(top, new ScoredBlock(block, score), topK);
+            }
+        });
+        List<ScoredBlock> results = drain(top);
+        semanticLatency.record(System.nanoTime() - start);
+        return results;
+    }
+    
+    private List<ScoredBlock> lexicalTop(List<String> tokens, int topK, Predicate<CodeBlock> filter) {
+        long start = System.nanoTime();
+        List<ScoredBlock> results = new ArrayList<>();
+        for (BM25Index.Hit<CodeBlock> hit : lexicalIndex.search(tokens, topK, filter)) {
+            results.add(new ScoredBlock(hit.getDocument(), hit.getScore()));
+        }
+        lexicalLatency.record(System.nanoTime() - start);
+        return results;
+    }
+    
+    /**
+     * 倒数排名融合：只依赖各路排名，不受语义相似度与BM25分数量纲差异影响
+     */
+    private List<ScoredBlock> hybridTop(String query, List<String> lexicalTokens, int topK,
+                                        Predicate<CodeBlock> filter) {
+        List<ScoredBlock> semantic = semanticTop(query, topK * 2, filter);
+        List<ScoredBlock> lexical = lexicalTop(lexicalTokens, topK * 2, filter);
+        
+        long start = System.nanoTime();
+        Map<CodeBlock, Double> fused = new IdentityHashMap<>();
+        for (List<ScoredBlock> ranking : Arrays.asList(semantic, lexical)) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                fused.merge(ranking.get(rank).block, 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        PriorityQueue<ScoredBlock> top = new PriorityQueue<>(Comparator.comparingDouble(sb -> sb.score));
+        for (Map.Entry<CodeBlock, Double> entry : fused.entrySet()) {
+            offer(top, new ScoredBlock(entry.getKey(), entry.getValue()), topK);
+        }
+        List<ScoredBlock> results = drain(top);
+        fusionLatency.record(System.nanoTime() - start);
+        return results;
+    }
+    
+    /**
+     * 有界小顶堆插入：堆满时只替换比堆顶更高的得分
+     */
+    private static void offer(PriorityQueue<ScoredBlock> top, ScoredBlock candidate, int topK) {
+        if (topK <= 0) {
+            return;
+        }
+        if (top.size() < topK) {
+            top.add(candidate);
+        } else if (candidate.score > top.peek().score) {
+            top.poll();
+            top.add(candidate);
+        }
+    }
+    
+    private static List<ScoredBlock> drain(PriorityQueue<ScoredBlock> top) {
+        List<ScoredBlock> results = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            results.add(top.poll());
+        }
+        Collections.reverse(results);
+        return results;
+    }
+    
+    private static Predicate<CodeBlock> projectFilter(String projectId) {
+        return projectId == null ? block -> true : block -> projectId.equals(block.projectId);
+    }
+    
+    private static List<CodeSnippet> toSnippets(List<ScoredBlock> scoredBlocks) {
+        return scoredBlocks.stream()
+                .map(sb -> new CodeSnippet(sb.block.filePath, sb.block.content, sb.score))
                 .collect(Collectors.toList());
     }
     
@@ -200,7 +733,7 @@ public class RAGEngine {
         
         // 简单的基于方法/类的分块策略
         // TODO: 实现更智能的代码分块（识别方法、类等）
-        String[] lines = file.content.split("\n");
+        String[] lines = contentOf(file).split("\n");
         StringBuilder currentBlock = new StringBuilder();
         int blockStartLine = 0;
         
@@ -240,11 +773,32 @@ public class RAGEngine {
     }
     
     /**
-     * 生成向量（模拟实现）
-     * TODO: 集成LLMGateway的embed()方法
+     * 批量生成向量，配置了向量化服务时走服务（缓存 + 批量合并）
+     */
+    private List<double[]> generateEmbeddings(List<String> texts) {
+        EmbeddingService service = embeddingService;
+        if (service != null) {
+            return service.embedAll(texts);
+        }
+        List<double[]> embeddings = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            embeddings.add(mockEmbedding(text));
+        }
+        return embeddings;
+    }
+    
+    /**
+     * 生成单个向量，配置了向量化服务时走服务
      */
     private double[] generateEmbedding(String text) {
-        // 模拟向量生成（实际应调用LLM的embedding API）
+        EmbeddingService service = embeddingService;
+        return service != null ? service.embed(text) : mockEmbedding(text);
+    }
+    
+    /**
+     * 模拟向量（未配置向量化服务时使用）
+     */
+    private double[] mockEmbedding(String text) {
         double[] embedding = new double[768];
         Random random = new Random(text.hashCode());
         for (int i = 0; i < embedding.length; i++) {
@@ -278,44 +832,6 @@ public class RAGEngine {
         return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
     }
     
-    /**
-     * 计算关键词得分
-     */
-    private double calculateKeywordScore(String content, List<String> keywords) {
-        if (keywords == null || keywords.isEmpty()) {
-            return 0.0;
-        }
-        
-        String lowerContent = content.toLowerCase();
-        int matchCount = 0;
-        
-        for (String keyword : keywords) {
-            if (lowerContent.contains(keyword.toLowerCase())) {
-                matchCount++;
-            }
-        }
-        
-        return (double) matchCount / keywords.size();
-    }
-    
-    /**
-     * 提取关键词
-     */
-    private List<String> extractKeywords(String code) {
-        // 简单的关键词提取（实际应使用更复杂的NLP技术）
-        List<String> keywords = new ArrayList<>();
-        
-        // 提取类名、方法名等
-        String[] words = code.split("[^a-zA-Z0-9_]+");
-        for (String word : words) {
-            if (word.length() > 3 && Character.isUpperCase(word.charAt(0))) {
-                keywords.add(word);
-            }
-        }
-        
-        return keywords.stream().distinct().limit(10).collect(Collectors.toList());
-    }
-    
     /**
      * 配置项
      */
@@ -327,12 +843,32 @@ public class RAGEngine {
         this.similarityThreshold = threshold;
     }
     
+    public void setRrfK(int rrfK) {
+        this.rrfK = Math.max(1, rrfK);
+    }
+    
+    /**
+     * 设置向量化服务（如 LLMGatewayImpl#getEmbeddingService），索引与查询向量都经由其缓存
+     * 注意：更换向量模型后应清除索引，旧向量与新模型不可比
+     */
+    public void setEmbeddingService(EmbeddingService embeddingService) {
+        this.embeddingService = embeddingService;
+    }
+    
     /**
      * 清除索引
      */
-    public void clearIndex() {
-        codeIndex.clear();
-        vectorIndex.clear();
+    public synchronized void clearIndex() {
+        fileIndex.clear();
+        lexicalIndex.clear();
+        if (indexFile != null) {
+            // 空索引的快照很小，直接重写即可
+            try {
+                saveIndex(indexFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("保存RAG索引失败: " + indexFile, e);
+            }
+        }
     }
     
     /**
@@ -340,8 +876,15 @@ public class RAGEngine {
      */
     public RAGStats getStats() {
         RAGStats stats = new RAGStats();
-        stats.totalFiles = codeIndex.size();
-        stats.totalBlocks = vectorIndex.size();
+        stats.totalFiles = fileIndex.size();
+        stats.totalBlocks = (int) allBlocks().count();
+        stats.embeddedBlocks = embeddedBlocks.get();
+        stats.reusedBlocks = reusedBlocks.get();
+        stats.skippedFiles = skippedFiles.get();
+        stats.removedFiles = removedFiles.get();
+        stats.avgLexicalMillis = lexicalLatency.averageMillis();
+        stats.avgSemanticMillis = semanticLatency.averageMillis();
+        stats.avgFusionMillis = fusionLatency.averageMillis();
         return stats;
     }
     
@@ -366,9 +909,47 @@ public class RAGEngine {
         String projectId;
         String filePath;
         String content;
+        String contentHash;
         int startLine;
         int endLine;
         double[] embedding;
+        /** 分词结果，仅在写入词法索引前暂存 */
+        List<String> tokens;
+    }
+    
+    /**
+     * 单个文件的索引条目（不可变）
+     */
+    private static class FileEntry {
+        final String projectId;
+        final String filePath;
+        final String contentHash;
+        final List<CodeBlock> blocks;
+        
+        FileEntry(String projectId, String filePath, String contentHash, List<CodeBlock> blocks) {
+            this.projectId = projectId;
+            this.filePath = filePath;
+            this.contentHash = contentHash;
+            this.blocks = Collections.unmodifiableList(blocks);
+        }
+    }
+    
+    /**
+     * 检索阶段耗时统计
+     */
+    private static class StageLatency {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+        
+        double averageMillis() {
+            long n = count.get();
+            return n == 0 ? 0.0 : totalNanos.get() / 1e6 / n;
+        }
     }
     
     /**
@@ -402,10 +983,28 @@ public class RAGEngine {
     public static class RAGStats {
         public int totalFiles;
         public int totalBlocks;
+        /** 累计重新向量化的块数 */
+        public long embeddedBlocks;
+        /** 累计复用向量的块数 */
+        public long reusedBlocks;
+        /** 累计因内容未变化而跳过的文件数 */
+        public long skippedFiles;
+        /** 累计清除的文件数 */
+        public long removedFiles;
+        /** 词法检索平均耗时（毫秒） */
+        public double avgLexicalMillis;
+        /** 语义检索平均耗时（毫秒） */
+        public double avgSemanticMillis;
+        /** 排名融合平均耗时（毫秒） */
+        public double avgFusionMillis;
         
         @Override
         public String toString() {
-            return "RAGStats{files=" + totalFiles + ", blocks=" + totalBlocks + "}";
+            return "RAGStats{files=" + totalFiles + ", blocks=" + totalBlocks
+                    + ", embedded=" + embeddedBlocks + ", reused=" + reusedBlocks
+                    + ", skippedFiles=" + skippedFiles + ", removedFiles=" + removedFiles
+                    + String.format(", latency(lexical=%.3fms, semantic=%.3fms, fusion=%.3fms)",
+                            avgLexicalMillis, avgSemanticMillis, avgFusionMillis) + "}";
         }
     }
 }
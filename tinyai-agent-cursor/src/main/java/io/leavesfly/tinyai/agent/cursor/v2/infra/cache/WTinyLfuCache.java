@@ -0,0 +1,280 @@
+package io.leavesfly.tinyai.agent.cursor.v2.infra.cache;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU 有界缓存
+ *
+ * 结构：
+ * - 窗口区（约1%容量，LRU）：新条目先进入窗口，吸收突发访问
+ * - 主区（分段LRU）：试用段 + 保护段（主区的80%），试用段再次命中的条目晋升到保护段
+ * - 频率草图：4行计数最小草图（4位饱和计数），累计写入达到10倍容量时全部减半以淘汰历史热度
+ *
+ * 窗口溢出时，被挤出的候选条目与主区的淘汰受害者比较估计频率，只有更热的候选才被接纳，
+ * 因此一次性扫描不会冲掉高频条目。所有操作在同一把锁内完成，适合读多写少、单次操作很轻的场景。
+ *
+ * @author TinyAI
+ * @since 2.0.0
+ */
+public class WTinyLfuCache<K, V> {
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    /**
+     * @param maximumSize 最大条目数
+     */
+    public WTinyLfuCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMax = Math.max(1, maximumSize / 100);
+        this.mainMax = maximumSize - windowMax;
+        this.protectedMax = Math.max(1, (int) (mainMax * 0.8));
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * 查询缓存，命中的试用段条目晋升到保护段
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        V value = window.get(key);
+        if (value != null) {
+            hits++;
+            return value;
+        }
+        value = protectedSegment.get(key);
+        if (value != null) {
+            hits++;
+            return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+            hits++;
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedMax) {
+                // 保护段溢出：最久未访问的条目降级回试用段
+                Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+            return value;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public synchronized void put(K key, V value) {
+        if (window.containsKey(key)) {
+            window.put(key, value);
+            return;
+        }
+        if (protectedSegment.containsKey(key)) {
+            protectedSegment.put(key, value);
+            return;
+        }
+        if (probation.containsKey(key)) {
+            probation.put(key, value);
+            return;
+        }
+        sketch.increment(key);
+        window.put(key, value);
+        if (window.size() > windowMax) {
+            admit(removeEldest(window));
+        }
+    }
+
+    /**
+     * 窗口溢出的候选条目尝试进入主区
+     */
+    private void admit(Map.Entry<K, V> candidate) {
+        int mainSize = probation.size() + protectedSegment.size();
+        if (mainSize < mainMax) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        if (mainSize == 0) {
+            evictions++;
+            return;
+        }
+        LinkedHashMap<K, V> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+        K victim = victimSegment.keySet().iterator().next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+            victimSegment.remove(victim);
+            probation.put(candidate.getKey(), candidate.getValue());
+        } else {
+            rejections++;
+        }
+        evictions++;
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> segment) {
+        Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        Map.Entry<K, V> copy = new AbstractMap.SimpleImmutableEntry<>(eldest);
+        iterator.remove();
+        return copy;
+    }
+
+    public synchronized V remove(K key) {
+        V value = window.remove(key);
+        if (value == null) {
+            value = probation.remove(key);
+        }
+        if (value == null) {
+            value = protectedSegment.remove(key);
+        }
+        return value;
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return window.containsKey(key) || probation.containsKey(key) || protectedSegment.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public synchronized void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 淘汰次数（含准入失败被丢弃的候选）
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * 准入失败被丢弃的候选数
+     */
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * 估计访问频率（用于测试和调优）
+     */
+    public synchronized int frequency(K key) {
+        return sketch.frequency(key);
+    }
+
+    /**
+     * 计数最小草图：4行、每个计数4位（0-15），以long数组紧凑存放
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            // 每个long存16个计数，总计数约为容量的4倍
+            int counters = Integer.highestOneBit(Math.max(64, maximumSize * 4 - 1)) << 1;
+            this.table = new long[counters / 16];
+            this.mask = counters - 1;
+            this.sampleSize = Math.max(10, maximumSize * 10);
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int row = 0; row < 4; row++) {
+                added |= incrementAt(indexOf(hash, row));
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int row = 0; row < 4; row++) {
+                frequency = Math.min(frequency, countAt(indexOf(hash, row)));
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private boolean incrementAt(int counter) {
+            int slot = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            long current = (table[slot] >>> shift) & 0xFL;
+            if (current == 15) {
+                return false;
+            }
+            table[slot] += 1L << shift;
+            return true;
+        }
+
+        private int countAt(int counter) {
+            return (int) ((table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xFL);
+        }
+
+        /**
+         * 老化：所有计数减半
+         */
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package io.leavesfly.tinyai.agent.cursor.v2.service;
+
+import io.leavesfly.tinyai.agent.cursor.v2.infra.cache.WTinyLfuCache;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 向量化服务
+ * 位于模型适配器之上的向量化层：
+ * - 以 (命名空间, 文本) 的SHA-256为键缓存向量，内存层为有界 W-TinyLFU 缓存，可选磁盘层
+ * - 单条请求先查缓存，未命中时进入队列，由后台线程在 maxWaitMillis 内凑批后一次调用底层批量接口；
+ *   同一文本的并发请求共享同一个进行中的结果
+ * - 批量请求直接在调用线程内去重、查缓存，只对未命中的文本分批调用底层接口，批内重复文本计为合并请求
+ * - 底层接口抛出的任何异常（包括Error）只使所在批次失败，进行中的结果总会被移除，后台线程退出后按需重启
+ * - 统计内存/磁盘命中率、底层调用次数与批大小分布，用于容量规划
+ *
+ * 返回的向量均为副本，调用方可以自由修改。
+ *
+ * @author TinyAI
+ * @since 2.0.0
+ */
+public class EmbeddingService implements AutoCloseable {
+
+    /**
+     * 底层批量向量化接口
+     */
+    @FunctionalInterface
+    public interface BatchEmbedder {
+        List<double[]> embed(List<String> texts);
+    }
+
+    private final BatchEmbedder backend;
+    private final String namespace;
+    private final int maxBatchSize;
+    private final long maxWaitMillis;
+    private final WTinyLfuCache<String, double[]> memoryCache;
+    private volatile Path diskCacheDir;
+
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<String, CompletableFuture<double[]>> inFlight = new ConcurrentHashMap<>();
+    private Thread dispatcher;
+    private volatile boolean running = true;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong backendCalls = new AtomicLong();
+    private final AtomicLong embeddedTexts = new AtomicLong();
+    private final AtomicLongArray batchSizeHistogram;
+
+    private static final class Request {
+        final String key;
+        final String text;
+        final CompletableFuture<double[]> future;
+
+        Request(String key, String text, CompletableFuture<double[]> future) {
+            this.key = key;
+            this.text = text;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 使用默认配置：缓存10000条，批大小32，凑批等待5毫秒
+     */
+    public EmbeddingService(BatchEmbedder backend, String namespace) {
+        this(backend, namespace, 10000, 32, 5);
+    }
+
+    /**
+     * @param backend       底层批量向量化接口
+     * @param namespace     缓存命名空间（通常为模型名，避免不同模型的向量混用）
+     * @param cacheSize     内存缓存条目数
+     * @param maxBatchSize  单次底层调用的最大文本数
+     * @param maxWaitMillis 单条请求凑批的最长等待时间
+     */
+    public EmbeddingService(BatchEmbedder backend, String namespace, int cacheSize,
+                            int maxBatchSize, long maxWaitMillis) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.backend = backend;
+        this.namespace = namespace == null ? "" : namespace;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.memoryCache = new WTinyLfuCache<>(cacheSize);
+        this.batchSizeHistogram = new AtomicLongArray(maxBatchSize + 1);
+    }
+
+    /**
+     * 启用磁盘缓存层
+     *
+     * @param directory 缓存目录，为null时关闭磁盘层
+     */
+    public void setDiskCache(Path directory) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        this.diskCacheDir = directory;
+    }
+
+    /**
+     * 单个文本向量化，未命中缓存时与其他并发请求合并为一次批量调用
+     */
+    public double[] embed(String text) {
+        requests.incrementAndGet();
+        String key = keyOf(text);
+        double[] cached = lookup(key);
+        if (cached != null) {
+            return cached.clone();
+        }
+
+        CompletableFuture<double[]> created = new CompletableFuture<>();
+        CompletableFuture<double[]> future = inFlight.putIfAbsent(key, created);
+        if (future != null) {
+            coalescedRequests.incrementAndGet();
+        } else {
+            future = created;
+            enqueue(new Request(key, text, created));
+        }
+        try {
+            return future.get().clone();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Embedding interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new RuntimeException("Embedding failed", cause);
+        }
+    }
+
+    /**
+     * 批量向量化：去重并查缓存后，只对未命中的文本按 maxBatchSize 分批调用底层接口
+     */
+    public List<double[]> embedAll(List<String> texts) {
+        requests.addAndGet(texts.size());
+        Map<String, double[]> resolved = new HashMap<>();
+        Map<String, String> missing = new LinkedHashMap<>();
+        String[] keys = new String[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            String key = keyOf(texts.get(i));
+            keys[i] = key;
+            if (resolved.containsKey(key) || missing.containsKey(key)) {
+                // 批内重复文本不查缓存，与同批的首次出现共享结果
+                coalescedRequests.incrementAndGet();
+                continue;
+            }
+            double[] cached = lookup(key);
+            if (cached != null) {
+                resolved.put(key, cached);
+            } else {
+                missing.put(key, texts.get(i));
+            }
+        }
+
+        List<String> missingKeys = new ArrayList<>(missing.keySet());
+        for (int start = 0; start < missingKeys.size(); start += maxBatchSize) {
+            List<String> chunkKeys = missingKeys.subList(start, Math.min(missingKeys.size(), start + maxBatchSize));
+            List<String> chunkTexts = new ArrayList<>(chunkKeys.size());
+            for (String key : chunkKeys) {
+                chunkTexts.add(missing.get(key));
+            }
+            List<double[]> vectors = callBackend(chunkTexts);
+            for (int i = 0; i < chunkKeys.size(); i++) {
+                store(chunkKeys.get(i), vectors.get(i));
+                resolved.put(chunkKeys.get(i), vectors.get(i));
+            }
+        }
+
+        List<double[]> results = new ArrayList<>(texts.size());
+        for (String key : keys) {
+            results.add(resolved.get(key).clone());
+        }
+        return results;
+    }
+
+    private double[] lookup(String key) {
+        double[] vector = memoryCache.get(key);
+        if (vector != null) {
+            memoryHits.incrementAndGet();
+            return vector;
+        }
+        vector = readDisk(key);
+        if (vector != null) {
+            diskHits.incrementAndGet();
+            memoryCache.put(key, vector);
+        }
+        return vector;
+    }
+
+    private void store(String key, double[] vector) {
+        memoryCache.put(key, vector);
+        writeDisk(key, vector);
+    }
+
+    private List<double[]> callBackend(List<String> texts) {
+        List<double[]> vectors = backend.embed(texts);
+        if (vectors == null || vectors.size() != texts.size()) {
+            throw new IllegalStateException("Embedding backend returned "
+                    + (vectors == null ? "null" : vectors.size()) + " vectors for " + texts.size() + " texts");
+        }
+        backendCalls.incrementAndGet();
+        embeddedTexts.addAndGet(texts.size());
+        batchSizeHistogram.incrementAndGet(Math.min(texts.size(), maxBatchSize));
+        return vectors;
+    }
+
+    private synchronized void enqueue(Request request) {
+        if (!running) {
+            inFlight.remove(request.key, request.future);
+            request.future.completeExceptionally(new IllegalStateException("EmbeddingService is closed"));
+            return;
+        }
+        if (dispatcher == null || !dispatcher.isAlive()) {
+            dispatcher = new Thread(this::dispatchLoop, "embedding-batcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+        queue.add(request);
+    }
+
+    /**
+     * 后台凑批：取到第一条请求后最多再等待 maxWaitMillis 或直到凑满 maxBatchSize
+     */
+    private void dispatchLoop() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                try {
+                    runBatch(batch);
+                } catch (Throwable e) {
+                    // 兜底：保证批次内的请求都已完成，后台线程继续运行
+                    failBatch(batch, e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void runBatch(List<Request> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            texts.add(request.text);
+        }
+        try {
+            List<double[]> vectors = callBackend(texts);
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+                store(request.key, vectors.get(i));
+                inFlight.remove(request.key, request.future);
+                request.future.complete(vectors.get(i));
+            }
+        } catch (Throwable e) {
+            failBatch(batch, e);
+        }
+    }
+
+    /**
+     * 以异常完成批次中尚未完成的请求，并移除其进行中的结果，之后的同文本请求会重新调用底层接口
+     */
+    private void failBatch(List<Request> batch, Throwable e) {
+        for (Request request : batch) {
+            inFlight.remove(request.key, request.future);
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    private String keyOf(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] bytes = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private double[] readDisk(String key) {
+        Path dir = diskCacheDir;
+        if (dir == null) {
+            return null;
+        }
+        Path file = dir.resolve(key + ".emb");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            double[] vector = new double[in.readInt()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = in.readDouble();
+            }
+            return vector;
+        } catch (IOException e) {
+            // 损坏的缓存文件视为未命中
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, double[] vector) {
+        Path dir = diskCacheDir;
+        if (dir == null) {
+            return;
+        }
+        Path file = dir.resolve(key + ".emb");
+        Path temp = dir.resolve(key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(vector.length);
+                for (double value : vector) {
+                    out.writeDouble(value);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // 磁盘层写入失败不影响结果，仅失去持久化
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * 停止后台凑批线程，已排队的请求会先处理完
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = dispatcher;
+        }
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 清空内存缓存（磁盘层保留）
+     */
+    public void clearMemoryCache() {
+        memoryCache.clear();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * 与进行中的相同文本合并的请求数
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    public long getBackendCalls() {
+        return backendCalls.get();
+    }
+
+    public long getEmbeddedTexts() {
+        return embeddedTexts.get();
+    }
+
+    /**
+     * 缓存命中率（内存 + 磁盘），合并到进行中请求的不计为命中
+     */
+    public double getHitRate() {
+        long total = requests.get();
+        return total == 0 ? 0.0 : (double) (memoryHits.get() + diskHits.get()) / total;
+    }
+
+    /**
+     * 批大小分布：下标为批大小，值为底层调用次数
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] histogram = new long[batchSizeHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = batchSizeHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    public double getAverageBatchSize() {
+        long calls = backendCalls.get();
+        return calls == 0 ? 0.0 : (double) embeddedTexts.get() / calls;
+    }
+
+    public int getCacheSize() {
+        return memoryCache.size();
+    }
+
+    public WTinyLfuCache<String, double[]> getMemoryCache() {
+        return memoryCache;
+    }
+
+    public String getMetricsReport() {
+        return String.format("EmbeddingService{namespace=%s, requests=%d, hitRate=%.2f%%, memoryHits=%d, diskHits=%d, "
+                        + "coalesced=%d, backendCalls=%d, avgBatch=%.2f, cacheSize=%d/%d, evictions=%d}",
+                namespace, requests.get(), getHitRate() * 100, memoryHits.get(), diskHits.get(),
+                coalescedRequests.get(), backendCalls.get(), getAverageBatchSize(),
+                memoryCache.size(), memoryCache.getMaximumSize(), memoryCache.getEvictions());
+    }
+}
@@ -4,8 +4,13 @@ import io.leavesfly.tinyai.agent.cursor.v2.adapter.AdapterRegistry;
 import io.leavesfly.tinyai.agent.cursor.v2.adapter.ModelAdapter;
 import io.leavesfly.tinyai.agent.cursor.v2.model.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -40,6 +45,18 @@ public class LLMGatewayImpl implements LLMGateway {
      */
     private boolean enableFallback = true;
     
+    private static final int EMBEDDING_BATCH_SIZE = 32;
+    private static final long EMBEDDING_BATCH_WAIT_MILLIS = 5;
+    
+    /**
+     * 按模型划分的向量化服务（缓存键带模型名，不同模型的向量互不混用）
+     */
+    private final Map<String, EmbeddingService> embeddingServices = new ConcurrentHashMap<>();
+    
+    private volatile int embeddingCacheSize = 10000;
+    
+    private volatile Path embeddingDiskCache;
+    
     public LLMGatewayImpl(AdapterRegistry adapterRegistry) {
         this.adapterRegistry = adapterRegistry;
         this.fallbackModels = new ArrayList<>();
@@ -149,19 +166,7 @@ public class LLMGatewayImpl implements LLMGateway {
             throw new IllegalArgumentException("Texts cannot be empty");
         }
         
-        String modelName = preferredModel != null ? preferredModel : "deepseek-chat";
-        ModelAdapter adapter = getAdapter(modelName);
-        
-        if (adapter == null) {
-            throw new RuntimeException("No adapter available for embedding");
-        }
-        
-        List<double[]> embeddings = new ArrayList<>();
-        for (String text : texts) {
-            embeddings.add(adapter.embed(text));
-        }
-        
-        return embeddings;
+        return getEmbeddingService(embeddingModel()).embedAll(texts);
     }
     
     @Override
@@ -170,14 +175,70 @@ public class LLMGatewayImpl implements LLMGateway {
             throw new IllegalArgumentException("Text cannot be empty");
         }
         
-        String modelName = preferredModel != null ? preferredModel : "deepseek-chat";
+        return getEmbeddingService(embeddingModel()).embed(text);
+    }
+    
+    /**
+     * 获取模型对应的向量化服务（带缓存与批量合并），首次访问时创建
+     * 
+     * @param modelName 模型名称
+     * @return 向量化服务
+     */
+    public EmbeddingService getEmbeddingService(String modelName) {
+        EmbeddingService service = embeddingServices.get(modelName);
+        if (service != null) {
+            return service;
+        }
         ModelAdapter adapter = getAdapter(modelName);
-        
         if (adapter == null) {
             throw new RuntimeException("No adapter available for embedding");
         }
-        
-        return adapter.embed(text);
+        return embeddingServices.computeIfAbsent(modelName, name -> {
+            EmbeddingService created = new EmbeddingService(adapter::embedBatch, name,
+                    embeddingCacheSize, EMBEDDING_BATCH_SIZE, EMBEDDING_BATCH_WAIT_MILLIS);
+            if (embeddingDiskCache != null) {
+                try {
+                    created.setDiskCache(embeddingDiskCache);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return created;
+        });
+    }
+    
+    /**
+     * 设置向量缓存容量（仅对之后创建的向量化服务生效）
+     */
+    public void setEmbeddingCacheSize(int embeddingCacheSize) {
+        if (embeddingCacheSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.embeddingCacheSize = embeddingCacheSize;
+    }
+    
+    /**
+     * 设置向量磁盘缓存目录，已创建的向量化服务同步启用
+     */
+    public void setEmbeddingDiskCache(Path directory) throws IOException {
+        this.embeddingDiskCache = directory;
+        for (EmbeddingService service : embeddingServices.values()) {
+            service.setDiskCache(directory);
+        }
+    }
+    
+    /**
+     * 关闭所有向量化服务的批量线程
+     */
+    public void shutdown() {
+        for (EmbeddingService service : embeddingServices.values()) {
+            service.close();
+        }
+        embeddingServices.clear();
+    }
+    
+    private String embeddingModel() {
+        return preferredModel != null ? preferredModel : "deepseek-chat";
     }
     
     @Override
@@ -0,0 +1,242 @@
+package io.leavesfly.tinyai.agent.cursor.v2.unit.component;
+
+import io.leavesfly.tinyai.agent.cursor.v2.component.rag.BM25Index;
+import io.leavesfly.tinyai.agent.cursor.v2.component.rag.CodeTokenizer;
+import io.leavesfly.tinyai.agent.cursor.v2.component.rag.RAGEngine;
+import io.leavesfly.tinyai.agent.cursor.v2.model.Context.CodeSnippet;
+import io.leavesfly.tinyai.agent.cursor.v2.service.EmbeddingService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * RAGEngine 增量索引与混合检索单元测试
+ */
+public class RAGEngineTest {
+
+    private RAGEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new RAGEngine(4);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    private static RAGEngine.CodeFile file(String path, String... methods) {
+        StringBuilder content = new StringBuilder("public class " + path.replace(".java", "") + " {\n");
+        for (String method : methods) {
+            content.append("    public void ").append(method).append("() {\n")
+                    .append("        System.out.println(\"").append(method).append("\");\n")
+                    .append("    }\n");
+        }
+        content.append("}\n");
+        return new RAGEngine.CodeFile(path, content.toString());
+    }
+
+    @Test
+    public void testReindexReplacesBlocksInsteadOfDuplicating() {
+        engine.indexCodebase("p1", Arrays.asList(file("A.java", "alpha", "beta"), file("B.java", "gamma")));
+        RAGEngine.RAGStats initial = engine.getStats();
+        assertEquals(2, initial.totalFiles);
+
+        // 未变化的文件被跳过
+        engine.indexCodebase("p1", Arrays.asList(file("A.java", "alpha", "beta"), file("B.java", "gamma")));
+        RAGEngine.RAGStats unchanged = engine.getStats();
+        assertEquals(initial.totalBlocks, unchanged.totalBlocks);
+        assertEquals(initial.embeddedBlocks, unchanged.embeddedBlocks);
+        assertEquals(2, unchanged.skippedFiles);
+
+        // 修改的文件整体替换，未变化的块复用向量
+        engine.indexFile("p1", file("A.java", "alpha", "delta"));
+        RAGEngine.RAGStats edited = engine.getStats();
+        assertEquals(initial.totalBlocks, edited.totalBlocks);
+        assertTrue(edited.reusedBlocks > 0);
+        assertTrue(edited.embeddedBlocks - initial.embeddedBlocks < initial.totalBlocks);
+        assertTrue(engine.exactSearch(Collections.singletonList("beta"), 10).isEmpty());
+        assertEquals(1, engine.exactSearch(Collections.singletonList("delta"), 10).size());
+    }
+
+    @Test
+    public void testDeletedFilesArePurged() {
+        engine.indexCodebase("p1", Arrays.asList(file("A.java", "alpha"), file("B.java", "gamma")));
+        engine.indexCodebase("p2", Collections.singletonList(file("C.java", "gamma")));
+
+        engine.indexCodebase("p1", Collections.singletonList(file("A.java", "alpha")));
+        assertEquals(2, engine.getStats().totalFiles);
+        assertEquals(1, engine.getStats().removedFiles);
+        List<CodeSnippet> results = engine.exactSearch(Collections.singletonList("gamma"), 10);
+        assertEquals(1, results.size());
+        assertEquals("C.java", results.get(0).getFilePath());
+
+        assertTrue(engine.removeFile("p2", "C.java"));
+        assertFalse(engine.removeFile("p2", "C.java"));
+        assertTrue(engine.exactSearch(Collections.singletonList("gamma"), 10).isEmpty());
+    }
+
+    @Test
+    public void testParallelIndexingAndPersistence() throws Exception {
+        List<RAGEngine.CodeFile> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            files.add(file("F" + i + ".java", "m" + i + "a", "m" + i + "b"));
+        }
+        Path indexFile = Files.createTempDirectory("rag-index").resolve("index.bin");
+        engine.setIndexFile(indexFile);
+        engine.indexCodebase("p", files);
+        assertTrue(Files.exists(indexFile));
+        RAGEngine.RAGStats stats = engine.getStats();
+        assertEquals(40, stats.totalFiles);
+
+        // 重启后加载索引，未变化的项目无需重新向量化
+        RAGEngine restarted = new RAGEngine(2);
+        restarted.setIndexFile(indexFile);
+        assertEquals(stats.totalBlocks, restarted.getStats().totalBlocks);
+        restarted.indexCodebase("p", files);
+        assertEquals(0, restarted.getStats().embeddedBlocks);
+        assertEquals(40, restarted.getStats().skippedFiles);
+
+        restarted.setSimilarityThreshold(-1.0);
+        assertEquals(3, restarted.semanticSearch("m7a", 3).size());
+        assertEquals(1, restarted.exactSearch(Collections.singletonList("m7b"), 5).size());
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testSingleFileChangesAppendToLogInsteadOfRewritingSnapshot() throws Exception {
+        List<RAGEngine.CodeFile> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            files.add(file("F" + i + ".java", "m" + i + "a", "m" + i + "b"));
+        }
+        Path indexFile = Files.createTempDirectory("rag-log").resolve("index.bin");
+        Path logFile = indexFile.resolveSibling("index.bin.log");
+        engine.setCompactionMinBytes(Long.MAX_VALUE);
+        engine.setIndexFile(indexFile);
+        engine.indexCodebase("p", files);
+        engine.saveIndex(indexFile);
+        long snapshotSize = Files.size(indexFile);
+        assertFalse(Files.exists(logFile));
+
+        // 单文件变化只追加该文件的记录，快照不变
+        engine.indexFile("p", file("F3.java", "m3a", "edited"));
+        engine.removeFile("p", "F5.java");
+        assertEquals(snapshotSize, Files.size(indexFile));
+        assertTrue(Files.size(logFile) < snapshotSize / 10);
+
+        // 模拟写入日志中途崩溃：末尾残缺的记录被忽略
+        Files.write(logFile, new byte[]{1, 0, 0, 1}, StandardOpenOption.APPEND);
+
+        RAGEngine restarted = new RAGEngine(2);
+        restarted.setIndexFile(indexFile);
+        assertEquals(39, restarted.getStats().totalFiles);
+        assertEquals(1, restarted.exactSearch(Collections.singletonList("edited"), 5).size());
+        assertTrue(restarted.exactSearch(Collections.singletonList("m5a"), 5).isEmpty());
+        assertFalse("加载后日志已合并进快照", Files.exists(logFile));
+        restarted.shutdown();
+
+        // 日志超过快照大小时压缩进快照，日志大小始终有界
+        engine.setCompactionMinBytes(0);
+        boolean compacted = false;
+        for (int i = 0; i < 80; i++) {
+            engine.indexFile("p", file("F" + (i % 30) + ".java", "m" + i, "again" + i));
+            if (!Files.exists(logFile)) {
+                compacted = true;
+            } else {
+                assertTrue(Files.size(logFile) <= Files.size(indexFile));
+            }
+        }
+        assertTrue(compacted);
+    }
+
+    @Test
+    public void testCodeTokenizerSplitsIdentifiers() {
+        List<String> tokens = new CodeTokenizer().tokenize("public User getUserById(long user_id) { return HTTPServer.MAX_RETRY; }");
+        assertTrue(tokens.containsAll(Arrays.asList("getuserbyid", "get", "user", "by", "id", "user_id",
+                "httpserver", "http", "server", "max_retry", "max", "retry")));
+        assertFalse(tokens.contains("public"));
+        assertFalse(tokens.contains("return"));
+    }
+
+    @Test
+    public void testBM25RanksRareTermsHigher() {
+        BM25Index<String> index = new BM25Index<>();
+        index.add("common", Arrays.asList("user", "service", "user", "save"));
+        index.add("rare", Arrays.asList("user", "checksum", "validate"));
+        index.add("other", Arrays.asList("order", "service"));
+        List<BM25Index.Hit<String>> hits = index.search(Arrays.asList("user", "checksum"), 2, null);
+        assertEquals("rare", hits.get(0).getDocument());
+        assertEquals(2, hits.size());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+
+        assertTrue(index.remove("rare"));
+        assertEquals(0, index.getDocumentFrequency("checksum"));
+        assertEquals(1, index.search(Arrays.asList("user", "checksum"), 5, null).size());
+    }
+
+    @Test
+    public void testHybridSearchAndFindRelated() {
+        engine.indexCodebase("p", Arrays.asList(
+                file("UserService.java", "findUserById", "saveUser"),
+                file("UserRepository.java", "findUserById", "deleteUser"),
+                file("OrderService.java", "placeOrder", "cancelOrder")));
+
+        // 子词 user 也会命中其他方法，但完整标识符匹配的块排在最前
+        List<CodeSnippet> exact = engine.exactSearch(Collections.singletonList("findUserById"), 10, "p");
+        assertTrue(exact.size() >= 2);
+        assertTrue(exact.get(0).getContent().contains("findUserById"));
+        assertTrue(exact.get(1).getContent().contains("findUserById"));
+        for (CodeSnippet snippet : exact) {
+            assertTrue(snippet.getFilePath().startsWith("User"));
+        }
+
+        List<CodeSnippet> related = engine.findRelated("UserService.java",
+                "User user = repository.findUserById(id);", 2);
+        assertFalse(related.isEmpty());
+        assertEquals("UserRepository.java", related.get(0).getFilePath());
+        for (CodeSnippet snippet : related) {
+            assertNotEquals("UserService.java", snippet.getFilePath());
+        }
+
+        List<CodeSnippet> hybrid = engine.hybridSearch("cancel order", Collections.singletonList("cancelOrder"), 3, "p");
+        assertEquals("OrderService.java", hybrid.get(0).getFilePath());
+        assertTrue(engine.getStats().avgLexicalMillis >= 0.0);
+        assertTrue(engine.getStats().avgFusionMillis >= 0.0);
+    }
+
+    @Test
+    public void testEmbeddingServiceBatchesBlocksPerFile() {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        EmbeddingService service = new EmbeddingService(texts -> {
+            batchSizes.add(texts.size());
+            List<double[]> vectors = new ArrayList<>();
+            for (String text : texts) {
+                vectors.add(new double[]{text.length(), 1.0});
+            }
+            return vectors;
+        }, "test");
+        engine.setEmbeddingService(service);
+
+        engine.indexCodebase("p1", Collections.singletonList(file("A.java", "alpha", "beta", "gamma")));
+        int blocks = engine.getStats().totalBlocks;
+        assertTrue(blocks > 1);
+        assertEquals(Collections.singletonList(blocks), batchSizes);
+
+        // 另一个项目中内容相同的文件直接命中向量缓存
+        engine.indexCodebase("p2", Collections.singletonList(file("A.java", "alpha", "beta", "gamma")));
+        assertEquals(1, batchSizes.size());
+        assertEquals(blocks, service.getMemoryHits());
+        service.close();
+    }
+}
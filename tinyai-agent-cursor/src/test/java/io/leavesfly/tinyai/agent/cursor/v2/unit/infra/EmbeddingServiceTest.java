@@ -0,0 +1,179 @@
+package io.leavesfly.tinyai.agent.cursor.v2.unit.infra;
+
+import io.leavesfly.tinyai.agent.cursor.v2.infra.cache.WTinyLfuCache;
+import io.leavesfly.tinyai.agent.cursor.v2.service.EmbeddingService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * EmbeddingService 与 WTinyLfuCache 单元测试
+ */
+public class EmbeddingServiceTest {
+
+    private final AtomicInteger backendCalls = new AtomicInteger();
+    private final AtomicInteger backendTexts = new AtomicInteger();
+    private EmbeddingService service;
+
+    private List<double[]> fakeBackend(List<String> texts) {
+        backendCalls.incrementAndGet();
+        backendTexts.addAndGet(texts.size());
+        List<double[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(new double[]{text.length(), text.hashCode()});
+        }
+        return vectors;
+    }
+
+    @Before
+    public void setUp() {
+        service = new EmbeddingService(this::fakeBackend, "test-model", 1000, 16, 20);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void testRepeatedTextHitsMemoryCache() {
+        double[] first = service.embed("hello world");
+        double[] second = service.embed("hello world");
+
+        assertArrayEquals(first, second, 0.0);
+        assertEquals(1, backendTexts.get());
+        assertEquals(1, service.getMemoryHits());
+
+        // 返回副本，调用方修改不影响缓存
+        second[0] = -1;
+        assertEquals(11.0, service.embed("hello world")[0], 0.0);
+    }
+
+    @Test
+    public void testConcurrentRequestsAreBatched() throws Exception {
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<double[]>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            // 一半线程请求相同文本，应被合并为同一个在途请求
+            String text = i % 2 == 0 ? "shared" : "text-" + i;
+            futures.add(pool.submit(() -> {
+                start.await();
+                return service.embed(text);
+            }));
+        }
+        start.countDown();
+        for (Future<double[]> future : futures) {
+            assertNotNull(future.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(9, backendTexts.get());
+        assertTrue("expected batching, got " + backendCalls.get() + " calls", backendCalls.get() < threads);
+        assertTrue(service.getAverageBatchSize() > 1.0);
+    }
+
+    @Test
+    public void testEmbedAllDeduplicatesAndPreservesOrder() {
+        service.embed("a");
+        List<double[]> vectors = service.embedAll(Arrays.asList("a", "bb", "a", "ccc", "bb"));
+
+        assertEquals(5, vectors.size());
+        assertEquals(1.0, vectors.get(0)[0], 0.0);
+        assertEquals(2.0, vectors.get(1)[0], 0.0);
+        assertEquals(1.0, vectors.get(2)[0], 0.0);
+        assertEquals(3.0, vectors.get(3)[0], 0.0);
+        assertEquals(3, backendTexts.get());
+        assertEquals(2, backendCalls.get());
+        // 批内重复文本计为合并请求，不计入缓存命中
+        assertEquals(1, service.getMemoryHits());
+        assertEquals(2, service.getCoalescedRequests());
+    }
+
+    @Test
+    public void testBackendErrorDoesNotWedgeLaterRequests() {
+        AtomicInteger failures = new AtomicInteger(1);
+        EmbeddingService failing = new EmbeddingService(texts -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new StackOverflowError("backend crashed");
+            }
+            return fakeBackend(texts);
+        }, "failing-model", 100, 8, 0);
+        try {
+            try {
+                failing.embed("boom");
+                fail("backend error should reach the caller");
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            // 同一文本不再加入已失败的在途结果，后台线程仍可处理新请求
+            assertEquals(4.0, failing.embed("boom")[0], 0.0);
+            assertEquals(5.0, failing.embed("other")[0], 0.0);
+        } finally {
+            failing.close();
+        }
+    }
+
+    @Test
+    public void testDiskCacheSurvivesNewInstance() throws Exception {
+        Path dir = Files.createTempDirectory("embedding-cache");
+        service.setDiskCache(dir);
+        double[] original = service.embed("persistent text");
+
+        try (EmbeddingService reopened = new EmbeddingService(this::fakeBackend, "test-model")) {
+            reopened.setDiskCache(dir);
+            assertArrayEquals(original, reopened.embed("persistent text"), 0.0);
+            assertEquals(1, reopened.getDiskHits());
+        }
+        assertEquals(1, backendTexts.get());
+
+        // 不同模型命名空间不共享向量
+        try (EmbeddingService otherModel = new EmbeddingService(this::fakeBackend, "other-model")) {
+            otherModel.setDiskCache(dir);
+            otherModel.embed("persistent text");
+        }
+        assertEquals(2, backendTexts.get());
+    }
+
+    @Test
+    public void testWTinyLfuKeepsHotKeysUnderScan() {
+        WTinyLfuCache<String, Integer> cache = new WTinyLfuCache<>(100);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                String key = "hot-" + i;
+                if (cache.get(key) == null) {
+                    cache.put(key, i);
+                }
+            }
+        }
+        // 一次性扫描大量冷键
+        for (int i = 0; i < 10000; i++) {
+            cache.put("scan-" + i, i);
+        }
+
+        int retained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot-" + i) != null) {
+                retained++;
+            }
+        }
+        assertTrue("hot keys retained: " + retained, retained >= 45);
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.getRejections() > 0);
+    }
+}
@@ -0,0 +1,344 @@
+package io.leavesfly.tinyai.agent.robot.env;
+
+import io.leavesfly.tinyai.agent.robot.model.ObstacleInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 障碍物均匀网格索引
+ *
+ * <p>把房间划分为边长为cellSize的正方形单元，每个障碍物（按包围盒宽度的一半作为半径的圆）
+ * 登记到与其外接矩形相交的所有单元中。碰撞检测只检查查询圆覆盖的单元，
+ * 激光雷达射线按DDA（Amanatides-Woo）方式逐单元遍历，并对单元内的障碍物做精确的射线-圆求交，
+ * 一旦最近交点落在当前单元内即可提前结束。</p>
+ *
+ * <p>障碍物移动或尺寸变化后调用 {@link #update(ObstacleInfo)}，
+ * 只有所覆盖的单元范围发生变化时才会改动网格。</p>
+ *
+ * @author TinyAI Team
+ */
+public class ObstacleGrid {
+    private final double width;
+    private final double height;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+
+    /**
+     * 单元 -> 登记在该单元中的障碍物
+     */
+    private final List<ObstacleInfo>[] cells;
+
+    /**
+     * 障碍物 -> 当前覆盖的单元范围 {minCol, minRow, maxCol, maxRow}
+     */
+    private final Map<ObstacleInfo, int[]> footprints;
+
+    /**
+     * 累计的障碍物精确测试次数（用于评估索引的剪枝效果）
+     */
+    private long obstacleTests;
+
+    /**
+     * 构造函数
+     *
+     * @param width 房间宽度（米）
+     * @param height 房间高度（米）
+     * @param cellSize 单元边长（米）
+     */
+    @SuppressWarnings("unchecked")
+    public ObstacleGrid(double width, double height, double cellSize) {
+        if (width <= 0 || height <= 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("Grid dimensions must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cells = new List[cols * rows];
+        this.footprints = new IdentityHashMap<>();
+    }
+
+    /**
+     * 障碍物在平面上的半径（与环境的碰撞模型一致）
+     */
+    public static double radiusOf(ObstacleInfo obstacle) {
+        return obstacle.getBoundingBox().getWidth() / 2.0;
+    }
+
+    /**
+     * 插入障碍物
+     */
+    public void insert(ObstacleInfo obstacle) {
+        if (footprints.containsKey(obstacle)) {
+            update(obstacle);
+            return;
+        }
+        int[] footprint = computeFootprint(obstacle);
+        footprints.put(obstacle, footprint);
+        addToCells(obstacle, footprint);
+    }
+
+    /**
+     * 移除障碍物
+     *
+     * @return 障碍物是否在索引中
+     */
+    public boolean remove(ObstacleInfo obstacle) {
+        int[] footprint = footprints.remove(obstacle);
+        if (footprint == null) {
+            return false;
+        }
+        removeFromCells(obstacle, footprint);
+        return true;
+    }
+
+    /**
+     * 障碍物位置或尺寸变化后更新其所在单元
+     */
+    public void update(ObstacleInfo obstacle) {
+        int[] old = footprints.get(obstacle);
+        if (old == null) {
+            insert(obstacle);
+            return;
+        }
+        int[] footprint = computeFootprint(obstacle);
+        if (Arrays.equals(old, footprint)) {
+            return;
+        }
+        removeFromCells(obstacle, old);
+        addToCells(obstacle, footprint);
+        footprints.put(obstacle, footprint);
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        Arrays.fill(cells, null);
+        footprints.clear();
+    }
+
+    public int size() {
+        return footprints.size();
+    }
+
+    /**
+     * 判断圆形区域是否与任一障碍物重叠
+     *
+     * @param x 圆心x
+     * @param y 圆心y
+     * @param radius 半径
+     * @return 存在圆心距离小于两半径之和的障碍物时返回true
+     */
+    public boolean intersectsCircle(double x, double y, double radius) {
+        int minCol = col(x - radius);
+        int maxCol = col(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                List<ObstacleInfo> cell = cells[r * cols + c];
+                if (cell == null) {
+                    continue;
+                }
+                for (ObstacleInfo obstacle : cell) {
+                    obstacleTests++;
+                    double dx = x - obstacle.getPosition().getX();
+                    double dy = y - obstacle.getPosition().getY();
+                    double minDist = radius + radiusOf(obstacle);
+                    if (dx * dx + dy * dy < minDist * minDist) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查询与圆形区域重叠的所有障碍物
+     */
+    public List<ObstacleInfo> queryCircle(double x, double y, double radius) {
+        List<ObstacleInfo> result = new ArrayList<>();
+        int minCol = col(x - radius);
+        int maxCol = col(x + radius);
+        int minRow = row(y - radius);
+        int maxRow = row(y + radius);
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                List<ObstacleInfo> cell = cells[r * cols + c];
+                if (cell == null) {
+                    continue;
+                }
+                for (ObstacleInfo obstacle : cell) {
+                    obstacleTests++;
+                    double dx = x - obstacle.getPosition().getX();
+                    double dy = y - obstacle.getPosition().getY();
+                    double minDist = radius + radiusOf(obstacle);
+                    // 跨多个单元的障碍物只收集一次：只在其覆盖范围与查询范围交集的第一个单元中收集
+                    int[] fp = footprints.get(obstacle);
+                    if (c == Math.max(fp[0], minCol) && r == Math.max(fp[1], minRow)
+                            && dx * dx + dy * dy < minDist * minDist) {
+                        result.add(obstacle);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 射线检测：沿射线方向返回到最近墙壁或障碍物的距离
+     *
+     * @param x 射线起点x
+     * @param y 射线起点y
+     * @param angle 射线方向（弧度）
+     * @param maxDistance 最大量程
+     * @return 命中距离，未命中时返回maxDistance；起点在房间外或障碍物内时返回0
+     */
+    public double raycast(double x, double y, double angle, double maxDistance) {
+        if (x < 0 || x > width || y < 0 || y > height) {
+            return 0.0;
+        }
+        double dx = Math.cos(angle);
+        double dy = Math.sin(angle);
+
+        // 墙壁距离作为遍历上界
+        double limit = Math.min(maxDistance, wallDistance(x, y, dx, dy));
+        double best = limit;
+
+        int c = col(x);
+        int r = row(y);
+        int stepCol = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepRow = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        double nextColT = dx > 0 ? ((c + 1) * cellSize - x) / dx
+                : (dx < 0 ? (c * cellSize - x) / dx : Double.POSITIVE_INFINITY);
+        double nextRowT = dy > 0 ? ((r + 1) * cellSize - y) / dy
+                : (dy < 0 ? (r * cellSize - y) / dy : Double.POSITIVE_INFINITY);
+        double deltaColT = dx != 0 ? cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double deltaRowT = dy != 0 ? cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+
+        while (true) {
+            List<ObstacleInfo> cell = cells[r * cols + c];
+            if (cell != null) {
+                for (ObstacleInfo obstacle : cell) {
+                    obstacleTests++;
+                    double t = intersectRay(x, y, dx, dy, obstacle);
+                    if (t >= 0 && t < best) {
+                        best = t;
+                    }
+                }
+            }
+
+            // 最近交点已落在当前单元内，后续单元不可能更近
+            double exitT = Math.min(nextColT, nextRowT);
+            if (best <= exitT || exitT >= limit) {
+                break;
+            }
+            if (nextColT < nextRowT) {
+                c += stepCol;
+                nextColT += deltaColT;
+                if (c < 0 || c >= cols) {
+                    break;
+                }
+            } else {
+                r += stepRow;
+                nextRowT += deltaRowT;
+                if (r < 0 || r >= rows) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 射线与障碍物圆的首个交点参数，不相交时返回-1
+     */
+    static double intersectRay(double x, double y, double dx, double dy, ObstacleInfo obstacle) {
+        double fx = x - obstacle.getPosition().getX();
+        double fy = y - obstacle.getPosition().getY();
+        double radius = radiusOf(obstacle);
+        double c = fx * fx + fy * fy - radius * radius;
+        if (c < 0) {
+            // 起点在障碍物内部
+            return 0.0;
+        }
+        double b = fx * dx + fy * dy;
+        double disc = b * b - c;
+        if (disc < 0) {
+            return -1.0;
+        }
+        double t = -b - Math.sqrt(disc);
+        return t >= 0 ? t : -1.0;
+    }
+
+    private double wallDistance(double x, double y, double dx, double dy) {
+        double tx = dx > 0 ? (width - x) / dx : (dx < 0 ? -x / dx : Double.POSITIVE_INFINITY);
+        double ty = dy > 0 ? (height - y) / dy : (dy < 0 ? -y / dy : Double.POSITIVE_INFINITY);
+        return Math.min(tx, ty);
+    }
+
+    private int[] computeFootprint(ObstacleInfo obstacle) {
+        double radius = radiusOf(obstacle);
+        double x = obstacle.getPosition().getX();
+        double y = obstacle.getPosition().getY();
+        return new int[]{col(x - radius), row(y - radius), col(x + radius), row(y + radius)};
+    }
+
+    private void addToCells(ObstacleInfo obstacle, int[] footprint) {
+        for (int r = footprint[1]; r <= footprint[3]; r++) {
+            for (int c = footprint[0]; c <= footprint[2]; c++) {
+                int index = r * cols + c;
+                if (cells[index] == null) {
+                    cells[index] = new ArrayList<>(2);
+                }
+                cells[index].add(obstacle);
+            }
+        }
+    }
+
+    private void removeFromCells(ObstacleInfo obstacle, int[] footprint) {
+        for (int r = footprint[1]; r <= footprint[3]; r++) {
+            for (int c = footprint[0]; c <= footprint[2]; c++) {
+                List<ObstacleInfo> cell = cells[r * cols + c];
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    if (cell.get(i) == obstacle) {
+                        cell.remove(i);
+                        break;
+                    }
+                }
+                if (cell.isEmpty()) {
+                    cells[r * cols + c] = null;
+                }
+            }
+        }
+    }
+
+    private int col(double x) {
+        int c = (int) Math.floor(x / cellSize);
+        return Math.min(cols - 1, Math.max(0, c));
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor(y / cellSize);
+        return Math.min(rows - 1, Math.max(0, r));
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public long getObstacleTests() {
+        return obstacleTests;
+    }
+}
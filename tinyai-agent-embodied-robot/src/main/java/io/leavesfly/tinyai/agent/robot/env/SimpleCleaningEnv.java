@@ -17,10 +17,21 @@ import java.util.Random;
  * @author TinyAI Team
  */
 public class SimpleCleaningEnv implements CleaningEnvironment {
+    /**
+     * 障碍物网格单元边长（米），略大于障碍物的最大宽度
+     */
+    private static final double OBSTACLE_CELL_SIZE = 1.0;
+
+    /**
+     * 激光雷达最大量程（米）
+     */
+    private static final double LIDAR_MAX_RANGE = 5.0;
+
     private EnvironmentConfig config;
     private RobotDynamics dynamics;
     private CleaningState currentState;
     private List<ObstacleInfo> obstacles;
+    private ObstacleGrid obstacleGrid;
     private ChargingStationInfo chargingStation;
     private FloorMap floorMap;
     private Random random;
@@ -39,6 +50,7 @@ public class SimpleCleaningEnv implements CleaningEnvironment {
         this.dynamics = new RobotDynamics();
         this.random = new Random();
         this.obstacles = new ArrayList<>();
+        this.obstacleGrid = new ObstacleGrid(config.getRoomWidth(), config.getRoomHeight(), OBSTACLE_CELL_SIZE);
         
         // 初始化地图
         int mapWidth = (int) (config.getRoomWidth() / config.getGridSize());
@@ -203,6 +215,7 @@ public class SimpleCleaningEnv implements CleaningEnvironment {
     public void close() {
         // 清理资源
         obstacles.clear();
+        obstacleGrid.clear();
     }
     
     @Override
@@ -215,11 +228,27 @@ public class SimpleCleaningEnv implements CleaningEnvironment {
         return config;
     }
     
+    /**
+     * 移动障碍物（如宠物），同步更新空间索引
+     * 
+     * @param obstacle 环境中的障碍物
+     * @param position 新位置
+     */
+    public void moveObstacle(ObstacleInfo obstacle, Vector2D position) {
+        obstacle.setPosition(position);
+        obstacleGrid.update(obstacle);
+    }
+    
+    public ObstacleGrid getObstacleGrid() {
+        return obstacleGrid;
+    }
+    
     /**
      * 生成障碍物
      */
     private void generateObstacles() {
         obstacles.clear();
+        obstacleGrid.clear();
         int count = config.getObstacleCount();
         
         for (int i = 0; i < count; i++) {
@@ -239,6 +268,7 @@ public class SimpleCleaningEnv implements CleaningEnvironment {
             );
             
             obstacles.add(obstacle);
+            obstacleGrid.insert(obstacle);
         }
     }
     
@@ -254,16 +284,8 @@ public class SimpleCleaningEnv implements CleaningEnvironment {
             return true;
         }
         
-        // 检查障碍物碰撞
-        for (ObstacleInfo obstacle : obstacles) {
-            double distance = position.distanceTo(obstacle.getPosition());
-            double minDist = radius + obstacle.getBoundingBox().getWidth() / 2.0;
-            if (distance < minDist) {
-                return true;
-            }
-        }
-        
-        return false;
+        // 检查障碍物碰撞（只检查机器人附近的网格单元）
+        return obstacleGrid.intersectsCircle(position.getX(), position.getY(), radius);
     }
     
     /**
@@ -344,40 +366,10 @@ public class SimpleCleaningEnv implements CleaningEnvironment {
         // 每2.8度一个测量点
         for (int i = 0; i < 128; i++) {
             double angle = heading + (i * 2.8 * Math.PI / 180.0);
-            double distance = raycast(position, angle);
-            lidarData[i] = (float) Math.min(distance / 5.0, 1.0); // 归一化到[0,1]
+            double distance = obstacleGrid.raycast(position.getX(), position.getY(), angle, LIDAR_MAX_RANGE);
+            lidarData[i] = (float) Math.min(distance / LIDAR_MAX_RANGE, 1.0); // 归一化到[0,1]
         }
         
         return NdArray.of(lidarData, Shape.of(128));
     }
-    
-    /**
-     * 射线检测
-     */
-    private double raycast(Vector2D position, double angle) {
-        double maxDistance = 5.0;
-        double step = 0.1;
-        
-        for (double d = 0; d < maxDistance; d += step) {
-            double x = position.getX() + d * Math.cos(angle);
-            double y = position.getY() + d * Math.sin(angle);
-            
-            // 检查墙壁
-            if (x < 0 || x > config.getRoomWidth() || 
-                y < 0 || y > config.getRoomHeight()) {
-                return d;
-            }
-            
-            // 检查障碍物
-            Vector2D testPoint = new Vector2D(x, y);
-            for (ObstacleInfo obstacle : obstacles) {
-                if (testPoint.distanceTo(obstacle.getPosition()) < 
-                    obstacle.getBoundingBox().getWidth() / 2.0) {
-                    return d;
-                }
-            }
-        }
-        
-        return maxDistance;
-    }
 }
@@ -0,0 +1,110 @@
+package io.leavesfly.tinyai.agent.robot.env;
+
+import io.leavesfly.tinyai.agent.robot.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ObstacleGrid测试类
+ *
+ * @author TinyAI Team
+ */
+public class ObstacleGridTest {
+
+    private static final double WIDTH = 10.0;
+    private static final double HEIGHT = 8.0;
+
+    private List<ObstacleInfo> randomObstacles(Random random, int count) {
+        List<ObstacleInfo> obstacles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            obstacles.add(new ObstacleInfo(ObstacleType.FURNITURE,
+                new Vector2D(random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT),
+                new BoundingBox(0.3 + random.nextDouble() * 0.5, 0.5, 1.0)));
+        }
+        return obstacles;
+    }
+
+    /**
+     * 暴力求解：墙壁与所有障碍物的最近交点
+     */
+    private double bruteForceRaycast(List<ObstacleInfo> obstacles, double x, double y,
+                                     double angle, double maxDistance) {
+        double dx = Math.cos(angle);
+        double dy = Math.sin(angle);
+        double best = maxDistance;
+        if (dx > 0) best = Math.min(best, (WIDTH - x) / dx);
+        if (dx < 0) best = Math.min(best, -x / dx);
+        if (dy > 0) best = Math.min(best, (HEIGHT - y) / dy);
+        if (dy < 0) best = Math.min(best, -y / dy);
+        for (ObstacleInfo obstacle : obstacles) {
+            double t = ObstacleGrid.intersectRay(x, y, dx, dy, obstacle);
+            if (t >= 0 && t < best) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testRaycastMatchesBruteForce() {
+        Random random = new Random(7);
+        List<ObstacleInfo> obstacles = randomObstacles(random, 30);
+        ObstacleGrid grid = new ObstacleGrid(WIDTH, HEIGHT, 1.0);
+        obstacles.forEach(grid::insert);
+
+        for (int i = 0; i < 500; i++) {
+            double x = random.nextDouble() * WIDTH;
+            double y = random.nextDouble() * HEIGHT;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            assertEquals(bruteForceRaycast(obstacles, x, y, angle, 5.0),
+                grid.raycast(x, y, angle, 5.0), 1e-9);
+        }
+        // 轴对齐射线
+        assertEquals(bruteForceRaycast(obstacles, 5.0, 4.0, 0.0, 5.0), grid.raycast(5.0, 4.0, 0.0, 5.0), 1e-9);
+        assertEquals(bruteForceRaycast(obstacles, 5.0, 4.0, Math.PI / 2, 5.0),
+            grid.raycast(5.0, 4.0, Math.PI / 2, 5.0), 1e-9);
+    }
+
+    @Test
+    public void testCollisionAndIncrementalUpdate() {
+        ObstacleInfo obstacle = new ObstacleInfo(ObstacleType.PET,
+            new Vector2D(2.0, 2.0), new BoundingBox(0.4, 0.4, 0.3));
+        ObstacleGrid grid = new ObstacleGrid(WIDTH, HEIGHT, 1.0);
+        grid.insert(obstacle);
+
+        assertTrue(grid.intersectsCircle(2.3, 2.0, 0.17));
+        assertFalse(grid.intersectsCircle(6.0, 6.0, 0.17));
+        assertEquals(1, grid.queryCircle(2.0, 2.0, 0.5).size());
+
+        // 移动到远处后旧单元不再命中
+        obstacle.setPosition(new Vector2D(6.0, 6.0));
+        grid.update(obstacle);
+        assertFalse(grid.intersectsCircle(2.3, 2.0, 0.17));
+        assertTrue(grid.intersectsCircle(6.0, 6.0, 0.17));
+        assertEquals(0.8, grid.raycast(5.0, 6.0, 0.0, 5.0), 1e-9);
+
+        assertTrue(grid.remove(obstacle));
+        assertEquals(0, grid.size());
+        assertFalse(grid.intersectsCircle(6.0, 6.0, 0.17));
+    }
+
+    @Test
+    public void testQueryCircleReportsEachObstacleOnce() {
+        Random random = new Random(11);
+        List<ObstacleInfo> obstacles = randomObstacles(random, 40);
+        ObstacleGrid grid = new ObstacleGrid(WIDTH, HEIGHT, 0.5);
+        obstacles.forEach(grid::insert);
+
+        List<ObstacleInfo> found = grid.queryCircle(5.0, 4.0, 2.0);
+        long expected = obstacles.stream()
+            .filter(o -> o.getPosition().distanceTo(new Vector2D(5.0, 4.0)) < 2.0 + ObstacleGrid.radiusOf(o))
+            .count();
+        assertEquals(expected, found.size());
+        assertEquals(found.size(), found.stream().distinct().count());
+    }
+}
@@ -8,9 +8,18 @@ import io.leavesfly.tinyai.agent.vla.encoder.VisionEncoder;
 import io.leavesfly.tinyai.agent.vla.fusion.CrossModalAttention;
 import io.leavesfly.tinyai.agent.vla.fusion.VLATransformerCore;
 import io.leavesfly.tinyai.agent.vla.model.*;
+import io.leavesfly.tinyai.agent.vla.utils.LanguageFeatureCache;
+import io.leavesfly.tinyai.agent.vla.utils.VisionFeatureCache;
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.func.Variable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * VLA智能体核心
  * 集成视觉、语言、动作三种模态的端到端具身智能系统
@@ -38,6 +47,16 @@ public class VLAAgent {
     private final ActionDecoder actionDecoder;
     private final LanguageFeedbackGenerator feedbackGenerator;
     
+    // 编码结果缓存：指令在整个回合内不变，相邻控制周期的相机帧常常重复
+    private final LanguageFeatureCache languageCache;
+    private final VisionFeatureCache visionCache;
+    private boolean languageCacheEnabled = true;
+    private boolean visionCacheEnabled = true;
+    
+    // 推理延迟统计
+    private long predictedActions;
+    private long inferenceNanos;
+    
     /**
      * 构造函数
      * 
@@ -65,6 +84,10 @@ public class VLAAgent {
         this.actionDecoder = new ActionDecoder(hiddenDim, actionDim, 7);
         this.feedbackGenerator = new LanguageFeedbackGenerator();
         
+        // 初始化缓存，视觉缓存默认只复用完全相同的帧
+        this.languageCache = new LanguageFeatureCache(64);
+        this.visionCache = new VisionFeatureCache(4, 0.0);
+        
         System.out.println("VLAAgent initialized with:");
         System.out.println("  Hidden Dim: " + hiddenDim);
         System.out.println("  Num Heads: " + numHeads);
@@ -79,81 +102,234 @@ public class VLAAgent {
      * @return VLA动作
      */
     public VLAAction predict(VLAState state) {
+        return batchPredict(Collections.singletonList(state)).get(0);
+    }
+    
+    /**
+     * 批处理预测
+     * 各模态编码按批执行（视觉卷积一次前向，语言与视觉优先查缓存），
+     * N个样本的Token序列拼接后一次通过Transformer（注意力按样本分段），
+     * 最后一次性解码N个动作
+     * 
+     * @param states 状态列表
+     * @return 动作列表
+     */
+    public List<VLAAction> batchPredict(List<VLAState> states) {
+        int batchSize = states.size();
+        if (batchSize == 0) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        
         // 1. 编码各模态输入
-        NdArray visionFeatures = visionEncoder.encode(state.getVisionInput());
-        NdArray languageFeatures = languageEncoder.encode(state.getLanguageInput());
+        NdArray[] visionFeatures = encodeVision(states);
+        NdArray[] languageFeatures = encodeLanguage(states);
+        NdArray[] proprioFeatures = encodeProprioception(states);
         
-        NdArray proprioFeatures = null;
-        if (state.getProprioceptionInput() != null) {
-            proprioFeatures = proprioceptionEncoder.encode(state.getProprioceptionInput());
+        // 2. 拼接多模态特征，所有样本按行拼接为一个序列
+        int[] segmentLens = new int[batchSize];
+        int totalLen = 0;
+        for (int b = 0; b < batchSize; b++) {
+            segmentLens[b] = rows(visionFeatures[b]) + rows(languageFeatures[b]) + rows(proprioFeatures[b]);
+            totalLen += segmentLens[b];
+        }
+        float[] packed = new float[totalLen * hiddenDim];
+        int offset = 0;
+        for (int b = 0; b < batchSize; b++) {
+            offset = concatenateFeatures(packed, offset, visionFeatures[b], languageFeatures[b], proprioFeatures[b]);
         }
-        
-        // 2. 拼接多模态特征
-        NdArray concatenatedFeatures = concatenateFeatures(
-            visionFeatures, 
-            languageFeatures, 
-            proprioFeatures
-        );
         
         // 3. 跨模态融合
-        Variable fusedVar = transformerCore.fuse(new Variable(concatenatedFeatures));
-        NdArray fusedFeatures = fusedVar.getValue();
+        Variable fusedVar = transformerCore.fuseBatch(
+            new Variable(NdArray.of(packed, Shape.of(totalLen, hiddenDim))), segmentLens);
+        float[] fused = fusedVar.getValue().getArray();
         
-        // 保存融合特征到状态
-        state.setFusedFeatures(fusedFeatures);
+        // 保存融合特征到状态，同时收集每个样本的最后一个token
+        float[] lastTokens = new float[batchSize * hiddenDim];
+        int rowStart = 0;
+        for (int b = 0; b < batchSize; b++) {
+            int len = segmentLens[b];
+            float[] sample = new float[len * hiddenDim];
+            System.arraycopy(fused, rowStart * hiddenDim, sample, 0, sample.length);
+            states.get(b).setFusedFeatures(NdArray.of(sample, Shape.of(len, hiddenDim)));
+            System.arraycopy(sample, (len - 1) * hiddenDim, lastTokens, b * hiddenDim, hiddenDim);
+            rowStart += len;
+        }
         
         // 4. 解码动作
-        VLAAction action = actionDecoder.decode(fusedFeatures);
+        List<VLAAction> actions = actionDecoder.decodeBatch(NdArray.of(lastTokens, Shape.of(batchSize, hiddenDim)));
         
         // 5. 生成语言反馈
-        String feedback = feedbackGenerator.generateFeedback(
-            action.getActionType(), 
-            action.getConfidence()
-        );
-        action.setLanguageFeedback(feedback);
+        for (VLAAction action : actions) {
+            String feedback = feedbackGenerator.generateFeedback(
+                action.getActionType(), 
+                action.getConfidence()
+            );
+            action.setLanguageFeedback(feedback);
+        }
         
-        return action;
+        inferenceNanos += System.nanoTime() - start;
+        predictedActions += batchSize;
+        return actions;
     }
     
     /**
-     * 拼接多模态特征
+     * 视觉编码：先查缓存，未命中的帧按图像尺寸分组后批量编码
      */
-    private NdArray concatenateFeatures(NdArray vision, NdArray language, NdArray proprio) {
-        int visionLen = vision.getShape().getDimension(0);
-        int langLen = language.getShape().getDimension(0);
-        int totalLen = visionLen + langLen;
-        
-        if (proprio != null) {
-            totalLen += proprio.getShape().getDimension(0);
+    private NdArray[] encodeVision(List<VLAState> states) {
+        NdArray[] features = new NdArray[states.size()];
+        Map<Shape, List<Integer>> missesByShape = new LinkedHashMap<>();
+        for (int b = 0; b < states.size(); b++) {
+            VisionInput input = states.get(b).getVisionInput();
+            if (visionCacheEnabled) {
+                features[b] = visionCache.get(input.getRgbImage());
+                if (features[b] != null) {
+                    input.setImageFeatures(features[b]);
+                    continue;
+                }
+            }
+            missesByShape.computeIfAbsent(input.getRgbImage().getShape(), k -> new ArrayList<>()).add(b);
         }
         
-        float[][] concatenated = new float[totalLen][hiddenDim];
-        
-        // 复制视觉特征
-        for (int i = 0; i < visionLen; i++) {
-            for (int j = 0; j < hiddenDim; j++) {
-                concatenated[i][j] = vision.get(i * hiddenDim + j);
+        for (List<Integer> group : missesByShape.values()) {
+            List<VisionInput> inputs = new ArrayList<>(group.size());
+            for (int b : group) {
+                inputs.add(states.get(b).getVisionInput());
+            }
+            List<NdArray> encoded = visionEncoder.encodeBatch(inputs);
+            for (int i = 0; i < group.size(); i++) {
+                int b = group.get(i);
+                features[b] = encoded.get(i);
+                if (visionCacheEnabled) {
+                    visionCache.put(inputs.get(i).getRgbImage(), features[b]);
+                }
             }
         }
-        
-        // 复制语言特征
-        for (int i = 0; i < langLen; i++) {
-            for (int j = 0; j < hiddenDim; j++) {
-                concatenated[visionLen + i][j] = language.get(i * hiddenDim + j);
+        return features;
+    }
+    
+    /**
+     * 语言编码：以指令文本为键查缓存，同一批次内重复的指令只编码一次
+     */
+    private NdArray[] encodeLanguage(List<VLAState> states) {
+        NdArray[] features = new NdArray[states.size()];
+        for (int b = 0; b < states.size(); b++) {
+            LanguageInput input = states.get(b).getLanguageInput();
+            if (!languageCacheEnabled) {
+                features[b] = languageEncoder.encode(input);
+                continue;
+            }
+            String instruction = input.getInstruction();
+            features[b] = languageCache.get(instruction);
+            if (features[b] == null) {
+                features[b] = languageEncoder.encode(input);
+                languageCache.put(instruction, features[b]);
+            } else {
+                input.setEmbeddings(features[b]);
             }
         }
-        
-        // 复制本体感知特征
-        if (proprio != null) {
-            int proprioLen = proprio.getShape().getDimension(0);
-            for (int i = 0; i < proprioLen; i++) {
-                for (int j = 0; j < hiddenDim; j++) {
-                    concatenated[visionLen + langLen + i][j] = proprio.get(i * hiddenDim + j);
-                }
+        return features;
+    }
+    
+    /**
+     * 本体感知编码：有本体感知输入的样本一次批量编码
+     */
+    private NdArray[] encodeProprioception(List<VLAState> states) {
+        NdArray[] features = new NdArray[states.size()];
+        List<Integer> indices = new ArrayList<>();
+        List<ProprioceptionInput> inputs = new ArrayList<>();
+        for (int b = 0; b < states.size(); b++) {
+            ProprioceptionInput input = states.get(b).getProprioceptionInput();
+            if (input != null) {
+                indices.add(b);
+                inputs.add(input);
             }
         }
+        if (inputs.isEmpty()) {
+            return features;
+        }
         
-        return NdArray.of(concatenated);
+        float[] encoded = proprioceptionEncoder.encodeBatch(inputs).getArray();
+        for (int i = 0; i < indices.size(); i++) {
+            float[] row = new float[hiddenDim];
+            System.arraycopy(encoded, i * hiddenDim, row, 0, hiddenDim);
+            features[indices.get(i)] = NdArray.of(row, Shape.of(1, hiddenDim));
+        }
+        return features;
+    }
+    
+    private static int rows(NdArray features) {
+        return features == null ? 0 : features.getShape().getDimension(0);
+    }
+    
+    /**
+     * 拼接多模态特征，按视觉、语言、本体感知的顺序写入目标缓冲区
+     * 
+     * @return 写入后的下一个偏移量
+     */
+    private int concatenateFeatures(float[] target, int offset, NdArray vision, NdArray language, NdArray proprio) {
+        for (NdArray features : new NdArray[]{vision, language, proprio}) {
+            if (features == null) {
+                continue;
+            }
+            int length = rows(features) * hiddenDim;
+            System.arraycopy(features.getArray(), 0, target, offset, length);
+            offset += length;
+        }
+        return offset;
+    }
+    
+    /**
+     * 设置视觉缓存的变化阈值（平均绝对像素差），0表示只复用完全相同的帧
+     */
+    public void setVisionCacheThreshold(double threshold) {
+        visionCache.setChangeThreshold(threshold);
+    }
+    
+    public void setVisionCacheEnabled(boolean enabled) {
+        this.visionCacheEnabled = enabled;
+    }
+    
+    public void setLanguageCacheEnabled(boolean enabled) {
+        this.languageCacheEnabled = enabled;
+    }
+    
+    public double getLanguageCacheHitRate() {
+        return languageCache.getHitRate();
+    }
+    
+    public double getVisionCacheHitRate() {
+        return visionCache.getHitRate();
+    }
+    
+    /**
+     * 平均每个动作的推理延迟（毫秒）
+     */
+    public double getAverageLatencyMillis() {
+        return predictedActions == 0 ? 0.0 : inferenceNanos / 1e6 / predictedActions;
+    }
+    
+    /**
+     * 清空编码缓存与延迟统计
+     */
+    public void clearCaches() {
+        languageCache.clear();
+        visionCache.clear();
+        predictedActions = 0;
+        inferenceNanos = 0;
+    }
+    
+    /**
+     * 缓存命中与推理延迟报告
+     */
+    public String getCacheReport() {
+        return String.format("Language cache: %.1f%% hit (%d/%d), Vision cache: %.1f%% hit (%d/%d), "
+                + "avg latency: %.3f ms/action over %d actions",
+            languageCache.getHitRate() * 100, languageCache.getHits(),
+            languageCache.getHits() + languageCache.getMisses(),
+            visionCache.getHitRate() * 100, visionCache.getHits(),
+            visionCache.getHits() + visionCache.getMisses(),
+            getAverageLatencyMillis(), predictedActions);
     }
     
     /**
@@ -181,20 +357,6 @@ public class VLAAgent {
         System.out.println("==========================================\n");
     }
     
-    /**
-     * 批处理预测
-     * 
-     * @param states 状态列表
-     * @return 动作列表
-     */
-    public java.util.List<VLAAction> batchPredict(java.util.List<VLAState> states) {
-        java.util.List<VLAAction> actions = new java.util.ArrayList<>();
-        for (VLAState state : states) {
-            actions.add(predict(state));
-        }
-        return actions;
-    }
-    
     /**
      * 冻结编码器（微调时使用）
      */
@@ -3,6 +3,7 @@ package io.leavesfly.tinyai.agent.vla.decoder;
 import io.leavesfly.tinyai.agent.vla.model.ActionType;
 import io.leavesfly.tinyai.agent.vla.model.VLAAction;
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.nnet.Block;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
@@ -61,16 +62,24 @@ public class ActionDecoder extends Block {
      * @return VLA动作
      */
     public VLAAction decode(NdArray fusedFeatures) {
-        // 取最后一个token或做平均池化
+        // 取最后一个token
         int seqLen = fusedFeatures.getShape().getDimension(0);
-        double[] lastToken = new double[hiddenDim];
+        float[] lastToken = new float[hiddenDim];
+        System.arraycopy(fusedFeatures.getArray(), (seqLen - 1) * hiddenDim, lastToken, 0, hiddenDim);
         
-        for (int i = 0; i < hiddenDim; i++) {
-            lastToken[i] = fusedFeatures.get((seqLen - 1) * hiddenDim + i);
-        }
-        
-        NdArray aggregated = NdArray.of(lastToken).reshape(io.leavesfly.tinyai.ndarr.Shape.of(1, hiddenDim));
-        Variable input = new Variable(aggregated);
+        return decodeBatch(NdArray.of(lastToken, Shape.of(1, hiddenDim))).get(0);
+    }
+    
+    /**
+     * 批量解码动作
+     * N个样本的聚合特征一次通过连续/离散动作头，按行做Tanh、Softmax与Argmax
+     * 
+     * @param tokens 每个样本的聚合特征 [N, hiddenDim]
+     * @return N个VLA动作，顺序与输入行一致
+     */
+    public List<VLAAction> decodeBatch(NdArray tokens) {
+        int batchSize = tokens.getShape().getDimension(0);
+        Variable input = new Variable(tokens);
         
         // 解码连续动作
         Variable cont1 = continuousHead1.layerForward(input);
@@ -78,93 +87,78 @@ public class ActionDecoder extends Block {
         Variable cont2 = continuousHead2.layerForward(contRelu1);
         Variable contRelu2 = cont2.relu();
         Variable cont3 = continuousHead3.layerForward(contRelu2);
-        
-        // Tanh激活，归一化到[-1, 1]
-        NdArray continuousAction = tanh(cont3.getValue());
+        float[] continuous = cont3.getValue().getArray();
         
         // 解码离散动作
         Variable disc1 = discreteHead1.layerForward(input);
         Variable discRelu = disc1.relu();
         Variable disc2 = discreteHead2.layerForward(discRelu);
-        
-        // Softmax得到概率分布
-        NdArray discreteProbs = softmax(disc2.getValue());
-        int discreteAction = argmax(discreteProbs);
-        
-        // 计算置信度
-        double confidence = discreteProbs.get(discreteAction);
-        
-        // 映射到ActionType
-        ActionType actionType = mapToActionType(discreteAction);
-        
-        return new VLAAction(continuousAction, discreteAction, actionType, confidence, null);
+        float[] logits = disc2.getValue().getArray();
+        
+        List<VLAAction> actions = new ArrayList<>(batchSize);
+        for (int b = 0; b < batchSize; b++) {
+            // Tanh激活，归一化到[-1, 1]
+            NdArray continuousAction = tanh(continuous, b * continuousActionDim, continuousActionDim);
+            
+            // Softmax得到概率分布
+            float[] probs = softmax(logits, b * discreteActionNum, discreteActionNum);
+            int discreteAction = argmax(probs);
+            
+            // 计算置信度
+            double confidence = probs[discreteAction];
+            
+            // 映射到ActionType
+            ActionType actionType = mapToActionType(discreteAction);
+            
+            actions.add(new VLAAction(continuousAction, discreteAction, actionType, confidence, null));
+        }
+        return actions;
     }
     
     /**
      * Tanh激活函数
      */
-    private NdArray tanh(NdArray input) {
-        io.leavesfly.tinyai.ndarr.Shape shape = input.getShape();
-        float[][] matrix = input.getMatrix();
-        int rows = shape.getDimension(0);
-        int cols = shape.getDimNum() > 1 ? shape.getDimension(1) : 1;
-        
-        double[][] result = new double[rows][cols];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                result[i][j] = Math.tanh(matrix[i][j]);
-            }
+    private NdArray tanh(float[] input, int offset, int length) {
+        float[] result = new float[length];
+        for (int j = 0; j < length; j++) {
+            result[j] = (float) Math.tanh(input[offset + j]);
         }
-        
-        return NdArray.of(result).reshape(input.getShape());
+        return NdArray.of(result, Shape.of(1, length));
     }
     
     /**
      * Softmax函数
      */
-    private NdArray softmax(NdArray input) {
-        float[][] matrix = input.getMatrix();
-        int rows = matrix.length;
-        int cols = matrix[0].length;
-        
-        double max = matrix[0][0];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                max = Math.max(max, matrix[i][j]);
-            }
+    private float[] softmax(float[] input, int offset, int length) {
+        double max = input[offset];
+        for (int j = 1; j < length; j++) {
+            max = Math.max(max, input[offset + j]);
         }
         
-        double[] exp = new double[cols];
+        double[] exp = new double[length];
         double sum = 0.0;
-        for (int j = 0; j < cols; j++) {
-            exp[j] = Math.exp(matrix[0][j] - max);
+        for (int j = 0; j < length; j++) {
+            exp[j] = Math.exp(input[offset + j] - max);
             sum += exp[j];
         }
         
-        float[] result = new float[cols];
-        for (int j = 0; j < cols; j++) {
-            result[j] = (float)(exp[j] / sum);
+        float[] result = new float[length];
+        for (int j = 0; j < length; j++) {
+            result[j] = (float) (exp[j] / sum);
         }
-        
-        return NdArray.of(result);
+        return result;
     }
     
     /**
      * Argmax函数
      */
-    private int argmax(NdArray input) {
-        float[][] matrix = input.getMatrix();
+    private int argmax(float[] input) {
         int maxIdx = 0;
-        float maxVal = matrix[0][0];
-        
-        int cols = matrix[0].length;
-        for (int i = 0; i < cols; i++) {
-            if (matrix[0][i] > maxVal) {
-                maxVal = matrix[0][i];
+        for (int i = 1; i < input.length; i++) {
+            if (input[i] > input[maxIdx]) {
                 maxIdx = i;
             }
         }
-        
         return maxIdx;
     }
     
@@ -94,11 +94,11 @@ public class LanguageEncoder extends Block {
         int seqLen = Math.min(tokenIds.length, maxSeqLen);
         
         // 创建token IDs的NdArray
-        double[] tokenIdsDouble = new double[seqLen];
+        float[] tokenIdsFloat = new float[seqLen];
         for (int i = 0; i < seqLen; i++) {
-            tokenIdsDouble[i] = tokenIds[i];
+            tokenIdsFloat[i] = tokenIds[i];
         }
-        NdArray tokenIdsArray = NdArray.of(tokenIdsDouble).reshape(io.leavesfly.tinyai.ndarr.Shape.of(seqLen, 1));
+        NdArray tokenIdsArray = NdArray.of(tokenIdsFloat, io.leavesfly.tinyai.ndarr.Shape.of(seqLen, 1));
         
         // Token嵌入
         Variable tokenEmbedVar = tokenEmbedding.layerForward(new Variable(tokenIdsArray));
@@ -2,12 +2,14 @@ package io.leavesfly.tinyai.agent.vla.encoder;
 
 import io.leavesfly.tinyai.agent.vla.model.ProprioceptionInput;
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.nnet.Block;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
 import io.leavesfly.tinyai.nnet.layer.transformer.LayerNorm;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -63,45 +65,32 @@ public class ProprioceptionEncoder extends Block {
      * @return 本体感知嵌入向量，维度 [1, hiddenDim]
      */
     public NdArray encode(ProprioceptionInput proprioInput) {
-        // 拼接关节位置和速度
-        NdArray jointPositions = proprioInput.getJointPositions();
-        NdArray jointVelocities = proprioInput.getJointVelocities();
-        
-        int numJoints = jointPositions.getShape().getDimension(0);
-        double[] stateVector = new double[numJoints * 2 + 1];
-        
-        // 复制关节位置
-        for (int i = 0; i < numJoints; i++) {
-            stateVector[i] = jointPositions.get(i);
-        }
-        
-        // 复制关节速度
-        for (int i = 0; i < numJoints; i++) {
-            stateVector[numJoints + i] = jointVelocities.get(i);
+        return encodeBatch(Collections.singletonList(proprioInput));
+    }
+    
+    /**
+     * 批量编码本体感知输入，N个状态向量拼成 [N, inputDim] 一次前向
+     * 
+     * @param proprioInputs 本体感知输入列表
+     * @return 本体感知嵌入，维度 [N, hiddenDim]，第i行对应第i个输入
+     */
+    public NdArray encodeBatch(List<ProprioceptionInput> proprioInputs) {
+        int batch = proprioInputs.size();
+        int numJoints = proprioInputs.get(0).getJointPositions().getShape().size();
+        int stateDim = numJoints * 2 + 1;
+        float[] stateVectors = new float[batch * stateDim];
+        
+        for (int b = 0; b < batch; b++) {
+            ProprioceptionInput proprioInput = proprioInputs.get(b);
+            int offset = b * stateDim;
+            // 拼接关节位置、关节速度和夹爪状态
+            System.arraycopy(proprioInput.getJointPositions().getArray(), 0, stateVectors, offset, numJoints);
+            System.arraycopy(proprioInput.getJointVelocities().getArray(), 0, stateVectors, offset + numJoints, numJoints);
+            stateVectors[offset + numJoints * 2] = (float) proprioInput.getGripperState();
         }
         
-        // 添加夹爪状态
-        stateVector[numJoints * 2] = proprioInput.getGripperState();
-        
-        NdArray inputVector = NdArray.of(stateVector).reshape(io.leavesfly.tinyai.ndarr.Shape.of(1, stateVector.length));
-        
-        // 前向传播
-        Variable input = new Variable(inputVector);
-        
-        // Layer 1
-        Variable fc1Out = fc1.layerForward(input);
-        Variable norm1Out = norm1.layerForward(fc1Out);
-        Variable relu1Out = norm1Out.relu();
-        
-        // Layer 2
-        Variable fc2Out = fc2.layerForward(relu1Out);
-        Variable norm2Out = norm2.layerForward(fc2Out);
-        Variable relu2Out = norm2Out.relu();
-        
-        // Layer 3
-        Variable fc3Out = fc3.layerForward(relu2Out);
-        
-        return fc3Out.getValue();
+        Variable input = new Variable(NdArray.of(stateVectors, Shape.of(batch, stateDim)));
+        return layerForward(input).getValue();
     }
     
     @Override
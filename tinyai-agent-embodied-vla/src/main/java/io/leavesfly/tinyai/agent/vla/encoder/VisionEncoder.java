@@ -1,13 +1,16 @@
 package io.leavesfly.tinyai.agent.vla.encoder;
 
 import io.leavesfly.tinyai.agent.vla.model.VisionInput;
+import io.leavesfly.tinyai.ml.inference.ImagePipeline;
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.nnet.Block;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
 import io.leavesfly.tinyai.nnet.layer.cnn.ConvLayer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -19,6 +22,13 @@ import java.util.List;
  */
 public class VisionEncoder extends Block {
     
+    /**
+     * 只做 HWC→CHW 布局转换的预处理流水线（无缩放、无归一化）
+     */
+    private static final ImagePipeline LAYOUT_PIPELINE = ImagePipeline.builder()
+        .layout(ImagePipeline.Layout.CHW)
+        .build();
+    
     private final int inputChannels;
     private final int hiddenDim;
     private final int patchSize;
@@ -74,44 +84,69 @@ public class VisionEncoder extends Block {
      * @return 视觉Token序列，维度 [num_patches, hiddenDim]
      */
     public NdArray encode(VisionInput visionInput) {
-        NdArray rgbImage = visionInput.getRgbImage();
-        
-        // 前向传播通过卷积层
-        Variable input = new Variable(rgbImage);
-        Variable conv1Out = conv1.layerForward(input);
-        Variable relu1Out = conv1Out.relu();
+        return encodeBatch(Collections.singletonList(visionInput)).get(0);
+    }
+    
+    /**
+     * 批量编码视觉输入
+     * 所有图像（尺寸必须相同）拼成 [batch, channels, height, width] 一次通过卷积层，
+     * 再一次性投影全部空间Token
+     * 
+     * @param visionInputs 视觉输入列表，RGB图像维度 [H, W, C]
+     * @return 每个输入的视觉Token序列，维度 [num_patches, hiddenDim]
+     */
+    public List<NdArray> encodeBatch(List<VisionInput> visionInputs) {
+        int batch = visionInputs.size();
         
-        Variable conv2Out = conv2.layerForward(relu1Out);
-        Variable relu2Out = conv2Out.relu();
+        // [B, H, W, C] -> [B, C, H, W]，由布局转换流水线并行写入批张量
+        List<NdArray> images = new ArrayList<>(batch);
+        for (VisionInput visionInput : visionInputs) {
+            images.add(visionInput.getRgbImage());
+        }
+        NdArray nchw = LAYOUT_PIPELINE.processBatch(images);
         
-        Variable conv3Out = conv3.layerForward(relu2Out);
-        Variable relu3Out = conv3Out.relu();
+        // 前向传播通过卷积层
+        Variable input = new Variable(nchw);
+        Variable relu1Out = conv1.layerForward(input).relu();
+        Variable relu2Out = conv2.layerForward(relu1Out).relu();
+        Variable relu3Out = conv3.layerForward(relu2Out).relu();
         
-        // 获取卷积输出的形状 [batch, channels, height, width]
+        // 卷积输出 [B, C', h, w] -> 空间Token [B*h*w, C']
         NdArray convFeatures = relu3Out.getValue();
-        io.leavesfly.tinyai.ndarr.Shape shape = convFeatures.getShape();
-        
-        // 将空间维度展平为patches
-        // 假设输入形状为 [height, width, channels]
-        // 输出形状应为 [num_patches, channels]
-        int numSpatialTokens = shape.getDimension(0) * shape.getDimension(1); // H * W
-        int channels = shape.getDimension(2);
-        
-        // Reshape: [H, W, C] -> [H*W, C]
-        NdArray flattenedFeatures = convFeatures.reshape(io.leavesfly.tinyai.ndarr.Shape.of(numSpatialTokens, channels));
-        
-        // 通过投影层
-        Variable projInput = new Variable(flattenedFeatures);
-        Variable projOutput = projection.layerForward(projInput);
-        
-        // 添加位置编码
-        NdArray posEncoding = createPositionalEncoding(numSpatialTokens, hiddenDim);
-        NdArray visualTokens = projOutput.getValue().add(posEncoding);
-        
-        // 保存到visionInput
-        visionInput.setImageFeatures(visualTokens);
+        Shape shape = convFeatures.getShape();
+        int outChannels = shape.getDimension(1);
+        int numSpatialTokens = shape.getDimension(2) * shape.getDimension(3);
+        float[] conv = convFeatures.getArray();
+        float[] tokens = new float[batch * numSpatialTokens * outChannels];
+        for (int b = 0; b < batch; b++) {
+            int base = b * outChannels * numSpatialTokens;
+            for (int c = 0; c < outChannels; c++) {
+                for (int t = 0; t < numSpatialTokens; t++) {
+                    tokens[(b * numSpatialTokens + t) * outChannels + c] = conv[base + c * numSpatialTokens + t];
+                }
+            }
+        }
         
-        return visualTokens;
+        // 通过投影层（全部图像的Token一次矩阵乘法）
+        Variable projOutput = projection.layerForward(new Variable(
+            NdArray.of(tokens, Shape.of(batch * numSpatialTokens, outChannels))));
+        float[] projected = projOutput.getValue().getArray();
+        
+        // 拆分并添加位置编码
+        float[] posEncoding = createPositionalEncoding(numSpatialTokens, hiddenDim).getArray();
+        List<NdArray> results = new ArrayList<>(batch);
+        int tokenSize = numSpatialTokens * hiddenDim;
+        for (int b = 0; b < batch; b++) {
+            float[] visual = new float[tokenSize];
+            for (int k = 0; k < tokenSize; k++) {
+                visual[k] = projected[b * tokenSize + k] + posEncoding[k];
+            }
+            NdArray visualTokens = NdArray.of(visual, Shape.of(numSpatialTokens, hiddenDim));
+            // 保存到visionInput
+            visionInputs.get(b).setImageFeatures(visualTokens);
+            results.add(visualTokens);
+        }
+        return results;
     }
     
     /**
@@ -1,6 +1,7 @@
 package io.leavesfly.tinyai.agent.vla.fusion;
 
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.nnet.Block;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
@@ -58,53 +59,86 @@ public class CrossModalAttention extends Block {
      * @return 融合后的特征
      */
     public Variable computeAttention(Variable query, Variable keyValue) {
+        int queryLen = query.getValue().getShape().getDimension(0);
+        int kvLen = keyValue.getValue().getShape().getDimension(0);
+        return computeAttention(query, keyValue, new int[]{queryLen}, new int[]{kvLen});
+    }
+    
+    /**
+     * 分段计算注意力
+     * 多个样本的序列按行拼接后一起做Q/K/V投影（一次矩阵乘法），
+     * 注意力分数只在同一样本的分段内计算（块对角），结果与逐个样本计算一致
+     * 
+     * @param query 拼接后的Query [sum(queryLens), hiddenDim]
+     * @param keyValue 拼接后的Key/Value [sum(kvLens), hiddenDim]
+     * @param queryLens 每个样本的Query长度
+     * @param kvLens 每个样本的Key/Value长度
+     * @return 拼接后的输出 [sum(queryLens), hiddenDim]
+     */
+    public Variable computeAttention(Variable query, Variable keyValue, int[] queryLens, int[] kvLens) {
         // 投影Q, K, V
-        Variable q = qProj.layerForward(query);
-        Variable k = kProj.layerForward(keyValue);
-        Variable v = vProj.layerForward(keyValue);
-        
-        // 获取维度
-        NdArray qData = q.getValue();
-        NdArray kData = k.getValue();
-        NdArray vData = v.getValue();
+        float[] q = qProj.layerForward(query).getValue().getArray();
+        float[] k = kProj.layerForward(keyValue).getValue().getArray();
+        float[] v = vProj.layerForward(keyValue).getValue().getArray();
         
-        int queryLen = qData.getShape().getDimension(0);
-        int kvLen = kData.getShape().getDimension(0);
+        int totalQuery = 0;
+        for (int len : queryLens) {
+            totalQuery += len;
+        }
         
-        // 计算注意力分数：Q @ K^T / sqrt(d_k)
-        double[][] scores = new double[queryLen][kvLen];
+        float[] output = new float[totalQuery * hiddenDim];
         double scale = Math.sqrt(headDim);
-        
-        for (int i = 0; i < queryLen; i++) {
-            for (int j = 0; j < kvLen; j++) {
-                double score = 0.0;
-                for (int d = 0; d < hiddenDim; d++) {
-                    score += qData.get(i * hiddenDim + d) * kData.get(j * hiddenDim + d);
+        int queryOffset = 0;
+        int kvOffset = 0;
+        for (int s = 0; s < queryLens.length; s++) {
+            int queryLen = queryLens[s];
+            int kvLen = kvLens[s];
+            
+            // 计算注意力分数：Q @ K^T / sqrt(d_k)
+            double[][] scores = new double[queryLen][kvLen];
+            for (int i = 0; i < queryLen; i++) {
+                int qBase = (queryOffset + i) * hiddenDim;
+                for (int j = 0; j < kvLen; j++) {
+                    int kBase = (kvOffset + j) * hiddenDim;
+                    double score = 0.0;
+                    for (int d = 0; d < hiddenDim; d++) {
+                        score += q[qBase + d] * k[kBase + d];
+                    }
+                    scores[i][j] = score / scale;
                 }
-                scores[i][j] = score / scale;
             }
-        }
-        
-        // Softmax归一化
-        double[][] attnWeights = softmax(scores);
-        
-        // 加权求和：attnWeights @ V
-        double[][] output = new double[queryLen][hiddenDim];
-        for (int i = 0; i < queryLen; i++) {
-            for (int d = 0; d < hiddenDim; d++) {
-                double sum = 0.0;
+            
+            // Softmax归一化
+            double[][] attnWeights = softmax(scores);
+            
+            // 加权求和：attnWeights @ V
+            for (int i = 0; i < queryLen; i++) {
+                int outBase = (queryOffset + i) * hiddenDim;
                 for (int j = 0; j < kvLen; j++) {
-                    sum += attnWeights[i][j] * vData.get(j * hiddenDim + d);
+                    double weight = attnWeights[i][j];
+                    int vBase = (kvOffset + j) * hiddenDim;
+                    for (int d = 0; d < hiddenDim; d++) {
+                        output[outBase + d] += (float) (weight * v[vBase + d]);
+                    }
                 }
-                output[i][d] = sum;
             }
+            queryOffset += queryLen;
+            kvOffset += kvLen;
         }
         
-        // 输出投彡
-        NdArray outputArray = NdArray.of(output);
-        Variable result = outProj.layerForward(new Variable(outputArray));
-        
-        return result;
+        // 输出投影
+        NdArray outputArray = NdArray.of(output, Shape.of(totalQuery, hiddenDim));
+        return outProj.layerForward(new Variable(outputArray));
+    }
+    
+    /**
+     * 分段自注意力
+     * 
+     * @param input 拼接后的序列 [sum(segmentLens), hiddenDim]
+     * @param segmentLens 每个样本的序列长度
+     */
+    public Variable computeSelfAttention(Variable input, int[] segmentLens) {
+        return computeAttention(input, input, segmentLens, segmentLens);
     }
     
     /**
@@ -59,11 +59,23 @@ public class VLATransformerCore extends Block {
      * @return 融合后的特征表示
      */
     public Variable fuse(Variable input) {
-        Variable hidden = input;
+        return fuseBatch(input, new int[]{input.getValue().getShape().getDimension(0)});
+    }
+    
+    /**
+     * 批量融合：N个样本的Token序列按行拼接后一起通过Transformer，
+     * 线性层与层归一化对全部Token一次计算，注意力只在各自样本的分段内进行
+     * 
+     * @param packed 拼接的Token序列 [sum(segmentLens), hiddenDim]
+     * @param segmentLens 每个样本的Token数
+     * @return 拼接的融合特征，行与输入一一对应
+     */
+    public Variable fuseBatch(Variable packed, int[] segmentLens) {
+        Variable hidden = packed;
         
         // 通过所有Transformer层
         for (VLATransformerLayer layer : layers) {
-            hidden = layer.layerForward(hidden);
+            hidden = layer.forward(hidden, segmentLens);
         }
         
         // 最终归一化
@@ -115,10 +127,13 @@ public class VLATransformerCore extends Block {
         
         @Override
         public Variable layerForward(Variable... inputs) {
-            Variable input = inputs[0];
+            return forward(inputs[0], new int[]{inputs[0].getValue().getShape().getDimension(0)});
+        }
+        
+        Variable forward(Variable input, int[] segmentLens) {
             // 自注意力 + 残差连接
             Variable normed1 = norm1.layerForward(input);
-            Variable attnOut = selfAttention.layerForward(normed1);
+            Variable attnOut = selfAttention.computeSelfAttention(normed1, segmentLens);
             Variable residual1 = new Variable(
                 input.getValue().add(attnOut.getValue())
             );
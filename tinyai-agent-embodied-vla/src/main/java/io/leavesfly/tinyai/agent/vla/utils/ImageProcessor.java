@@ -1,15 +1,51 @@
 package io.leavesfly.tinyai.agent.vla.utils;
 
+import io.leavesfly.tinyai.ml.inference.ImagePipeline;
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.List;
 
 /**
  * 图像处理工具
  * 用于图像预处理和数据增强
+ * 单步方法直接在扁平缓冲区上计算；推理前端应使用 {@link #createPipeline} 构建的融合流水线，
+ * 一次遍历完成全部步骤，并通过 {@link #preprocessBatch} 并行写入批张量
  *
  * @author TinyAI
  */
 public class ImageProcessor {
 
+    /**
+     * 构建VLA视觉前端的融合预处理流水线：缩放 → 归一化到[0, 1] → HWC→CHW → 可选增强
+     *
+     * @param targetHeight 目标高度
+     * @param targetWidth  目标宽度
+     * @param augment      是否启用随机翻转与噪声增强（训练时使用）
+     * @return 预处理流水线
+     */
+    public static ImagePipeline createPipeline(int targetHeight, int targetWidth, boolean augment) {
+        ImagePipeline.Builder builder = ImagePipeline.builder()
+            .resize(targetHeight, targetWidth)
+            .scale(1.0f / 255.0f)
+            .layout(ImagePipeline.Layout.CHW);
+        if (augment) {
+            builder.randomHorizontalFlip(0.5).noise(0.02f).clip(0.0f, 1.0f);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 并行预处理一批图像
+     *
+     * @param images   HWC图像列表，范围 [0, 255]
+     * @param pipeline 预处理流水线
+     * @return 批张量 [batch, channels, height, width]
+     */
+    public static NdArray preprocessBatch(List<NdArray> images, ImagePipeline pipeline) {
+        return pipeline.processBatch(images);
+    }
+
     /**
      * 归一化图像到 [0, 1] 范围
      *
@@ -18,13 +54,13 @@ public class ImageProcessor {
      */
     public static NdArray normalize(NdArray image) {
         float[] data = image.getArray();
-        double[] normalized = new double[data.length];
+        float[] normalized = new float[data.length];
 
         for (int i = 0; i < data.length; i++) {
-            normalized[i] = data[i] / 255.0;
+            normalized[i] = data[i] / 255.0f;
         }
 
-        return NdArray.of(normalized).reshape(image.getShape());
+        return NdArray.of(normalized, image.getShape());
     }
 
     /**
@@ -36,23 +72,16 @@ public class ImageProcessor {
      * @return 标准化后的图像
      */
     public static NdArray standardize(NdArray image, double[] mean, double[] std) {
-        int[] shape = image.getShape().getShape();
-        int height = shape[0];
-        int width = shape[1];
-        int channels = shape[2];
-
-        double[][][] result = new double[height][width][channels];
+        int channels = image.getShape().getShape()[2];
+        float[] data = image.getArray();
+        float[] result = new float[data.length];
 
-        for (int h = 0; h < height; h++) {
-            for (int w = 0; w < width; w++) {
-                for (int c = 0; c < channels; c++) {
-                    int idx = h * width * channels + w * channels + c;
-                    result[h][w][c] = (image.get(idx) - mean[c]) / std[c];
-                }
-            }
+        for (int i = 0; i < data.length; i++) {
+            int c = i % channels;
+            result[i] = (float) ((data[i] - mean[c]) / std[c]);
         }
 
-        return NdArray.of(result);
+        return NdArray.of(result, image.getShape());
     }
 
     /**
@@ -68,25 +97,20 @@ public class ImageProcessor {
         int srcHeight = shape[0];
         int srcWidth = shape[1];
         int channels = shape[2];
+        float[] data = image.getArray();
 
-        float[][][] result = new float[targetHeight][targetWidth][channels];
-
-        double scaleH = (double) srcHeight / targetHeight;
-        double scaleW = (double) srcWidth / targetWidth;
+        float[] result = new float[targetHeight * targetWidth * channels];
 
         for (int h = 0; h < targetHeight; h++) {
+            int srcH = (int) ((long) h * srcHeight / targetHeight);
             for (int w = 0; w < targetWidth; w++) {
-                int srcH = (int) (h * scaleH);
-                int srcW = (int) (w * scaleW);
-
-                for (int c = 0; c < channels; c++) {
-                    int idx = srcH * srcWidth * channels + srcW * channels + c;
-                    result[h][w][c] = image.get(idx);
-                }
+                int srcW = (int) ((long) w * srcWidth / targetWidth);
+                System.arraycopy(data, (srcH * srcWidth + srcW) * channels,
+                    result, (h * targetWidth + w) * channels, channels);
             }
         }
 
-        return NdArray.of(result);
+        return NdArray.of(result, Shape.of(targetHeight, targetWidth, channels));
     }
 
     /**
@@ -105,19 +129,19 @@ public class ImageProcessor {
         int height = shape[0];
         int width = shape[1];
         int channels = shape[2];
+        float[] data = image.getArray();
 
-        double[][][] result = new double[height][width][channels];
+        float[] result = new float[data.length];
 
         for (int h = 0; h < height; h++) {
+            int rowBase = h * width;
             for (int w = 0; w < width; w++) {
-                for (int c = 0; c < channels; c++) {
-                    int srcIdx = h * width * channels + w * channels + c;
-                    result[h][width - 1 - w][c] = image.get(srcIdx);
-                }
+                System.arraycopy(data, (rowBase + w) * channels,
+                    result, (rowBase + width - 1 - w) * channels, channels);
             }
         }
 
-        return NdArray.of(result);
+        return NdArray.of(result, image.getShape());
     }
 
     /**
@@ -138,6 +162,6 @@ public class ImageProcessor {
             noisy[i] = (float) Math.max(0.0, Math.min(1.0, data[i] + noise));
         }
 
-        return NdArray.of(noisy).reshape(image.getShape());
+        return NdArray.of(noisy, image.getShape());
     }
 }
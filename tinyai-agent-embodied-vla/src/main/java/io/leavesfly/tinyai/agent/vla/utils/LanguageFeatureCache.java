@@ -0,0 +1,86 @@
+package io.leavesfly.tinyai.agent.vla.utils;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 语言编码结果缓存
+ * 以指令文本为键的LRU缓存，同一任务的指令在整个回合内不变，命中后可跳过语言编码器
+ *
+ * @author TinyAI
+ */
+public class LanguageFeatureCache {
+
+    private final int capacity;
+    private final LinkedHashMap<String, NdArray> entries;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 最多缓存的指令数
+     */
+    public LanguageFeatureCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, NdArray>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NdArray> eldest) {
+                return size() > LanguageFeatureCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 查询指令对应的语言特征，未命中返回null
+     */
+    public synchronized NdArray get(String instruction) {
+        NdArray features = entries.get(instruction);
+        if (features != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return features;
+    }
+
+    public synchronized void put(String instruction, NdArray features) {
+        entries.put(instruction, features);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 命中率，尚无查询时为0
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,136 @@
+package io.leavesfly.tinyai.agent.vla.utils;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * 视觉特征缓存
+ * 控制循环中相邻时刻的相机帧经常重复或变化极小，缓存最近若干帧的视觉编码结果，
+ * 新帧与缓存帧的平均绝对像素差不超过阈值时直接复用特征。
+ * 阈值为0时只复用完全相同的帧；比较过程中累计差值一旦超过上限立即放弃该候选。
+ *
+ * @author TinyAI
+ */
+public class VisionFeatureCache {
+
+    private final int capacity;
+    private final Deque<Entry> entries;
+    private double changeThreshold;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 缓存的帧数
+     * @param changeThreshold 平均绝对像素差阈值
+     */
+    public VisionFeatureCache(int capacity, double changeThreshold) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new ArrayDeque<>(capacity);
+        setChangeThreshold(changeThreshold);
+    }
+
+    /**
+     * 查询与给定帧足够接近的缓存特征，未命中返回null
+     */
+    public synchronized NdArray get(NdArray frame) {
+        Shape shape = frame.getShape();
+        float[] pixels = frame.getArray();
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.shape.equals(shape) && withinThreshold(pixels, entry.pixels)) {
+                // 移到队首，保持最近使用优先比较
+                it.remove();
+                entries.addFirst(entry);
+                hits++;
+                return entry.features;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * 缓存帧与其视觉特征，帧数据会被复制以免调用方复用缓冲区
+     */
+    public synchronized void put(NdArray frame, NdArray features) {
+        if (entries.size() >= capacity) {
+            entries.removeLast();
+        }
+        entries.addFirst(new Entry(frame.getShape(), frame.getArray().clone(), features));
+    }
+
+    private boolean withinThreshold(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        double budget = changeThreshold * a.length;
+        double diff = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            diff += Math.abs(a[i] - b[i]);
+            if (diff > budget) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void setChangeThreshold(double changeThreshold) {
+        if (changeThreshold < 0) {
+            throw new IllegalArgumentException("changeThreshold must be non-negative: " + changeThreshold);
+        }
+        this.changeThreshold = changeThreshold;
+    }
+
+    public synchronized double getChangeThreshold() {
+        return changeThreshold;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 命中率，尚无查询时为0
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private static final class Entry {
+        final Shape shape;
+        final float[] pixels;
+        final NdArray features;
+
+        Entry(Shape shape, float[] pixels, NdArray features) {
+            this.shape = shape;
+            this.pixels = pixels;
+            this.features = features;
+        }
+    }
+}
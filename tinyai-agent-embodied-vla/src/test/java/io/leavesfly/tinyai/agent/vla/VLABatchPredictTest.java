@@ -0,0 +1,180 @@
+package io.leavesfly.tinyai.agent.vla;
+
+import io.leavesfly.tinyai.agent.vla.model.*;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * VLA批量推理与编码缓存测试
+ *
+ * @author TinyAI
+ */
+public class VLABatchPredictTest {
+
+    private static final int IMAGE_SIZE = 32;
+
+    private VLAAgent agent;
+
+    @BeforeEach
+    public void setUp() {
+        agent = new VLAAgent(64, 4, 2, 7);
+    }
+
+    @Test
+    public void testBatchPredictMatchesSequentialPredict() {
+        // 指令长度不同、部分样本没有本体感知输入，各样本的Token序列长度不同
+        List<VLAState> states = Arrays.asList(
+            state(image(1, 0.0f), "Pick up the red cube", true),
+            state(image(2, 0.0f), "Stack the blue block on top of the green block", true),
+            state(image(3, 0.0f), "Open the gripper", false),
+            state(image(4, 0.0f), "Pick up the red cube", true));
+
+        agent.setLanguageCacheEnabled(false);
+        agent.setVisionCacheEnabled(false);
+        List<VLAAction> expected = new ArrayList<>();
+        for (VLAState state : states) {
+            expected.add(agent.predict(state));
+        }
+
+        List<VLAAction> actual = agent.batchPredict(states);
+        assertEquals(states.size(), actual.size());
+        for (int i = 0; i < states.size(); i++) {
+            assertSameAction(expected.get(i), actual.get(i), "样本" + i);
+        }
+    }
+
+    @Test
+    public void testCachedBatchMatchesUncached() {
+        NdArray frame = image(5, 0.0f);
+        List<VLAState> states = Arrays.asList(
+            state(frame, "Pick up the red cube", true),
+            state(image(6, 0.0f), "Place it on the table", true),
+            state(frame, "Pick up the red cube", true));
+
+        agent.setLanguageCacheEnabled(false);
+        agent.setVisionCacheEnabled(false);
+        List<VLAAction> uncached = agent.batchPredict(states);
+
+        agent.setLanguageCacheEnabled(true);
+        agent.setVisionCacheEnabled(true);
+        agent.batchPredict(states);
+        // 第二次全部命中缓存，结果与不使用缓存时一致
+        List<VLAAction> cached = agent.batchPredict(states);
+        for (int i = 0; i < states.size(); i++) {
+            assertSameAction(uncached.get(i), cached.get(i), "样本" + i);
+        }
+    }
+
+    @Test
+    public void testCacheHitAndMissCounters() {
+        NdArray frame = image(7, 0.0f);
+        agent.predict(state(frame, "Pick up the red cube", true));
+        agent.predict(state(frame, "Pick up the red cube", true));
+        agent.predict(state(image(8, 0.0f), "Place it on the table", true));
+
+        // 语言与视觉各查询3次，命中1次
+        assertEquals(1.0 / 3, agent.getLanguageCacheHitRate(), 1e-9);
+        assertEquals(1.0 / 3, agent.getVisionCacheHitRate(), 1e-9);
+        String report = agent.getCacheReport();
+        assertTrue(report.contains("Language cache: 33.3% hit (1/3)"), report);
+        assertTrue(report.contains("Vision cache: 33.3% hit (1/3)"), report);
+        assertTrue(report.contains("over 3 actions"), report);
+
+        agent.clearCaches();
+        assertEquals(0.0, agent.getLanguageCacheHitRate());
+        assertEquals(0.0, agent.getVisionCacheHitRate());
+    }
+
+    @Test
+    public void testVisionChangeThreshold() {
+        NdArray frame = image(9, 0.0f);
+        VLAAction original = agent.predict(state(frame, "Pick up the red cube", true));
+
+        // 默认只复用完全相同的帧，轻微变化的帧未命中
+        agent.predict(state(image(9, 0.01f), "Pick up the red cube", true));
+        assertEquals(0.0, agent.getVisionCacheHitRate());
+
+        agent.clearCaches();
+        agent.setVisionCacheThreshold(0.05);
+        agent.predict(state(frame, "Pick up the red cube", true));
+        VLAAction reused = agent.predict(state(image(9, 0.01f), "Pick up the red cube", true));
+        assertEquals(0.5, agent.getVisionCacheHitRate(), 1e-9);
+        // 阈值内的帧复用原帧特征，动作与原帧一致
+        assertSameAction(original, reused, "阈值内的帧");
+
+        // 变化超过阈值的帧重新编码
+        agent.predict(state(image(9, 0.5f), "Pick up the red cube", true));
+        assertEquals(1.0 / 3, agent.getVisionCacheHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testMixedInstructionBatchCachesEachInstructionOnce() {
+        NdArray frame = image(10, 0.0f);
+        List<VLAState> states = Arrays.asList(
+            state(frame, "Pick up the red cube", true),
+            state(frame, "Place it on the table", true),
+            state(frame, "Pick up the red cube", true),
+            state(frame, "Open the gripper", true));
+
+        List<VLAAction> actions = agent.batchPredict(states);
+        assertEquals(4, actions.size());
+        // 批次内重复的指令只编码一次
+        assertEquals(0.25, agent.getLanguageCacheHitRate(), 1e-9);
+        assertSameAction(actions.get(0), actions.get(2), "相同输入");
+        assertFalse(Arrays.equals(actions.get(0).getContinuousAction().getArray(),
+            actions.get(1).getContinuousAction().getArray()), "不同指令应得到不同的动作");
+        for (VLAAction action : actions) {
+            assertNotNull(action.getLanguageFeedback());
+            assertTrue(action.getConfidence() >= 0.0 && action.getConfidence() <= 1.0);
+        }
+        for (VLAState state : states) {
+            assertNotNull(state.getFusedFeatures());
+        }
+    }
+
+    private static void assertSameAction(VLAAction expected, VLAAction actual, String message) {
+        assertArrayEquals(expected.getContinuousAction().getArray(), actual.getContinuousAction().getArray(),
+            1e-4f, message);
+        assertEquals(expected.getDiscreteAction(), actual.getDiscreteAction(), message);
+        assertEquals(expected.getActionType(), actual.getActionType(), message);
+        assertEquals(expected.getConfidence(), actual.getConfidence(), 1e-4, message);
+    }
+
+    /**
+     * 按种子生成的 [H, W, C] 图像，所有像素再加上offset
+     */
+    private static NdArray image(long seed, float offset) {
+        Random random = new Random(seed);
+        float[] pixels = new float[IMAGE_SIZE * IMAGE_SIZE * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextFloat() + offset;
+        }
+        return NdArray.of(pixels, Shape.of(IMAGE_SIZE, IMAGE_SIZE, 3));
+    }
+
+    private static VLAState state(NdArray image, String instruction, boolean withProprioception) {
+        VisionInput visionInput = new VisionInput(image);
+        LanguageInput languageInput = new LanguageInput(instruction);
+        if (!withProprioception) {
+            return new VLAState(visionInput, languageInput);
+        }
+        float[] positions = new float[7];
+        float[] velocities = new float[7];
+        for (int i = 0; i < 7; i++) {
+            positions[i] = 0.1f * i;
+            velocities[i] = -0.05f * i;
+        }
+        ProprioceptionInput proprioInput = new ProprioceptionInput(
+            NdArray.of(positions), NdArray.of(velocities), NdArray.of(new float[]{0.5f, 0.0f, 0.3f}), 1.0);
+        return new VLAState(visionInput, languageInput, proprioInput);
+    }
+}
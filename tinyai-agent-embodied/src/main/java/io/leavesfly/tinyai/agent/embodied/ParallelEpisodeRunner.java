@@ -0,0 +1,373 @@
+package io.leavesfly.tinyai.agent.embodied;
+
+import io.leavesfly.tinyai.agent.embodied.decision.DecisionModule;
+import io.leavesfly.tinyai.agent.embodied.env.EnvironmentConfig;
+import io.leavesfly.tinyai.agent.embodied.env.impl.SimpleDrivingEnv;
+import io.leavesfly.tinyai.agent.embodied.learning.LearningEngine;
+import io.leavesfly.tinyai.agent.embodied.model.*;
+import io.leavesfly.tinyai.agent.embodied.perception.PerceptionModule;
+import io.leavesfly.tinyai.agent.embodied.sensor.SensorSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * 并行情景运行器
+ * 同时推进多个驾驶环境（可跨不同场景配置），按轮次锁步执行：
+ * 1. 收集所有进行中环境的状态，通过DecisionModule一次批量决策（策略网络批量推理）；
+ * 2. 各环境的step与感知处理在线程池中并行执行；
+ * 3. 本轮产生的转移按环境槽位顺序推送给转移消费者（通常是LearningEngine），无需等待情景结束。
+ *
+ * 第i个情景使用场景配置 scenarios[i % scenarios.size()] 和随机种子 baseSeed + i，
+ * 在策略确定的前提下，每个情景的轨迹与线程数、槽位分配无关，可以复现。
+ *
+ * @author TinyAI Team
+ */
+public class ParallelEpisodeRunner implements AutoCloseable {
+    private final List<EnvironmentConfig> scenarios;
+    private final Slot[] slots;
+    private final ExecutorService executor;
+    private final int numThreads;
+    private DecisionModule decisionModule;
+    private long baseSeed;
+
+    private Consumer<Transition> transitionConsumer;
+    private Consumer<Episode> episodeConsumer;
+
+    // 统计信息（只在调用run的线程中修改）
+    private final Map<ScenarioType, ScenarioStats> scenarioStats;
+    private long totalSteps;
+    private long inferenceBatches;
+    private long elapsedNanos;
+
+    public ParallelEpisodeRunner(List<EnvironmentConfig> scenarios, int numEnvs) {
+        this(scenarios, numEnvs, Math.min(numEnvs, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param scenarios  场景配置，情景按下标轮流使用
+     * @param numEnvs    同时进行的环境（情景）数，即每轮批量推理的最大批次
+     * @param numThreads 执行环境step的线程数，1表示在调用线程中顺序执行
+     */
+    public ParallelEpisodeRunner(List<EnvironmentConfig> scenarios, int numEnvs, int numThreads) {
+        if (scenarios == null || scenarios.isEmpty()) {
+            throw new IllegalArgumentException("At least one scenario config is required");
+        }
+        if (numEnvs <= 0) {
+            throw new IllegalArgumentException("numEnvs must be positive: " + numEnvs);
+        }
+        this.scenarios = new ArrayList<>(scenarios);
+        this.slots = new Slot[numEnvs];
+        for (int i = 0; i < numEnvs; i++) {
+            slots[i] = new Slot(scenarios.get(0));
+        }
+        this.numThreads = Math.max(1, Math.min(numThreads, numEnvs));
+        this.executor = this.numThreads > 1 ? Executors.newFixedThreadPool(this.numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "episode-runner");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.decisionModule = new DecisionModule();
+        this.scenarioStats = new EnumMap<>(ScenarioType.class);
+    }
+
+    /**
+     * 把转移流式送入学习引擎
+     */
+    public void attachLearningEngine(LearningEngine learningEngine) {
+        this.transitionConsumer = learningEngine::observeTransition;
+    }
+
+    /**
+     * 运行指定数量的情景
+     *
+     * @param numEpisodes 情景总数
+     * @param maxSteps    每个情景的最大步数
+     * @return 按情景下标排序的完整情景
+     */
+    public List<Episode> run(int numEpisodes, int maxSteps) {
+        Episode[] episodes = new Episode[numEpisodes];
+        int nextEpisode = 0;
+        for (Slot slot : slots) {
+            if (nextEpisode < numEpisodes) {
+                startEpisode(slot, nextEpisode++);
+            } else {
+                slot.episodeIndex = -1;
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Slot> active = new ArrayList<>(slots.length);
+        List<PerceptionState> states = new ArrayList<>(slots.length);
+        while (true) {
+            active.clear();
+            states.clear();
+            for (Slot slot : slots) {
+                if (slot.episodeIndex >= 0) {
+                    active.add(slot);
+                    states.add(slot.state);
+                }
+            }
+            if (active.isEmpty()) {
+                break;
+            }
+
+            // 1. 批量决策
+            List<DrivingAction> actions = decisionModule.decideBatch(states);
+            inferenceBatches++;
+            for (int i = 0; i < active.size(); i++) {
+                active.get(i).action = actions.get(i);
+            }
+
+            // 2. 并行推进环境
+            stepAll(active);
+
+            // 3. 按槽位顺序推送转移并处理结束的情景
+            for (Slot slot : active) {
+                Transition transition = new Transition(slot.state, slot.action,
+                        slot.result.getReward(), slot.nextState, slot.result.isDone());
+                slot.episode.addTransition(transition);
+                slot.state = slot.nextState;
+                slot.steps++;
+                totalSteps++;
+                ScenarioStats stats = statsFor(slot.scenario.getScenarioType());
+                stats.steps++;
+                stats.envNanos += slot.stepNanos;
+                if (transitionConsumer != null) {
+                    transitionConsumer.accept(transition);
+                }
+
+                if (slot.result.isDone() || slot.steps >= maxSteps) {
+                    slot.episode.finish();
+                    episodes[slot.episodeIndex] = slot.episode;
+                    stats.episodes++;
+                    stats.totalReward += slot.episode.getTotalReward();
+                    if (episodeConsumer != null) {
+                        episodeConsumer.accept(slot.episode);
+                    }
+                    if (nextEpisode < numEpisodes) {
+                        startEpisode(slot, nextEpisode++);
+                    } else {
+                        slot.episodeIndex = -1;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        elapsedNanos += elapsed;
+        for (ScenarioStats stats : scenarioStats.values()) {
+            stats.wallNanos += elapsed;
+        }
+
+        List<Episode> result = new ArrayList<>(numEpisodes);
+        Collections.addAll(result, episodes);
+        return result;
+    }
+
+    private void startEpisode(Slot slot, int episodeIndex) {
+        EnvironmentConfig config = scenarios.get(episodeIndex % scenarios.size());
+        slot.scenario = config;
+        slot.episodeIndex = episodeIndex;
+        slot.steps = 0;
+        slot.env.setConfig(config);
+        slot.env.setSeed(baseSeed + episodeIndex);
+        slot.state = slot.perception.process(slot.env.reset());
+        slot.episode = new Episode("episode_" + config.getScenarioType().name().toLowerCase() + "_" + episodeIndex,
+                config.getScenarioType());
+        slot.episode.getMetadata().put("seed", baseSeed + episodeIndex);
+    }
+
+    private void stepAll(List<Slot> active) {
+        if (executor == null || active.size() == 1) {
+            for (Slot slot : active) {
+                slot.step();
+            }
+            return;
+        }
+        // 按线程数分组提交，减少任务调度开销
+        int chunk = (active.size() + numThreads - 1) / numThreads;
+        List<Future<?>> futures = new ArrayList<>(numThreads);
+        for (int from = 0; from < active.size(); from += chunk) {
+            List<Slot> group = active.subList(from, Math.min(from + chunk, active.size()));
+            futures.add(executor.submit((Callable<Void>) () -> {
+                for (Slot slot : group) {
+                    slot.step();
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Episode simulation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Episode simulation failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private ScenarioStats statsFor(ScenarioType type) {
+        return scenarioStats.computeIfAbsent(type, ScenarioStats::new);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (Slot slot : slots) {
+            slot.env.close();
+        }
+    }
+
+    // Getters and Setters
+    public void setDecisionModule(DecisionModule decisionModule) {
+        this.decisionModule = decisionModule;
+    }
+
+    public DecisionModule getDecisionModule() {
+        return decisionModule;
+    }
+
+    public void setBaseSeed(long baseSeed) {
+        this.baseSeed = baseSeed;
+    }
+
+    public void setTransitionConsumer(Consumer<Transition> transitionConsumer) {
+        this.transitionConsumer = transitionConsumer;
+    }
+
+    public void setEpisodeConsumer(Consumer<Episode> episodeConsumer) {
+        this.episodeConsumer = episodeConsumer;
+    }
+
+    public Map<ScenarioType, ScenarioStats> getScenarioStats() {
+        return Collections.unmodifiableMap(scenarioStats);
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    public long getInferenceBatches() {
+        return inferenceBatches;
+    }
+
+    /**
+     * 平均每次批量推理的状态数
+     */
+    public double getAverageBatchSize() {
+        return inferenceBatches == 0 ? 0.0 : (double) totalSteps / inferenceBatches;
+    }
+
+    /**
+     * 总吞吐（步/秒）
+     */
+    public double getStepsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : totalSteps * 1e9 / elapsedNanos;
+    }
+
+    public String getThroughputReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("环境数=%d, 线程数=%d, 总步数=%d (%.1f 步/秒), 平均推理批次=%.1f\n",
+                slots.length, numThreads, totalSteps, getStepsPerSecond(), getAverageBatchSize()));
+        for (ScenarioStats stats : scenarioStats.values()) {
+            sb.append("  ").append(stats).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单个环境槽位：环境实例、感知模块与当前情景的进度
+     */
+    private static class Slot {
+        final SimpleDrivingEnv env;
+        final PerceptionModule perception;
+        EnvironmentConfig scenario;
+        int episodeIndex = -1;
+        int steps;
+        Episode episode;
+        PerceptionState state;
+        DrivingAction action;
+        StepResult result;
+        PerceptionState nextState;
+        long stepNanos;
+
+        Slot(EnvironmentConfig config) {
+            this.env = new SimpleDrivingEnv(config);
+            this.perception = new PerceptionModule(new SensorSuite(env));
+            this.perception.initialize();
+        }
+
+        void step() {
+            long start = System.nanoTime();
+            result = env.step(action);
+            nextState = perception.process(result.getObservation());
+            stepNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 单个场景的吞吐统计
+     */
+    public static class ScenarioStats {
+        private final ScenarioType scenarioType;
+        private long episodes;
+        private long steps;
+        private double totalReward;
+        private long envNanos;
+        private long wallNanos;
+
+        ScenarioStats(ScenarioType scenarioType) {
+            this.scenarioType = scenarioType;
+        }
+
+        public ScenarioType getScenarioType() {
+            return scenarioType;
+        }
+
+        public long getEpisodes() {
+            return episodes;
+        }
+
+        public long getSteps() {
+            return steps;
+        }
+
+        public double getAverageReturn() {
+            return episodes == 0 ? 0.0 : totalReward / episodes;
+        }
+
+        /**
+         * 该场景在运行期间的墙钟吞吐（步/秒）
+         */
+        public double getStepsPerSecond() {
+            return wallNanos == 0 ? 0.0 : steps * 1e9 / wallNanos;
+        }
+
+        /**
+         * 单步仿真（含感知处理）的平均耗时（微秒）
+         */
+        public double getAverageStepMicros() {
+            return steps == 0 ? 0.0 : envNanos / 1e3 / steps;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: 情景=%d, 步数=%d (%.1f 步/秒, 单步%.1fμs), 平均回报=%.2f",
+                    scenarioType.getName(), episodes, steps, getStepsPerSecond(),
+                    getAverageStepMicros(), getAverageReturn());
+        }
+    }
+}
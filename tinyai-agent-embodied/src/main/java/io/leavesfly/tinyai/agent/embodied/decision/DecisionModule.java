@@ -3,6 +3,9 @@ package io.leavesfly.tinyai.agent.embodied.decision;
 import io.leavesfly.tinyai.agent.embodied.model.DrivingAction;
 import io.leavesfly.tinyai.agent.embodied.model.PerceptionState;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 决策模块
  * 基于感知状态生成驾驶动作
@@ -31,7 +34,23 @@ public class DecisionModule {
         return safeAction;
     }
 
+    /**
+     * 批量决策：策略网络一次批量推理，再逐个做安全约束修正
+     */
+    public List<DrivingAction> decideBatch(List<PerceptionState> states) {
+        List<DrivingAction> rawActions = policyNetwork.predictBatch(states);
+        List<DrivingAction> safeActions = new ArrayList<>(rawActions.size());
+        for (int i = 0; i < rawActions.size(); i++) {
+            safeActions.add(safetyConstraint.check(rawActions.get(i), states.get(i)));
+        }
+        return safeActions;
+    }
+
     public void setPolicyNetwork(PolicyNetwork network) {
         this.policyNetwork = network;
     }
+
+    public PolicyNetwork getPolicyNetwork() {
+        return policyNetwork;
+    }
 }
@@ -3,11 +3,25 @@ package io.leavesfly.tinyai.agent.embodied.decision;
 import io.leavesfly.tinyai.agent.embodied.model.DrivingAction;
 import io.leavesfly.tinyai.agent.embodied.model.PerceptionState;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 策略网络接口
  */
 public interface PolicyNetwork {
     DrivingAction predict(PerceptionState state);
+
+    /**
+     * 批量推理，默认逐个调用predict；基于神经网络的实现可覆盖为一次批量前向
+     */
+    default List<DrivingAction> predictBatch(List<PerceptionState> states) {
+        List<DrivingAction> actions = new ArrayList<>(states.size());
+        for (PerceptionState state : states) {
+            actions.add(predict(state));
+        }
+        return actions;
+    }
 }
 
 /**
@@ -7,6 +7,8 @@ import io.leavesfly.tinyai.agent.embodied.model.*;
 import io.leavesfly.tinyai.ndarr.NdArray;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 
@@ -21,6 +23,9 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
     private VehicleDynamics dynamics;
     private VehicleState egoVehicle;  // 自车状态
     private List<ObstacleInfo> obstacles;  // 障碍物列表
+    private ObstacleGrid obstacleGrid;     // 障碍物空间索引，与obstacles同步维护
+    private List<ObstacleInfo> observedObstacles;  // 当前时刻的障碍物快照（只读），同一时刻的观测共享，状态变化时置空
+    private ObstacleGrid observedGrid;             // 障碍物快照的空间索引，建立后不再修改
     private LaneGeometry laneInfo;
     
     private int currentStep;
@@ -41,6 +46,7 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
         this.dynamics = new VehicleDynamics();
         this.dynamics.setFrictionCoeff(config.getFrictionCoeff());
         this.obstacles = new ArrayList<>();
+        this.obstacleGrid = new ObstacleGrid();
         this.random = new Random();
         reset();
     }
@@ -113,7 +119,11 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
         PerceptionState state = new PerceptionState();
         state.setVehicleState(egoVehicle);
         state.setLaneInfo(laneInfo);
-        state.setObstacleMap(new ArrayList<>(obstacles));
+        // 观测保存障碍物快照，之后的step和reset不会改变已返回状态的查询结果；
+        // 环境内部的obstacleGrid持续变化，不能挂到观测上，快照及其索引每个时刻只建立一次，由该时刻的所有观测共享
+        takeSnapshot();
+        state.setObstacleMap(observedObstacles);
+        state.setObstacleIndex(observedGrid);
         
         // 简化的特征表示（实际应用中需要更复杂的处理）
         // 视觉特征：简单编码车道和障碍物信息
@@ -124,11 +134,9 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
         
         // 激光雷达特征：距离信息
         float[] lidarFeatures = new float[128];
-        if (!obstacles.isEmpty()) {
-            ObstacleInfo nearest = state.getNearestObstacle();
-            if (nearest != null) {
-                lidarFeatures[0] = (float) nearest.getDistance();
-            }
+        ObstacleInfo nearest = observedGrid.nearest();
+        if (nearest != null) {
+            lidarFeatures[0] = (float) nearest.getDistance();
         }
         state.setLidarFeatures(NdArray.of(lidarFeatures));
         
@@ -194,6 +202,13 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
         this.dynamics.setFrictionCoeff(config.getFrictionCoeff());
     }
 
+    /**
+     * 设置随机种子，之后的reset按该种子生成障碍物，便于复现情景
+     */
+    public void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
     @Override
     public ScenarioType getScenarioType() {
         return config.getScenarioType();
@@ -203,6 +218,34 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
     public void close() {
         // 清理资源
         obstacles.clear();
+        obstacleGrid.clear();
+        invalidateSnapshot();
+    }
+
+    /**
+     * 复制当前障碍物并为副本建立空间索引；障碍物自上次快照后未变化时直接复用
+     */
+    private void takeSnapshot() {
+        if (observedObstacles != null) {
+            return;
+        }
+        List<ObstacleInfo> snapshot = new ArrayList<>(obstacles.size());
+        ObstacleGrid grid = new ObstacleGrid(obstacleGrid.getCellSize());
+        for (ObstacleInfo obstacle : obstacles) {
+            ObstacleInfo copy = obstacle.copy();
+            snapshot.add(copy);
+            grid.insert(copy);
+        }
+        observedObstacles = Collections.unmodifiableList(snapshot);
+        observedGrid = grid;
+    }
+
+    /**
+     * 障碍物变化后丢弃快照，下次观测时重新建立
+     */
+    private void invalidateSnapshot() {
+        observedObstacles = null;
+        observedGrid = null;
     }
 
     /**
@@ -210,6 +253,8 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
      */
     private void generateObstacles() {
         obstacles.clear();
+        obstacleGrid.clear();
+        invalidateSnapshot();
         
         int numObstacles = config.getVehicleDensity() * (int)(config.getRoadLength() / 1000.0);
         
@@ -238,6 +283,7 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
             );
             
             obstacles.add(obstacle);
+            obstacleGrid.insert(obstacle);
         }
     }
 
@@ -263,13 +309,22 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
      * 更新障碍物相对位置
      */
     private void updateObstacles() {
-        for (ObstacleInfo obstacle : obstacles) {
+        double dx = egoVehicle.getSpeed() * config.getTimeStep();
+        invalidateSnapshot();
+        Iterator<ObstacleInfo> iterator = obstacles.iterator();
+        while (iterator.hasNext()) {
+            ObstacleInfo obstacle = iterator.next();
             // 更新相对位置
             Vector3D relPos = obstacle.getPosition();
-            relPos.setX(relPos.getX() - egoVehicle.getSpeed() * config.getTimeStep());
+            relPos.setX(relPos.getX() - dx);
             
             // 移除超出范围的障碍物
-            obstacles.removeIf(obs -> obs.getPosition().getX() < -50);
+            if (relPos.getX() < -50) {
+                iterator.remove();
+                obstacleGrid.remove(obstacle);
+            } else {
+                obstacleGrid.update(obstacle);
+            }
         }
     }
 
@@ -309,11 +364,9 @@ public class SimpleDrivingEnv implements DrivingEnvironment {
      * 检查碰撞
      */
     private boolean checkCollision() {
-        for (ObstacleInfo obstacle : obstacles) {
-            double distance = obstacle.getDistance();
-            
-            // 简化的碰撞检测：基于距离
-            if (distance < 3.0) {  // 碰撞阈值3米
+        // 简化的碰撞检测：基于距离，只检查自车附近的网格单元
+        for (ObstacleInfo obstacle : obstacleGrid.queryRange(3.0)) {
+            if (obstacle.getDistance() < 3.0) {  // 碰撞阈值3米
                 return true;
             }
         }
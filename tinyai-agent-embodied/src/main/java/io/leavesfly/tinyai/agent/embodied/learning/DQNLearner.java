@@ -5,9 +5,8 @@ import io.leavesfly.tinyai.agent.embodied.model.DrivingAction;
 import io.leavesfly.tinyai.agent.embodied.model.PerceptionState;
 import io.leavesfly.tinyai.agent.embodied.model.Transition;
 import io.leavesfly.tinyai.ndarr.NdArray;
-import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.rl.ParameterSync;
 
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -28,6 +27,7 @@ public class DQNLearner {
     private double epsilon;        // 探索率
     private int batchSize;
     private int updateFrequency;   // 目标网络更新频率
+    private double targetTau;      // 目标网络软更新系数，0表示按频率硬更新
     private int stepCount;
     
     private Random random;
@@ -66,19 +66,23 @@ public class DQNLearner {
             return;
         }
 
-        // 采样一批转移
-        List<Transition> batch = memory.sampleBatch(batchSize);
+        // 按优先级采样一批转移
+        int[] indices = memory.samplePrioritizedIndices(batchSize);
         
         // 计算TD误差并更新Q网络
         double totalLoss = 0.0;
-        for (Transition transition : batch) {
-            double loss = updateQValue(transition);
-            totalLoss += loss;
+        double[] tdErrors = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            tdErrors[i] = updateQValue(memory.getTransition(indices[i]));
+            totalLoss += tdErrors[i];
         }
+        memory.updatePriorities(indices, tdErrors);
         
-        // 定期更新目标网络
+        // 更新目标网络
         stepCount++;
-        if (stepCount % updateFrequency == 0) {
+        if (targetTau > 0) {
+            ParameterSync.polyak(qNetwork.getArray(), targetNetwork.getArray(), (float) targetTau);
+        } else if (stepCount % updateFrequency == 0) {
             updateTargetNetwork();
         }
         
@@ -125,9 +129,9 @@ public class DQNLearner {
         float[] stateFeatures = extractStateFeatures(state);
         
         double q = 0.0;
-        int weightSize = qNetwork.getShape().size();
-        for (int i = 0; i < STATE_DIM && i < weightSize; i++) {
-            q += stateFeatures[i] * qNetwork.get(i);
+        float[] weights = qNetwork.getArray();
+        for (int i = 0; i < STATE_DIM && i < weights.length; i++) {
+            q += stateFeatures[i] * weights[i];
         }
         
         return q;
@@ -175,13 +179,8 @@ public class DQNLearner {
      * 更新目标网络
      */
     private void updateTargetNetwork() {
-        // 复制网络参数
-        Shape shape = qNetwork.getShape();
-        float[] weights = new float[shape.size()];
-        for (int i = 0; i < shape.size(); i++) {
-            weights[i] = qNetwork.get(i);
-        }
-        targetNetwork = NdArray.of(weights);
+        // 直接拷贝到预分配的目标网络数组
+        ParameterSync.copy(qNetwork.getArray(), targetNetwork.getArray());
     }
 
     /**
@@ -238,6 +237,13 @@ public class DQNLearner {
         this.gamma = gamma;
     }
 
+    /**
+     * 设置目标网络软更新系数，0表示按更新频率硬更新
+     */
+    public void setTargetTau(double targetTau) {
+        this.targetTau = targetTau;
+    }
+
     public void setEpsilon(double epsilon) {
         this.epsilon = epsilon;
     }
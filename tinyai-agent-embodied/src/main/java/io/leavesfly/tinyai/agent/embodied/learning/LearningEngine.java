@@ -5,6 +5,7 @@ import io.leavesfly.tinyai.agent.embodied.model.Episode;
 import io.leavesfly.tinyai.agent.embodied.model.LearningStrategy;
 import io.leavesfly.tinyai.agent.embodied.model.DrivingAction;
 import io.leavesfly.tinyai.agent.embodied.model.PerceptionState;
+import io.leavesfly.tinyai.agent.embodied.model.Transition;
 
 /**
  * 学习引擎
@@ -17,6 +18,10 @@ public class LearningEngine {
     private EpisodicMemory memory;
     private boolean trainingMode;
     
+    // 流式学习：每收到learnInterval个转移触发一次学习
+    private int learnInterval;
+    private int pendingTransitions;
+    
     // 具体学习器
     private DQNLearner dqnLearner;
     private EndToEndLearner endToEndLearner;
@@ -25,6 +30,7 @@ public class LearningEngine {
         this.memory = new EpisodicMemory();
         this.currentStrategy = LearningStrategy.END_TO_END;
         this.trainingMode = false;
+        this.learnInterval = 32;
         
         // 初始化学习器
         this.dqnLearner = new DQNLearner();
@@ -62,6 +68,29 @@ public class LearningEngine {
         }
     }
     
+    /**
+     * 流式接收单个转移：立即写入回放缓冲区，训练模式下每累积learnInterval个转移学习一次，
+     * 无需等待整个情景结束
+     */
+    public void observeTransition(Transition transition) {
+        memory.storeTransition(transition);
+        pendingTransitions++;
+        if (!trainingMode || pendingTransitions < learnInterval) {
+            return;
+        }
+        pendingTransitions = 0;
+        switch (currentStrategy) {
+            case DQN:
+                dqnLearner.learn(memory);
+                break;
+            case END_TO_END:
+                endToEndLearner.learn(memory);
+                break;
+            default:
+                break;
+        }
+    }
+    
     /**
      * 根据当前策略选择动作
      */
@@ -98,6 +127,14 @@ public class LearningEngine {
         this.trainingMode = false;
     }
 
+    public void setLearnInterval(int learnInterval) {
+        this.learnInterval = Math.max(1, learnInterval);
+    }
+
+    public int getLearnInterval() {
+        return learnInterval;
+    }
+
     public EpisodicMemory getMemory() {
         return memory;
     }
@@ -3,20 +3,31 @@ package io.leavesfly.tinyai.agent.embodied.memory;
 import io.leavesfly.tinyai.agent.embodied.model.Episode;
 import io.leavesfly.tinyai.agent.embodied.model.ScenarioType;
 import io.leavesfly.tinyai.agent.embodied.model.Transition;
+import io.leavesfly.tinyai.rl.SumTree;
 
 import java.util.*;
 
 /**
  * 情景记忆管理
  * 存储和管理驾驶情景数据
+ * 回放缓冲区为定长环形数组，写满后覆盖最旧的转移；
+ * 优先级保存在SumTree中，支持按TD误差的优先采样
  *
  * @author TinyAI Team
  */
 public class EpisodicMemory {
+    private static final double PRIORITY_ALPHA = 0.6;
+    private static final double PRIORITY_EPSILON = 1e-6;
+
     private Map<String, Episode> episodes;
-    private List<Transition> replayBuffer;
+    private Transition[] replayBuffer;
+    private SumTree priorities;
+    private int position;
+    private int bufferSize;
+    private double maxPriority;
     private int maxBufferSize;
     private int maxEpisodes;
+    private Random random;
 
     public EpisodicMemory() {
         this(10000, 100);
@@ -24,9 +35,12 @@ public class EpisodicMemory {
 
     public EpisodicMemory(int maxBufferSize, int maxEpisodes) {
         this.episodes = new LinkedHashMap<>();
-        this.replayBuffer = new ArrayList<>();
+        this.replayBuffer = new Transition[maxBufferSize];
+        this.priorities = new SumTree(maxBufferSize);
+        this.maxPriority = 1.0;
         this.maxBufferSize = maxBufferSize;
         this.maxEpisodes = maxEpisodes;
+        this.random = new Random();
     }
 
     /**
@@ -51,11 +65,12 @@ public class EpisodicMemory {
      * 存储单个转移
      */
     public void storeTransition(Transition transition) {
-        replayBuffer.add(transition);
-        
-        // 限制缓冲区大小
-        while (replayBuffer.size() > maxBufferSize) {
-            replayBuffer.remove(0);
+        // 环形覆盖最旧的转移，新转移使用当前最大优先级
+        replayBuffer[position] = transition;
+        priorities.set(position, (float) Math.pow(maxPriority, PRIORITY_ALPHA));
+        position = (position + 1) % maxBufferSize;
+        if (bufferSize < maxBufferSize) {
+            bufferSize++;
         }
     }
 
@@ -63,21 +78,46 @@ public class EpisodicMemory {
      * 随机采样批次
      */
     public List<Transition> sampleBatch(int batchSize) {
-        if (replayBuffer.isEmpty()) {
-            return new ArrayList<>();
-        }
-        
         List<Transition> batch = new ArrayList<>();
-        Random random = new Random();
-        
-        for (int i = 0; i < Math.min(batchSize, replayBuffer.size()); i++) {
-            int idx = random.nextInt(replayBuffer.size());
-            batch.add(replayBuffer.get(idx));
+        for (int i = 0; i < Math.min(batchSize, bufferSize); i++) {
+            batch.add(replayBuffer[random.nextInt(bufferSize)]);
         }
-        
         return batch;
     }
 
+    /**
+     * 按优先级采样槽位下标，配合getTransition与updatePriorities使用
+     */
+    public int[] samplePrioritizedIndices(int batchSize) {
+        int count = Math.min(batchSize, bufferSize);
+        int[] indices = new int[count];
+        if (count == 0) {
+            return indices;
+        }
+        float total = priorities.total();
+        float segment = total / count;
+        for (int i = 0; i < count; i++) {
+            float prefix = Math.min((i + random.nextFloat()) * segment, Math.nextDown(total));
+            indices[i] = priorities.find(prefix);
+        }
+        return indices;
+    }
+
+    /**
+     * 用TD误差更新转移的优先级
+     */
+    public void updatePriorities(int[] indices, double[] tdErrors) {
+        for (int i = 0; i < indices.length; i++) {
+            double priority = Math.abs(tdErrors[i]) + PRIORITY_EPSILON;
+            maxPriority = Math.max(maxPriority, priority);
+            priorities.set(indices[i], (float) Math.pow(priority, PRIORITY_ALPHA));
+        }
+    }
+
+    public Transition getTransition(int index) {
+        return replayBuffer[index];
+    }
+
     /**
      * 获取指定场景的所有情景
      */
@@ -105,7 +145,11 @@ public class EpisodicMemory {
      */
     public void clear() {
         episodes.clear();
-        replayBuffer.clear();
+        Arrays.fill(replayBuffer, null);
+        priorities.clear();
+        position = 0;
+        bufferSize = 0;
+        maxPriority = 1.0;
     }
 
     public int getEpisodeCount() {
@@ -113,7 +157,7 @@ public class EpisodicMemory {
     }
 
     public int getBufferSize() {
-        return replayBuffer.size();
+        return bufferSize;
     }
 
     public Episode getEpisode(String episodeId) {
@@ -0,0 +1,250 @@
+package io.leavesfly.tinyai.agent.embodied.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 障碍物空间哈希网格
+ * 按障碍物相对自车位置的x/y坐标划分为边长cellSize的单元，单元按需创建，道路长度不受限制。
+ * 最近邻查询从自车所在单元开始按环逐层向外扩展，环的下界距离超过当前最优值即停止；
+ * 范围查询只访问与查询圆相交的单元。
+ * 障碍物位置变化后调用update，只有跨越单元边界时才会在单元之间迁移。
+ *
+ * @author TinyAI Team
+ */
+public class ObstacleGrid {
+    private final double cellSize;
+    private final Map<Long, List<ObstacleInfo>> cells;
+    private final Map<ObstacleInfo, Long> cellKeys;
+
+    // 已占用单元的坐标范围（只增不减，clear时重置），用于限制最近邻搜索的环数
+    private int minCx;
+    private int maxCx;
+    private int minCy;
+    private int maxCy;
+
+    public ObstacleGrid() {
+        this(10.0);
+    }
+
+    public ObstacleGrid(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.cells = new HashMap<>();
+        this.cellKeys = new IdentityHashMap<>();
+        resetBounds();
+    }
+
+    /**
+     * 插入障碍物，已存在时等价于update
+     */
+    public void insert(ObstacleInfo obstacle) {
+        if (cellKeys.containsKey(obstacle)) {
+            update(obstacle);
+            return;
+        }
+        int cx = cell(obstacle.getPosition().getX());
+        int cy = cell(obstacle.getPosition().getY());
+        long key = key(cx, cy);
+        cellKeys.put(obstacle, key);
+        addToCell(key, obstacle);
+        expandBounds(cx, cy);
+    }
+
+    /**
+     * 移除障碍物
+     */
+    public boolean remove(ObstacleInfo obstacle) {
+        Long key = cellKeys.remove(obstacle);
+        if (key == null) {
+            return false;
+        }
+        removeFromCell(key, obstacle);
+        return true;
+    }
+
+    /**
+     * 障碍物位置变化后更新所在单元
+     */
+    public void update(ObstacleInfo obstacle) {
+        Long old = cellKeys.get(obstacle);
+        if (old == null) {
+            insert(obstacle);
+            return;
+        }
+        int cx = cell(obstacle.getPosition().getX());
+        int cy = cell(obstacle.getPosition().getY());
+        long key = key(cx, cy);
+        if (key == old) {
+            return;
+        }
+        removeFromCell(old, obstacle);
+        addToCell(key, obstacle);
+        cellKeys.put(obstacle, key);
+        expandBounds(cx, cy);
+    }
+
+    public void clear() {
+        cells.clear();
+        cellKeys.clear();
+        resetBounds();
+    }
+
+    public int size() {
+        return cellKeys.size();
+    }
+
+    /**
+     * 距自车（原点）最近的障碍物，索引为空时返回null
+     */
+    public ObstacleInfo nearest() {
+        List<ObstacleInfo> result = nearest(1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * 距自车最近的k个障碍物，按距离升序
+     */
+    public List<ObstacleInfo> nearest(int k) {
+        if (k <= 0 || cellKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 大顶堆保存当前最近的k个
+        PriorityQueue<ObstacleInfo> heap = new PriorityQueue<>(k + 1,
+                (a, b) -> Double.compare(b.getDistance(), a.getDistance()));
+        int maxRing = Math.max(Math.max(Math.abs(minCx), Math.abs(maxCx)),
+                Math.max(Math.abs(minCy), Math.abs(maxCy))) + 1;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // 原点位于单元(0,0)的角点，第ring环上的点距原点至少(ring-1)*cellSize
+            if (heap.size() == k && heap.peek().getDistance() <= Math.max(0, ring - 1) * cellSize) {
+                break;
+            }
+            // 只遍历第ring环与已占用范围的交集；环的上下两行都不在占用范围内时只需访问左右两列
+            boolean edgeRowsOccupied = -ring >= minCy || ring <= maxCy;
+            int columnStep = edgeRowsOccupied || ring == 0 ? 1 : 2 * ring;
+            for (int cx = -ring; cx <= ring; cx += columnStep) {
+                if (cx < minCx || cx > maxCx) {
+                    continue;
+                }
+                boolean edgeColumn = cx == -ring || cx == ring;
+                for (int cy = Math.max(-ring, minCy); cy <= Math.min(ring, maxCy); cy++) {
+                    if (!edgeColumn && cy != -ring && cy != ring) {
+                        continue;
+                    }
+                    List<ObstacleInfo> cell = cells.get(key(cx, cy));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (ObstacleInfo obstacle : cell) {
+                        heap.offer(obstacle);
+                        if (heap.size() > k) {
+                            heap.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<ObstacleInfo> result = new ArrayList<>(heap);
+        result.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return result;
+    }
+
+    /**
+     * 距自车range以内的障碍物
+     */
+    public List<ObstacleInfo> queryRange(double range) {
+        List<ObstacleInfo> result = new ArrayList<>();
+        int lo = cell(-range);
+        int hi = cell(range);
+        for (int cx = lo; cx <= hi; cx++) {
+            for (int cy = lo; cy <= hi; cy++) {
+                List<ObstacleInfo> cell = cells.get(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (ObstacleInfo obstacle : cell) {
+                    if (obstacle.getDistance() <= range) {
+                        result.add(obstacle);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 统计距自车range以内的障碍物数量
+     */
+    public int countInRange(double range) {
+        int count = 0;
+        int lo = cell(-range);
+        int hi = cell(range);
+        for (int cx = lo; cx <= hi; cx++) {
+            for (int cy = lo; cy <= hi; cy++) {
+                List<ObstacleInfo> cell = cells.get(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (ObstacleInfo obstacle : cell) {
+                    if (obstacle.getDistance() <= range) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    private void addToCell(long key, ObstacleInfo obstacle) {
+        cells.computeIfAbsent(key, k -> new ArrayList<>(4)).add(obstacle);
+    }
+
+    private void removeFromCell(long key, ObstacleInfo obstacle) {
+        List<ObstacleInfo> cell = cells.get(key);
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0; i < cell.size(); i++) {
+            if (cell.get(i) == obstacle) {
+                cell.remove(i);
+                break;
+            }
+        }
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    private void expandBounds(int cx, int cy) {
+        minCx = Math.min(minCx, cx);
+        maxCx = Math.max(maxCx, cx);
+        minCy = Math.min(minCy, cy);
+        maxCy = Math.max(maxCy, cy);
+    }
+
+    private void resetBounds() {
+        minCx = 0;
+        maxCx = 0;
+        minCy = 0;
+        maxCy = 0;
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+}
@@ -29,6 +29,16 @@ public class ObstacleInfo {
         return position.magnitude();
     }
 
+    /**
+     * 复制当前状态的快照，位置和速度向量独立复制，包围盒在运动中不变故共享
+     */
+    public ObstacleInfo copy() {
+        return new ObstacleInfo(objectType,
+                new Vector3D(position.getX(), position.getY(), position.getZ()),
+                new Vector3D(velocity.getX(), velocity.getY(), velocity.getZ()),
+                boundingBox, confidence);
+    }
+
     /**
      * 判断是否为危险障碍物（距离近且速度快）
      */
@@ -18,6 +18,11 @@ public class PerceptionState {
     private List<ObstacleInfo> obstacleMap;  // 障碍物列表
     private LaneGeometry laneInfo;       // 车道信息
     private long timestamp;              // 时间戳
+    private ObstacleGrid obstacleIndex;  // 障碍物空间索引（与obstacleMap内容一致）
+    private int indexedSize = -1;        // 惰性建立索引时obstacleMap的大小，-1表示索引由外部设置
+
+    // 障碍物数量超过该值时才在首次查询时惰性建立索引，数量较少时线性扫描更快
+    private static final int LAZY_INDEX_THRESHOLD = 32;
 
     public PerceptionState() {
         this.obstacleMap = new ArrayList<>();
@@ -31,6 +36,10 @@ public class PerceptionState {
         if (obstacleMap == null || obstacleMap.isEmpty()) {
             return null;
         }
+        ObstacleGrid index = index();
+        if (index != null) {
+            return index.nearest();
+        }
 
         ObstacleInfo nearest = obstacleMap.get(0);
         double minDistance = nearest.getDistance();
@@ -50,6 +59,10 @@ public class PerceptionState {
      * 统计指定范围内的障碍物数量
      */
     public int countObstaclesInRange(double range) {
+        ObstacleGrid index = index();
+        if (index != null) {
+            return index.countInRange(range);
+        }
         int count = 0;
         for (ObstacleInfo obstacle : obstacleMap) {
             if (obstacle.getDistance() <= range) {
@@ -59,6 +72,42 @@ public class PerceptionState {
         return count;
     }
 
+    /**
+     * 获取最近的k个障碍物，按距离升序
+     */
+    public List<ObstacleInfo> getNearestObstacles(int k) {
+        if (obstacleMap == null || obstacleMap.isEmpty() || k <= 0) {
+            return new ArrayList<>();
+        }
+        ObstacleGrid index = index();
+        if (index != null) {
+            return index.nearest(k);
+        }
+        List<ObstacleInfo> sorted = new ArrayList<>(obstacleMap);
+        sorted.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+    /**
+     * 当前可用的空间索引：外部设置的索引直接使用；否则障碍物较多时按obstacleMap惰性建立，
+     * 列表大小变化后重建。惰性索引按建立时的障碍物位置划分单元，obstacleMap中的障碍物应为快照，不应原地移动
+     */
+    private ObstacleGrid index() {
+        if (obstacleIndex != null && (indexedSize < 0 || indexedSize == obstacleMap.size())) {
+            return obstacleIndex;
+        }
+        if (obstacleMap == null || obstacleMap.size() <= LAZY_INDEX_THRESHOLD) {
+            return null;
+        }
+        ObstacleGrid grid = new ObstacleGrid();
+        for (ObstacleInfo obstacle : obstacleMap) {
+            grid.insert(obstacle);
+        }
+        obstacleIndex = grid;
+        indexedSize = obstacleMap.size();
+        return grid;
+    }
+
     /**
      * 获取危险障碍物列表
      */
@@ -103,6 +152,22 @@ public class PerceptionState {
 
     public void setObstacleMap(List<ObstacleInfo> obstacleMap) {
         this.obstacleMap = obstacleMap;
+        // 列表被替换后原索引不再对应
+        this.obstacleIndex = null;
+        this.indexedSize = -1;
+    }
+
+    public ObstacleGrid getObstacleIndex() {
+        return obstacleIndex;
+    }
+
+    /**
+     * 设置障碍物空间索引，需与当前obstacleMap中的障碍物一致，且在本状态的使用期间保持一致；
+     * 会被继续修改的索引（如环境内部维护的索引）不应设置到需要保存的状态上
+     */
+    public void setObstacleIndex(ObstacleGrid obstacleIndex) {
+        this.obstacleIndex = obstacleIndex;
+        this.indexedSize = -1;
     }
 
     public LaneGeometry getLaneInfo() {
@@ -40,8 +40,7 @@ public class FeatureExtractor {
         // 障碍物特征（编码最近的几个障碍物）
         if (state.getObstacleMap() != null && !state.getObstacleMap().isEmpty()) {
             int idx = 8;
-            for (int i = 0; i < Math.min(5, state.getObstacleMap().size()) && idx < VISUAL_FEATURE_DIM - 4; i++) {
-                ObstacleInfo obs = state.getObstacleMap().get(i);
+            for (ObstacleInfo obs : state.getNearestObstacles(5)) {
                 features[idx++] = (float) obs.getDistance();
                 features[idx++] = (float) obs.getPosition().getX();
                 features[idx++] = (float) obs.getPosition().getY();
@@ -0,0 +1,80 @@
+package io.leavesfly.tinyai.agent.embodied;
+
+import io.leavesfly.tinyai.agent.embodied.env.EnvironmentConfig;
+import io.leavesfly.tinyai.agent.embodied.learning.LearningEngine;
+import io.leavesfly.tinyai.agent.embodied.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 并行情景运行器测试类
+ *
+ * @author TinyAI Team
+ */
+public class ParallelEpisodeRunnerTest {
+
+    private List<EnvironmentConfig> scenarios() {
+        EnvironmentConfig highway = EnvironmentConfig.createHighwayConfig();
+        highway.setMaxSteps(60);
+        EnvironmentConfig test = EnvironmentConfig.createTestConfig();
+        test.setMaxSteps(40);
+        return Arrays.asList(highway, test);
+    }
+
+    @Test
+    public void testEpisodesAreReproducibleAcrossWorkerCounts() {
+        List<Episode> serial;
+        try (ParallelEpisodeRunner runner = new ParallelEpisodeRunner(scenarios(), 1, 1)) {
+            runner.setBaseSeed(42);
+            serial = runner.run(6, 50);
+        }
+        List<Episode> parallel;
+        try (ParallelEpisodeRunner runner = new ParallelEpisodeRunner(scenarios(), 4, 3)) {
+            runner.setBaseSeed(42);
+            parallel = runner.run(6, 50);
+            assertTrue(runner.getAverageBatchSize() > 1.0);
+        }
+
+        assertEquals(6, parallel.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(serial.get(i).getEpisodeId(), parallel.get(i).getEpisodeId());
+            assertEquals(serial.get(i).getLength(), parallel.get(i).getLength());
+            assertEquals(serial.get(i).getTotalReward(), parallel.get(i).getTotalReward(), 1e-9);
+            assertEquals(i % 2 == 0 ? ScenarioType.HIGHWAY : ScenarioType.TEST,
+                    parallel.get(i).getScenarioType());
+        }
+    }
+
+    @Test
+    public void testTransitionsStreamIntoLearner() {
+        LearningEngine engine = new LearningEngine();
+        engine.setStrategy(LearningStrategy.DQN);
+        engine.enableTraining();
+        engine.setLearnInterval(16);
+
+        AtomicInteger finished = new AtomicInteger();
+        try (ParallelEpisodeRunner runner = new ParallelEpisodeRunner(scenarios(), 3, 2)) {
+            runner.attachLearningEngine(engine);
+            runner.setEpisodeConsumer(episode -> finished.incrementAndGet());
+            List<Episode> episodes = runner.run(4, 30);
+
+            int totalTransitions = episodes.stream().mapToInt(Episode::getLength).sum();
+            assertEquals(totalTransitions, runner.getTotalSteps());
+            assertEquals(totalTransitions, engine.getMemory().getBufferSize());
+            assertEquals(4, finished.get());
+
+            ParallelEpisodeRunner.ScenarioStats highway = runner.getScenarioStats().get(ScenarioType.HIGHWAY);
+            ParallelEpisodeRunner.ScenarioStats test = runner.getScenarioStats().get(ScenarioType.TEST);
+            assertEquals(2, highway.getEpisodes());
+            assertEquals(2, test.getEpisodes());
+            assertEquals(totalTransitions, highway.getSteps() + test.getSteps());
+            assertTrue(highway.getStepsPerSecond() > 0);
+            assertNotNull(runner.getThroughputReport());
+        }
+    }
+}
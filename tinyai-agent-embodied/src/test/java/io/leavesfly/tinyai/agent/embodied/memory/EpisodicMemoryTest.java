@@ -0,0 +1,60 @@
+package io.leavesfly.tinyai.agent.embodied.memory;
+
+import io.leavesfly.tinyai.agent.embodied.model.DrivingAction;
+import io.leavesfly.tinyai.agent.embodied.model.PerceptionState;
+import io.leavesfly.tinyai.agent.embodied.model.Transition;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 情景记忆测试类
+ *
+ * @author TinyAI Team
+ */
+public class EpisodicMemoryTest {
+
+    private Transition transition(double reward) {
+        return new Transition(new PerceptionState(), new DrivingAction(0.0, 0.3, 0.0), reward,
+                new PerceptionState(), false);
+    }
+
+    @Test
+    public void testRingBufferEvictsOldest() {
+        EpisodicMemory memory = new EpisodicMemory(3, 10);
+        for (int i = 0; i < 5; i++) {
+            memory.storeTransition(transition(i));
+        }
+        assertEquals(3, memory.getBufferSize());
+        // 槽位0、1已被第3、4条覆盖
+        assertEquals(3.0, memory.getTransition(0).getReward(), 1e-9);
+        assertEquals(4.0, memory.getTransition(1).getReward(), 1e-9);
+        assertEquals(2.0, memory.getTransition(2).getReward(), 1e-9);
+        assertEquals(3, memory.sampleBatch(10).size());
+
+        memory.clear();
+        assertEquals(0, memory.getBufferSize());
+        assertTrue(memory.sampleBatch(4).isEmpty());
+    }
+
+    @Test
+    public void testPrioritizedSampling() {
+        EpisodicMemory memory = new EpisodicMemory(4, 10);
+        for (int i = 0; i < 4; i++) {
+            memory.storeTransition(transition(i));
+        }
+        memory.updatePriorities(new int[]{0, 1, 2, 3}, new double[]{0.0, 50.0, 0.0, 0.0});
+
+        int hits = 0;
+        for (int round = 0; round < 25; round++) {
+            int[] indices = memory.samplePrioritizedIndices(10);
+            assertEquals(4, indices.length);
+            for (int index : indices) {
+                if (index == 1) {
+                    hits++;
+                }
+            }
+        }
+        assertTrue(hits > 90);
+    }
+}
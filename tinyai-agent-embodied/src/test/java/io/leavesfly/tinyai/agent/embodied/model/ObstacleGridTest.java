@@ -0,0 +1,145 @@
+package io.leavesfly.tinyai.agent.embodied.model;
+
+import io.leavesfly.tinyai.agent.embodied.env.EnvironmentConfig;
+import io.leavesfly.tinyai.agent.embodied.env.impl.SimpleDrivingEnv;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 障碍物空间索引测试类
+ *
+ * @author TinyAI Team
+ */
+public class ObstacleGridTest {
+
+    private ObstacleInfo createObstacle(double x, double y) {
+        return new ObstacleInfo(ObstacleType.VEHICLE, new Vector3D(x, y, 0),
+                new Vector3D(0, 0, 0), new BoundingBox(4.5, 1.8, 1.5), 0.9);
+    }
+
+    @Test
+    public void testQueriesMatchLinearScanAfterMoves() {
+        Random random = new Random(3);
+        List<ObstacleInfo> obstacles = new ArrayList<>();
+        ObstacleGrid grid = new ObstacleGrid(10.0);
+        for (int i = 0; i < 200; i++) {
+            ObstacleInfo obstacle = createObstacle(random.nextDouble() * 1000 - 100, random.nextDouble() * 14);
+            obstacles.add(obstacle);
+            grid.insert(obstacle);
+        }
+
+        for (int step = 0; step < 20; step++) {
+            for (ObstacleInfo obstacle : obstacles) {
+                Vector3D position = obstacle.getPosition();
+                position.setX(position.getX() - 7.5);
+                grid.update(obstacle);
+            }
+
+            PerceptionState linear = new PerceptionState();
+            linear.setObstacleMap(new ArrayList<>(obstacles));
+            PerceptionState indexed = new PerceptionState();
+            indexed.setObstacleMap(new ArrayList<>(obstacles));
+            indexed.setObstacleIndex(grid);
+
+            assertSame(linear.getNearestObstacle(), indexed.getNearestObstacle());
+            assertEquals(linear.getNearestObstacles(5), indexed.getNearestObstacles(5));
+            assertEquals(linear.countObstaclesInRange(20.0), indexed.countObstaclesInRange(20.0));
+            assertEquals(linear.countObstaclesInRange(50.0), indexed.countObstaclesInRange(50.0));
+        }
+        assertEquals(200, grid.size());
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        ObstacleGrid grid = new ObstacleGrid(10.0);
+        ObstacleInfo near = createObstacle(5, 1);
+        ObstacleInfo far = createObstacle(200, 3);
+        grid.insert(near);
+        grid.insert(far);
+
+        assertSame(near, grid.nearest());
+        assertEquals(1, grid.countInRange(10.0));
+
+        assertTrue(grid.remove(near));
+        assertFalse(grid.remove(near));
+        assertSame(far, grid.nearest());
+        assertTrue(grid.queryRange(100.0).isEmpty());
+
+        grid.clear();
+        assertEquals(0, grid.size());
+        assertNull(grid.nearest());
+    }
+
+    @Test
+    public void testReplacingObstacleMapDropsIndex() {
+        ObstacleGrid grid = new ObstacleGrid();
+        grid.insert(createObstacle(30, 0));
+        PerceptionState state = new PerceptionState();
+        List<ObstacleInfo> list = new ArrayList<>();
+        list.add(createObstacle(60, 0));
+        state.setObstacleMap(list);
+        state.setObstacleIndex(grid);
+        state.setObstacleMap(list);
+
+        assertNull(state.getObstacleIndex());
+        assertEquals(60.0, state.getNearestObstacle().getDistance(), 1e-6);
+    }
+
+    @Test
+    public void testStoredObservationUnaffectedByLaterSteps() {
+        EnvironmentConfig config = EnvironmentConfig.createTestConfig();
+        config.setVehicleDensity(20);
+        config.setRoadLength(5000.0);
+        SimpleDrivingEnv env = new SimpleDrivingEnv(config);
+        PerceptionState stored = env.getObservation();
+        List<ObstacleInfo> obstacles = stored.getObstacleMap();
+        assertTrue(obstacles.size() > 32);
+
+        double nearestDistance = obstacles.stream().mapToDouble(ObstacleInfo::getDistance).min().getAsDouble();
+        long inRange = obstacles.stream().filter(o -> o.getDistance() <= 300.0).count();
+        List<ObstacleInfo> sorted = new ArrayList<>(obstacles);
+        sorted.sort(Comparator.comparingDouble(ObstacleInfo::getDistance));
+
+        for (int i = 0; i < 10; i++) {
+            env.step(new DrivingAction(0.0, 1.0, 0.0));
+        }
+        env.reset();
+
+        // 保存的状态仍按自身的障碍物快照回答查询
+        assertEquals(nearestDistance, stored.getNearestObstacle().getDistance(), 1e-9);
+        assertEquals(inRange, stored.countObstaclesInRange(300.0));
+        assertEquals(sorted.subList(0, 5), stored.getNearestObstacles(5));
+        assertTrue(obstacles.contains(stored.getNearestObstacle()));
+    }
+
+    @Test
+    public void testObservationsInSameTickShareSnapshotIndex() {
+        EnvironmentConfig config = EnvironmentConfig.createTestConfig();
+        config.setVehicleDensity(20);
+        config.setRoadLength(5000.0);
+        SimpleDrivingEnv env = new SimpleDrivingEnv(config);
+
+        // 同一时刻的多次观测复用同一份快照及其索引，不重复复制和建索引
+        PerceptionState first = env.getObservation();
+        PerceptionState second = env.getObservation();
+        assertNotNull(first.getObstacleIndex());
+        assertSame(first.getObstacleIndex(), second.getObstacleIndex());
+        assertSame(first.getObstacleMap(), second.getObstacleMap());
+        assertEquals(first.getObstacleMap().size(), first.getObstacleIndex().size());
+
+        // 状态推进后建立新快照，旧快照保持不变
+        ObstacleInfo nearestBefore = first.getNearestObstacle();
+        double distanceBefore = nearestBefore.getDistance();
+        PerceptionState next = env.step(new DrivingAction(0.0, 1.0, 0.0)).getObservation();
+        assertNotSame(first.getObstacleIndex(), next.getObstacleIndex());
+        assertSame(nearestBefore, first.getNearestObstacle());
+        assertEquals(distanceBefore, first.getNearestObstacle().getDistance(), 1e-9);
+        assertThrows(UnsupportedOperationException.class, () -> first.getObstacleMap().clear());
+    }
+}
@@ -20,6 +20,12 @@ public class AgentMetrics {
     private final AtomicInteger messagesSent = new AtomicInteger(0);        // 发送消息数
     private final AtomicInteger messagesReceived = new AtomicInteger(0);    // 接收消息数
     
+    // 邮箱相关指标（由消息总线更新）
+    private volatile int mailboxDepth = 0;                                  // 当前邮箱积压数
+    private final AtomicInteger maxMailboxDepth = new AtomicInteger(0);     // 邮箱积压峰值
+    private final AtomicInteger messagesDropped = new AtomicInteger(0);     // 溢出丢弃的消息数
+    private final AtomicInteger messagesRejected = new AtomicInteger(0);    // 溢出拒收的消息数
+    
     // 时间相关指标
     private final AtomicLong totalExecutionTime = new AtomicLong(0);        // 总执行时间(毫秒)
     private volatile double averageResponseTime = 0.0;                      // 平均响应时间(秒)
@@ -68,6 +74,28 @@ public class AgentMetrics {
         messagesReceived.incrementAndGet();
     }
     
+    /**
+     * 记录邮箱积压深度
+     */
+    public void recordMailboxDepth(int depth) {
+        mailboxDepth = depth;
+        maxMailboxDepth.accumulateAndGet(depth, Math::max);
+    }
+    
+    /**
+     * 记录邮箱溢出丢弃的消息
+     */
+    public void recordMessageDropped() {
+        messagesDropped.incrementAndGet();
+    }
+    
+    /**
+     * 记录邮箱溢出拒收的消息
+     */
+    public void recordMessageRejected() {
+        messagesRejected.incrementAndGet();
+    }
+    
     /**
      * 记录错误
      */
@@ -155,6 +183,22 @@ public class AgentMetrics {
         return messagesReceived.get();
     }
     
+    public int getMailboxDepth() {
+        return mailboxDepth;
+    }
+    
+    public int getMaxMailboxDepth() {
+        return maxMailboxDepth.get();
+    }
+    
+    public int getMessagesDropped() {
+        return messagesDropped.get();
+    }
+    
+    public int getMessagesRejected() {
+        return messagesRejected.get();
+    }
+    
     public long getTotalExecutionTime() {
         return totalExecutionTime.get();
     }
@@ -184,6 +228,10 @@ public class AgentMetrics {
         tasksFailed.set(0);
         messagesSent.set(0);
         messagesReceived.set(0);
+        mailboxDepth = 0;
+        maxMailboxDepth.set(0);
+        messagesDropped.set(0);
+        messagesRejected.set(0);
         totalExecutionTime.set(0);
         averageResponseTime = 0.0;
         errorCount.set(0);
@@ -198,10 +246,12 @@ public class AgentMetrics {
             "AgentMetrics{" +
             "tasksCompleted=%d, tasksAssigned=%d, tasksFailed=%d, " +
             "messagesSent=%d, messagesReceived=%d, " +
+            "mailboxDepth=%d, maxMailboxDepth=%d, messagesDropped=%d, messagesRejected=%d, " +
             "avgResponseTime=%.2fs, successRate=%.2f%%, " +
             "errorCount=%d, activeTimeHours=%.2f}",
             tasksCompleted.get(), tasksAssigned.get(), tasksFailed.get(),
             messagesSent.get(), messagesReceived.get(),
+            mailboxDepth, maxMailboxDepth.get(), messagesDropped.get(), messagesRejected.get(),
             averageResponseTime, getSuccessRate() * 100,
             errorCount.get(), totalActiveTime / (1000.0 * 60 * 60)
         );
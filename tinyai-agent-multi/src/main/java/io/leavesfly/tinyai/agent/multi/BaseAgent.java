@@ -81,7 +81,7 @@ public abstract class BaseAgent {
         initializeCapabilities();
         
         // 订阅消息
-        this.messageBus.subscribe(this.agentId, this::handleMessage);
+        this.messageBus.subscribe(this.agentId, this::handleMessage, this.metrics);
     }
     
     /**
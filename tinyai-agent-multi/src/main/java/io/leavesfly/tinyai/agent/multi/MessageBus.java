@@ -1,177 +1,435 @@
 package io.leavesfly.tinyai.agent.multi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * 消息总线系统
  * 负责Agent间的通信，支持点对点消息和广播消息
- * 
+ *
+ * 异步投递模型：
+ * - 每个订阅的Agent拥有一个有界邮箱（多生产者单消费者），发布只是把消息放入目标邮箱，不创建线程
+ * - 固定大小的工作线程池负责排空邮箱；同一邮箱同一时刻只由一个工作线程处理，保证每个订阅者按发布顺序收到消息
+ * - 邮箱写满时按 {@link OverflowPolicy} 处理：阻塞（反压，带等待上限）、丢弃最旧或拒绝
+ * - 工作线程内（即消息回调中）再次发布时不会阻塞等待，避免回调之间互相等待造成死锁
+ *
+ * 消息历史保存在固定容量的环形缓冲区中，写入为O(1)，超出容量时覆盖最旧的记录。
+ * 邮箱积压、丢弃和拒收数会同步到订阅时登记的 {@link AgentMetrics}。
+ *
  * @author 山泽
  */
 public class MessageBus {
-    
-    // 订阅者管理：Agent ID -> 消息处理回调列表
-    private final Map<String, List<Consumer<AgentMessage>>> subscribers;
-    
-    // 消息历史记录
-    private final List<AgentMessage> messageHistory;
-    
+
+    private static final String BROADCAST = "broadcast";
+
+    // 默认邮箱容量
+    public static final int DEFAULT_MAILBOX_CAPACITY = 1024;
+
+    // 阻塞策略下的默认最长等待时间（毫秒）
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000;
+
+    // 工作线程每次最多连续处理同一邮箱的消息数，避免单个繁忙邮箱长期占用线程
+    private static final int DRAIN_BATCH = 64;
+
+    // 阻塞等待时每次休眠的时长
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Agent邮箱：订阅回调 + 有界无锁队列
+     * size 先于入队递增，作为容量名额；消费者出队后递减
+     */
+    private static final class Mailbox {
+        final String agentId;
+        final List<Consumer<AgentMessage>> callbacks = new CopyOnWriteArrayList<>();
+        final Queue<AgentMessage> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile AgentMetrics metrics;
+        volatile boolean closed;
+
+        Mailbox(String agentId) {
+            this.agentId = agentId;
+        }
+    }
+
+    // 订阅者管理：Agent ID -> 邮箱
+    private final Map<String, Mailbox> mailboxes;
+
+    // 消息历史环形缓冲区
+    private final AgentMessage[] messageHistory;
+    private int historyHead = 0;    // 下一个写入位置
+    private int historySize = 0;
+
     // 最大历史记录数
     private final int maxHistory;
-    
-    // 异步消息处理线程池
+
+    // 邮箱配置
+    private final int mailboxCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+
+    // 排空邮箱的固定工作线程池
+    private final int workerThreads;
     private final ExecutorService executorService;
-    
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown = false;
+
     // 统计信息
-    private volatile long totalMessages = 0;
-    private volatile long broadcastMessages = 0;
-    private volatile long pointToPointMessages = 0;
-    
+    private final LongAdder totalMessages = new LongAdder();
+    private final LongAdder broadcastMessages = new LongAdder();
+    private final LongAdder pointToPointMessages = new LongAdder();
+    private final LongAdder deliveredMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+    private final AtomicLong pendingMessages = new AtomicLong();
+    private final AtomicInteger maxMailboxDepth = new AtomicInteger();
+    private volatile long statsStartTime = System.currentTimeMillis();
+
     public MessageBus() {
         this(1000);
     }
-    
+
     public MessageBus(int maxHistory) {
-        this.subscribers = new ConcurrentHashMap<>();
-        this.messageHistory = new CopyOnWriteArrayList<>();
-        this.maxHistory = maxHistory;
-        this.executorService = Executors.newCachedThreadPool(r -> {
-            Thread t = new Thread(r, "MessageBus-Worker");
+        this(maxHistory, DEFAULT_MAILBOX_CAPACITY, OverflowPolicy.BLOCK,
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param maxHistory 最大历史记录数
+     * @param mailboxCapacity 每个Agent邮箱的容量
+     * @param overflowPolicy 邮箱写满时的处理策略
+     * @param workerThreads 排空邮箱的工作线程数
+     */
+    public MessageBus(int maxHistory, int mailboxCapacity, OverflowPolicy overflowPolicy, int workerThreads) {
+        this(maxHistory, mailboxCapacity, overflowPolicy, workerThreads, DEFAULT_BLOCK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxHistory 最大历史记录数
+     * @param mailboxCapacity 每个Agent邮箱的容量
+     * @param overflowPolicy 邮箱写满时的处理策略
+     * @param workerThreads 排空邮箱的工作线程数
+     * @param blockTimeoutMillis BLOCK策略下发布者的最长等待时间，超时后拒绝
+     */
+    public MessageBus(int maxHistory, int mailboxCapacity, OverflowPolicy overflowPolicy,
+                      int workerThreads, long blockTimeoutMillis) {
+        if (mailboxCapacity <= 0) {
+            throw new IllegalArgumentException("邮箱容量必须大于0: " + mailboxCapacity);
+        }
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("工作线程数必须大于0: " + workerThreads);
+        }
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.maxHistory = Math.max(0, maxHistory);
+        this.messageHistory = new AgentMessage[this.maxHistory];
+        this.mailboxCapacity = mailboxCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockTimeoutMillis));
+        this.workerThreads = workerThreads;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(() -> {
+                workers.add(Thread.currentThread());
+                try {
+                    r.run();
+                } finally {
+                    workers.remove(Thread.currentThread());
+                }
+            }, "MessageBus-Worker-" + threadIndex.incrementAndGet());
             t.setDaemon(true);
             return t;
         });
     }
-    
+
     /**
      * 订阅消息
      * @param agentId Agent ID
      * @param callback 消息处理回调函数
      */
     public void subscribe(String agentId, Consumer<AgentMessage> callback) {
-        subscribers.computeIfAbsent(agentId, k -> new CopyOnWriteArrayList<>()).add(callback);
+        subscribe(agentId, callback, null);
+    }
+
+    /**
+     * 订阅消息，并登记用于接收邮箱指标的AgentMetrics
+     * @param agentId Agent ID
+     * @param callback 消息处理回调函数
+     * @param metrics 该Agent的性能指标，可为null
+     */
+    public void subscribe(String agentId, Consumer<AgentMessage> callback, AgentMetrics metrics) {
+        Mailbox mailbox = mailboxes.computeIfAbsent(agentId, Mailbox::new);
+        mailbox.callbacks.add(callback);
+        if (metrics != null) {
+            mailbox.metrics = metrics;
+        }
     }
-    
+
     /**
-     * 取消订阅
+     * 取消订阅，邮箱中尚未投递的消息被丢弃
      * @param agentId Agent ID
      */
     public void unsubscribe(String agentId) {
-        subscribers.remove(agentId);
+        Mailbox mailbox = mailboxes.remove(agentId);
+        if (mailbox != null) {
+            mailbox.closed = true;
+            while (mailbox.queue.poll() != null) {
+                mailbox.size.decrementAndGet();
+                pendingMessages.decrementAndGet();
+            }
+        }
     }
-    
+
     /**
      * 发布消息（异步）
+     * 消息放入接收者邮箱后立即返回，由工作线程投递
      * @param message 要发布的消息
+     * @return 是否所有目标邮箱都接收了该消息（被拒收、接收者不存在或总线已关闭时返回false）
      */
-    public void publishAsync(AgentMessage message) {
+    public boolean publishAsync(AgentMessage message) {
+        if (shutdown) {
+            rejectedMessages.increment();
+            System.err.println("消息总线已关闭，消息未发布: " + message.getId());
+            return false;
+        }
+
         // 记录消息历史
         addToHistory(message);
-        
-        // 异步处理消息分发
-        executorService.submit(() -> {
-            try {
-                if ("broadcast".equals(message.getReceiverId())) {
-                    // 广播消息
-                    handleBroadcast(message);
-                } else {
-                    // 点对点消息
-                    handlePointToPoint(message);
+
+        if (BROADCAST.equals(message.getReceiverId())) {
+            broadcastMessages.increment();
+            boolean accepted = true;
+            for (Mailbox mailbox : mailboxes.values()) {
+                // 不发送给自己
+                if (!mailbox.agentId.equals(message.getSenderId())) {
+                    accepted &= offer(mailbox, message);
                 }
-            } catch (Exception e) {
-                System.err.println("消息处理异常: " + e.getMessage());
-                e.printStackTrace();
             }
-        });
+            return accepted;
+        }
+
+        pointToPointMessages.increment();
+        Mailbox mailbox = mailboxes.get(message.getReceiverId());
+        if (mailbox == null) {
+            System.out.println("接收者 " + message.getReceiverId() + " 未找到，消息未送达");
+            return false;
+        }
+        return offer(mailbox, message);
     }
-    
+
     /**
      * 发布消息（同步）
+     * 在调用线程上直接执行接收者的回调，不经过邮箱
      * @param message 要发布的消息
      */
     public void publish(AgentMessage message) {
         // 记录消息历史
         addToHistory(message);
-        
+
         try {
-            if ("broadcast".equals(message.getReceiverId())) {
+            if (BROADCAST.equals(message.getReceiverId())) {
                 // 广播消息
-                handleBroadcast(message);
+                broadcastMessages.increment();
+                for (Mailbox mailbox : mailboxes.values()) {
+                    if (!mailbox.agentId.equals(message.getSenderId())) {
+                        deliver(mailbox, message);
+                    }
+                }
             } else {
                 // 点对点消息
-                handlePointToPoint(message);
+                pointToPointMessages.increment();
+                Mailbox mailbox = mailboxes.get(message.getReceiverId());
+                if (mailbox != null) {
+                    deliver(mailbox, message);
+                } else {
+                    System.out.println("接收者 " + message.getReceiverId() + " 未找到，消息未送达");
+                }
             }
         } catch (Exception e) {
             System.err.println("消息处理异常: " + e.getMessage());
             e.printStackTrace();
         }
     }
-    
+
     /**
-     * 处理广播消息
+     * 把消息放入邮箱，邮箱已满时按溢出策略处理
      */
-    private void handleBroadcast(AgentMessage message) {
-        broadcastMessages++;
-        
-        for (Map.Entry<String, List<Consumer<AgentMessage>>> entry : subscribers.entrySet()) {
-            String agentId = entry.getKey();
-            
-            // 不发送给自己
-            if (!agentId.equals(message.getSenderId())) {
-                List<Consumer<AgentMessage>> callbacks = entry.getValue();
-                for (Consumer<AgentMessage> callback : callbacks) {
-                    try {
-                        callback.accept(message);
-                    } catch (Exception e) {
-                        System.err.println("向Agent " + agentId + " 发送广播消息失败: " + e.getMessage());
+    private boolean offer(Mailbox mailbox, AgentMessage message) {
+        long deadline = 0;
+        while (!mailbox.closed) {
+            int size = mailbox.size.get();
+            if (size < mailboxCapacity) {
+                if (mailbox.size.compareAndSet(size, size + 1)) {
+                    pendingMessages.incrementAndGet();
+                    mailbox.queue.offer(message);
+                    recordDepth(mailbox, size + 1);
+                    schedule(mailbox);
+                    return true;
+                }
+                continue;
+            }
+
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                AgentMessage oldest = mailbox.queue.poll();
+                if (oldest != null) {
+                    // 腾出的名额直接给新消息，积压数不变
+                    mailbox.queue.offer(message);
+                    droppedMessages.increment();
+                    AgentMetrics metrics = mailbox.metrics;
+                    if (metrics != null) {
+                        metrics.recordMessageDropped();
                     }
+                    schedule(mailbox);
+                    return true;
+                }
+                // 名额已被其他生产者占用但消息尚未入队
+                Thread.onSpinWait();
+                continue;
+            }
+
+            if (overflowPolicy == OverflowPolicy.BLOCK && !workers.contains(Thread.currentThread())
+                    && !Thread.currentThread().isInterrupted()) {
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + blockTimeoutNanos;
+                }
+                if (now < deadline) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                    continue;
                 }
             }
+
+            rejectedMessages.increment();
+            AgentMetrics metrics = mailbox.metrics;
+            if (metrics != null) {
+                metrics.recordMessageRejected();
+            }
+            return false;
         }
+        return false;
     }
-    
+
     /**
-     * 处理点对点消息
+     * 邮箱未在排空时提交一次排空任务
      */
-    private void handlePointToPoint(AgentMessage message) {
-        pointToPointMessages++;
-        
-        String receiverId = message.getReceiverId();
-        List<Consumer<AgentMessage>> callbacks = subscribers.get(receiverId);
-        
-        if (callbacks != null) {
-            for (Consumer<AgentMessage> callback : callbacks) {
+    private void schedule(Mailbox mailbox) {
+        if (mailbox.scheduled.compareAndSet(false, true)) {
+            try {
+                executorService.execute(() -> drain(mailbox));
+            } catch (RejectedExecutionException e) {
+                mailbox.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 排空邮箱：按入队顺序投递，每批最多DRAIN_BATCH条，剩余的重新排队以便其他邮箱得到处理
+     */
+    private void drain(Mailbox mailbox) {
+        int processed = 0;
+        AgentMessage message;
+        try {
+            while (processed < DRAIN_BATCH && (message = mailbox.queue.poll()) != null) {
+                int depth = mailbox.size.decrementAndGet();
+                processed++;
                 try {
-                    callback.accept(message);
-                } catch (Exception e) {
-                    System.err.println("向Agent " + receiverId + " 发送消息失败: " + e.getMessage());
+                    if (!mailbox.closed) {
+                        deliver(mailbox, message);
+                    }
+                } finally {
+                    pendingMessages.decrementAndGet();
+                }
+                AgentMetrics metrics = mailbox.metrics;
+                if (metrics != null) {
+                    metrics.recordMailboxDepth(depth);
                 }
             }
-        } else {
-            System.out.println("接收者 " + receiverId + " 未找到，消息未送达");
+        } finally {
+            // 无论投递是否异常都释放标记，否则该邮箱此后再也不会被调度
+            mailbox.scheduled.set(false);
+            // 释放标记后再检查一次，避免与并发入队的消息错过调度
+            if (!mailbox.queue.isEmpty()) {
+                schedule(mailbox);
+            }
+        }
+    }
+
+    /**
+     * 调用邮箱的全部回调，单个回调抛出的任何异常或错误都不影响其余回调与后续消息
+     */
+    private void deliver(Mailbox mailbox, AgentMessage message) {
+        for (Consumer<AgentMessage> callback : mailbox.callbacks) {
+            try {
+                callback.accept(message);
+            } catch (Throwable e) {
+                System.err.println("向Agent " + mailbox.agentId + " 发送消息失败: " + e.getMessage());
+            }
+        }
+        deliveredMessages.increment();
+    }
+
+    private void recordDepth(Mailbox mailbox, int depth) {
+        maxMailboxDepth.accumulateAndGet(depth, Math::max);
+        AgentMetrics metrics = mailbox.metrics;
+        if (metrics != null) {
+            metrics.recordMailboxDepth(depth);
         }
     }
-    
+
     /**
-     * 添加到消息历史
+     * 添加到消息历史（环形缓冲区，满时覆盖最旧的记录）
      */
     private void addToHistory(AgentMessage message) {
-        totalMessages++;
-        messageHistory.add(message);
-        
-        // 限制历史记录数量
-        while (messageHistory.size() > maxHistory) {
-            messageHistory.remove(0);
+        totalMessages.increment();
+        if (maxHistory == 0) {
+            return;
+        }
+        synchronized (messageHistory) {
+            messageHistory[historyHead] = message;
+            historyHead = (historyHead + 1) % maxHistory;
+            if (historySize < maxHistory) {
+                historySize++;
+            }
         }
     }
-    
+
+    /**
+     * 按时间顺序复制当前历史记录
+     */
+    private List<AgentMessage> snapshotHistory() {
+        synchronized (messageHistory) {
+            List<AgentMessage> snapshot = new ArrayList<>(historySize);
+            int start = (historyHead - historySize + maxHistory) % Math.max(1, maxHistory);
+            for (int i = 0; i < historySize; i++) {
+                snapshot.add(messageHistory[(start + i) % maxHistory]);
+            }
+            return snapshot;
+        }
+    }
+
+    private int historySize() {
+        synchronized (messageHistory) {
+            return historySize;
+        }
+    }
+
     /**
      * 获取两个Agent之间的对话历史
      * @param agent1Id 第一个Agent ID
@@ -180,22 +438,23 @@ public class MessageBus {
      * @return 对话历史列表（按时间排序）
      */
     public List<AgentMessage> getConversationHistory(String agent1Id, String agent2Id, int limit) {
+        List<AgentMessage> history = snapshotHistory();
         List<AgentMessage> conversation = new ArrayList<>();
-        
+
         // 倒序遍历历史记录
-        for (int i = messageHistory.size() - 1; i >= 0 && conversation.size() < limit; i--) {
-            AgentMessage msg = messageHistory.get(i);
-            
+        for (int i = history.size() - 1; i >= 0 && conversation.size() < limit; i--) {
+            AgentMessage msg = history.get(i);
+
             // 检查是否是两个Agent之间的对话
             if ((msg.getSenderId().equals(agent1Id) && msg.getReceiverId().equals(agent2Id)) ||
                 (msg.getSenderId().equals(agent2Id) && msg.getReceiverId().equals(agent1Id))) {
                 conversation.add(0, msg); // 添加到列表开头以保持时间顺序
             }
         }
-        
+
         return conversation;
     }
-    
+
     /**
      * 获取Agent的消息历史
      * @param agentId Agent ID
@@ -203,79 +462,142 @@ public class MessageBus {
      * @return 消息历史列表
      */
     public List<AgentMessage> getAgentMessages(String agentId, int limit) {
-        return messageHistory.stream()
+        List<AgentMessage> history = snapshotHistory();
+        return history.stream()
                 .filter(msg -> msg.getSenderId().equals(agentId) || msg.getReceiverId().equals(agentId))
-                .skip(Math.max(0, messageHistory.size() - limit))
+                .skip(Math.max(0, history.size() - limit))
                 .collect(Collectors.toList());
     }
-    
+
     /**
      * 获取最近的消息
      * @param limit 返回的消息数量限制
      * @return 最近的消息列表
      */
     public List<AgentMessage> getRecentMessages(int limit) {
-        int start = Math.max(0, messageHistory.size() - limit);
-        return new ArrayList<>(messageHistory.subList(start, messageHistory.size()));
+        List<AgentMessage> history = snapshotHistory();
+        int start = Math.max(0, history.size() - limit);
+        return new ArrayList<>(history.subList(start, history.size()));
     }
-    
+
     /**
      * 获取所有消息历史
      * @return 完整的消息历史列表
      */
     public List<AgentMessage> getAllMessages() {
-        return new ArrayList<>(messageHistory);
+        return snapshotHistory();
     }
-    
+
     /**
      * 清空消息历史
      */
     public void clearHistory() {
-        messageHistory.clear();
-        totalMessages = 0;
-        broadcastMessages = 0;
-        pointToPointMessages = 0;
+        synchronized (messageHistory) {
+            Arrays.fill(messageHistory, null);
+            historyHead = 0;
+            historySize = 0;
+        }
+        totalMessages.reset();
+        broadcastMessages.reset();
+        pointToPointMessages.reset();
+        deliveredMessages.reset();
+        droppedMessages.reset();
+        rejectedMessages.reset();
+        maxMailboxDepth.set(0);
+        statsStartTime = System.currentTimeMillis();
     }
-    
+
     /**
      * 获取当前订阅的Agent列表
      * @return Agent ID列表
      */
     public List<String> getSubscribedAgents() {
-        return new ArrayList<>(subscribers.keySet());
+        return new ArrayList<>(mailboxes.keySet());
     }
-    
+
     /**
      * 检查Agent是否已订阅
      * @param agentId Agent ID
      * @return 是否已订阅
      */
     public boolean isSubscribed(String agentId) {
-        return subscribers.containsKey(agentId);
+        return mailboxes.containsKey(agentId);
+    }
+
+    /**
+     * 获取Agent邮箱当前积压的消息数
+     * @param agentId Agent ID
+     * @return 积压数，未订阅时为0
+     */
+    public int getMailboxDepth(String agentId) {
+        Mailbox mailbox = mailboxes.get(agentId);
+        return mailbox == null ? 0 : mailbox.size.get();
     }
-    
+
+    /**
+     * 获取所有邮箱中尚未投递的消息数
+     * @return 待投递消息数
+     */
+    public long getPendingMessages() {
+        return pendingMessages.get();
+    }
+
+    /**
+     * 等待所有已接收的异步消息投递完成
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 是否在超时前全部投递完成
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (pendingMessages.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
     /**
      * 获取统计信息
      * @return 包含统计信息的Map
      */
     public Map<String, Object> getStatistics() {
         Map<String, Object> stats = new ConcurrentHashMap<>();
-        stats.put("totalMessages", totalMessages);
-        stats.put("broadcastMessages", broadcastMessages);
-        stats.put("pointToPointMessages", pointToPointMessages);
-        stats.put("messageHistorySize", messageHistory.size());
-        stats.put("subscribedAgents", subscribers.size());
+        long delivered = deliveredMessages.sum();
+        double elapsedSeconds = Math.max(1, System.currentTimeMillis() - statsStartTime) / 1000.0;
+        stats.put("totalMessages", totalMessages.sum());
+        stats.put("broadcastMessages", broadcastMessages.sum());
+        stats.put("pointToPointMessages", pointToPointMessages.sum());
+        stats.put("deliveredMessages", delivered);
+        stats.put("droppedMessages", droppedMessages.sum());
+        stats.put("rejectedMessages", rejectedMessages.sum());
+        stats.put("pendingMessages", pendingMessages.get());
+        stats.put("maxMailboxDepth", maxMailboxDepth.get());
+        stats.put("deliveryThroughput", delivered / elapsedSeconds);
+        stats.put("messageHistorySize", historySize());
+        stats.put("subscribedAgents", mailboxes.size());
         stats.put("maxHistory", maxHistory);
+        stats.put("mailboxCapacity", mailboxCapacity);
+        stats.put("overflowPolicy", overflowPolicy.getValue());
+        stats.put("workerThreads", workerThreads);
         return stats;
     }
-    
+
     /**
      * 关闭消息总线
+     * 不再接受新的异步消息，等待邮箱中已有的消息投递完成（最多5秒）后停止工作线程
      */
     public void shutdown() {
+        shutdown = true;
+        try {
+            awaitIdle(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         executorService.shutdown();
         try {
-            if (!executorService.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
                 executorService.shutdownNow();
             }
         } catch (InterruptedException e) {
@@ -283,10 +605,10 @@ public class MessageBus {
             Thread.currentThread().interrupt();
         }
     }
-    
+
     @Override
     public String toString() {
-        return String.format("MessageBus{totalMessages=%d, subscribers=%d, historySize=%d}", 
-                totalMessages, subscribers.size(), messageHistory.size());
+        return String.format("MessageBus{totalMessages=%d, subscribers=%d, historySize=%d, pending=%d}",
+                totalMessages.sum(), mailboxes.size(), historySize(), pendingMessages.get());
     }
-}
\ No newline at end of file
+}
@@ -35,7 +35,14 @@ public class MultiAgentSystem {
     }
     
     public MultiAgentSystem(int maxHistorySize) {
-        this.messageBus = new MessageBus(maxHistorySize);
+        this(new MessageBus(maxHistorySize));
+    }
+    
+    /**
+     * 使用自定义配置的消息总线（邮箱容量、溢出策略、工作线程数）
+     */
+    public MultiAgentSystem(MessageBus messageBus) {
+        this.messageBus = messageBus;
         this.llm = new LLMSimulator();
         this.agents = new ConcurrentHashMap<>();
         this.teams = new ConcurrentHashMap<>();
@@ -0,0 +1,40 @@
+package io.leavesfly.tinyai.agent.multi;
+
+/**
+ * 邮箱溢出策略枚举
+ * 定义Agent邮箱写满时消息总线对新消息的处理方式
+ *
+ * @author 山泽
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 阻塞 - 发布者等待邮箱出现空位（反压），超过等待上限后拒绝
+     */
+    BLOCK("block"),
+
+    /**
+     * 丢弃最旧 - 移除邮箱中最早的消息，为新消息腾出空间
+     */
+    DROP_OLDEST("drop_oldest"),
+
+    /**
+     * 拒绝 - 直接拒绝新消息，发布方法返回false
+     */
+    REJECT("reject");
+
+    private final String value;
+
+    OverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -8,10 +8,14 @@ import io.leavesfly.tinyai.agent.context.LLMSimulator;
 import org.junit.After;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 多Agent系统单元测试
@@ -331,6 +335,159 @@ public class MultiAgentSystemTest {
         assertEquals(TaskStatus.PENDING, TaskStatus.fromValue("pending"));
     }
     
+    @Test
+    public void testMailboxBroadcastOrdering() throws Exception {
+        // 数百个订阅者、多个发布线程同时广播：不为每条消息创建线程，且每个订阅者按发布顺序收到同一发送者的消息
+        MessageBus bus = new MessageBus(100, 4096, OverflowPolicy.BLOCK, 4);
+        int agentCount = 300;
+        int publishers = 4;
+        int perPublisher = 50;
+        List<List<AgentMessage>> inboxes = new ArrayList<>();
+        for (int i = 0; i < agentCount; i++) {
+            List<AgentMessage> inbox = Collections.synchronizedList(new ArrayList<>());
+            inboxes.add(inbox);
+            bus.subscribe("agent_" + i, inbox::add, new AgentMetrics());
+        }
+        
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            String sender = "publisher_" + p;
+            Thread thread = new Thread(() -> {
+                for (int seq = 0; seq < perPublisher; seq++) {
+                    assertTrue(bus.publishAsync(new AgentMessage(sender, "broadcast", MessageType.BROADCAST, seq)));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("消息应在超时前投递完成", bus.awaitIdle(10000));
+        
+        for (List<AgentMessage> inbox : inboxes) {
+            assertEquals(publishers * perPublisher, inbox.size());
+            int[] lastSeq = new int[publishers];
+            Arrays.fill(lastSeq, -1);
+            for (AgentMessage message : inbox) {
+                int publisher = Integer.parseInt(message.getSenderId().substring("publisher_".length()));
+                int seq = (Integer) message.getContent();
+                assertEquals("同一发送者的消息应按顺序到达", lastSeq[publisher] + 1, seq);
+                lastSeq[publisher] = seq;
+            }
+        }
+        
+        long workerThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("MessageBus-Worker")).count();
+        assertTrue("工作线程数不应随消息数增长: " + workerThreads, workerThreads < agentCount);
+        
+        Map<String, Object> stats = bus.getStatistics();
+        assertEquals((long) agentCount * publishers * perPublisher, stats.get("deliveredMessages"));
+        assertEquals(0L, stats.get("pendingMessages"));
+        assertEquals(100, stats.get("messageHistorySize"));
+        bus.shutdown();
+    }
+    
+    @Test
+    public void testMailboxOverflowPolicies() throws Exception {
+        // 拒绝：邮箱满后新消息被拒收
+        List<Object> received = assertOverflow(OverflowPolicy.REJECT, false);
+        assertEquals(Arrays.asList(0, 1, 2), received);
+        
+        // 丢弃最旧：邮箱中最早的消息被替换
+        received = assertOverflow(OverflowPolicy.DROP_OLDEST, true);
+        assertEquals(Arrays.asList(0, 2, 3), received);
+        
+        // 阻塞：等待超时后拒收
+        received = assertOverflow(OverflowPolicy.BLOCK, false);
+        assertEquals(Arrays.asList(0, 1, 2), received);
+    }
+    
+    /**
+     * 容量为2的邮箱：第0条消息在回调中阻塞，随后发布3条，第3条触发溢出
+     */
+    private List<Object> assertOverflow(OverflowPolicy policy, boolean expectAccepted) throws Exception {
+        MessageBus bus = new MessageBus(10, 2, policy, 1, 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        AgentMetrics metrics = new AgentMetrics();
+        bus.subscribe("slow_agent", message -> {
+            received.add(message.getContent());
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, metrics);
+        
+        assertTrue(bus.publishAsync(new AgentMessage("sender", "slow_agent", MessageType.TEXT, 0)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(bus.publishAsync(new AgentMessage("sender", "slow_agent", MessageType.TEXT, 1)));
+        assertTrue(bus.publishAsync(new AgentMessage("sender", "slow_agent", MessageType.TEXT, 2)));
+        assertEquals(2, bus.getMailboxDepth("slow_agent"));
+        assertEquals(expectAccepted, bus.publishAsync(new AgentMessage("sender", "slow_agent", MessageType.TEXT, 3)));
+        
+        release.countDown();
+        assertTrue(bus.awaitIdle(5000));
+        assertEquals(2, metrics.getMaxMailboxDepth());
+        assertEquals(expectAccepted ? 1 : 0, metrics.getMessagesDropped());
+        assertEquals(expectAccepted ? 0 : 1, metrics.getMessagesRejected());
+        bus.shutdown();
+        return new ArrayList<>(received);
+    }
+    
+    @Test
+    public void testCallbackErrorDoesNotStallMailbox() throws Exception {
+        // 回调抛出Error后，该邮箱后续消息仍会被投递
+        MessageBus bus = new MessageBus(10, 16, OverflowPolicy.REJECT, 1);
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe("fragile_agent", message -> {
+            if (Integer.valueOf(0).equals(message.getContent())) {
+                throw new AssertionError("回调崩溃");
+            }
+            received.add(message.getContent());
+        }, new AgentMetrics());
+        
+        assertTrue(bus.publishAsync(new AgentMessage("sender", "fragile_agent", MessageType.TEXT, 0)));
+        assertTrue(bus.awaitIdle(5000));
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(bus.publishAsync(new AgentMessage("sender", "fragile_agent", MessageType.TEXT, i)));
+        }
+        assertTrue("Error之后邮箱不应停止调度", bus.awaitIdle(5000));
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(received));
+        assertEquals(0, bus.getMailboxDepth("fragile_agent"));
+        bus.shutdown();
+    }
+    
+    @Test
+    public void testMessageHistoryRingBuffer() {
+        MessageBus bus = new MessageBus(3);
+        List<AgentMessage> published = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            AgentMessage message = new AgentMessage("agent1", "agent2", MessageType.TEXT, "消息" + i);
+            published.add(message);
+            bus.publish(message);
+        }
+        
+        // 只保留最近3条，按时间顺序
+        List<AgentMessage> history = bus.getAllMessages();
+        assertEquals(3, history.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(published.get(i + 2).getId(), history.get(i).getId());
+        }
+        List<AgentMessage> recent = bus.getRecentMessages(2);
+        assertEquals(published.get(3).getId(), recent.get(0).getId());
+        assertEquals(published.get(4).getId(), recent.get(1).getId());
+        assertEquals(3, bus.getConversationHistory("agent1", "agent2", 10).size());
+        assertEquals(5L, bus.getStatistics().get("totalMessages"));
+        
+        bus.clearHistory();
+        assertTrue(bus.getAllMessages().isEmpty());
+        bus.shutdown();
+    }
+    
     /**
      * 创建HashMap的工具方法（兼容Java 8）
      */
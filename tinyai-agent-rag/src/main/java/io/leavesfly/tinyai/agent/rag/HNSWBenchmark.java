@@ -0,0 +1,135 @@
+package io.leavesfly.tinyai.agent.rag;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * HNSW召回率与延迟基准
+ * 在随机向量上构建索引，以精确检索为基准统计 recall@k 和单次查询延迟。
+ * 均匀高斯向量几乎没有近邻结构，是图索引的最坏情况；指定簇数时向量围绕随机簇中心生成，更接近真实嵌入分布。
+ * 用法：HNSWBenchmark [向量数] [维度] [查询数] [k] [簇数，0表示均匀随机]
+ */
+public class HNSWBenchmark {
+
+    /**
+     * 基准结果
+     */
+    public static class Result {
+        public final double recall;
+        public final double buildMillis;
+        public final double hnswMicrosPerQuery;
+        public final double exactMicrosPerQuery;
+
+        Result(double recall, double buildMillis, double hnswMicrosPerQuery, double exactMicrosPerQuery) {
+            this.recall = recall;
+            this.buildMillis = buildMillis;
+            this.hnswMicrosPerQuery = hnswMicrosPerQuery;
+            this.exactMicrosPerQuery = exactMicrosPerQuery;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("recall@k=%.4f, build=%.1fms, hnsw=%.1fus/query, exact=%.1fus/query, speedup=%.1fx",
+                    recall, buildMillis, hnswMicrosPerQuery, exactMicrosPerQuery,
+                    exactMicrosPerQuery / Math.max(1e-9, hnswMicrosPerQuery));
+        }
+    }
+
+    /**
+     * 运行基准
+     * @param index 空索引
+     * @param numVectors 向量数
+     * @param dim 维度
+     * @param numQueries 查询数
+     * @param k 每次返回数量
+     * @param seed 随机种子
+     * @return 基准结果
+     */
+    public static Result run(HNSWIndex index, int numVectors, int dim, int numQueries, int k, long seed) {
+        return run(index, numVectors, dim, numQueries, k, 0, seed);
+    }
+
+    /**
+     * 运行基准
+     * @param clusters 簇数，0表示均匀随机向量
+     */
+    public static Result run(HNSWIndex index, int numVectors, int dim, int numQueries, int k,
+                             int clusters, long seed) {
+        Random random = new Random(seed);
+        float[][] centers = new float[clusters][];
+        for (int c = 0; c < clusters; c++) {
+            centers[c] = randomVector(random, dim);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < numVectors; i++) {
+            index.add("v" + i, sample(random, centers, dim));
+        }
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+
+        float[][] queries = new float[numQueries][];
+        for (int q = 0; q < numQueries; q++) {
+            queries[q] = sample(random, centers, dim);
+        }
+
+        long hnswNanos = 0;
+        long exactNanos = 0;
+        long found = 0;
+        for (float[] query : queries) {
+            long t0 = System.nanoTime();
+            List<HNSWIndex.Hit> approximate = index.search(query, k);
+            long t1 = System.nanoTime();
+            List<HNSWIndex.Hit> exact = index.searchExact(query, k);
+            long t2 = System.nanoTime();
+            hnswNanos += t1 - t0;
+            exactNanos += t2 - t1;
+
+            Set<String> truth = new HashSet<>();
+            for (HNSWIndex.Hit hit : exact) {
+                truth.add(hit.getId());
+            }
+            for (HNSWIndex.Hit hit : approximate) {
+                if (truth.contains(hit.getId())) {
+                    found++;
+                }
+            }
+        }
+        double recall = (double) found / ((long) numQueries * Math.min(k, numVectors));
+        return new Result(recall, buildMillis, hnswNanos / 1e3 / numQueries, exactNanos / 1e3 / numQueries);
+    }
+
+    private static float[] sample(Random random, float[][] centers, int dim) {
+        float[] vector = randomVector(random, dim);
+        if (centers.length > 0) {
+            float[] center = centers[random.nextInt(centers.length)];
+            for (int i = 0; i < dim; i++) {
+                vector[i] = center[i] + 0.3f * vector[i];
+            }
+        }
+        return vector;
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] vector = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) {
+        int numVectors = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int dim = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int numQueries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int clusters = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        System.out.println("HNSW基准: 向量数=" + numVectors + ", 维度=" + dim + ", 查询数=" + numQueries
+                + ", k=" + k + ", 簇数=" + clusters);
+        for (int efSearch : new int[]{16, 32, 64, 128, 256}) {
+            HNSWIndex index = new HNSWIndex(16, 200, efSearch);
+            System.out.println("efSearch=" + efSearch + ": " + run(index, numVectors, dim, numQueries, k, clusters, 42));
+        }
+    }
+}
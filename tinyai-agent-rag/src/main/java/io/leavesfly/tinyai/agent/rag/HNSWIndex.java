@@ -0,0 +1,728 @@
+package io.leavesfly.tinyai.agent.rag;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * HNSW（分层可导航小世界图）近似最近邻索引
+ * 向量归一化后按节点顺序紧凑存放在一个float[]中，相似度为余弦相似度（归一化向量的点积）。
+ * 支持增量插入与删除：删除只做标记，被删除的节点仍参与图导航但不会出现在结果中，
+ * 标记删除的节点过多时自动重建。读写锁保证检索可并发、写入互斥。
+ */
+public class HNSWIndex {
+    private static final int MAGIC = 0x484E5357;   // "HNSW"
+    private static final int VERSION = 1;
+
+    private final int m;                            // 每层最大邻居数（第0层为2M）
+    private final int efConstruction;               // 构建时的候选集大小
+    private volatile int efSearch;                  // 检索时的候选集大小
+    private final double levelMultiplier;           // 层级分布参数 1/ln(M)
+    private final Random random;
+
+    private int dim = -1;
+    private float[] vectors = new float[0];         // 归一化向量，节点i位于[i*dim, (i+1)*dim)
+    private String[] ids = new String[0];
+    private int[] levels = new int[0];
+    private int[][][] links = new int[0][][];       // links[节点][层] = {邻居数, 邻居...}
+    private boolean[] deleted = new boolean[0];
+    private int nodeCount;
+    private int deletedCount;
+    private final Map<String, Integer> nodeById = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 检索命中结果
+     */
+    public static class Hit {
+        private final String id;
+        private final float similarity;
+
+        public Hit(String id, float similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+
+    /**
+     * 使用默认参数构造（M=16, efConstruction=200, efSearch=64）
+     */
+    public HNSWIndex() {
+        this(16, 200, 64);
+    }
+
+    /**
+     * 构造函数
+     * @param m 每层最大邻居数
+     * @param efConstruction 构建时的候选集大小
+     * @param efSearch 检索时的候选集大小
+     */
+    public HNSWIndex(int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("无效的HNSW参数: M=" + m + ", efConstruction=" + efConstruction
+                    + ", efSearch=" + efSearch);
+        }
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new Random(42);
+    }
+
+    /**
+     * 插入或替换向量
+     * @param id 文档ID
+     * @param vector 向量
+     */
+    public void add(String id, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodeById.get(id);
+            if (existing != null) {
+                markDeleted(existing);
+            }
+            insert(id, vector);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除向量
+     * @param id 文档ID
+     * @return 是否存在并删除
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeById.get(id);
+            if (node == null) {
+                return false;
+            }
+            markDeleted(node);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            resetStorage();
+            dim = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 近似最近邻检索
+     * @param query 查询向量
+     * @param k 返回数量
+     * @return 按相似度降序排列的结果
+     */
+    public List<Hit> search(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0 || size() == 0) {
+                return new ArrayList<>();
+            }
+            float[] q = normalize(checkDim(query));
+            int current = entryPoint;
+            float currentDist = distance(q, current);
+            for (int level = maxLevel; level > 0; level--) {
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    int[] neighbors = links[current][level];
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        float d = distance(q, neighbors[i]);
+                        if (d < currentDist) {
+                            currentDist = d;
+                            current = neighbors[i];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            LongHeap top = searchLayer(q, current, Math.max(efSearch, k), 0, true);
+            return toHits(top, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 精确检索：对全部向量做紧凑数组上的点积扫描，用于小规模数据和召回率评估
+     */
+    public List<Hit> searchExact(float[] query, int k) {
+        lock.readLock().lock();
+        try {
+            if (k <= 0 || size() == 0) {
+                return new ArrayList<>();
+            }
+            float[] q = normalize(checkDim(query));
+            LongHeap top = new LongHeap(k + 1);
+            for (int node = 0; node < nodeCount; node++) {
+                if (deleted[node]) {
+                    continue;
+                }
+                top.push(-encode(distance(q, node), node));
+                if (top.size() > k) {
+                    top.pop();
+                }
+            }
+            return toHits(top, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String id, float[] vector) {
+        if (dim < 0) {
+            dim = vector.length;
+        }
+        float[] v = normalize(checkDim(vector));
+        int node = nodeCount;
+        ensureCapacity(node + 1);
+        System.arraycopy(v, 0, vectors, node * dim, dim);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        ids[node] = id;
+        levels[node] = level;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[maxNeighbors(l) + 1];
+        }
+        nodeCount++;
+        nodeById.put(id, node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        float currentDist = distance(v, current);
+        for (int l = maxLevel; l > level; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] neighbors = links[current][l];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    float d = distance(v, neighbors[i]);
+                    if (d < currentDist) {
+                        currentDist = d;
+                        current = neighbors[i];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = sortedAscending(searchLayer(v, current, efConstruction, l, false));
+            int[] selected = selectNeighbors(candidates, m);
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int neighbor : selected) {
+                connect(neighbor, node, l);
+            }
+            current = decodeNode(candidates[0]);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 为邻居添加反向连接，超出容量时用启发式重新挑选
+     */
+    private void connect(int from, int to, int level) {
+        int[] neighbors = links[from][level];
+        int capacity = neighbors.length - 1;
+        if (neighbors[0] < capacity) {
+            neighbors[++neighbors[0]] = to;
+            return;
+        }
+        long[] candidates = new long[capacity + 1];
+        for (int i = 0; i < capacity; i++) {
+            candidates[i] = encode(distance(from, neighbors[i + 1]), neighbors[i + 1]);
+        }
+        candidates[capacity] = encode(distance(from, to), to);
+        Arrays.sort(candidates);
+        int[] selected = selectNeighbors(candidates, capacity);
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    /**
+     * 启发式邻居选择：候选按距离升序，只保留比已选邻居更靠近基准点的候选，使连接分布在不同方向
+     */
+    private int[] selectNeighbors(long[] candidates, int limit) {
+        int[] selected = new int[Math.min(limit, candidates.length)];
+        int count = 0;
+        for (long candidate : candidates) {
+            if (count >= limit) {
+                break;
+            }
+            int node = decodeNode(candidate);
+            float dist = decodeDistance(candidate);
+            boolean keep = true;
+            for (int i = 0; i < count; i++) {
+                if (distance(node, selected[i]) < dist) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = node;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * 单层贪心束搜索
+     * @return 最多ef个最近节点的大顶堆（存放负编码值）
+     */
+    private LongHeap searchLayer(float[] q, int entry, int ef, int level, boolean skipDeleted) {
+        BitSet visited = new BitSet(nodeCount);
+        LongHeap candidates = new LongHeap(ef * 2);
+        LongHeap top = new LongHeap(ef + 1);
+
+        float entryDist = distance(q, entry);
+        visited.set(entry);
+        candidates.push(encode(entryDist, entry));
+        float lowerBound = Float.MAX_VALUE;
+        if (!skipDeleted || !deleted[entry]) {
+            top.push(-encode(entryDist, entry));
+            lowerBound = entryDist;
+        }
+
+        while (candidates.size() > 0) {
+            long current = candidates.pop();
+            if (decodeDistance(current) > lowerBound && top.size() >= ef) {
+                break;
+            }
+            int[] neighbors = links[decodeNode(current)][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float d = distance(q, neighbor);
+                if (top.size() < ef || d < lowerBound) {
+                    candidates.push(encode(d, neighbor));
+                    if (!skipDeleted || !deleted[neighbor]) {
+                        top.push(-encode(d, neighbor));
+                        if (top.size() > ef) {
+                            top.pop();
+                        }
+                        lowerBound = decodeDistance(-top.peek());
+                    }
+                }
+            }
+        }
+        return top;
+    }
+
+    private List<Hit> toHits(LongHeap top, int k) {
+        long[] sorted = sortedAscending(top);
+        int count = Math.min(k, sorted.length);
+        List<Hit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            hits.add(new Hit(ids[decodeNode(sorted[i])], 1.0f - decodeDistance(sorted[i])));
+        }
+        return hits;
+    }
+
+    /**
+     * 将大顶堆（负编码）转换为按距离升序的编码数组
+     */
+    private static long[] sortedAscending(LongHeap maxHeap) {
+        long[] result = new long[maxHeap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = -maxHeap.pop();
+        }
+        return result;
+    }
+
+    private void markDeleted(int node) {
+        deleted[node] = true;
+        nodeById.remove(ids[node]);
+        deletedCount++;
+    }
+
+    /**
+     * 标记删除的节点多于有效节点时重建索引
+     */
+    private void compactIfNeeded() {
+        if (deletedCount > 64 && deletedCount > size()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 去除标记删除的节点并重建图结构
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuild() {
+        int oldCount = nodeCount;
+        float[] oldVectors = vectors;
+        String[] oldIds = ids;
+        boolean[] oldDeleted = deleted;
+        resetStorage();
+        for (int node = 0; node < oldCount; node++) {
+            if (!oldDeleted[node]) {
+                insert(oldIds[node], Arrays.copyOfRange(oldVectors, node * dim, (node + 1) * dim));
+            }
+        }
+    }
+
+    private void resetStorage() {
+        vectors = new float[0];
+        ids = new String[0];
+        levels = new int[0];
+        links = new int[0][][];
+        deleted = new boolean[0];
+        nodeCount = 0;
+        deletedCount = 0;
+        nodeById.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(16, Math.max(required, ids.length * 2));
+        vectors = Arrays.copyOf(vectors, capacity * dim);
+        ids = Arrays.copyOf(ids, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        links = Arrays.copyOf(links, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private float[] checkDim(float[] vector) {
+        if (dim >= 0 && vector.length != dim) {
+            throw new IllegalArgumentException("向量维度不匹配: 期望 " + dim + "，实际 " + vector.length);
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] result = new float[vector.length];
+        if (norm == 0.0) {
+            return result;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * scale;
+        }
+        return result;
+    }
+
+    /**
+     * 余弦距离 1 - cos，截断到非负以便按位编码
+     */
+    private float distance(float[] q, int node) {
+        int base = node * dim;
+        float dot = 0.0f;
+        for (int i = 0; i < dim; i++) {
+            dot += q[i] * vectors[base + i];
+        }
+        return Math.max(0.0f, 1.0f - dot);
+    }
+
+    private float distance(int a, int b) {
+        int baseA = a * dim;
+        int baseB = b * dim;
+        float dot = 0.0f;
+        for (int i = 0; i < dim; i++) {
+            dot += vectors[baseA + i] * vectors[baseB + i];
+        }
+        return Math.max(0.0f, 1.0f - dot);
+    }
+
+    /**
+     * 非负float的位模式与数值同序，高32位存距离、低32位存节点号即可按long比较
+     */
+    private static long encode(float distance, int node) {
+        return ((long) Float.floatToIntBits(distance) << 32) | node;
+    }
+
+    private static int decodeNode(long encoded) {
+        return (int) encoded;
+    }
+
+    private static float decodeDistance(long encoded) {
+        return Float.intBitsToFloat((int) (encoded >>> 32));
+    }
+
+    /**
+     * 保存索引
+     * @param out 输出流
+     */
+    public void save(OutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(m);
+            data.writeInt(efConstruction);
+            data.writeInt(efSearch);
+            data.writeInt(dim);
+            data.writeInt(nodeCount);
+            data.writeInt(entryPoint);
+            data.writeInt(maxLevel);
+            for (int node = 0; node < nodeCount; node++) {
+                data.writeBoolean(deleted[node]);
+                data.writeUTF(ids[node]);
+                data.writeInt(levels[node]);
+                for (int i = 0; i < dim; i++) {
+                    data.writeFloat(vectors[node * dim + i]);
+                }
+                for (int l = 0; l <= levels[node]; l++) {
+                    int[] neighbors = links[node][l];
+                    data.writeInt(neighbors[0]);
+                    for (int i = 1; i <= neighbors[0]; i++) {
+                        data.writeInt(neighbors[i]);
+                    }
+                }
+            }
+            data.flush();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 加载索引
+     * @param in 输入流
+     * @return 加载的索引
+     */
+    public static HNSWIndex load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("不是有效的HNSW索引文件");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的HNSW索引版本: " + version);
+        }
+        HNSWIndex index = new HNSWIndex(data.readInt(), data.readInt(), data.readInt());
+        index.dim = data.readInt();
+        int count = data.readInt();
+        int entryPoint = data.readInt();
+        int maxLevel = data.readInt();
+        index.ensureCapacity(count);
+        for (int node = 0; node < count; node++) {
+            boolean removed = data.readBoolean();
+            String id = data.readUTF();
+            int level = data.readInt();
+            for (int i = 0; i < index.dim; i++) {
+                index.vectors[node * index.dim + i] = data.readFloat();
+            }
+            index.links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                int[] neighbors = new int[index.maxNeighbors(l) + 1];
+                neighbors[0] = data.readInt();
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    neighbors[i] = data.readInt();
+                }
+                index.links[node][l] = neighbors;
+            }
+            index.ids[node] = id;
+            index.levels[node] = level;
+            index.deleted[node] = removed;
+            if (removed) {
+                index.deletedCount++;
+            } else {
+                index.nodeById.put(id, node);
+            }
+        }
+        index.nodeCount = count;
+        index.entryPoint = entryPoint;
+        index.maxLevel = maxLevel;
+        return index;
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return nodeById.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 判断索引中该ID的向量是否与给定向量一致（按归一化后的值比较）
+     * @param id 文档ID
+     * @param vector 向量
+     * @return ID存在、维度相同且各分量一致时返回true
+     */
+    public boolean matches(String id, float[] vector) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeById.get(id);
+            if (node == null || vector.length != dim) {
+                return false;
+            }
+            float[] v = normalize(vector);
+            int base = node * dim;
+            for (int i = 0; i < dim; i++) {
+                if (Math.abs(vectors[base + i] - v[i]) > 1e-6f) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有效（未删除）向量的ID
+     */
+    public Set<String> getIds() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(nodeById.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 有效（未删除）向量数量
+     */
+    public int size() {
+        return nodeCount - deletedCount;
+    }
+
+    public int getDimension() {
+        return dim;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch必须为正数: " + efSearch);
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * long小顶堆
+     */
+    private static final class LongHeap {
+        private long[] heap;
+        private int size;
+
+        LongHeap(int capacity) {
+            heap = new long[Math.max(4, capacity)];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long result = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return result;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package io.leavesfly.tinyai.agent.rag;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 倒排索引
+ * 每个词维护按文档序号升序的倒排表（文档序号 + 权重），检索代价只与命中词的倒排表长度有关。
+ * 权重采用 lnc.ltc 方案：文档侧为对数词频并做余弦归一化，不含IDF；查询侧为对数词频乘IDF并归一化。
+ * 文档权重与IDF无关，因此插入文档时只需增量维护文档频率，IDF在检索时按当前文档数计算，始终与语料一致。
+ * 删除只做标记并扣减文档频率，标记删除的文档多于有效文档时自动压缩倒排表。
+ */
+public class InvertedIndex {
+
+    private final Map<String, Integer> termIds = new HashMap<>();   // 词 -> 词ID
+    private final List<Postings> postings = new ArrayList<>();      // 按词ID存放的倒排表
+
+    private String[] docIds = new String[0];                       // 文档序号 -> 文档ID
+    private int[][] docTerms = new int[0][];                       // 文档序号 -> 包含的词ID
+    private boolean[] deleted = new boolean[0];
+    private int docCount;                                          // 已分配的文档序号数
+    private int deletedCount;
+    private final Map<String, Integer> ordinalById = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 检索命中结果
+     */
+    public static class Hit {
+        private final String id;
+        private final float score;
+
+        public Hit(String id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return "Hit{id='" + id + "', score=" + score + '}';
+        }
+    }
+
+    /**
+     * 单个词的倒排表
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        float[] weights = new float[4];
+        int size;
+        int docFreq;          // 有效文档数
+        float maxWeight;      // 倒排表中的最大权重，用作WAND上界
+
+        void append(int doc, float weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size++] = weight;
+            maxWeight = Math.max(maxWeight, weight);
+        }
+    }
+
+    /**
+     * 插入或替换文档
+     * @param docId 文档ID
+     * @param tokens 文档分词结果
+     */
+    public void add(String docId, List<String> tokens) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinalById.get(docId);
+            if (existing != null) {
+                markDeleted(existing);
+            }
+            if (!tokens.isEmpty()) {
+                insert(docId, tokens);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除文档
+     * @param docId 文档ID
+     * @return 是否存在并删除
+     */
+    public boolean remove(String docId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalById.get(docId);
+            if (ordinal == null) {
+                return false;
+            }
+            markDeleted(ordinal);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            termIds.clear();
+            postings.clear();
+            docIds = new String[0];
+            docTerms = new int[0][];
+            deleted = new boolean[0];
+            docCount = 0;
+            deletedCount = 0;
+            ordinalById.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * WAND（弱与）top-k检索
+     * 各查询词游标按当前文档序号排序，累加上界直到超过当前第k名得分，得到枢轴文档；
+     * 枢轴之前的游标直接跳到枢轴文档，无法进入top-k的文档不会被打分。
+     * @param queryTokens 查询分词结果
+     * @param k 返回数量
+     * @return 按得分降序排列的结果
+     */
+    public List<Hit> search(List<String> queryTokens, int k) {
+        lock.readLock().lock();
+        try {
+            List<Cursor> cursors = queryCursors(queryTokens);
+            if (cursors.isEmpty() || k <= 0) {
+                return new ArrayList<>();
+            }
+            PriorityQueue<Long> top = new PriorityQueue<>(k + 1);
+            Cursor[] active = cursors.toArray(new Cursor[0]);
+            while (true) {
+                Arrays.sort(active, CURSOR_ORDER);
+                double threshold = top.size() < k ? 0.0 : decodeScore(top.peek());
+                double bound = 0.0;
+                int pivot = -1;
+                for (int i = 0; i < active.length && active[i].doc() != Integer.MAX_VALUE; i++) {
+                    bound += active[i].upperBound;
+                    if (bound > threshold) {
+                        pivot = i;
+                        break;
+                    }
+                }
+                if (pivot < 0) {
+                    break;
+                }
+                int pivotDoc = active[pivot].doc();
+                if (active[0].doc() == pivotDoc) {
+                    double score = 0.0;
+                    for (Cursor cursor : active) {
+                        if (cursor.doc() != pivotDoc) {
+                            break;
+                        }
+                        score += cursor.queryWeight * cursor.weight();
+                        cursor.position++;
+                    }
+                    if (!deleted[pivotDoc] && (top.size() < k || score > threshold)) {
+                        top.add(encode((float) score, pivotDoc));
+                        if (top.size() > k) {
+                            top.poll();
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < pivot; i++) {
+                        active[i].advanceTo(pivotDoc);
+                    }
+                }
+            }
+            return toHits(top);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 逐词累加（term-at-a-time）检索：遍历全部命中倒排表，结果与 {@link #search(List, int)} 一致
+     */
+    public List<Hit> searchTermAtATime(List<String> queryTokens, int k) {
+        lock.readLock().lock();
+        try {
+            List<Cursor> cursors = queryCursors(queryTokens);
+            if (cursors.isEmpty() || k <= 0) {
+                return new ArrayList<>();
+            }
+            double[] scores = new double[docCount];
+            for (Cursor cursor : cursors) {
+                Postings list = cursor.postings;
+                for (int i = 0; i < list.size; i++) {
+                    scores[list.docs[i]] += cursor.queryWeight * list.weights[i];
+                }
+            }
+            PriorityQueue<Long> top = new PriorityQueue<>(k + 1);
+            for (int doc = 0; doc < docCount; doc++) {
+                if (scores[doc] > 0.0 && !deleted[doc]) {
+                    top.add(encode((float) scores[doc], doc));
+                    if (top.size() > k) {
+                        top.poll();
+                    }
+                }
+            }
+            return toHits(top);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取词的IDF：ln(1 + N / df)，词不存在时为0
+     */
+    public double getIdf(String term) {
+        lock.readLock().lock();
+        try {
+            Integer termId = termIds.get(term);
+            return termId == null ? 0.0 : idf(postings.get(termId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取词的文档频率
+     */
+    public int getDocumentFrequency(String term) {
+        lock.readLock().lock();
+        try {
+            Integer termId = termIds.get(term);
+            return termId == null ? 0 : postings.get(termId).docFreq;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取倒排表中的记录总数（含标记删除的文档）
+     */
+    public long getPostingsCount() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (Postings list : postings) {
+                total += list.size;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String docId) {
+        lock.readLock().lock();
+        try {
+            return ordinalById.containsKey(docId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取有效文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取词汇表大小
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return termIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 去除标记删除的文档并压缩倒排表
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(String docId, List<String> tokens) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        int[] terms = new int[counts.size()];
+        float[] weights = new float[counts.size()];
+        double norm = 0.0;
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Integer termId = termIds.get(entry.getKey());
+            if (termId == null) {
+                termId = postings.size();
+                termIds.put(entry.getKey(), termId);
+                postings.add(new Postings());
+            }
+            terms[count] = termId;
+            weights[count] = (float) (1.0 + Math.log(entry.getValue()));
+            norm += (double) weights[count] * weights[count];
+            count++;
+        }
+        norm = Math.sqrt(norm);
+
+        int ordinal = docCount;
+        ensureCapacity(ordinal + 1);
+        docIds[ordinal] = docId;
+        docTerms[ordinal] = terms;
+        docCount++;
+        ordinalById.put(docId, ordinal);
+        for (int i = 0; i < count; i++) {
+            Postings list = postings.get(terms[i]);
+            list.append(ordinal, (float) (weights[i] / norm));
+            list.docFreq++;
+        }
+    }
+
+    private void markDeleted(int ordinal) {
+        deleted[ordinal] = true;
+        ordinalById.remove(docIds[ordinal]);
+        for (int termId : docTerms[ordinal]) {
+            postings.get(termId).docFreq--;
+        }
+        deletedCount++;
+    }
+
+    private void compactIfNeeded() {
+        if (deletedCount > 64 && deletedCount > docCount - deletedCount) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 重新编号有效文档并过滤倒排表；序号映射保持单调，倒排表无需重新排序
+     */
+    private void rebuild() {
+        int[] remap = new int[docCount];
+        int live = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            remap[doc] = deleted[doc] ? -1 : live++;
+        }
+        for (Postings list : postings) {
+            int size = 0;
+            float maxWeight = 0.0f;
+            for (int i = 0; i < list.size; i++) {
+                int doc = remap[list.docs[i]];
+                if (doc >= 0) {
+                    list.docs[size] = doc;
+                    list.weights[size++] = list.weights[i];
+                    maxWeight = Math.max(maxWeight, list.weights[i]);
+                }
+            }
+            list.size = size;
+            list.maxWeight = maxWeight;
+        }
+        String[] newDocIds = new String[live];
+        int[][] newDocTerms = new int[live][];
+        for (int doc = 0; doc < docCount; doc++) {
+            if (remap[doc] >= 0) {
+                newDocIds[remap[doc]] = docIds[doc];
+                newDocTerms[remap[doc]] = docTerms[doc];
+                ordinalById.put(docIds[doc], remap[doc]);
+            }
+        }
+        docIds = newDocIds;
+        docTerms = newDocTerms;
+        deleted = new boolean[live];
+        docCount = live;
+        deletedCount = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= docIds.length) {
+            return;
+        }
+        int capacity = Math.max(16, Math.max(required, docIds.length * 2));
+        docIds = Arrays.copyOf(docIds, capacity);
+        docTerms = Arrays.copyOf(docTerms, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+    }
+
+    private double idf(Postings list) {
+        int live = docCount - deletedCount;
+        return list.docFreq <= 0 ? 0.0 : Math.log(1.0 + (double) live / list.docFreq);
+    }
+
+    /**
+     * 计算查询词权重（对数词频 × IDF，归一化）并为每个命中词创建游标
+     */
+    private List<Cursor> queryCursors(List<String> queryTokens) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String token : queryTokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        List<Cursor> cursors = new ArrayList<>();
+        double norm = 0.0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Integer termId = termIds.get(entry.getKey());
+            double weight = (1.0 + Math.log(entry.getValue()))
+                    * (termId == null ? 0.0 : idf(postings.get(termId)));
+            norm += weight * weight;
+            if (weight > 0.0) {
+                cursors.add(new Cursor(postings.get(termId), weight));
+            }
+        }
+        norm = Math.sqrt(norm);
+        for (Cursor cursor : cursors) {
+            cursor.queryWeight /= norm;
+            cursor.upperBound = cursor.queryWeight * cursor.postings.maxWeight;
+        }
+        return cursors;
+    }
+
+    private List<Hit> toHits(PriorityQueue<Long> top) {
+        List<Hit> hits = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            long entry = top.poll();
+            hits.add(new Hit(docIds[(int) entry], decodeScore(entry)));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    /**
+     * 得分为正数，其位模式与数值同序，编码后可直接按long比较
+     */
+    private static long encode(float score, int doc) {
+        return ((long) Float.floatToIntBits(score) << 32) | (doc & 0xFFFFFFFFL);
+    }
+
+    private static float decodeScore(long entry) {
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+
+    private static final Comparator<Cursor> CURSOR_ORDER = Comparator.comparingInt(Cursor::doc);
+
+    /**
+     * 倒排表游标
+     */
+    private static final class Cursor {
+        final Postings postings;
+        double queryWeight;
+        double upperBound;
+        int position;
+
+        Cursor(Postings postings, double queryWeight) {
+            this.postings = postings;
+            this.queryWeight = queryWeight;
+        }
+
+        int doc() {
+            return position < postings.size ? postings.docs[position] : Integer.MAX_VALUE;
+        }
+
+        float weight() {
+            return postings.weights[position];
+        }
+
+        /**
+         * 倍增后二分，跳到第一个序号不小于target的位置
+         */
+        void advanceTo(int target) {
+            int low = position;
+            int step = 1;
+            int high = position;
+            while (high < postings.size && postings.docs[high] < target) {
+                low = high + 1;
+                high = position + step;
+                step <<= 1;
+            }
+            high = Math.min(high, postings.size);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (postings.docs[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            position = low;
+        }
+    }
+}
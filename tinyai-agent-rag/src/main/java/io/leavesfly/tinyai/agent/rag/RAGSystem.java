@@ -135,6 +135,18 @@ public class RAGSystem {
         // 向量化查询
         List<Double> queryEmbedding = vectorizer.transform(query);
         
+        // 余弦相似度直接使用向量索引检索
+        if (similarityMethod == SimilarityMethod.COSINE) {
+            List<QueryResult> results = new ArrayList<>();
+            for (QueryResult result : vectorDb.searchSimilar(queryEmbedding, topK)) {
+                if (result.getSimilarity() >= similarityThreshold) {
+                    results.add(result);
+                }
+            }
+            System.out.println("找到 " + results.size() + " 个相关文档");
+            return results;
+        }
+        
         // 获取所有文档
         List<Document> allDocuments = vectorDb.getAllDocuments();
         
@@ -165,6 +177,22 @@ public class RAGSystem {
         return results;
     }
 
+    /**
+     * 基于倒排索引的词法检索，不依赖TF-IDF特征选择，新增文档的词汇立即可检索
+     * @param query 查询文本
+     * @param topK 返回的文档数量
+     * @return 查询结果列表
+     */
+    public List<QueryResult> searchLexical(String query, int topK) {
+        List<QueryResult> results = new ArrayList<>();
+        for (QueryResult result : vectorDb.searchLexical(query, topK)) {
+            if (result.getSimilarity() >= similarityThreshold) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
     /**
      * 检索相关文档（使用默认余弦相似度）
      * @param query 查询文本
@@ -0,0 +1,137 @@
+package io.leavesfly.tinyai.agent.rag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 稀疏向量类
+ * 只存储非零分量：按升序排列的特征ID及对应的权重
+ */
+public class SparseVector {
+    private final int[] indices;     // 特征ID（升序）
+    private final float[] values;    // 特征权重
+
+    /**
+     * 构造函数
+     * @param indices 升序排列的特征ID
+     * @param values 对应的权重
+     */
+    public SparseVector(int[] indices, float[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("特征ID与权重数量不一致");
+        }
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] <= indices[i - 1]) {
+                throw new IllegalArgumentException("特征ID必须严格升序");
+            }
+        }
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * 从未排序的非负特征ID和权重构造，重复ID的权重相加，忽略零权重
+     */
+    public static SparseVector fromUnsorted(int[] indices, float[] values) {
+        long[] packed = new long[indices.length];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (values[i] != 0.0f) {
+                packed[count++] = ((long) indices[i] << 32) | (Float.floatToRawIntBits(values[i]) & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(packed, 0, count);
+        int[] sortedIndices = new int[count];
+        float[] sortedValues = new float[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int index = (int) (packed[i] >>> 32);
+            float value = Float.intBitsToFloat((int) packed[i]);
+            if (size > 0 && sortedIndices[size - 1] == index) {
+                sortedValues[size - 1] += value;
+            } else {
+                sortedIndices[size] = index;
+                sortedValues[size++] = value;
+            }
+        }
+        return new SparseVector(Arrays.copyOf(sortedIndices, size), Arrays.copyOf(sortedValues, size));
+    }
+
+    /**
+     * 计算与另一稀疏向量的点积（有序归并）
+     */
+    public double dot(SparseVector other) {
+        int i = 0;
+        int j = 0;
+        double sum = 0.0;
+        while (i < indices.length && j < other.indices.length) {
+            int a = indices[i];
+            int b = other.indices[j];
+            if (a == b) {
+                sum += (double) values[i++] * other.values[j++];
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 计算L2范数
+     */
+    public double norm() {
+        double sum = 0.0;
+        for (float value : values) {
+            sum += (double) value * value;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * 转换为稠密向量
+     * @param dimension 稠密向量维度
+     */
+    public List<Double> toDense(int dimension) {
+        Double[] dense = new Double[dimension];
+        Arrays.fill(dense, 0.0);
+        for (int i = 0; i < indices.length && indices[i] < dimension; i++) {
+            dense[indices[i]] = (double) values[i];
+        }
+        return new ArrayList<>(Arrays.asList(dense));
+    }
+
+    /**
+     * 获取非零分量个数
+     */
+    public int nnz() {
+        return indices.length;
+    }
+
+    public int getIndex(int position) {
+        return indices[position];
+    }
+
+    public float getValue(int position) {
+        return values[position];
+    }
+
+    public int[] getIndices() {
+        return indices.clone();
+    }
+
+    public float[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "SparseVector{" +
+                "nnz=" + indices.length +
+                ", indices=" + Arrays.toString(indices) +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
@@ -11,6 +11,7 @@ public class TFIDFVectorizer {
     private SimpleTokenizer tokenizer;              // 分词器
     private Map<String, Double> idfScores;          // IDF分数映射
     private List<String> featureNames;              // 特征名称列表
+    private Map<String, Integer> featureIndex;      // 特征名称 -> 特征ID
     private boolean isTrained;                      // 是否已训练
 
     /**
@@ -22,6 +23,7 @@ public class TFIDFVectorizer {
         this.tokenizer = new SimpleTokenizer();
         this.idfScores = new HashMap<>();
         this.featureNames = new ArrayList<>();
+        this.featureIndex = new HashMap<>();
         this.isTrained = false;
     }
 
@@ -62,8 +64,10 @@ public class TFIDFVectorizer {
         sortedFeatures.sort((a, b) -> b.getValue().compareTo(a.getValue()));
         
         featureNames.clear();
+        featureIndex.clear();
         for (int i = 0; i < Math.min(maxFeatures, sortedFeatures.size()); i++) {
             featureNames.add(sortedFeatures.get(i).getKey());
+            featureIndex.put(sortedFeatures.get(i).getKey(), i);
         }
         
         isTrained = true;
@@ -84,6 +88,20 @@ public class TFIDFVectorizer {
             return Collections.nCopies(maxFeatures, 0.0);
         }
         
+        return transformSparse(text).toDense(featureNames.size());
+    }
+
+    /**
+     * 将单个文本转换为稀疏TF-IDF向量
+     * 只遍历文本中出现的词，向量中只保留非零特征，数值与 {@link #transform(String)} 一致
+     * @param text 输入文本
+     * @return 以特征ID为下标的稀疏向量
+     */
+    public SparseVector transformSparse(String text) {
+        if (!isTrained) {
+            throw new IllegalStateException("模型尚未训练，请先调用fit方法");
+        }
+        
         // 分词并统计词频
         List<String> tokens = tokenizer.tokenize(text);
         Map<String, Integer> tokenCounts = new HashMap<>();
@@ -92,18 +110,21 @@ public class TFIDFVectorizer {
         }
         
         int totalTokens = tokens.size();
-        
-        // 计算TF-IDF向量
-        List<Double> vector = new ArrayList<>();
-        for (String feature : featureNames) {
-            int count = tokenCounts.getOrDefault(feature, 0);
-            double tf = totalTokens > 0 ? (double) count / totalTokens : 0.0;
-            double idf = idfScores.getOrDefault(feature, 0.0);
-            double tfidf = tf * idf;
-            vector.add(tfidf);
+        int[] indices = new int[tokenCounts.size()];
+        float[] values = new float[tokenCounts.size()];
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : tokenCounts.entrySet()) {
+            Integer feature = featureIndex.get(entry.getKey());
+            if (feature == null) {
+                continue;
+            }
+            double tf = (double) entry.getValue() / totalTokens;
+            double idf = idfScores.getOrDefault(entry.getKey(), 0.0);
+            indices[count] = feature;
+            values[count++] = (float) (tf * idf);
         }
         
-        return vector;
+        return SparseVector.fromUnsorted(Arrays.copyOf(indices, count), Arrays.copyOf(values, count));
     }
 
     /**
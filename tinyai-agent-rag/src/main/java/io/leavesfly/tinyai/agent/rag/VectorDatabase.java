@@ -1,5 +1,12 @@
 package io.leavesfly.tinyai.agent.rag;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -8,18 +15,39 @@ import java.util.stream.Collectors;
 
 /**
  * 向量数据库类
- * 使用内存Map存储文档和向量嵌入信息（避免第三方依赖）
+ * 使用内存Map存储文档和向量嵌入信息（避免第三方依赖），
+ * 同时为带嵌入的文档维护HNSW近似最近邻索引、为文档内容维护倒排索引，增删文档时增量更新
  */
 public class VectorDatabase {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
     
+    private static final int DEFAULT_EXACT_SEARCH_THRESHOLD = 2000;
+
     private final Map<String, Document> documents;  // 内存存储文档映射
+    private volatile HNSWIndex index;                // 向量索引
+    private final InvertedIndex lexicalIndex;        // 词法倒排索引
+    private final SimpleTokenizer tokenizer;         // 内容分词器
+    private int exactSearchThreshold;                // 文档数不超过该值时使用精确检索
 
     /**
      * 默认构造函数（使用内存存储）
      */
     public VectorDatabase() {
+        this(16, 200, 64);
+    }
+
+    /**
+     * 构造函数
+     * @param m HNSW每层最大邻居数
+     * @param efConstruction 构建时的候选集大小
+     * @param efSearch 检索时的候选集大小
+     */
+    public VectorDatabase(int m, int efConstruction, int efSearch) {
         this.documents = new ConcurrentHashMap<>();
+        this.index = new HNSWIndex(m, efConstruction, efSearch);
+        this.lexicalIndex = new InvertedIndex();
+        this.tokenizer = new SimpleTokenizer();
+        this.exactSearchThreshold = DEFAULT_EXACT_SEARCH_THRESHOLD;
     }
 
     /**
@@ -36,6 +64,7 @@ public class VectorDatabase {
      */
     public void addDocument(Document document) {
         documents.put(document.getId(), document);
+        indexDocument(document);
     }
 
     /**
@@ -45,6 +74,7 @@ public class VectorDatabase {
     public void addDocuments(List<Document> documentsList) {
         for (Document document : documentsList) {
             documents.put(document.getId(), document);
+            indexDocument(document);
         }
     }
 
@@ -86,6 +116,8 @@ public class VectorDatabase {
      * @return 是否删除成功
      */
     public boolean deleteDocument(String docId) {
+        index.remove(docId);
+        lexicalIndex.remove(docId);
         return documents.remove(docId) != null;
     }
 
@@ -102,6 +134,138 @@ public class VectorDatabase {
      */
     public void clearAllDocuments() {
         documents.clear();
+        index.clear();
+        lexicalIndex.clear();
+    }
+
+    /**
+     * 按余弦相似度检索最相似的文档
+     * 文档数不超过精确检索阈值时扫描紧凑向量数组，否则使用HNSW近似检索
+     * @param queryEmbedding 查询向量
+     * @param topK 返回数量
+     * @return 按相似度降序排列的结果
+     */
+    public List<QueryResult> searchSimilar(List<Double> queryEmbedding, int topK) {
+        if (queryEmbedding == null || queryEmbedding.isEmpty() || index.getDimension() != queryEmbedding.size()) {
+            return new ArrayList<>();
+        }
+        float[] query = toFloatArray(queryEmbedding);
+        List<HNSWIndex.Hit> hits = index.size() <= exactSearchThreshold
+                ? index.searchExact(query, topK)
+                : index.search(query, topK);
+
+        List<QueryResult> results = new ArrayList<>(hits.size());
+        for (HNSWIndex.Hit hit : hits) {
+            Document document = documents.get(hit.getId());
+            if (document != null) {
+                results.add(new QueryResult(document, hit.getSimilarity(), results.size() + 1));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按文档内容做词法检索（倒排索引 + WAND），代价与命中的倒排记录数成正比
+     * @param query 查询文本
+     * @param topK 返回数量
+     * @return 按得分降序排列的结果，得分为lnc.ltc余弦相似度
+     */
+    public List<QueryResult> searchLexical(String query, int topK) {
+        List<QueryResult> results = new ArrayList<>();
+        for (InvertedIndex.Hit hit : lexicalIndex.search(tokenizer.tokenize(query), topK)) {
+            Document document = documents.get(hit.getId());
+            if (document != null) {
+                results.add(new QueryResult(document, hit.getScore(), results.size() + 1));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 获取词法倒排索引
+     */
+    public InvertedIndex getLexicalIndex() {
+        return lexicalIndex;
+    }
+
+    /**
+     * 保存向量索引
+     * @param indexPath 索引文件路径
+     */
+    public void saveIndex(String indexPath) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(indexPath))) {
+            index.save(out);
+        }
+    }
+
+    /**
+     * 加载向量索引，并与当前数据库中的文档对齐：
+     * 嵌入已变化或不在索引中的文档重新索引，无嵌入或已不存在的文档从索引中移除；
+     * 若文档嵌入维度与索引不一致，说明索引已整体失效，按索引参数从当前文档重建
+     * @param indexPath 索引文件路径
+     */
+    public void loadIndex(String indexPath) throws IOException {
+        HNSWIndex loaded;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(indexPath))) {
+            loaded = HNSWIndex.load(in);
+        }
+        if (loaded.getDimension() >= 0) {
+            for (Document document : documents.values()) {
+                List<Double> embedding = document.getEmbedding();
+                if (embedding != null && !embedding.isEmpty() && embedding.size() != loaded.getDimension()) {
+                    loaded = new HNSWIndex(loaded.getM(), loaded.getEfConstruction(), loaded.getEfSearch());
+                    break;
+                }
+            }
+        }
+        for (Document document : documents.values()) {
+            List<Double> embedding = document.getEmbedding();
+            if (embedding == null || embedding.isEmpty() || !loaded.matches(document.getId(), toFloatArray(embedding))) {
+                indexDocument(loaded, document);
+            }
+        }
+        for (String id : loaded.getIds()) {
+            if (!documents.containsKey(id)) {
+                loaded.remove(id);
+            }
+        }
+        index = loaded;
+    }
+
+    /**
+     * 获取向量索引
+     */
+    public HNSWIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * 设置精确检索阈值，文档数不超过该值时不使用近似索引
+     */
+    public void setExactSearchThreshold(int exactSearchThreshold) {
+        this.exactSearchThreshold = exactSearchThreshold;
+    }
+
+    private void indexDocument(Document document) {
+        indexDocument(index, document);
+        lexicalIndex.add(document.getId(), tokenizer.tokenize(document.getContent()));
+    }
+
+    private static void indexDocument(HNSWIndex target, Document document) {
+        List<Double> embedding = document.getEmbedding();
+        if (embedding == null || embedding.isEmpty()) {
+            target.remove(document.getId());
+        } else {
+            target.add(document.getId(), toFloatArray(embedding));
+        }
+    }
+
+    private static float[] toFloatArray(List<Double> values) {
+        float[] result = new float[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).floatValue();
+        }
+        return result;
     }
 
     /**
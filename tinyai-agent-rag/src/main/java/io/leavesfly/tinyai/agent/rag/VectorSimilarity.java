@@ -50,6 +50,26 @@ public class VectorSimilarity {
         return dotProduct / (norm1 * norm2);
     }
 
+    /**
+     * 计算稀疏向量的余弦相似度，只归并双方的非零分量
+     * @param vec1 向量1
+     * @param vec2 向量2
+     * @return 余弦相似度值
+     */
+    public static double cosineSimilarity(SparseVector vec1, SparseVector vec2) {
+        if (vec1 == null || vec2 == null || vec1.nnz() == 0 || vec2.nnz() == 0) {
+            return 0.0;
+        }
+
+        double norm1 = vec1.norm();
+        double norm2 = vec2.norm();
+        if (norm1 == 0.0 || norm2 == 0.0) {
+            return 0.0;
+        }
+
+        return vec1.dot(vec2) / (norm1 * norm2);
+    }
+
     /**
      * 计算欧几里得距离
      * @param vec1 向量1
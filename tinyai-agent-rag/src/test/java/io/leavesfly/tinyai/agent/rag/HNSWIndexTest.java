@@ -0,0 +1,166 @@
+package io.leavesfly.tinyai.agent.rag;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * HNSW近似最近邻索引测试
+ */
+public class HNSWIndexTest {
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] vector = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    @Test
+    public void testRecallAgainstExactSearch() {
+        HNSWBenchmark.Result clustered = HNSWBenchmark.run(new HNSWIndex(), 5000, 64, 100, 10, 20, 7);
+        assertTrue("recall@10 = " + clustered.recall, clustered.recall >= 0.95);
+
+        // 均匀随机向量是最坏情况，需要更大的efSearch
+        HNSWBenchmark.Result uniform = HNSWBenchmark.run(new HNSWIndex(16, 200, 128), 5000, 64, 100, 10, 7);
+        assertTrue("recall@10 = " + uniform.recall, uniform.recall >= 0.9);
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        Random random = new Random(3);
+        HNSWIndex index = new HNSWIndex(8, 64, 32);
+        float[] target = randomVector(random, 16);
+        index.add("target", target);
+        for (int i = 0; i < 300; i++) {
+            index.add("v" + i, randomVector(random, 16));
+        }
+        assertEquals("target", index.search(target, 1).get(0).getId());
+
+        assertTrue(index.remove("target"));
+        assertFalse(index.remove("target"));
+        assertFalse(index.contains("target"));
+        assertEquals(300, index.size());
+        for (HNSWIndex.Hit hit : index.search(target, 10)) {
+            assertNotEquals("target", hit.getId());
+        }
+
+        // 替换已有向量后只保留新值
+        index.add("v0", target);
+        assertEquals(300, index.size());
+        List<HNSWIndex.Hit> hits = index.search(target, 1);
+        assertEquals("v0", hits.get(0).getId());
+        assertEquals(1.0f, hits.get(0).getSimilarity(), 1e-5);
+    }
+
+    @Test
+    public void testSaveAndLoadRoundTrip() throws IOException {
+        Random random = new Random(11);
+        HNSWIndex index = new HNSWIndex(12, 100, 48);
+        for (int i = 0; i < 500; i++) {
+            index.add("v" + i, randomVector(random, 24));
+        }
+        index.remove("v5");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.save(out);
+        HNSWIndex loaded = HNSWIndex.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(index.size(), loaded.size());
+        assertEquals(24, loaded.getDimension());
+        assertEquals(12, loaded.getM());
+        assertEquals(48, loaded.getEfSearch());
+        assertFalse(loaded.contains("v5"));
+        float[] query = randomVector(random, 24);
+        List<HNSWIndex.Hit> expected = index.search(query, 10);
+        List<HNSWIndex.Hit> actual = loaded.search(query, 10);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testVectorDatabaseUsesIndexAboveThreshold() {
+        Random random = new Random(5);
+        VectorDatabase db = new VectorDatabase();
+        db.setExactSearchThreshold(10);
+        for (int i = 0; i < 200; i++) {
+            List<Double> embedding = new ArrayList<>();
+            for (float value : randomVector(random, 8)) {
+                embedding.add((double) value);
+            }
+            db.addDocument(new Document("doc" + i, "content " + i, new HashMap<>(), embedding, null));
+        }
+        Document target = db.getDocument("doc42");
+        List<QueryResult> results = db.searchSimilar(target.getEmbedding(), 3);
+        assertEquals(3, results.size());
+        assertEquals("doc42", results.get(0).getDocument().getId());
+
+        db.deleteDocument("doc42");
+        assertFalse(db.getIndex().contains("doc42"));
+        assertNotEquals("doc42", db.searchSimilar(target.getEmbedding(), 1).get(0).getDocument().getId());
+    }
+
+    @Test
+    public void testLoadIndexReindexesStaleEmbeddings() throws IOException {
+        Random random = new Random(9);
+        VectorDatabase db = new VectorDatabase();
+        for (int i = 0; i < 20; i++) {
+            db.addDocument(new Document("doc" + i, "content " + i, new HashMap<>(), toList(randomVector(random, 8)), null));
+        }
+        File indexFile = File.createTempFile("hnsw", ".idx");
+        indexFile.deleteOnExit();
+        db.saveIndex(indexFile.getAbsolutePath());
+
+        // 保存索引后文档嵌入被更新：ID相同但向量已变化
+        VectorDatabase reopened = new VectorDatabase();
+        for (Document document : db.getAllDocuments()) {
+            reopened.addDocument(document);
+        }
+        List<Double> updated = toList(randomVector(random, 8));
+        reopened.getDocument("doc5").setEmbedding(updated);
+        reopened.loadIndex(indexFile.getAbsolutePath());
+
+        assertTrue("过期的嵌入应被重新索引", reopened.getIndex().matches("doc5", toFloatArray(updated)));
+        assertEquals("doc5", reopened.searchSimilar(updated, 1).get(0).getDocument().getId());
+        assertEquals(20, reopened.getIndex().size());
+
+        // 嵌入维度与索引不一致：按当前文档重建索引
+        VectorDatabase resized = new VectorDatabase();
+        for (int i = 0; i < 20; i++) {
+            resized.addDocument(new Document("doc" + i, "content " + i, new HashMap<>(), toList(randomVector(random, 4)), null));
+        }
+        resized.loadIndex(indexFile.getAbsolutePath());
+        assertEquals(4, resized.getIndex().getDimension());
+        assertEquals(20, resized.getIndex().size());
+        List<Double> query = resized.getDocument("doc7").getEmbedding();
+        assertEquals("doc7", resized.searchSimilar(query, 1).get(0).getDocument().getId());
+    }
+
+    private static List<Double> toList(float[] vector) {
+        List<Double> list = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            list.add((double) value);
+        }
+        return list;
+    }
+
+    private static float[] toFloatArray(List<Double> values) {
+        float[] result = new float[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).floatValue();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package io.leavesfly.tinyai.agent.rag;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 倒排索引与稀疏向量测试
+ */
+public class InvertedIndexTest {
+
+    private static List<String> randomTokens(Random random, int vocabulary, int length) {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            // 近似Zipf分布：小编号的词更常见
+            int term = (int) Math.floor(Math.pow(vocabulary, random.nextDouble())) - 1;
+            tokens.add("t" + term);
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testWandMatchesTermAtATime() {
+        Random random = new Random(13);
+        InvertedIndex index = new InvertedIndex();
+        for (int i = 0; i < 3000; i++) {
+            index.add("d" + i, randomTokens(random, 2000, 5 + random.nextInt(40)));
+        }
+        for (int i = 0; i < 500; i += 3) {
+            index.remove("d" + i);
+        }
+
+        for (int q = 0; q < 50; q++) {
+            List<String> query = randomTokens(random, 2000, 1 + random.nextInt(6));
+            List<InvertedIndex.Hit> wand = index.search(query, 10);
+            List<InvertedIndex.Hit> exhaustive = index.searchTermAtATime(query, 10);
+            assertEquals(exhaustive.size(), wand.size());
+            for (int i = 0; i < wand.size(); i++) {
+                assertEquals(exhaustive.get(i).getScore(), wand.get(i).getScore(), 1e-5);
+                int doc = Integer.parseInt(wand.get(i).getId().substring(1));
+                assertFalse("已删除的文档不应出现", doc < 500 && doc % 3 == 0);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalDocumentFrequency() {
+        InvertedIndex index = new InvertedIndex();
+        index.add("a", Arrays.asList("apple", "banana"));
+        index.add("b", Arrays.asList("apple", "cherry"));
+        assertEquals(2, index.getDocumentFrequency("apple"));
+        assertEquals(Math.log(1.0 + 2.0 / 2), index.getIdf("apple"), 1e-9);
+        assertEquals(Math.log(1.0 + 2.0 / 1), index.getIdf("cherry"), 1e-9);
+
+        // 插入后IDF立即反映新的文档数
+        index.add("c", Arrays.asList("cherry", "cherry", "date"));
+        assertEquals(Math.log(1.0 + 3.0 / 2), index.getIdf("cherry"), 1e-9);
+        List<InvertedIndex.Hit> hits = index.search(Arrays.asList("cherry"), 5);
+        assertEquals("c", hits.get(0).getId());
+        assertEquals(2, hits.size());
+
+        // 替换与删除后文档频率同步扣减
+        index.add("b", Arrays.asList("banana"));
+        assertEquals(1, index.getDocumentFrequency("apple"));
+        assertEquals(2, index.getDocumentFrequency("banana"));
+        assertTrue(index.remove("a"));
+        assertEquals(0, index.getDocumentFrequency("apple"));
+        assertTrue(index.search(Arrays.asList("apple"), 5).isEmpty());
+        assertEquals(2, index.size());
+
+        index.compact();
+        assertEquals(3, index.getPostingsCount());
+        assertEquals("c", index.search(Arrays.asList("date"), 1).get(0).getId());
+    }
+
+    @Test
+    public void testSparseTransformMatchesDense() {
+        TFIDFVectorizer vectorizer = new TFIDFVectorizer(50);
+        vectorizer.fit(Arrays.asList("Python是编程语言", "机器学习很有趣", "深度学习使用神经网络", "Python机器学习"));
+
+        String text = "Python机器学习编程";
+        SparseVector sparse = vectorizer.transformSparse(text);
+        List<Double> dense = vectorizer.transform(text);
+        assertTrue(sparse.nnz() < dense.size());
+        assertEquals(dense, sparse.toDense(vectorizer.getFeatureDimension()));
+
+        SparseVector other = vectorizer.transformSparse("深度学习");
+        assertEquals(VectorSimilarity.cosineSimilarity(dense, vectorizer.transform("深度学习")),
+                VectorSimilarity.cosineSimilarity(sparse, other), 1e-6);
+    }
+
+    @Test
+    public void testVectorDatabaseLexicalSearch() {
+        VectorDatabase db = new VectorDatabase();
+        db.addDocument(new Document("py", "Python是一种编程语言", new HashMap<>()));
+        db.addDocument(new Document("ml", "机器学习是人工智能的分支", new HashMap<>()));
+        db.addDocument(new Document("dl", "深度学习使用神经网络进行机器学习", new HashMap<>()));
+
+        List<QueryResult> results = db.searchLexical("python编程", 2);
+        assertEquals("py", results.get(0).getDocument().getId());
+
+        db.deleteDocument("py");
+        for (QueryResult result : db.searchLexical("python编程", 3)) {
+            assertNotEquals("py", result.getDocument().getId());
+        }
+        db.clearAllDocuments();
+        assertEquals(0, db.getLexicalIndex().size());
+    }
+}
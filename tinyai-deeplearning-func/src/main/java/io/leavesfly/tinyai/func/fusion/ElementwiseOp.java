@@ -0,0 +1,345 @@
+package io.leavesfly.tinyai.func.fusion;
+
+import io.leavesfly.tinyai.func.Function;
+import io.leavesfly.tinyai.func.base.Add;
+import io.leavesfly.tinyai.func.base.Div;
+import io.leavesfly.tinyai.func.base.Mul;
+import io.leavesfly.tinyai.func.base.Neg;
+import io.leavesfly.tinyai.func.base.Sub;
+import io.leavesfly.tinyai.func.math.*;
+
+/**
+ * 逐元素算子的标量语义
+ * <p>
+ * 融合编译器把计算图中的逐元素Function翻译成这里的标量算子，
+ * 融合内核对每个元素依次执行这些标量算子，从而只遍历一次内存。
+ * 每个算子同时给出前向值与对两个操作数的局部导数，用于融合后的反向传播。
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public enum ElementwiseOp {
+
+    ADD(2) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return x + y;
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return 1f;
+        }
+
+        @Override
+        public float gradY(float x, float y, float out, float a, float b) {
+            return 1f;
+        }
+    },
+
+    SUB(2) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return x - y;
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return 1f;
+        }
+
+        @Override
+        public float gradY(float x, float y, float out, float a, float b) {
+            return -1f;
+        }
+    },
+
+    MUL(2) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return x * y;
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return y;
+        }
+
+        @Override
+        public float gradY(float x, float y, float out, float a, float b) {
+            return x;
+        }
+    },
+
+    DIV(2) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return x / y;
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return 1f / y;
+        }
+
+        @Override
+        public float gradY(float x, float y, float out, float a, float b) {
+            return -x / (y * y);
+        }
+    },
+
+    NEG(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return -x;
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return -1f;
+        }
+    },
+
+    EXP(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) Math.exp(x);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return out;
+        }
+    },
+
+    LOG(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) Math.log(x);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return 1f / x;
+        }
+    },
+
+    SIN(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) Math.sin(x);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return (float) Math.cos(x);
+        }
+    },
+
+    COS(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) Math.cos(x);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return (float) -Math.sin(x);
+        }
+    },
+
+    TANH(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) Math.tanh(x);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return 1f - out * out;
+        }
+    },
+
+    SIGMOID(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) (1.0 / (1.0 + Math.exp(-x)));
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return out * (1f - out);
+        }
+    },
+
+    RELU(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return Math.max(x, 0f);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return x > 0f ? 1f : 0f;
+        }
+    },
+
+    SQU(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return x * x;
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return 2f * x;
+        }
+    },
+
+    /**
+     * 幂运算，参数a为幂指数
+     */
+    POW(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return (float) Math.pow(x, a);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return a * (float) Math.pow(x, a - 1f);
+        }
+    },
+
+    /**
+     * 裁剪运算，参数a为下界，参数b为上界
+     */
+    CLIP(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            return Math.min(Math.max(x, a), b);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            return x >= a && x <= b ? 1f : 0f;
+        }
+    },
+
+    /**
+     * GELU的tanh近似：x * 0.5 * (1 + tanh(√(2/π) * (x + 0.044715 * x^3)))
+     */
+    GELU(1) {
+        @Override
+        public float apply(float x, float y, float a, float b) {
+            float t = (float) Math.tanh(SQRT_2_OVER_PI * (x + 0.044715f * x * x * x));
+            return x * 0.5f * (1f + t);
+        }
+
+        @Override
+        public float gradX(float x, float y, float out, float a, float b) {
+            float x2 = x * x;
+            float t = (float) Math.tanh(SQRT_2_OVER_PI * (x + 0.044715f * x2 * x));
+            float sech2 = 1f - t * t;
+            return 0.5f * (1f + t) + 0.5f * SQRT_2_OVER_PI * x * sech2 * (1f + 3 * 0.044715f * x2);
+        }
+    };
+
+    private static final float SQRT_2_OVER_PI = (float) Math.sqrt(2.0 / Math.PI);
+
+    /**
+     * 操作数个数，1为一元算子，2为二元算子
+     */
+    private final int arity;
+
+    ElementwiseOp(int arity) {
+        this.arity = arity;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * 标量前向计算
+     *
+     * @param x 第一个操作数
+     * @param y 第二个操作数（一元算子忽略）
+     * @param a 算子参数a（如幂指数、裁剪下界）
+     * @param b 算子参数b（如裁剪上界）
+     * @return 计算结果
+     */
+    public abstract float apply(float x, float y, float a, float b);
+
+    /**
+     * 对第一个操作数的局部导数
+     *
+     * @param out 前向计算结果，便于tanh/sigmoid/exp等复用
+     */
+    public abstract float gradX(float x, float y, float out, float a, float b);
+
+    /**
+     * 对第二个操作数的局部导数，一元算子返回0
+     */
+    public float gradY(float x, float y, float out, float a, float b) {
+        return 0f;
+    }
+
+    /**
+     * 把计算图中的Function映射为逐元素算子
+     *
+     * @param function 计算图中的函数
+     * @return 对应的逐元素算子，非逐元素函数返回null
+     */
+    public static ElementwiseOp of(Function function) {
+        if (function instanceof Add) {
+            return ADD;
+        } else if (function instanceof Sub) {
+            return SUB;
+        } else if (function instanceof Mul) {
+            return MUL;
+        } else if (function instanceof Div) {
+            return DIV;
+        } else if (function instanceof Neg) {
+            return NEG;
+        } else if (function instanceof Exp) {
+            return EXP;
+        } else if (function instanceof Log) {
+            return LOG;
+        } else if (function instanceof Sin) {
+            return SIN;
+        } else if (function instanceof Cos) {
+            return COS;
+        } else if (function instanceof Tanh) {
+            return TANH;
+        } else if (function instanceof Sigmoid) {
+            return SIGMOID;
+        } else if (function instanceof ReLu) {
+            return RELU;
+        } else if (function instanceof Squ) {
+            return SQU;
+        } else if (function instanceof Pow) {
+            return POW;
+        } else if (function instanceof Clip) {
+            return CLIP;
+        } else if (function instanceof io.leavesfly.tinyai.func.math.GELU) {
+            return GELU;
+        }
+        return null;
+    }
+
+    /**
+     * 提取算子参数
+     *
+     * @param function 计算图中的函数
+     * @return 长度为2的参数数组 {a, b}
+     */
+    static float[] attributesOf(Function function) {
+        if (function instanceof Pow) {
+            return new float[]{((Pow) function).getPow(), 0f};
+        } else if (function instanceof Clip) {
+            return new float[]{((Clip) function).getMin(), ((Clip) function).getMax()};
+        }
+        return new float[]{0f, 0f};
+    }
+}
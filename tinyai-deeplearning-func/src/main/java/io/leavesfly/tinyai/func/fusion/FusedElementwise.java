@@ -0,0 +1,65 @@
+package io.leavesfly.tinyai.func.fusion;
+
+import io.leavesfly.tinyai.func.Function;
+import io.leavesfly.tinyai.ndarr.NdArray;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 融合后的逐元素函数
+ * <p>
+ * 在计算图中以单个Function节点替代一整串逐元素Function，
+ * 前向与反向都委托给FusedKernel，各自只遍历一次内存。
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class FusedElementwise extends Function {
+
+    private final FusedKernel kernel;
+
+    /**
+     * 构造函数
+     *
+     * @param kernel 编译好的融合内核
+     */
+    public FusedElementwise(FusedKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * 前向传播，执行融合内核
+     *
+     * @param inputs 输入的NdArray数组，顺序与编译时一致
+     * @return 融合计算结果
+     */
+    @Override
+    public NdArray forward(NdArray... inputs) {
+        return kernel.forward(inputs);
+    }
+
+    /**
+     * 反向传播，一次遍历计算所有输入的梯度
+     *
+     * @param yGrad 输出变量的梯度
+     * @return 输入变量的梯度列表
+     */
+    @Override
+    public List<NdArray> backward(NdArray yGrad) {
+        NdArray[] xs = new NdArray[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            xs[i] = inputs[i].getValue();
+        }
+        return Arrays.asList(kernel.backward(yGrad, xs));
+    }
+
+    @Override
+    public int requireInputNum() {
+        return kernel.getInputNum();
+    }
+
+    public FusedKernel getKernel() {
+        return kernel;
+    }
+}
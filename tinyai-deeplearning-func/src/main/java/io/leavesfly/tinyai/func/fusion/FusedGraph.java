@@ -0,0 +1,87 @@
+package io.leavesfly.tinyai.func.fusion;
+
+import io.leavesfly.tinyai.func.Variable;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 编译结果：融合内核加上追踪时捕获的外部变量
+ * <p>
+ * 外部变量指计算图中既不是声明输入、也不由逐元素函数产生的叶子，
+ * 例如层参数或前向中创建的常量。重放时它们按引用传入，因此参数被优化器更新后依然有效。
+ * 依赖输入值的叶子（计算图被断开的位置）不能这样捕获，FusionCompiler.trace用isCompatible识别并拒绝。
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class FusedGraph implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final FusedKernel kernel;
+
+    private final int declaredInputNum;
+
+    private final transient List<Variable> captured;
+
+    FusedGraph(FusedKernel kernel, int declaredInputNum, List<Variable> captured) {
+        this.kernel = kernel;
+        this.declaredInputNum = declaredInputNum;
+        this.captured = captured;
+    }
+
+    /**
+     * 用新的输入重放融合图
+     *
+     * @param inputs 与追踪时个数、形状一致的输入
+     * @return 输出变量，训练模式下连接到一个FusedElementwise节点
+     */
+    public Variable apply(Variable... inputs) {
+        if (inputs.length != declaredInputNum) {
+            throw new IllegalArgumentException(String.format(
+                    "融合图输入个数不匹配：期望 %d，实际 %d", declaredInputNum, inputs.length));
+        }
+        Variable[] all = new Variable[declaredInputNum + captured.size()];
+        System.arraycopy(inputs, 0, all, 0, declaredInputNum);
+        for (int i = 0; i < captured.size(); i++) {
+            all[declaredInputNum + i] = captured.get(i);
+        }
+        return new FusedElementwise(kernel).call(all);
+    }
+
+    /**
+     * 判断另一次追踪得到的融合图是否与本图一致：内核程序相同，
+     * 捕获的叶子是同一对象或值相同。叶子的值随输入变化说明计算图在该处被断开，重放将得到错误结果。
+     *
+     * @param other 在另一组输入上追踪得到的融合图
+     * @return 一致时返回true
+     */
+    public boolean isCompatible(FusedGraph other) {
+        if (declaredInputNum != other.declaredInputNum || captured.size() != other.captured.size()
+                || !kernel.hasSameProgram(other.kernel)) {
+            return false;
+        }
+        for (int i = 0; i < captured.size(); i++) {
+            Variable a = captured.get(i);
+            Variable b = other.captured.get(i);
+            if (a == b) {
+                continue;
+            }
+            if (!a.getValue().getShape().equals(b.getValue().getShape())
+                    || !Arrays.equals(a.getValue().getArray(), b.getValue().getArray())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public FusedKernel getKernel() {
+        return kernel;
+    }
+
+    public List<Variable> getCaptured() {
+        return captured;
+    }
+}
@@ -0,0 +1,194 @@
+package io.leavesfly.tinyai.func.fusion;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 逐元素融合内核
+ * <p>
+ * 由FusionCompiler把一串逐元素Function编译而成的"寄存器程序"：
+ * 前inputNum个寄存器存放输入，其后每条指令写一个寄存器。
+ * 前向时对每个元素执行整段程序，只分配一个输出数组、只遍历一次内存；
+ * 反向时逐元素重算前向寄存器并按逆序传播伴随值，一次遍历得到所有输入的梯度。
+ * <p>
+ * 输入要么与输出元素个数相同，要么是只有一个元素的标量（按广播处理，梯度求和）。
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class FusedKernel implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int inputNum;
+
+    private final ElementwiseOp[] ops;
+
+    /**
+     * 每条指令的第一个操作数寄存器
+     */
+    private final int[] lhs;
+
+    /**
+     * 每条指令的第二个操作数寄存器，一元算子为-1
+     */
+    private final int[] rhs;
+
+    private final float[] attrA;
+
+    private final float[] attrB;
+
+    /**
+     * 输出所在的寄存器
+     */
+    private final int outputRegister;
+
+    private final Shape outputShape;
+
+    FusedKernel(int inputNum, ElementwiseOp[] ops, int[] lhs, int[] rhs,
+                float[] attrA, float[] attrB, int outputRegister, Shape outputShape) {
+        this.inputNum = inputNum;
+        this.ops = ops;
+        this.lhs = lhs;
+        this.rhs = rhs;
+        this.attrA = attrA;
+        this.attrB = attrB;
+        this.outputRegister = outputRegister;
+        this.outputShape = outputShape;
+    }
+
+    /**
+     * 是否与另一个内核执行相同的寄存器程序
+     */
+    boolean hasSameProgram(FusedKernel other) {
+        return inputNum == other.inputNum && outputRegister == other.outputRegister
+                && Arrays.equals(ops, other.ops) && Arrays.equals(lhs, other.lhs) && Arrays.equals(rhs, other.rhs)
+                && Arrays.equals(attrA, other.attrA) && Arrays.equals(attrB, other.attrB)
+                && outputShape.equals(other.outputShape);
+    }
+
+    /**
+     * 融合前向计算
+     *
+     * @param inputs 与编译时顺序一致的输入数组
+     * @return 输出数组
+     */
+    public NdArray forward(NdArray... inputs) {
+        checkInputs(inputs);
+        float[][] in = buffersOf(inputs);
+        int size = outputShape.size();
+        float[] out = new float[size];
+        float[] regs = new float[inputNum + ops.length];
+        for (int i = 0; i < size; i++) {
+            load(in, regs, i);
+            run(regs);
+            out[i] = regs[outputRegister];
+        }
+        return NdArray.of(out, outputShape);
+    }
+
+    /**
+     * 融合反向计算
+     *
+     * @param yGrad  输出的梯度
+     * @param inputs 前向时的输入数组
+     * @return 每个输入的梯度，形状与对应输入一致
+     */
+    public NdArray[] backward(NdArray yGrad, NdArray... inputs) {
+        checkInputs(inputs);
+        float[][] in = buffersOf(inputs);
+        float[] gy = yGrad.getArray();
+        float[][] gx = new float[inputNum][];
+        for (int k = 0; k < inputNum; k++) {
+            gx[k] = new float[in[k].length];
+        }
+
+        int size = outputShape.size();
+        float[] regs = new float[inputNum + ops.length];
+        float[] adj = new float[regs.length];
+        for (int i = 0; i < size; i++) {
+            load(in, regs, i);
+            run(regs);
+
+            Arrays.fill(adj, 0f);
+            adj[outputRegister] = gy.length == 1 ? gy[0] : gy[i];
+            for (int j = ops.length - 1; j >= 0; j--) {
+                int r = inputNum + j;
+                float a = adj[r];
+                if (a == 0f) {
+                    continue;
+                }
+                float x = regs[lhs[j]];
+                float y = rhs[j] >= 0 ? regs[rhs[j]] : 0f;
+                adj[lhs[j]] += a * ops[j].gradX(x, y, regs[r], attrA[j], attrB[j]);
+                if (rhs[j] >= 0) {
+                    adj[rhs[j]] += a * ops[j].gradY(x, y, regs[r], attrA[j], attrB[j]);
+                }
+            }
+            for (int k = 0; k < inputNum; k++) {
+                gx[k][gx[k].length == 1 ? 0 : i] += adj[k];
+            }
+        }
+
+        NdArray[] grads = new NdArray[inputNum];
+        for (int k = 0; k < inputNum; k++) {
+            grads[k] = NdArray.of(gx[k], inputs[k].getShape());
+        }
+        return grads;
+    }
+
+    private void load(float[][] in, float[] regs, int index) {
+        for (int k = 0; k < inputNum; k++) {
+            regs[k] = in[k].length == 1 ? in[k][0] : in[k][index];
+        }
+    }
+
+    private void run(float[] regs) {
+        for (int j = 0; j < ops.length; j++) {
+            float x = regs[lhs[j]];
+            float y = rhs[j] >= 0 ? regs[rhs[j]] : 0f;
+            regs[inputNum + j] = ops[j].apply(x, y, attrA[j], attrB[j]);
+        }
+    }
+
+    private float[][] buffersOf(NdArray[] inputs) {
+        float[][] buffers = new float[inputs.length][];
+        for (int k = 0; k < inputs.length; k++) {
+            buffers[k] = inputs[k].getArray();
+        }
+        return buffers;
+    }
+
+    private void checkInputs(NdArray[] inputs) {
+        if (inputs.length != inputNum) {
+            throw new IllegalArgumentException(String.format(
+                    "融合内核输入个数不匹配：期望 %d，实际 %d", inputNum, inputs.length));
+        }
+        int size = outputShape.size();
+        for (NdArray input : inputs) {
+            int n = input.getShape().size();
+            if (n != size && n != 1) {
+                throw new IllegalArgumentException(String.format(
+                        "融合内核输入形状 %s 与输出形状 %s 不兼容", input.getShape(), outputShape));
+            }
+        }
+    }
+
+    public int getInputNum() {
+        return inputNum;
+    }
+
+    /**
+     * 融合的逐元素算子个数，即省去的中间张量个数加一
+     */
+    public int getOpCount() {
+        return ops.length;
+    }
+
+    public Shape getOutputShape() {
+        return outputShape;
+    }
+}
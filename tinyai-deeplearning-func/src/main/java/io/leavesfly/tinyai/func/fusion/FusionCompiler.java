@@ -0,0 +1,175 @@
+package io.leavesfly.tinyai.func.fusion;
+
+import io.leavesfly.tinyai.func.Function;
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.util.Config;
+
+import java.util.*;
+
+/**
+ * 逐元素算子融合编译器
+ * <p>
+ * 追踪一次前向传播记录下的计算图，从输出沿creator回溯到声明的输入，
+ * 若途经的全部是逐元素Function（Add/Mul/Tanh/Pow/Sigmoid/GELU等），
+ * 就把它们按拓扑序编译成一个FusedKernel；否则返回null，由调用方回退到普通执行。
+ * <p>
+ * 追踪依赖计算图中Function的输入输出引用，因此要求被追踪的前向过程是确定性的，
+ * 且没有复用同一个Function实例（复用会覆盖其inputs/output）。
+ * <p>
+ * 没有creator的非输入叶子会被当作外部变量捕获并在重放时原样使用。若前向过程用 new Variable(ndarray)
+ * 断开了计算图，依赖输入的值也会变成这样的叶子，重放将一直返回追踪时的结果。
+ * 因此trace在另一组输入上再追踪一次，两次捕获的叶子既不是同一对象、值又不同时拒绝融合，
+ * 与StaticGraph.isCompatible的做法一致；没有任何指令或输出不依赖声明输入的图同样拒绝。
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class FusionCompiler {
+
+    /**
+     * 追踪模式：在训练模式下对输入的分离副本运行前向，然后编译记录到的计算图。
+     * 会在原输入和一组变换后的输入上各追踪一次，两次结果不一致说明计算图在某处被断开
+     *
+     * @param forward 待追踪的前向过程，如某个Block的layerForward
+     * @param inputs  示例输入，只用到它们的值与形状
+     * @return 编译结果，计算图不是纯逐元素或不能安全重放时返回null
+     */
+    public static FusedGraph trace(java.util.function.Function<Variable[], Variable> forward, Variable... inputs) {
+        Boolean originalTrain = Config.train;
+        Config.train = true;
+        try {
+            FusedGraph graph = traceOnce(forward, inputs, false);
+            if (graph == null) {
+                return null;
+            }
+            FusedGraph check = traceOnce(forward, inputs, true);
+            return check != null && graph.isCompatible(check) ? graph : null;
+        } finally {
+            Config.train = originalTrain;
+        }
+    }
+
+    private static FusedGraph traceOnce(java.util.function.Function<Variable[], Variable> forward,
+                                        Variable[] inputs, boolean perturb) {
+        Variable[] proxies = new Variable[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            NdArray value = inputs[i].getValue();
+            if (perturb) {
+                float[] data = value.getArray().clone();
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = data[j] * 0.5f + 0.25f;
+                }
+                value = NdArray.of(data, value.getShape());
+            }
+            proxies[i] = new Variable(value);
+        }
+        return compile(forward.apply(proxies), proxies);
+    }
+
+    /**
+     * 编译从inputs到output的逐元素子图
+     *
+     * @param output 子图输出
+     * @param inputs 子图声明的输入
+     * @return 编译结果，子图包含非逐元素函数、形状不兼容、没有指令或输出不依赖输入时返回null
+     */
+    public static FusedGraph compile(Variable output, Variable... inputs) {
+        Set<Variable> declared = Collections.newSetFromMap(new IdentityHashMap<>());
+        declared.addAll(Arrays.asList(inputs));
+
+        List<Variable> leaves = new ArrayList<>(Arrays.asList(inputs));
+        List<Function> order = new ArrayList<>();
+        Set<Variable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        int size = output.getValue().getShape().size();
+
+        if (!visit(output, declared, visited, leaves, order, size) || order.isEmpty()) {
+            return null;
+        }
+        if (!dependsOnInputs(order, declared)) {
+            return null;
+        }
+
+        // 叶子在前、指令在后分配寄存器
+        Map<Variable, Integer> registers = new IdentityHashMap<>();
+        for (int i = 0; i < leaves.size(); i++) {
+            registers.put(leaves.get(i), i);
+        }
+        int inputNum = leaves.size();
+        for (int j = 0; j < order.size(); j++) {
+            registers.put(order.get(j).getOutput(), inputNum + j);
+        }
+
+        int n = order.size();
+        ElementwiseOp[] ops = new ElementwiseOp[n];
+        int[] lhs = new int[n];
+        int[] rhs = new int[n];
+        float[] attrA = new float[n];
+        float[] attrB = new float[n];
+        for (int j = 0; j < n; j++) {
+            Function function = order.get(j);
+            ops[j] = ElementwiseOp.of(function);
+            Variable[] xs = function.getInputs();
+            lhs[j] = registers.get(xs[0]);
+            rhs[j] = ops[j].getArity() == 2 ? registers.get(xs[1]) : -1;
+            float[] attrs = ElementwiseOp.attributesOf(function);
+            attrA[j] = attrs[0];
+            attrB[j] = attrs[1];
+        }
+
+        FusedKernel kernel = new FusedKernel(inputNum, ops, lhs, rhs, attrA, attrB,
+                registers.get(output), output.getValue().getShape());
+        return new FusedGraph(kernel, inputs.length,
+                new ArrayList<>(leaves.subList(inputs.length, leaves.size())));
+    }
+
+    /**
+     * 是否至少有一条指令读取声明的输入，否则输出在重放时与输入无关
+     */
+    private static boolean dependsOnInputs(List<Function> order, Set<Variable> declared) {
+        for (Function function : order) {
+            for (Variable x : function.getInputs()) {
+                if (declared.contains(x)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 后序遍历计算图，收集外部叶子与逐元素函数的拓扑序
+     *
+     * @return 遇到无法融合的节点时返回false
+     */
+    private static boolean visit(Variable variable, Set<Variable> declared, Set<Variable> visited,
+                                 List<Variable> leaves, List<Function> order, int size) {
+        if (declared.contains(variable) || visited.contains(variable)) {
+            return true;
+        }
+        visited.add(variable);
+
+        int n = variable.getValue().getShape().size();
+        if (n != size && n != 1) {
+            return false;
+        }
+
+        Function creator = variable.getCreator();
+        if (creator == null) {
+            leaves.add(variable);
+            return true;
+        }
+        ElementwiseOp op = ElementwiseOp.of(creator);
+        Variable[] xs = creator.getInputs();
+        if (op == null || creator.getOutput() != variable || xs == null || xs.length != op.getArity()) {
+            return false;
+        }
+        for (Variable x : xs) {
+            if (!visit(x, declared, visited, leaves, order, size)) {
+                return false;
+            }
+        }
+        order.add(creator);
+        return true;
+    }
+}
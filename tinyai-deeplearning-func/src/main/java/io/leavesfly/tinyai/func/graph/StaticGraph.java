@@ -0,0 +1,332 @@
+package io.leavesfly.tinyai.func.graph;
+
+import io.leavesfly.tinyai.func.Function;
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+
+import java.util.*;
+
+/**
+ * 静态计算图（捕获与重放）
+ * <p>
+ * 动态图每次前向都会新建Function与Variable并重新连接计算图。对于形状固定的训练步，
+ * 可以在一次前向之后把记录下的计算图捕获为静态执行计划：函数按拓扑序排好，
+ * 每个变量分配固定的槽位。之后的步骤只需替换占位符的值，按计划依次调用各函数的forward，
+ * 再按逆序调用backward，不再构建任何Function、Variable或拓扑排序。
+ * <p>
+ * 反向时有多个消费者的变量，其梯度累加到捕获时预分配的缓冲区中原地完成，
+ * 不再像Variable.backward那样每次累加都分配新数组。
+ * <p>
+ * 捕获要求计算图完整连通：若某层在前向中把中间结果包装成新的Variable（断开了计算图），
+ * 这个依赖输入的值会被当作常量叶子捕获。可用isCompatible比较两次捕获来识别这种情况。
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class StaticGraph {
+
+    /**
+     * 占位符变量，每步重放时替换其值
+     */
+    private final Variable[] placeholders;
+
+    /**
+     * 计划中的全部变量，下标即槽位
+     */
+    private final Variable[] variables;
+
+    /**
+     * 变量是否为叶子（无creator或为占位符）
+     */
+    private final boolean[] leaf;
+
+    /**
+     * 叶子对应的占位符下标，非占位符为-1
+     */
+    private final int[] placeholderIndex;
+
+    /**
+     * 拓扑序排列的函数
+     */
+    private final Function[] steps;
+
+    private final int[][] stepInputs;
+
+    private final int[] stepOutput;
+
+    private final int outputSlot;
+
+    /**
+     * 反向传播时每个槽位的梯度
+     */
+    private final NdArray[] gradSlots;
+
+    /**
+     * 梯度累加缓冲区，按槽位预分配后复用
+     */
+    private final NdArray[] accumBuffers;
+
+    /**
+     * 当前槽位梯度是否已位于累加缓冲区中（可原地累加）
+     */
+    private final boolean[] accumulated;
+
+    private StaticGraph(Variable[] placeholders, List<Variable> variables, List<Function> steps,
+                        Map<Variable, Integer> slots, int outputSlot) {
+        this.placeholders = placeholders;
+        this.variables = variables.toArray(new Variable[0]);
+        this.steps = steps.toArray(new Function[0]);
+        this.outputSlot = outputSlot;
+
+        int n = this.variables.length;
+        this.leaf = new boolean[n];
+        this.placeholderIndex = new int[n];
+        Arrays.fill(placeholderIndex, -1);
+        for (int i = 0; i < placeholders.length; i++) {
+            Integer slot = slots.get(placeholders[i]);
+            if (slot != null) {
+                placeholderIndex[slot] = i;
+            }
+        }
+
+        this.stepInputs = new int[this.steps.length][];
+        this.stepOutput = new int[this.steps.length];
+        for (int s = 0; s < this.steps.length; s++) {
+            Variable[] xs = this.steps[s].getInputs();
+            stepInputs[s] = new int[xs.length];
+            for (int k = 0; k < xs.length; k++) {
+                stepInputs[s][k] = slots.get(xs[k]);
+            }
+            stepOutput[s] = slots.get(this.steps[s].getOutput());
+        }
+        for (int i = 0; i < n; i++) {
+            leaf[i] = true;
+        }
+        for (int s = 0; s < this.steps.length; s++) {
+            leaf[stepOutput[s]] = false;
+        }
+
+        this.gradSlots = new NdArray[n];
+        this.accumBuffers = new NdArray[n];
+        this.accumulated = new boolean[n];
+    }
+
+    /**
+     * 捕获以output为终点的计算图
+     *
+     * @param output       计算图输出（通常是损失）
+     * @param placeholders 占位符变量，重放时按顺序替换其值
+     * @return 静态计算图
+     * @throws IllegalStateException 计算图无法捕获时抛出，例如同一个Function实例被复用
+     */
+    public static StaticGraph capture(Variable output, Variable... placeholders) {
+        Set<Variable> placeholderSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        placeholderSet.addAll(Arrays.asList(placeholders));
+
+        Map<Variable, Integer> slots = new IdentityHashMap<>();
+        List<Variable> variables = new ArrayList<>();
+        List<Function> steps = new ArrayList<>();
+
+        // 迭代式后序遍历，避免深层网络递归栈溢出
+        Deque<Variable> stack = new ArrayDeque<>();
+        stack.push(output);
+        while (!stack.isEmpty()) {
+            Variable v = stack.peek();
+            if (slots.containsKey(v)) {
+                stack.pop();
+                continue;
+            }
+            Function creator = v.getCreator();
+            if (creator == null || placeholderSet.contains(v)) {
+                slots.put(v, variables.size());
+                variables.add(v);
+                stack.pop();
+                continue;
+            }
+            if (creator.getOutput() != v) {
+                throw new IllegalStateException("Function实例被复用，无法捕获静态图: "
+                        + creator.getClass().getSimpleName());
+            }
+            Variable[] xs = creator.getInputs();
+            boolean ready = true;
+            for (int k = xs.length - 1; k >= 0; k--) {
+                if (xs[k] == null) {
+                    throw new IllegalStateException("函数输入为空，无法捕获静态图: "
+                            + creator.getClass().getSimpleName());
+                }
+                if (!slots.containsKey(xs[k])) {
+                    stack.push(xs[k]);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                slots.put(v, variables.size());
+                variables.add(v);
+                steps.add(creator);
+                stack.pop();
+            }
+        }
+        return new StaticGraph(placeholders, variables, steps, slots, slots.get(output));
+    }
+
+    /**
+     * 用新的输入数据重放前向传播
+     *
+     * @param feeds 与占位符一一对应的新输入
+     * @return 输出变量（捕获时的同一个对象，值已更新）
+     */
+    public Variable run(NdArray... feeds) {
+        if (feeds.length != placeholders.length) {
+            throw new IllegalArgumentException(String.format(
+                    "静态图输入个数不匹配：期望 %d，实际 %d", placeholders.length, feeds.length));
+        }
+        for (int i = 0; i < feeds.length; i++) {
+            placeholders[i].setValue(feeds[i]);
+        }
+        for (int s = 0; s < steps.length; s++) {
+            int[] in = stepInputs[s];
+            NdArray[] values = new NdArray[in.length];
+            for (int k = 0; k < in.length; k++) {
+                values[k] = variables[in[k]].getValue();
+            }
+            variables[stepOutput[s]].setValue(steps[s].forward(values));
+        }
+        return variables[outputSlot];
+    }
+
+    /**
+     * 按逆拓扑序执行反向传播
+     * <p>
+     * 梯度只写回叶子变量（参数等），与已有梯度累加；中间变量的梯度用完即释放。
+     */
+    public void backward() {
+        Arrays.fill(gradSlots, null);
+        Arrays.fill(accumulated, false);
+
+        Variable output = variables[outputSlot];
+        if (!output.isRequireGrad()) {
+            return;
+        }
+        gradSlots[outputSlot] = NdArray.ones(output.getValue().getShape());
+
+        for (int s = steps.length - 1; s >= 0; s--) {
+            int out = stepOutput[s];
+            NdArray g = gradSlots[out];
+            if (g == null || !variables[out].isRequireGrad()) {
+                continue;
+            }
+            List<NdArray> grads = steps[s].backward(g);
+            int[] in = stepInputs[s];
+            if (grads.size() != in.length) {
+                throw new RuntimeException("Variable backward grads size error!");
+            }
+            for (int k = 0; k < in.length; k++) {
+                accumulate(in[k], grads.get(k));
+            }
+            gradSlots[out] = null;
+        }
+
+        for (int i = 0; i < variables.length; i++) {
+            NdArray g = gradSlots[i];
+            if (!leaf[i] || g == null || placeholderIndex[i] >= 0 || !variables[i].isRequireGrad()) {
+                continue;
+            }
+            // 累加缓冲区会在下一步被复用，写回叶子前复制一份
+            if (accumulated[i]) {
+                g = NdArray.of(g.getArray().clone(), g.getShape());
+            }
+            Variable v = variables[i];
+            v.setGrad(v.getGrad() == null ? g : v.getGrad().add(g));
+        }
+        Arrays.fill(gradSlots, null);
+    }
+
+    private void accumulate(int slot, NdArray grad) {
+        if (grad == null) {
+            return;
+        }
+        if (!grad.getShape().equals(variables[slot].getValue().getShape())) {
+            throw new RuntimeException("_grad shape must equal value shape!");
+        }
+        NdArray current = gradSlots[slot];
+        if (current == null) {
+            gradSlots[slot] = grad;
+            return;
+        }
+        if (!accumulated[slot]) {
+            NdArray buffer = accumBuffers[slot];
+            if (buffer == null || !buffer.getShape().equals(grad.getShape())) {
+                buffer = NdArray.of(grad.getShape());
+                accumBuffers[slot] = buffer;
+            }
+            System.arraycopy(current.getArray(), 0, buffer.getArray(), 0, buffer.getArray().length);
+            gradSlots[slot] = buffer;
+            accumulated[slot] = true;
+            current = buffer;
+        }
+        float[] dst = current.getArray();
+        float[] src = grad.getArray();
+        for (int i = 0; i < dst.length; i++) {
+            dst[i] += src[i];
+        }
+    }
+
+    /**
+     * 判断另一次捕获是否与本计划结构一致
+     * <p>
+     * 要求函数序列、连接关系相同，且非占位符叶子要么是同一个对象（如参数），
+     * 要么值完全相同（前向中新建的常量）。若某个叶子的值随输入变化，
+     * 说明计算图在该处被断开，重放将得到错误结果。
+     *
+     * @param other 在另一批数据上捕获的静态图
+     * @return 结构一致时返回true
+     */
+    public boolean isCompatible(StaticGraph other) {
+        if (other.variables.length != variables.length || other.steps.length != steps.length
+                || other.outputSlot != outputSlot) {
+            return false;
+        }
+        for (int s = 0; s < steps.length; s++) {
+            if (steps[s].getClass() != other.steps[s].getClass()
+                    || stepOutput[s] != other.stepOutput[s]
+                    || !Arrays.equals(stepInputs[s], other.stepInputs[s])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < variables.length; i++) {
+            if (leaf[i] != other.leaf[i] || placeholderIndex[i] != other.placeholderIndex[i]) {
+                return false;
+            }
+            if (!leaf[i] || placeholderIndex[i] >= 0 || variables[i] == other.variables[i]) {
+                continue;
+            }
+            NdArray a = variables[i].getValue();
+            NdArray b = other.variables[i].getValue();
+            if (!a.getShape().equals(b.getShape()) || !Arrays.equals(a.getArray(), b.getArray())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取输出变量
+     */
+    public Variable getOutput() {
+        return variables[outputSlot];
+    }
+
+    /**
+     * 获取计划中的函数个数
+     */
+    public int getStepCount() {
+        return steps.length;
+    }
+
+    /**
+     * 获取计划中的变量槽位个数
+     */
+    public int getSlotCount() {
+        return variables.length;
+    }
+}
@@ -83,4 +83,22 @@ public class Clip extends Function {
     public int requireInputNum() {
         return 1;
     }
+
+    /**
+     * 获取裁剪下界
+     *
+     * @return 最小值
+     */
+    public float getMin() {
+        return min;
+    }
+
+    /**
+     * 获取裁剪上界
+     *
+     * @return 最大值
+     */
+    public float getMax() {
+        return max;
+    }
 }
@@ -65,4 +65,13 @@ public class Pow extends Function {
         return 1;
     }
 
+    /**
+     * 获取幂指数
+     *
+     * @return 幂指数
+     */
+    public float getPow() {
+        return pow;
+    }
+
 }
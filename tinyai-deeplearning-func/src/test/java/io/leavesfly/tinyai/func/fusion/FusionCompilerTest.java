@@ -0,0 +1,162 @@
+package io.leavesfly.tinyai.func.fusion;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.func.math.GELU;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.util.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 逐元素算子融合的单元测试
+ * <p>
+ * 验证融合后的前向结果与梯度与逐个Function执行完全一致。
+ */
+public class FusionCompilerTest {
+
+    private boolean originalTrainMode;
+
+    @Before
+    public void setUp() {
+        originalTrainMode = Config.train;
+        Config.train = true;
+    }
+
+    @After
+    public void tearDown() {
+        Config.train = originalTrainMode;
+    }
+
+    /**
+     * 用基础函数展开的GELU：x * 0.5 * (1 + tanh(√(2/π) * (x + 0.044715 * x^3)))
+     */
+    private static Variable expandedGelu(Variable x) {
+        Variable inner = x.add(x.pow(3f).mul(constant(x, 0.044715f)));
+        Variable t = inner.mul(constant(x, (float) Math.sqrt(2.0 / Math.PI))).tanh();
+        return x.mul(constant(x, 0.5f)).mul(t.add(constant(x, 1f)));
+    }
+
+    /**
+     * 与x同形状的常量，便于与逐个Function执行的结果对比（其反向不处理广播）
+     */
+    private static Variable constant(Variable x, float value) {
+        return new Variable(x.getValue().like(value));
+    }
+
+    @Test
+    public void testFusedGeluMatchesEager() {
+        NdArray data = NdArray.of(new float[][]{{-2f, -0.5f, 0f}, {0.3f, 1f, 2.5f}});
+
+        Variable eagerX = new Variable(data);
+        Variable eagerY = expandedGelu(eagerX);
+        eagerY.backward();
+
+        FusedGraph graph = FusionCompiler.trace(xs -> expandedGelu(xs[0]), new Variable(data));
+        assertNotNull("纯逐元素图应能融合", graph);
+        assertEquals(4, graph.getCaptured().size());
+
+        Variable fusedX = new Variable(data);
+        Variable fusedY = graph.apply(fusedX);
+        assertTrue(fusedY.getCreator() instanceof FusedElementwise);
+        fusedY.backward();
+
+        assertArrayEquals(eagerY.getValue().getArray(), fusedY.getValue().getArray(), 1e-5f);
+        assertArrayEquals(eagerX.getGrad().getArray(), fusedX.getGrad().getArray(), 1e-5f);
+    }
+
+    @Test
+    public void testSwishGateWithSharedInput() {
+        NdArray gate = NdArray.of(new float[][]{{-1f, 0.5f}, {2f, -3f}});
+        NdArray up = NdArray.of(new float[][]{{1f, 2f}, {3f, 4f}});
+
+        Variable g1 = new Variable(gate);
+        Variable u1 = new Variable(up);
+        Variable eager = g1.mul(g1.sigmoid()).mul(u1);
+        eager.backward();
+
+        FusedGraph graph = FusionCompiler.trace(xs -> xs[0].mul(xs[0].sigmoid()).mul(xs[1]),
+                new Variable(gate), new Variable(up));
+        assertNotNull(graph);
+        assertEquals(3, graph.getKernel().getOpCount());
+
+        Variable g2 = new Variable(gate);
+        Variable u2 = new Variable(up);
+        Variable fused = graph.apply(g2, u2);
+        fused.backward();
+
+        assertArrayEquals(eager.getValue().getArray(), fused.getValue().getArray(), 1e-6f);
+        assertArrayEquals(g1.getGrad().getArray(), g2.getGrad().getArray(), 1e-6f);
+        assertArrayEquals(u1.getGrad().getArray(), u2.getGrad().getArray(), 1e-6f);
+    }
+
+    @Test
+    public void testScalarLeafGradientIsSummed() {
+        Variable x = new Variable(NdArray.of(new float[][]{{1f, 2f, 3f}}));
+        Variable w = new Variable(NdArray.of(new float[][]{{2f}}));
+
+        FusedGraph graph = FusionCompiler.compile(x.mul(w).exp(), x);
+        assertNotNull(graph);
+        assertSame(w, graph.getCaptured().get(0));
+
+        Variable y = graph.apply(x);
+        y.backward();
+
+        // d/dw sum(exp(w*x)) = sum(x * exp(w*x))
+        float expected = 0f;
+        for (float v : new float[]{1f, 2f, 3f}) {
+            expected += v * (float) Math.exp(2f * v);
+        }
+        assertEquals(expected, w.getGrad().getNumber().floatValue(), expected * 1e-5f);
+    }
+
+    @Test
+    public void testBuiltinGeluFunctionIsFusible() {
+        NdArray data = NdArray.of(new float[][]{{-1f, 0f, 1f}});
+        FusedGraph graph = FusionCompiler.trace(xs -> new GELU().call(xs[0]).tanh(), new Variable(data));
+        assertNotNull(graph);
+        assertEquals(2, graph.getKernel().getOpCount());
+
+        NdArray expected = new GELU().forward(data).tanh();
+        assertArrayEquals(expected.getArray(), graph.apply(new Variable(data)).getValue().getArray(), 1e-5f);
+    }
+
+    @Test
+    public void testNonElementwiseGraphIsRejected() {
+        Variable x = new Variable(NdArray.of(Shape.of(2, 3)));
+        Variable w = new Variable(NdArray.of(Shape.of(3, 2)));
+        assertNull(FusionCompiler.compile(x.matMul(w).sigmoid(), x));
+    }
+
+    @Test
+    public void testDetachedGraphIsRejected() {
+        NdArray data = NdArray.of(new float[][]{{-1f, 0.5f}, {2f, 3f}});
+        // 前向用 new Variable(ndarray) 断开计算图：输出没有creator，不含任何指令
+        assertNull(FusionCompiler.trace(xs -> new Variable(xs[0].getValue().mulNum(2f)), new Variable(data)));
+        // 断开后再接逐元素函数：依赖输入的值被当作叶子捕获，输出与声明输入无关
+        assertNull(FusionCompiler.trace(xs -> new Variable(xs[0].getValue().mulNum(2f)).tanh(), new Variable(data)));
+        // 断开的分支与输入再次汇合：两次追踪捕获的叶子值不同
+        assertNull(FusionCompiler.trace(xs -> xs[0].add(new Variable(xs[0].getValue().exp())), new Variable(data)));
+    }
+
+    @Test
+    public void testConstantLeafCreatedDuringForwardIsCaptured() {
+        NdArray data = NdArray.of(new float[][]{{-1f, 0.5f}, {2f, 3f}});
+        FusedGraph graph = FusionCompiler.trace(
+                xs -> xs[0].mul(new Variable(NdArray.of(new float[][]{{2f, 2f}, {2f, 2f}}))), new Variable(data));
+        assertNotNull(graph);
+        NdArray other = NdArray.of(new float[][]{{4f, 5f}, {6f, 7f}});
+        assertArrayEquals(new float[]{8f, 10f, 12f, 14f}, graph.apply(new Variable(other)).getValue().getArray(), 1e-6f);
+    }
+
+    @Test
+    public void testTraceRestoresTrainMode() {
+        Config.train = false;
+        FusedGraph graph = FusionCompiler.trace(xs -> xs[0].tanh(), new Variable(NdArray.of(Shape.of(2, 2))));
+        assertNotNull(graph);
+        assertFalse(Config.train);
+    }
+}
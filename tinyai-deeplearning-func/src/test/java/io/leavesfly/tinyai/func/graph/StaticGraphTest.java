@@ -0,0 +1,102 @@
+package io.leavesfly.tinyai.func.graph;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.util.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 静态计算图捕获与重放的单元测试
+ */
+public class StaticGraphTest {
+
+    private boolean originalTrainMode;
+
+    @Before
+    public void setUp() {
+        originalTrainMode = Config.train;
+        Config.train = true;
+    }
+
+    @After
+    public void tearDown() {
+        Config.train = originalTrainMode;
+    }
+
+    private static Variable forward(Variable x, Variable w, Variable b) {
+        return x.matMul(w).add(b).tanh().sum();
+    }
+
+    @Test
+    public void testReplayMatchesEager() {
+        Variable w = new Variable(NdArray.likeRandomN(Shape.of(3, 2), 7));
+        Variable b = new Variable(NdArray.likeRandomN(Shape.of(2, 2), 8));
+
+        Variable x = new Variable(NdArray.likeRandomN(Shape.of(2, 3), 1), "x", false);
+        StaticGraph graph = StaticGraph.capture(forward(x, w, b), x);
+        assertEquals(4, graph.getStepCount());
+
+        NdArray newData = NdArray.likeRandomN(Shape.of(2, 3), 2);
+        Variable replayed = graph.run(newData);
+        graph.backward();
+        NdArray wGrad = w.getGrad();
+        NdArray bGrad = b.getGrad();
+
+        w.clearGrad();
+        b.clearGrad();
+        Variable eager = forward(new Variable(newData, "x", false), w, b);
+        eager.backward();
+
+        assertEquals(eager.getValue().getNumber().floatValue(), replayed.getValue().getNumber().floatValue(), 1e-6f);
+        assertArrayEquals(w.getGrad().getArray(), wGrad.getArray(), 1e-6f);
+        assertArrayEquals(b.getGrad().getArray(), bGrad.getArray(), 1e-6f);
+    }
+
+    @Test
+    public void testSharedVariableGradientAccumulated() {
+        Variable w = new Variable(NdArray.of(new float[][]{{2f, 3f}}));
+        Variable x = new Variable(NdArray.of(new float[][]{{1f, 1f}}), "x", false);
+        StaticGraph graph = StaticGraph.capture(x.mul(w).add(w.mul(w)).sum(), x);
+
+        for (int step = 0; step < 2; step++) {
+            w.clearGrad();
+            graph.run(NdArray.of(new float[][]{{1f, 2f}}));
+            graph.backward();
+            // d/dw sum(x*w + w^2) = x + 2w
+            assertArrayEquals(new float[]{5f, 8f}, w.getGrad().getArray(), 1e-6f);
+        }
+    }
+
+    @Test
+    public void testCompatibility() {
+        Variable w = new Variable(NdArray.likeRandomN(Shape.of(3, 2), 7));
+        Variable b = new Variable(NdArray.zeros(Shape.of(2, 2)));
+
+        Variable x1 = new Variable(NdArray.likeRandomN(Shape.of(2, 3), 1), "x", false);
+        Variable x2 = new Variable(NdArray.likeRandomN(Shape.of(2, 3), 2), "x", false);
+        StaticGraph g1 = StaticGraph.capture(forward(x1, w, b), x1);
+        StaticGraph g2 = StaticGraph.capture(forward(x2, w, b), x2);
+        assertTrue(g1.isCompatible(g2));
+
+        // 中间结果被包装为新的Variable，计算图在此断开，值随输入变化
+        Variable x3 = new Variable(NdArray.likeRandomN(Shape.of(2, 3), 3), "x", false);
+        Variable x4 = new Variable(NdArray.likeRandomN(Shape.of(2, 3), 4), "x", false);
+        StaticGraph g3 = StaticGraph.capture(new Variable(x3.matMul(w).getValue()).tanh().sum(), x3);
+        StaticGraph g4 = StaticGraph.capture(new Variable(x4.matMul(w).getValue()).tanh().sum(), x4);
+        assertFalse(g3.isCompatible(g4));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReusedFunctionRejected() {
+        io.leavesfly.tinyai.func.math.Tanh tanh = new io.leavesfly.tinyai.func.math.Tanh();
+        Variable x = new Variable(NdArray.of(new float[][]{{1f}}), "x", false);
+        Variable first = tanh.call(x);
+        tanh.call(first);
+        StaticGraph.capture(first.sum(), x);
+    }
+}
@@ -0,0 +1,219 @@
+package io.leavesfly.tinyai.ml;
+
+import io.leavesfly.tinyai.func.Function;
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ml.dataset.Batch;
+import io.leavesfly.tinyai.ml.loss.Loss;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.nnet.Parameter;
+
+import java.util.*;
+
+/**
+ * 梯度累加器
+ * <p>
+ * 把多个微批次（micro-batch）的参数梯度累加到一组预分配的缓冲区中，
+ * 累加满之后一次性交给优化器更新，从而在显存不变的情况下获得更大的有效批次。
+ * <p>
+ * 累加原地完成：每个参数对应一块与参数同形状的float缓冲区，
+ * 每个微批次反向之后执行 buffer += weight * grad，不再像grad.add那样每次分配新数组。
+ * <p>
+ * 权重用于保证损失缩放正确：损失函数对批次取平均时，大小为n_k的微批次权重应为n_k / N，
+ * N为一次更新覆盖的样本总数，这样累加结果与在完整批次上计算的梯度一致。
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class GradientAccumulator {
+
+    private final Model model;
+
+    /**
+     * 参数名到累加缓冲区，按参数名有序
+     */
+    private final Map<String, NdArray> buffers = new TreeMap<>();
+
+    private int accumulatedCount;
+
+    /**
+     * 构造函数，按模型当前参数预分配累加缓冲区
+     *
+     * @param model 模型
+     */
+    public GradientAccumulator(Model model) {
+        this.model = model;
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            buffers.put(entry.getKey(), NdArray.zeros(entry.getValue().getValue().getShape()));
+        }
+    }
+
+    /**
+     * 把模型参数上的当前梯度按权重累加到缓冲区，并清空参数梯度
+     *
+     * @param weight 该微批次的权重，通常为微批次样本数 / 一次更新的样本总数
+     */
+    public void accumulate(float weight) {
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            Parameter parameter = entry.getValue();
+            NdArray grad = parameter.getGrad();
+            if (grad != null) {
+                addInPlace(entry.getKey(), grad, weight);
+            }
+            parameter.clearGrad();
+        }
+        accumulatedCount++;
+    }
+
+    /**
+     * 把外部计算的梯度（例如并行训练中聚合后的梯度）按权重累加到缓冲区
+     *
+     * @param grads  参数名到梯度
+     * @param weight 权重
+     */
+    public void accumulate(Map<String, NdArray> grads, float weight) {
+        for (Map.Entry<String, NdArray> entry : grads.entrySet()) {
+            if (entry.getValue() != null) {
+                addInPlace(entry.getKey(), entry.getValue(), weight);
+            }
+        }
+        accumulatedCount++;
+    }
+
+    private void addInPlace(String name, NdArray grad, float weight) {
+        NdArray buffer = buffers.get(name);
+        if (buffer == null) {
+            // 累加器创建后新增的参数
+            buffer = NdArray.zeros(grad.getShape());
+            buffers.put(name, buffer);
+        }
+        float[] dst = buffer.getArray();
+        float[] src = grad.getArray();
+        if (dst.length != src.length) {
+            throw new IllegalArgumentException("参数 " + name + " 的梯度形状与累加缓冲区不一致: "
+                    + grad.getShape() + " vs " + buffer.getShape());
+        }
+        for (int i = 0; i < dst.length; i++) {
+            dst[i] += weight * src[i];
+        }
+    }
+
+    /**
+     * 原地缩放累加结果，例如在样本总数确定后统一除以样本数
+     *
+     * @param factor 缩放系数
+     */
+    public void scale(float factor) {
+        for (NdArray buffer : buffers.values()) {
+            float[] data = buffer.getArray();
+            for (int i = 0; i < data.length; i++) {
+                data[i] *= factor;
+            }
+        }
+    }
+
+    /**
+     * 把累加结果设置为参数梯度，之后可以调用优化器更新
+     * <p>
+     * 参数梯度直接引用累加缓冲区，优化器更新完成后应调用reset清零缓冲区。
+     */
+    public void apply() {
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            NdArray buffer = buffers.get(entry.getKey());
+            if (buffer != null) {
+                entry.getValue().setGrad(buffer);
+            }
+        }
+    }
+
+    /**
+     * 清零缓冲区与参数梯度，开始下一轮累加
+     */
+    public void reset() {
+        for (NdArray buffer : buffers.values()) {
+            Arrays.fill(buffer.getArray(), 0f);
+        }
+        model.clearGrads();
+        accumulatedCount = 0;
+    }
+
+    /**
+     * 获取本轮已累加的微批次数
+     */
+    public int getAccumulatedCount() {
+        return accumulatedCount;
+    }
+
+    /**
+     * 获取指定参数的累加缓冲区
+     */
+    public NdArray getBuffer(String paramName) {
+        return buffers.get(paramName);
+    }
+
+    /**
+     * 估计一次前向+反向中计算图的中间激活与梯度占用的字节数
+     * <p>
+     * 统计从输出可达的所有非叶子变量的值，梯度按与值同样大小计入。
+     *
+     * @param output 计算图输出（通常是损失）
+     * @return 估计的字节数
+     */
+    public static long estimateActivationBytes(Variable output) {
+        Set<Variable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Variable> stack = new ArrayDeque<>();
+        stack.push(output);
+        visited.add(output);
+        long floats = 0;
+        while (!stack.isEmpty()) {
+            Variable v = stack.pop();
+            Function creator = v.getCreator();
+            if (creator == null || creator.getInputs() == null) {
+                continue;
+            }
+            floats += 2L * v.getValue().getShape().size();
+            for (Variable x : creator.getInputs()) {
+                if (x != null && visited.add(x)) {
+                    stack.push(x);
+                }
+            }
+        }
+        return floats * Float.BYTES;
+    }
+
+    /**
+     * 根据内存预算选择微批次大小
+     * <p>
+     * 在样例批次的一个小切片上执行一次前向，测量每个样本的激活占用；
+     * 参数、参数梯度与累加缓冲区按参数量的三倍计入固定开销。
+     * 返回值在[1, 样例批次大小]之间，预算不足以容纳单个样本时返回1。
+     *
+     * @param model       模型
+     * @param loss        损失函数
+     * @param sample      样例批次
+     * @param budgetBytes 内存预算（字节）
+     * @return 微批次大小
+     */
+    public static int selectMicroBatchSize(Model model, Loss loss, Batch sample, long budgetBytes) {
+        int batchSize = sample.getSize();
+        if (batchSize <= 1) {
+            return 1;
+        }
+        int probeSize = Math.min(2, batchSize);
+        Batch probe = sample.split(probeSize).get(0);
+        Variable x = probe.toVariableX().setRequireGrad(false);
+        Variable y = probe.toVariableY().setRequireGrad(false);
+        Variable lossVariable = loss.loss(y, model.forward(x));
+        long perSample = Math.max(1L, estimateActivationBytes(lossVariable) / probe.getSize());
+        lossVariable.unChainBackward();
+
+        long paramFloats = 0;
+        for (Parameter parameter : model.getAllParams().values()) {
+            paramFloats += parameter.getValue().getShape().size();
+        }
+        long available = budgetBytes - 3L * paramFloats * Float.BYTES;
+        if (available <= perSample) {
+            return 1;
+        }
+        return (int) Math.min(batchSize, available / perSample);
+    }
+}
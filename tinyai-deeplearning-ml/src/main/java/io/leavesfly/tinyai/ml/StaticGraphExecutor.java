@@ -0,0 +1,160 @@
+package io.leavesfly.tinyai.ml;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.func.graph.StaticGraph;
+import io.leavesfly.tinyai.ml.loss.Loss;
+import io.leavesfly.tinyai.ndarr.NdArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 静态图训练步执行器
+ * <p>
+ * 为形状固定的训练步（前向+损失+反向）捕获静态执行计划并在之后的批次上重放，
+ * 省去每个批次重建动态计算图的开销。执行计划按输入形状缓存：
+ * <p>
+ * 1. 某形状第一次出现：动态执行并捕获计划
+ * 2. 第二次出现：再动态执行一次，与第一次的计划比较结构，一致则确认计划，否则该形状永久回退到动态执行
+ * 3. 之后：直接重放计划
+ * <p>
+ * 形状变化（例如最后一个不满的批次）会自动触发该形状的重新捕获。
+ * 参数梯度写回参数并与已有梯度累加，调用方负责在每步前清理梯度并调用优化器。
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class StaticGraphExecutor {
+
+    private final Model model;
+
+    private final Loss loss;
+
+    private final Map<String, Plan> plans = new HashMap<>();
+
+    private long captureCount;
+
+    private long replayCount;
+
+    private long fallbackCount;
+
+    /**
+     * 单个输入形状对应的执行计划
+     */
+    private static class Plan {
+        StaticGraph graph;
+        Variable predict;
+        boolean verified;
+        boolean disabled;
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param model 模型
+     * @param loss  损失函数
+     */
+    public StaticGraphExecutor(Model model, Loss loss) {
+        this.model = model;
+        this.loss = loss;
+    }
+
+    /**
+     * 执行一个训练步的前向与反向传播
+     *
+     * @param x 输入数据
+     * @param y 标签数据
+     * @return 损失值
+     */
+    public float step(NdArray x, NdArray y) {
+        String key = x.getShape() + "|" + y.getShape();
+        Plan plan = plans.get(key);
+
+        if (plan != null && plan.verified) {
+            Variable lossVariable = plan.graph.run(x, y);
+            plan.graph.backward();
+            model.tmpPredict = plan.predict;
+            replayCount++;
+            return lossVariable.getValue().getNumber().floatValue();
+        }
+
+        Variable variableX = new Variable(x, "x", false);
+        Variable variableY = new Variable(y, "y", false);
+        Variable predictY = model.forward(variableX);
+        Variable lossVariable = loss.loss(variableY, predictY);
+        lossVariable.setName("loss");
+        model.tmpPredict = predictY;
+        float lossValue = lossVariable.getValue().getNumber().floatValue();
+
+        if (plan != null && plan.disabled) {
+            eagerBackward(lossVariable);
+            return lossValue;
+        }
+
+        StaticGraph graph;
+        try {
+            graph = StaticGraph.capture(lossVariable, variableX, variableY);
+        } catch (IllegalStateException e) {
+            plan = plan != null ? plan : new Plan();
+            plan.disabled = true;
+            plans.put(key, plan);
+            eagerBackward(lossVariable);
+            return lossValue;
+        }
+        captureCount++;
+
+        if (plan == null) {
+            plan = new Plan();
+            plans.put(key, plan);
+        } else if (plan.graph.isCompatible(graph)) {
+            plan.verified = true;
+        } else {
+            plan.disabled = true;
+        }
+        graph.backward();
+
+        if (plan.disabled) {
+            plan.graph = null;
+            plan.predict = null;
+            fallbackCount++;
+            lossVariable.unChainBackward();
+        } else {
+            plan.graph = graph;
+            plan.predict = predictY;
+        }
+        return lossValue;
+    }
+
+    private void eagerBackward(Variable lossVariable) {
+        fallbackCount++;
+        lossVariable.backward();
+        lossVariable.unChainBackward();
+    }
+
+    /**
+     * 清空全部执行计划，模型结构变化后需要调用
+     */
+    public void reset() {
+        plans.clear();
+    }
+
+    /**
+     * 指定形状的执行计划是否已确认可重放
+     */
+    public boolean isReplayable(NdArray x, NdArray y) {
+        Plan plan = plans.get(x.getShape() + "|" + y.getShape());
+        return plan != null && plan.verified;
+    }
+
+    public long getCaptureCount() {
+        return captureCount;
+    }
+
+    public long getReplayCount() {
+        return replayCount;
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount;
+    }
+}
@@ -3,6 +3,7 @@ package io.leavesfly.tinyai.ml;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ml.dataset.Batch;
 import io.leavesfly.tinyai.ml.dataset.DataSet;
+import io.leavesfly.tinyai.ml.dataset.PrefetchDataLoader;
 import io.leavesfly.tinyai.ml.evaluator.Evaluator;
 import io.leavesfly.tinyai.ml.loss.Loss;
 import io.leavesfly.tinyai.ml.optimize.Optimizer;
@@ -12,6 +13,7 @@ import io.leavesfly.tinyai.ml.parallel.ParallelTrainingUtils;
 import io.leavesfly.tinyai.ndarr.NdArray;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -56,6 +58,25 @@ public class Trainer {
     private ExecutorService executorService;
     private boolean enableParallelTraining;
 
+    // 静态图相关配置
+    private boolean enableStaticGraph;
+    private StaticGraphExecutor staticGraphExecutor;
+
+    // 梯度累加相关配置
+    private int accumulationSteps = 1;
+    private int microBatchSize;
+    private long microBatchMemoryBudget;
+    private GradientAccumulator gradientAccumulator;
+    private int pendingBatches;
+    private int pendingSamples;
+
+    // 异步预取相关配置
+    private boolean enablePrefetch;
+    private int prefetchWorkers = 2;
+    private int prefetchQueueCapacity = 4;
+    private Long prefetchSeed;
+    private PrefetchDataLoader prefetchLoader;
+
     /**
      * 构造器（默认不启用并行训练）
      *
@@ -114,6 +135,12 @@ public class Trainer {
             enableParallelTraining = false;
         }
 
+        if (enableStaticGraph) {
+            staticGraphExecutor = new StaticGraphExecutor(model, loss);
+        }
+
+        initGradientAccumulation();
+
         // 初始化线程池
         if (enableParallelTraining) {
             // 根据实际batch数重新计算线程数
@@ -152,41 +179,139 @@ public class Trainer {
         if (shuffleData) {
             trainDataSet.shuffle();
         }
+        if (enablePrefetch) {
+            // 在打乱之后创建，ArrayDataset打乱会替换其样本数组
+            prefetchLoader = PrefetchDataLoader.of(trainDataSet);
+            prefetchLoader.setNumWorkers(prefetchWorkers);
+            prefetchLoader.setQueueCapacity(prefetchQueueCapacity);
+            prefetchLoader.setSeed(prefetchSeed);
+        }
 
-        for (int i = 0; i < maxEpoch; i++) {
+        try {
+            for (int i = 0; i < maxEpoch; i++) {
 
-            model.resetState();
-            monitor.startNewEpoch(i);
+                model.resetState();
+                monitor.startNewEpoch(i);
 
-            List<Batch> batches = trainDataSet.getBatches();
-            float lossSum = 0f;
-            float accSum = 0f;
+                Iterable<Batch> batches = prefetchLoader != null ? prefetchLoader : trainDataSet.getBatches();
+                int batchCount = 0;
+                float lossSum = 0f;
+                float accSum = 0f;
+
+                if (gradientAccumulator != null) {
+                    gradientAccumulator.reset();
+                }
+
+                for (Batch batch : batches) {
+                    batchCount++;
+                    if (gradientAccumulator != null) {
+                        lossSum += accumulateBatch(batch);
+                        continue;
+                    }
+
+                    if (staticGraphExecutor != null) {
+                        model.clearGrads();
+                        lossSum += staticGraphExecutor.step(batch.toVariableX().getValue(), batch.toVariableY().getValue());
+                        optimizer.update();
+                        continue;
+                    }
 
-            for (Batch batch : batches) {
-                Variable variableX = batch.toVariableX().setName("x").setRequireGrad(false);
-                Variable variableY = batch.toVariableY().setName("y").setRequireGrad(false);
+                    Variable variableX = batch.toVariableX().setName("x").setRequireGrad(false);
+                    Variable variableY = batch.toVariableY().setName("y").setRequireGrad(false);
 
-                Variable predictY = model.forward(variableX);
-                Variable lossVariable = loss.loss(variableY, predictY);
-                lossVariable.setName("loss");
+                    Variable predictY = model.forward(variableX);
+                    Variable lossVariable = loss.loss(variableY, predictY);
+                    lossVariable.setName("loss");
 
-                model.clearGrads();
-                lossSum += lossVariable.getValue().getNumber().floatValue();
+                    model.clearGrads();
+                    lossSum += lossVariable.getValue().getNumber().floatValue();
 
-                lossVariable.backward();
+                    lossVariable.backward();
 
-                optimizer.update();
-                lossVariable.unChainBackward();
+                    optimizer.update();
+                    lossVariable.unChainBackward();
 
-                model.tmpPredict = predictY;
+                    model.tmpPredict = predictY;
+                }
+                if (gradientAccumulator != null) {
+                    flushAccumulation();
+                }
+                monitor.collectInfo(lossSum / batchCount);
+                monitor.endEpoch();
+                monitor.printTrainInfo();
+            }
+        } finally {
+            if (prefetchLoader != null) {
+                prefetchLoader.close();
             }
-            monitor.collectInfo(lossSum / batches.size());
-            monitor.endEpoch();
-            monitor.printTrainInfo();
         }
         monitor.plot();
     }
 
+    /**
+     * 梯度累加模式下处理一个批次
+     * <p>
+     * 每个批次可再切分为微批次。微批次梯度先按样本数加权累加，
+     * 凑满accumulationSteps个批次后在flushAccumulation中除以样本总数并更新参数，
+     * 对按批次取平均的损失函数，结果与在合并后的大批次上直接计算一致。
+     *
+     * @param batch 批次
+     * @return 该批次的损失
+     */
+    private float accumulateBatch(Batch batch) {
+        List<Batch> microBatches = microBatchSize > 0
+                ? batch.split(microBatchSize) : Collections.singletonList(batch);
+        float lossSum = 0f;
+        for (Batch microBatch : microBatches) {
+            float lossValue = forwardBackward(microBatch);
+            gradientAccumulator.accumulate(microBatch.getSize());
+            lossSum += lossValue * microBatch.getSize() / batch.getSize();
+        }
+        pendingSamples += batch.getSize();
+        if (++pendingBatches == accumulationSteps) {
+            flushAccumulation();
+        }
+        return lossSum;
+    }
+
+    /**
+     * 用累加的梯度更新一次参数
+     */
+    private void flushAccumulation() {
+        if (pendingBatches > 0) {
+            gradientAccumulator.scale(1f / pendingSamples);
+            gradientAccumulator.apply();
+            optimizer.update();
+        }
+        gradientAccumulator.reset();
+        pendingBatches = 0;
+        pendingSamples = 0;
+    }
+
+    /**
+     * 在一个（微）批次上执行前向与反向，梯度留在模型参数上
+     *
+     * @param batch 批次
+     * @return 损失值
+     */
+    private float forwardBackward(Batch batch) {
+        if (staticGraphExecutor != null) {
+            return staticGraphExecutor.step(batch.toVariableX().getValue(), batch.toVariableY().getValue());
+        }
+        Variable variableX = batch.toVariableX().setName("x").setRequireGrad(false);
+        Variable variableY = batch.toVariableY().setName("y").setRequireGrad(false);
+
+        Variable predictY = model.forward(variableX);
+        Variable lossVariable = loss.loss(variableY, predictY);
+        lossVariable.setName("loss");
+        float lossValue = lossVariable.getValue().getNumber().floatValue();
+
+        lossVariable.backward();
+        lossVariable.unChainBackward();
+        model.tmpPredict = predictY;
+        return lossValue;
+    }
+
     /**
      * 并行训练实现
      * 将batch分配给多个线程并行处理，然后聚合梯度并更新参数
@@ -258,7 +383,7 @@ public class Trainer {
                 Model modelCopy = ParallelTrainingUtils.deepCopyModel(model);
 
                 ParallelBatchProcessor processor = new ParallelBatchProcessor(
-                        batch, modelCopy, loss, gradientAggregator, i + j
+                        batch, modelCopy, loss, gradientAggregator, i + j, microBatchSize
                 );
 
                 futures.add(executorService.submit(processor));
@@ -286,14 +411,28 @@ public class Trainer {
             try {
                 Map<String, NdArray> averageGradients = gradientAggregator.getAverageGradients();
 
-                // 将聚合梯度应用到主模型
-                ParallelTrainingUtils.applyAggregatedGradients(model, averageGradients);
+                if (gradientAccumulator != null) {
+                    // 每accumulationSteps组更新一次，组内平均梯度按组数等权累加
+                    int groupCount = (batchCount + parallelThreadCount - 1) / parallelThreadCount;
+                    int groupIndex = i / parallelThreadCount;
+                    int windowStart = groupIndex / accumulationSteps * accumulationSteps;
+                    int windowSize = Math.min(accumulationSteps, groupCount - windowStart);
+                    gradientAccumulator.accumulate(averageGradients, 1f / windowSize);
+                    if (groupIndex == windowStart + windowSize - 1) {
+                        gradientAccumulator.apply();
+                        optimizer.update();
+                        gradientAccumulator.reset();
+                    }
+                } else {
+                    // 将聚合梯度应用到主模型
+                    ParallelTrainingUtils.applyAggregatedGradients(model, averageGradients);
 
-                // 更新参数
-                optimizer.update();
+                    // 更新参数
+                    optimizer.update();
 
-                // 清理梯度
-                model.clearGrads();
+                    // 清理梯度
+                    model.clearGrads();
+                }
 
             } catch (InterruptedException e) {
                 System.err.println("梯度聚合被中断: " + e.getMessage());
@@ -381,6 +520,114 @@ public class Trainer {
         }
     }
 
+    /**
+     * 设置是否使用静态图训练
+     * <p>
+     * 启用后单线程训练对每种批次形状捕获一次前向+反向的静态执行计划，
+     * 之后同形状的批次直接重放，不再重建计算图。计算图不完整（有层断开了计算图）时自动回退到动态执行。
+     * 需要在init之前调用。
+     *
+     * @param enable 是否启用静态图
+     */
+    public void configureStaticGraph(boolean enable) {
+        this.enableStaticGraph = enable;
+        this.staticGraphExecutor = enable && model != null ? new StaticGraphExecutor(model, loss) : null;
+    }
+
+    /**
+     * 设置梯度累加
+     * <p>
+     * 每accumulationSteps个批次（并行训练时为每accumulationSteps组批次）才执行一次参数更新，
+     * 有效批次大小为accumulationSteps倍；microBatchSize大于0时每个批次再切分为微批次前向与反向，
+     * 以限制单次计算图占用的内存。两者都按样本数加权，更新结果与在合并后的批次上直接训练一致。
+     * 需要在init之前调用。
+     *
+     * @param accumulationSteps 每次更新累加的批次数，小于1按1处理
+     * @param microBatchSize    微批次大小，0表示不切分
+     */
+    public void configureGradientAccumulation(int accumulationSteps, int microBatchSize) {
+        this.accumulationSteps = Math.max(1, accumulationSteps);
+        this.microBatchSize = Math.max(0, microBatchSize);
+        initGradientAccumulation();
+    }
+
+    /**
+     * 按内存预算自动选择微批次大小
+     * <p>
+     * init时在训练集第一个批次上探测每个样本的激活占用，选出预算内最大的微批次大小。
+     * 需要在init之前调用。
+     *
+     * @param budgetBytes 单次前向与反向可用的内存预算（字节），0表示关闭自动选择
+     */
+    public void configureMicroBatchMemoryBudget(long budgetBytes) {
+        this.microBatchMemoryBudget = Math.max(0, budgetBytes);
+        initGradientAccumulation();
+    }
+
+    private void initGradientAccumulation() {
+        if (model == null) {
+            return;
+        }
+        if (microBatchMemoryBudget > 0) {
+            DataSet trainDataSet = dataSet.getTrainDataSet();
+            List<Batch> batches = trainDataSet != null ? trainDataSet.getBatches() : null;
+            if (batches != null && !batches.isEmpty()) {
+                microBatchSize = GradientAccumulator.selectMicroBatchSize(model, loss, batches.get(0),
+                        microBatchMemoryBudget);
+            }
+        }
+        boolean enabled = accumulationSteps > 1 || microBatchSize > 0;
+        gradientAccumulator = enabled ? new GradientAccumulator(model) : null;
+    }
+
+    /**
+     * 设置异步预取
+     * <p>
+     * 启用后单线程训练通过PrefetchDataLoader取批次：后台线程准备下一批数据的同时当前批次在计算，
+     * 在途批次数受queueCapacity限制。给定seed时每轮的样本顺序由种子和轮次决定，可复现。
+     *
+     * @param enable        是否启用
+     * @param workers       工作线程数
+     * @param queueCapacity 同时在途的最大批次数
+     * @param seed          打乱种子，null表示保持数据集原有顺序
+     */
+    public void configurePrefetch(boolean enable, int workers, int queueCapacity, Long seed) {
+        this.enablePrefetch = enable;
+        this.prefetchWorkers = Math.max(1, workers);
+        this.prefetchQueueCapacity = Math.max(1, queueCapacity);
+        this.prefetchSeed = seed;
+    }
+
+    /**
+     * 获取最近一次训练使用的预取加载器（含背压指标），未启用时返回null
+     */
+    public PrefetchDataLoader getPrefetchLoader() {
+        return prefetchLoader;
+    }
+
+    /**
+     * 获取梯度累加器，未启用时返回null
+     */
+    public GradientAccumulator getGradientAccumulator() {
+        return gradientAccumulator;
+    }
+
+    /**
+     * 获取当前使用的微批次大小，0表示不切分
+     */
+    public int getMicroBatchSize() {
+        return microBatchSize;
+    }
+
+    /**
+     * 获取静态图执行器，未启用时返回null
+     *
+     * @return 静态图执行器
+     */
+    public StaticGraphExecutor getStaticGraphExecutor() {
+        return staticGraphExecutor;
+    }
+
     /**
      * 获取并行训练状态
      *
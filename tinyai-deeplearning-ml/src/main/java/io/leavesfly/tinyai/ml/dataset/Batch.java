@@ -4,6 +4,11 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.NdArrayUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * 一批数据
  * <p>
@@ -23,6 +28,10 @@ public class Batch {
     private Variable cachedVariableX = null;
     private Variable cachedVariableY = null;
 
+    // 缓存的微批次切分结果，避免每轮重新拼接
+    private List<Batch> cachedSplit = null;
+    private int cachedSplitSize = 0;
+
     /**
      * 构造函数
      *
@@ -34,6 +43,21 @@ public class Batch {
         this.y = y;
     }
 
+    /**
+     * 构造函数，使用已拼接好的批次数据
+     * 拼接结果需与NdArrayUtil.merge(0, ...)一致，toVariableX/toVariableY直接使用它们
+     *
+     * @param x       输入数据数组
+     * @param y       标签数据数组
+     * @param mergedX 拼接后的输入数据
+     * @param mergedY 拼接后的标签数据
+     */
+    public Batch(NdArray[] x, NdArray[] y, NdArray mergedX, NdArray mergedY) {
+        this(x, y);
+        this.cachedVariableX = new Variable(mergedX);
+        this.cachedVariableY = new Variable(mergedY);
+    }
+
     /**
      * 获取输入数据数组
      *
@@ -52,6 +76,7 @@ public class Batch {
         this.x = x;
         // 清除缓存
         this.cachedVariableX = null;
+        this.cachedSplit = null;
     }
 
     /**
@@ -72,6 +97,7 @@ public class Batch {
         this.y = y;
         // 清除缓存
         this.cachedVariableY = null;
+        this.cachedSplit = null;
     }
 
     /**
@@ -109,6 +135,32 @@ public class Batch {
         return cachedVariableY;
     }
 
+    /**
+     * 按样本顺序切分为若干微批次，最后一个微批次可能不满
+     * 切分结果会被缓存，同样大小的重复切分直接返回缓存
+     *
+     * @param microBatchSize 微批次大小
+     * @return 微批次列表，microBatchSize不小于批次大小时只包含当前批次
+     */
+    public List<Batch> split(int microBatchSize) {
+        if (microBatchSize <= 0) {
+            throw new IllegalArgumentException("微批次大小必须为正数: " + microBatchSize);
+        }
+        if (microBatchSize >= getSize()) {
+            return Collections.singletonList(this);
+        }
+        if (cachedSplit == null || cachedSplitSize != microBatchSize) {
+            List<Batch> parts = new ArrayList<>();
+            for (int start = 0; start < getSize(); start += microBatchSize) {
+                int end = Math.min(start + microBatchSize, getSize());
+                parts.add(new Batch(Arrays.copyOfRange(x, start, end), Arrays.copyOfRange(y, start, end)));
+            }
+            cachedSplit = parts;
+            cachedSplitSize = microBatchSize;
+        }
+        return cachedSplit;
+    }
+
     /**
      * 获取下一对数据
      *
@@ -0,0 +1,592 @@
+package io.leavesfly.tinyai.ml.dataset;
+
+import io.leavesfly.tinyai.ml.dataset.StreamDataset.DataItem;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 异步预取数据加载器
+ * <p>
+ * DataSet.getBatches会一次性构建全部批次，数据准备与模型计算无法重叠。
+ * 该加载器把数据准备放到后台流水线中，训练循环按需逐批取用：
+ * <p>
+ * 1. 读取线程：从数据源顺序读取样本，按种子做确定性打乱，按批次大小分组
+ * 2. 工作线程：对每个样本执行变换（解码、数据增强等），并把整批样本拼接到可复用的批次缓冲区
+ * 3. 有界队列：同时在途的批次数不超过queueCapacity，队列满时读取线程阻塞（背压）
+ * <p>
+ * 多个工作线程并行处理不同批次，但批次按序号依次交付，给定种子时每轮产生的批次序列完全确定。
+ * 批次拼接结果复用缓冲区：调用方取下一个批次后，上一个批次的拼接数据（toVariableX/toVariableY）
+ * 会被回收复用，不应再被引用。
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class PrefetchDataLoader implements Iterable<Batch>, AutoCloseable {
+
+    /**
+     * 数据源，每次调用返回一轮完整的样本迭代器
+     */
+    private final Supplier<Iterator<DataItem>> source;
+
+    /**
+     * 全量装载在内存中的样本，非null时按下标整体打乱
+     */
+    private final NdArray[] arrayXs;
+    private final NdArray[] arrayYs;
+
+    private final int batchSize;
+
+    private int numWorkers = 2;
+
+    private int queueCapacity = 4;
+
+    /**
+     * 打乱种子，null表示不打乱
+     */
+    private Long seed;
+
+    /**
+     * 流式数据源的打乱缓冲区大小
+     */
+    private int shuffleBufferSize = 1024;
+
+    private boolean dropLast = false;
+
+    /**
+     * 样本变换（数据增强等），在工作线程中执行
+     */
+    private UnaryOperator<DataItem> transform;
+
+    private ExecutorService workers;
+
+    private Epoch currentEpoch;
+
+    private int epochIndex;
+
+    /**
+     * 按长度分组的可复用拼接缓冲区
+     */
+    private final Map<Integer, ConcurrentLinkedQueue<float[]>> bufferPool = new ConcurrentHashMap<>();
+
+    // 背压指标
+    private final AtomicLong batchesProduced = new AtomicLong();
+    private final AtomicLong producerWaitNanos = new AtomicLong();
+    private final AtomicLong consumerWaitNanos = new AtomicLong();
+    private final AtomicLong bufferAllocations = new AtomicLong();
+    private final AtomicLong bufferReuses = new AtomicLong();
+    private long batchesConsumed;
+    private long queueDepthSum;
+    private int maxQueueDepth;
+
+    /**
+     * 构造函数，基于流式数据源
+     *
+     * @param source    数据源，每次调用返回一轮完整的样本迭代器
+     * @param batchSize 批次大小
+     */
+    public PrefetchDataLoader(Supplier<Iterator<DataItem>> source, int batchSize) {
+        this(source, null, null, batchSize);
+    }
+
+    /**
+     * 构造函数，基于内存中的样本数组
+     *
+     * @param xs        输入样本
+     * @param ys        标签样本
+     * @param batchSize 批次大小
+     */
+    public PrefetchDataLoader(NdArray[] xs, NdArray[] ys, int batchSize) {
+        this(null, xs, ys, batchSize);
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("输入与标签样本数不一致: " + xs.length + " vs " + ys.length);
+        }
+    }
+
+    private PrefetchDataLoader(Supplier<Iterator<DataItem>> source, NdArray[] xs, NdArray[] ys, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("批次大小必须为正数: " + batchSize);
+        }
+        this.source = source;
+        this.arrayXs = xs;
+        this.arrayYs = ys;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 为已有数据集创建加载器
+     * <p>
+     * ArrayDataset直接使用其样本数组，StreamDataset使用其数据源；
+     * 其他数据集退化为展开getBatches的结果。ArrayDataset按整批截断，保持与getBatches一致。
+     *
+     * @param dataSet 数据集
+     * @return 加载器
+     */
+    public static PrefetchDataLoader of(DataSet dataSet) {
+        PrefetchDataLoader loader;
+        if (dataSet instanceof ArrayDataset) {
+            ArrayDataset arrayDataset = (ArrayDataset) dataSet;
+            loader = new PrefetchDataLoader(arrayDataset.getXs(), arrayDataset.getYs(), dataSet.batchSize);
+            loader.setDropLast(true);
+        } else if (dataSet instanceof StreamDataset) {
+            loader = new PrefetchDataLoader(((StreamDataset) dataSet).getDataSource(), dataSet.batchSize);
+        } else {
+            loader = new PrefetchDataLoader(() -> {
+                List<DataItem> items = new ArrayList<>();
+                for (Batch batch : dataSet.getBatches()) {
+                    for (int i = 0; i < batch.getSize(); i++) {
+                        items.add(new DataItem(batch.getX()[i], batch.getY()[i]));
+                    }
+                }
+                return items.iterator();
+            }, dataSet.batchSize);
+        }
+        return loader;
+    }
+
+    /**
+     * 开始新的一轮，返回该轮批次的迭代器
+     * <p>
+     * 上一轮未读完的流水线会被取消。迭代器不是线程安全的，应由单个训练线程使用。
+     */
+    @Override
+    public synchronized Iterator<Batch> iterator() {
+        if (currentEpoch != null) {
+            currentEpoch.cancel();
+        }
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(numWorkers, daemonFactory("prefetch-worker"));
+        }
+        currentEpoch = new Epoch(epochIndex++);
+        currentEpoch.start();
+        return currentEpoch;
+    }
+
+    /**
+     * 一轮数据的流水线，同时作为该轮的批次迭代器
+     */
+    private class Epoch implements Iterator<Batch> {
+
+        private final int epoch;
+
+        private final Semaphore slots = new Semaphore(queueCapacity);
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition readyChanged = lock.newCondition();
+
+        private final Map<Long, Batch> ready = new HashMap<>();
+
+        private long submitted;
+
+        private boolean readerDone;
+
+        private Throwable failure;
+
+        private volatile boolean cancelled;
+
+        private Thread reader;
+
+        private long nextSeq;
+
+        private Batch pending;
+
+        private Batch previous;
+
+        Epoch(int epoch) {
+            this.epoch = epoch;
+        }
+
+        void start() {
+            reader = daemonFactory("prefetch-reader").newThread(this::read);
+            reader.start();
+        }
+
+        private void read() {
+            try {
+                Iterator<DataItem> items = orderedItems(epoch);
+                List<DataItem> group = new ArrayList<>(batchSize);
+                while (!cancelled && items.hasNext()) {
+                    group.add(items.next());
+                    if (group.size() == batchSize) {
+                        submit(group);
+                        group = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!group.isEmpty() && !dropLast && !cancelled) {
+                    submit(group);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                lock.lock();
+                try {
+                    readerDone = true;
+                    readyChanged.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void submit(List<DataItem> group) throws InterruptedException {
+            long start = System.nanoTime();
+            slots.acquire();
+            producerWaitNanos.addAndGet(System.nanoTime() - start);
+            long seq;
+            lock.lock();
+            try {
+                seq = submitted++;
+            } finally {
+                lock.unlock();
+            }
+            workers.execute(() -> {
+                try {
+                    Batch batch = collate(group);
+                    batchesProduced.incrementAndGet();
+                    lock.lock();
+                    try {
+                        ready.put(seq, batch);
+                        readyChanged.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                } catch (Throwable t) {
+                    fail(t);
+                }
+            });
+        }
+
+        private void fail(Throwable t) {
+            lock.lock();
+            try {
+                if (failure == null) {
+                    failure = t;
+                }
+                readyChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending != null) {
+                return true;
+            }
+            long start = System.nanoTime();
+            lock.lock();
+            try {
+                while (true) {
+                    if (failure != null) {
+                        throw new RuntimeException("数据预取失败: " + failure.getMessage(), failure);
+                    }
+                    Batch batch = ready.remove(nextSeq);
+                    if (batch != null) {
+                        int depth = ready.size() + 1;
+                        queueDepthSum += depth;
+                        maxQueueDepth = Math.max(maxQueueDepth, depth);
+                        nextSeq++;
+                        pending = batch;
+                        break;
+                    }
+                    if (cancelled || (readerDone && nextSeq >= submitted)) {
+                        // 本轮结束，最后一个批次也已用完
+                        if (previous != null) {
+                            recycle(previous);
+                            previous = null;
+                        }
+                        return false;
+                    }
+                    readyChanged.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                lock.unlock();
+                consumerWaitNanos.addAndGet(System.nanoTime() - start);
+            }
+            return true;
+        }
+
+        @Override
+        public Batch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // 调用方取下一个批次，说明上一个批次已用完，回收其缓冲区
+            if (previous != null) {
+                recycle(previous);
+            }
+            previous = pending;
+            pending = null;
+            batchesConsumed++;
+            slots.release();
+            return previous;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (reader != null) {
+                reader.interrupt();
+            }
+            lock.lock();
+            try {
+                readyChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 按种子打乱后的样本顺序
+     */
+    private Iterator<DataItem> orderedItems(int epoch) {
+        Random random = seed != null ? new Random(seed * 31 + epoch) : null;
+        if (arrayXs != null) {
+            List<Integer> order = new ArrayList<>(arrayXs.length);
+            for (int i = 0; i < arrayXs.length; i++) {
+                order.add(i);
+            }
+            if (random != null) {
+                Collections.shuffle(order, random);
+            }
+            Iterator<Integer> indices = order.iterator();
+            return new Iterator<DataItem>() {
+                @Override
+                public boolean hasNext() {
+                    return indices.hasNext();
+                }
+
+                @Override
+                public DataItem next() {
+                    int index = indices.next();
+                    return new DataItem(arrayXs[index], arrayYs[index]);
+                }
+            };
+        }
+        Iterator<DataItem> items = source.get();
+        return random != null ? new ShuffleBufferIterator(items, shuffleBufferSize, random) : items;
+    }
+
+    /**
+     * 流式数据的缓冲区打乱：维护固定大小的缓冲区，每次随机取出一个样本并用新样本填补
+     */
+    private static class ShuffleBufferIterator implements Iterator<DataItem> {
+        private final Iterator<DataItem> source;
+        private final List<DataItem> buffer;
+        private final int capacity;
+        private final Random random;
+
+        ShuffleBufferIterator(Iterator<DataItem> source, int capacity, Random random) {
+            this.source = source;
+            this.capacity = Math.max(1, capacity);
+            this.buffer = new ArrayList<>(this.capacity);
+            this.random = random;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !buffer.isEmpty() || source.hasNext();
+        }
+
+        @Override
+        public DataItem next() {
+            while (buffer.size() < capacity && source.hasNext()) {
+                buffer.add(source.next());
+            }
+            if (buffer.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            int index = random.nextInt(buffer.size());
+            DataItem item = buffer.get(index);
+            // 用末尾元素填补被取出的位置，避免移动数组
+            DataItem last = buffer.remove(buffer.size() - 1);
+            if (index < buffer.size()) {
+                buffer.set(index, last);
+            }
+            return item;
+        }
+    }
+
+    /**
+     * 对一组样本执行变换并拼接为批次
+     */
+    private Batch collate(List<DataItem> group) {
+        NdArray[] xs = new NdArray[group.size()];
+        NdArray[] ys = new NdArray[group.size()];
+        for (int i = 0; i < group.size(); i++) {
+            DataItem item = transform != null ? transform.apply(group.get(i)) : group.get(i);
+            xs[i] = item.getX();
+            ys[i] = item.getY();
+        }
+        return new Batch(xs, ys, concat(xs), concat(ys));
+    }
+
+    /**
+     * 沿第0维拼接，与NdArrayUtil.merge(0, ...)结果一致，但写入复用的缓冲区
+     */
+    private NdArray concat(NdArray[] parts) {
+        int[] dims = parts[0].getShape().getShape().clone();
+        int total = 0;
+        int rows = 0;
+        for (NdArray part : parts) {
+            total += part.getShape().size();
+            rows += part.getShape().getDimension(0);
+        }
+        dims[0] = rows;
+
+        float[] buffer = acquireBuffer(total);
+        int offset = 0;
+        for (NdArray part : parts) {
+            float[] data = part.getArray();
+            System.arraycopy(data, 0, buffer, offset, data.length);
+            offset += data.length;
+        }
+        return NdArray.of(buffer, Shape.of(dims));
+    }
+
+    private float[] acquireBuffer(int length) {
+        ConcurrentLinkedQueue<float[]> pool = bufferPool.get(length);
+        float[] buffer = pool != null ? pool.poll() : null;
+        if (buffer != null) {
+            bufferReuses.incrementAndGet();
+            return buffer;
+        }
+        bufferAllocations.incrementAndGet();
+        return new float[length];
+    }
+
+    private void recycle(Batch batch) {
+        for (NdArray merged : new NdArray[]{batch.toVariableX().getValue(), batch.toVariableY().getValue()}) {
+            float[] buffer = merged.getArray();
+            bufferPool.computeIfAbsent(buffer.length, k -> new ConcurrentLinkedQueue<>()).offer(buffer);
+        }
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 停止流水线并释放工作线程
+     */
+    @Override
+    public synchronized void close() {
+        if (currentEpoch != null) {
+            currentEpoch.cancel();
+            currentEpoch = null;
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    /**
+     * 获取背压指标汇总
+     * <p>
+     * 生产者等待时间长说明训练计算是瓶颈（队列经常满），消费者等待时间长说明数据准备是瓶颈。
+     */
+    public String getMetricsReport() {
+        return String.format("产出批次: %d, 消费批次: %d, 生产者阻塞: %.2f ms, 消费者等待: %.2f ms, "
+                        + "平均队列深度: %.2f, 最大队列深度: %d, 缓冲区复用: %d/%d",
+                batchesProduced.get(), batchesConsumed, producerWaitNanos.get() / 1e6,
+                consumerWaitNanos.get() / 1e6, getAverageQueueDepth(), maxQueueDepth,
+                bufferReuses.get(), bufferReuses.get() + bufferAllocations.get());
+    }
+
+    public long getBatchesProduced() {
+        return batchesProduced.get();
+    }
+
+    public long getBatchesConsumed() {
+        return batchesConsumed;
+    }
+
+    public long getProducerWaitNanos() {
+        return producerWaitNanos.get();
+    }
+
+    public long getConsumerWaitNanos() {
+        return consumerWaitNanos.get();
+    }
+
+    public double getAverageQueueDepth() {
+        return batchesConsumed == 0 ? 0 : (double) queueDepthSum / batchesConsumed;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getBufferAllocations() {
+        return bufferAllocations.get();
+    }
+
+    public long getBufferReuses() {
+        return bufferReuses.get();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 设置工作线程数，需要在第一次迭代之前调用
+     */
+    public void setNumWorkers(int numWorkers) {
+        this.numWorkers = Math.max(1, numWorkers);
+    }
+
+    /**
+     * 设置同时在途的最大批次数
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * 设置打乱种子，每轮使用由种子和轮次派生的随机序列；null表示不打乱
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * 设置流式数据源的打乱缓冲区大小
+     */
+    public void setShuffleBufferSize(int shuffleBufferSize) {
+        this.shuffleBufferSize = shuffleBufferSize;
+    }
+
+    /**
+     * 设置是否丢弃最后一个不满的批次
+     */
+    public void setDropLast(boolean dropLast) {
+        this.dropLast = dropLast;
+    }
+
+    /**
+     * 设置样本变换（数据增强等），在工作线程中并行执行，应当是线程安全的
+     */
+    public void setTransform(UnaryOperator<DataItem> transform) {
+        this.transform = transform;
+    }
+}
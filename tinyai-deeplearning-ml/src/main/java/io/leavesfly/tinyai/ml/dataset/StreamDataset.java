@@ -78,6 +78,14 @@ public class StreamDataset extends DataSet {
         this.dataSourceSupplier = dataSourceSupplier;
     }
     
+    /**
+     * 获取数据源
+     * @return 数据源提供者
+     */
+    public Supplier<Iterator<DataItem>> getDataSource() {
+        return dataSourceSupplier;
+    }
+    
     /**
      * 设置数据集总大小
      * @param totalSize 总大小
@@ -0,0 +1,348 @@
+package io.leavesfly.tinyai.ml.inference;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ml.Model;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.util.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态微批处理推理器
+ * <p>
+ * 并发调用方提交的请求先进入队列，由调度线程按 最大批大小 或 最大等待时间 合并为一批：
+ * 通过 {@link Translator#batchInput2NdArray} 一次编码、模型一次前向、
+ * {@link Translator#batchNdArray2Output} 一次解码，再分别完成每个调用方的 CompletableFuture。
+ * 模型只在调度线程上执行，无需线程安全。
+ * <p>
+ * 整批执行失败时逐个请求重试，只有出错的请求以异常完成，同批的其他请求不受影响；
+ * 调度循环捕获包括Error在内的所有异常，单个批次失败不会使调度线程退出。
+ * <p>
+ * 提供队列深度、批大小分布以及请求延迟（入队到完成）的p50/p99统计。
+ *
+ * @param <I> 输入数据类型
+ * @param <O> 输出数据类型
+ * @author TinyDL
+ * @version 1.0
+ */
+public class BatchingPredictor<I, O> implements AutoCloseable {
+
+    /**
+     * 延迟统计保留的最近样本数
+     */
+    private static final int LATENCY_WINDOW = 4096;
+
+    private final Translator<I, O> translator;
+    private final Model model;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<Request<I, O>> queue;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    // 统计信息（批大小分布与延迟样本由调度线程写入，读取时加锁）
+    private final long[] batchSizeHistogram;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencyCount;
+    private long completedRequests;
+    private long failedRequests;
+
+    /**
+     * 构造函数
+     *
+     * @param translator    数据转换器
+     * @param model         模型
+     * @param maxBatchSize  单批最大请求数
+     * @param maxWaitMillis 第一个请求到达后最多等待凑批的时间（毫秒）
+     */
+    public BatchingPredictor(Translator<I, O> translator, Model model, int maxBatchSize, long maxWaitMillis) {
+        this(translator, model, maxBatchSize, maxWaitMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param translator    数据转换器
+     * @param model         模型
+     * @param maxBatchSize  单批最大请求数
+     * @param maxWaitMillis 第一个请求到达后最多等待凑批的时间（毫秒）
+     * @param queueCapacity 队列容量，队列满时新请求立即以RejectedExecutionException失败
+     */
+    public BatchingPredictor(Translator<I, O> translator, Model model, int maxBatchSize,
+                             long maxWaitMillis, int queueCapacity) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize必须为正数: " + maxBatchSize);
+        }
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis不能为负数: " + maxWaitMillis);
+        }
+        this.translator = translator;
+        this.model = model;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSizeHistogram = new long[maxBatchSize + 1];
+
+        this.dispatcher = new Thread(this::dispatchLoop, "batching-predictor");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * 异步提交预测请求
+     *
+     * @param input 输入数据
+     * @return 预测结果的Future
+     */
+    public CompletableFuture<O> submit(I input) {
+        Request<I, O> request = new Request<>(input);
+        if (!running) {
+            request.future.completeExceptionally(new RejectedExecutionException("推理器已关闭"));
+        } else if (!queue.offer(request)) {
+            request.future.completeExceptionally(new RejectedExecutionException("请求队列已满"));
+        } else if (!running && queue.remove(request)) {
+            // 与close竞争时调度线程可能已退出，撤回请求避免永远不完成
+            request.future.completeExceptionally(new RejectedExecutionException("推理器已关闭"));
+        }
+        return request.future;
+    }
+
+    /**
+     * 同步预测，阻塞直到所在批次完成
+     *
+     * @param input 输入数据
+     * @return 预测结果
+     */
+    public O predict(I input) {
+        try {
+            return submit(input).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("预测被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("预测失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 调度循环：阻塞等待第一个请求，然后在最大等待时间内凑满一批
+     */
+    private void dispatchLoop() {
+        List<Request<I, O>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Request<I, O> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // 先无等待地取走已排队的请求，再在剩余时间内等待新请求
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Request<I, O> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                try {
+                    runBatch(batch);
+                } catch (Throwable e) {
+                    // 兜底：记录失败后调度线程继续运行，已完成的Future不受影响
+                    fail(batch, e);
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+        failPending();
+    }
+
+    /**
+     * 对一批请求执行一次编码、前向与解码；整批失败时逐个重试，只让出错的请求失败
+     */
+    private void runBatch(List<Request<I, O>> batch) {
+        List<O> outputs;
+        try {
+            outputs = forwardBatch(batch);
+        } catch (Throwable e) {
+            if (batch.size() == 1) {
+                fail(batch, e);
+                return;
+            }
+            for (Request<I, O> request : batch) {
+                runBatch(Collections.singletonList(request));
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            batchSizeHistogram[batch.size()]++;
+            for (Request<I, O> request : batch) {
+                latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = now - request.enqueueNanos;
+            }
+            completedRequests += batch.size();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(outputs.get(i));
+        }
+    }
+
+    private List<O> forwardBatch(List<Request<I, O>> batch) {
+        List<I> inputs = new ArrayList<>(batch.size());
+        for (Request<I, O> request : batch) {
+            inputs.add(request.input);
+        }
+        NdArray input = translator.batchInput2NdArray(inputs);
+        Config.train = false;
+        Variable output = model.forward(new Variable(input));
+        List<O> outputs = translator.batchNdArray2Output(output.getValue(), batch.size());
+        if (outputs.size() != batch.size()) {
+            throw new IllegalStateException(String.format(
+                    "批量解码结果数量不匹配：期望 %d，实际 %d", batch.size(), outputs.size()));
+        }
+        return outputs;
+    }
+
+    /**
+     * 以异常完成一批中尚未完成的请求
+     */
+    private void fail(List<Request<I, O>> batch, Throwable e) {
+        int failed = 0;
+        for (Request<I, O> request : batch) {
+            if (request.future.completeExceptionally(e)) {
+                failed++;
+            }
+        }
+        synchronized (this) {
+            batchSizeHistogram[batch.size()]++;
+            failedRequests += failed;
+        }
+    }
+
+    private void failPending() {
+        List<Request<I, O>> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Request<I, O> request : pending) {
+            request.future.completeExceptionally(new RejectedExecutionException("推理器已关闭"));
+        }
+    }
+
+    /**
+     * 当前排队等待的请求数
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 批大小分布，下标为批大小，值为该大小的批次数
+     */
+    public synchronized long[] getBatchSizeHistogram() {
+        return batchSizeHistogram.clone();
+    }
+
+    public synchronized long getCompletedRequests() {
+        return completedRequests;
+    }
+
+    public synchronized long getFailedRequests() {
+        return failedRequests;
+    }
+
+    /**
+     * 平均批大小
+     */
+    public synchronized double getAverageBatchSize() {
+        long batches = 0;
+        long requests = 0;
+        for (int size = 1; size < batchSizeHistogram.length; size++) {
+            batches += batchSizeHistogram[size];
+            requests += batchSizeHistogram[size] * size;
+        }
+        return batches == 0 ? 0.0 : (double) requests / batches;
+    }
+
+    /**
+     * 最近请求的延迟分位数（毫秒），延迟为入队到结果就绪的时间
+     *
+     * @param percentile 分位数，范围 (0, 100]
+     */
+    public synchronized double getLatencyPercentileMillis(double percentile) {
+        int count = (int) Math.min(latencyCount, LATENCY_WINDOW);
+        if (count == 0) {
+            return 0.0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))] / 1e6;
+    }
+
+    public double getP50LatencyMillis() {
+        return getLatencyPercentileMillis(50);
+    }
+
+    public double getP99LatencyMillis() {
+        return getLatencyPercentileMillis(99);
+    }
+
+    /**
+     * 统计信息摘要
+     */
+    public String getMetricsReport() {
+        return String.format("completed=%d, failed=%d, queueDepth=%d, avgBatch=%.2f, p50=%.3fms, p99=%.3fms",
+                getCompletedRequests(), getFailedRequests(), getQueueDepth(), getAverageBatchSize(),
+                getP50LatencyMillis(), getP99LatencyMillis());
+    }
+
+    /**
+     * 停止接收新请求，处理完已排队的请求后退出调度线程
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dispatcher.interrupt();
+        }
+    }
+
+    private static final class Request<I, O> {
+        final I input;
+        final long enqueueNanos = System.nanoTime();
+        final CompletableFuture<O> future = new CompletableFuture<>();
+
+        Request(I input) {
+            this.input = input;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package io.leavesfly.tinyai.ml.inference;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * 融合的图像预处理流水线
+ * <p>
+ * 将 缩放 → 归一化 → 布局转换 → 数据增强 编译为一次遍历：
+ * 1. 最近邻缩放预先计算为行/列源索引表（按源图尺寸缓存），水平翻转只是反向读取列索引表
+ * 2. 像素缩放与均值/标准差归一化合并为每通道一次乘加
+ * 3. 结果按HWC或CHW布局直接写入调用方提供的扁平缓冲区，批量处理时写入预分配的批张量
+ * <p>
+ * 源图像为HWC布局的扁平数组（或打包的ARGB像素）。流水线构建后不可变，可被多个线程共享；
+ * 增强所用的随机数按图像序号确定性派生，结果与线程数无关。
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class ImagePipeline {
+
+    /**
+     * 输出布局
+     */
+    public enum Layout {
+        /** [C, H, W]，卷积网络输入 */
+        CHW,
+        /** [H, W, C]，与源图一致 */
+        HWC
+    }
+
+    private final int targetHeight;
+    private final int targetWidth;
+    private final int outputChannels;
+    private final float inputScale;
+    private final float[] mean;
+    private final float[] std;
+    private final Layout layout;
+    private final double flipProbability;
+    private final float noiseLevel;
+    private final float clipMin;
+    private final float clipMax;
+    private final long seed;
+
+    private final AtomicLong imageSequence = new AtomicLong();
+    private final Map<Long, int[][]> indexTables = new ConcurrentHashMap<>();
+
+    private ImagePipeline(Builder builder) {
+        this.targetHeight = builder.targetHeight;
+        this.targetWidth = builder.targetWidth;
+        this.outputChannels = builder.outputChannels;
+        this.inputScale = builder.inputScale;
+        this.mean = builder.mean;
+        this.std = builder.std;
+        this.layout = builder.layout;
+        this.flipProbability = builder.flipProbability;
+        this.noiseLevel = builder.noiseLevel;
+        this.clipMin = builder.clipMin;
+        this.clipMax = builder.clipMax;
+        this.seed = builder.seed;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 处理单张图像
+     *
+     * @param image HWC图像 [H, W, C]，或灰度图 [H, W]
+     * @return 处理后的图像，形状由输出布局决定
+     */
+    public NdArray process(NdArray image) {
+        int[] dims = image.getShape().getShape();
+        int srcChannels = dims.length > 2 ? dims[2] : 1;
+        int channels = outputChannels(srcChannels);
+        int height = outputHeight(dims[0]);
+        int width = outputWidth(dims[1]);
+        float[] dst = new float[channels * height * width];
+        processInto(image.getArray(), dims[0], dims[1], srcChannels, dst, 0);
+        return NdArray.of(dst, imageShape(channels, height, width));
+    }
+
+    /**
+     * 处理一批尺寸相同的图像，在线程池上并行写入预分配的批张量
+     *
+     * @param images HWC图像列表
+     * @return 批张量 [B, C, H, W] 或 [B, H, W, C]
+     */
+    public NdArray processBatch(List<NdArray> images) {
+        return processBatch(images, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 处理一批尺寸相同的图像
+     *
+     * @param images   HWC图像列表
+     * @param executor 执行预处理的线程池
+     * @return 批张量 [B, C, H, W] 或 [B, H, W, C]
+     */
+    public NdArray processBatch(List<NdArray> images, ExecutorService executor) {
+        if (images.isEmpty()) {
+            throw new IllegalArgumentException("图像列表为空");
+        }
+        Shape srcShape = images.get(0).getShape();
+        int[] dims = srcShape.getShape();
+        int srcChannels = dims.length > 2 ? dims[2] : 1;
+        int channels = outputChannels(srcChannels);
+        int height = outputHeight(dims[0]);
+        int width = outputWidth(dims[1]);
+        int imageSize = channels * height * width;
+        for (NdArray image : images) {
+            if (!image.getShape().equals(srcShape)) {
+                throw new IllegalArgumentException("批量预处理要求图像尺寸一致: " + srcShape + " vs " + image.getShape());
+            }
+        }
+
+        float[] batch = new float[images.size() * imageSize];
+        long firstIndex = imageSequence.getAndAdd(images.size());
+        parallelFor(images.size(), executor, i -> process(images.get(i).getArray(), null,
+                dims[0], dims[1], srcChannels, batch, i * imageSize, firstIndex + i));
+
+        Shape single = imageShape(channels, height, width);
+        int[] batchDims = new int[single.getDimNum() + 1];
+        batchDims[0] = images.size();
+        System.arraycopy(single.getShape(), 0, batchDims, 1, single.getDimNum());
+        return NdArray.of(batch, Shape.of(batchDims));
+    }
+
+    /**
+     * 处理HWC扁平数组并写入目标缓冲区
+     *
+     * @param src         源像素 [srcHeight * srcWidth * srcChannels]
+     * @param srcHeight   源高度
+     * @param srcWidth    源宽度
+     * @param srcChannels 源通道数
+     * @param dst         目标缓冲区
+     * @param dstOffset   写入起始位置
+     */
+    public void processInto(float[] src, int srcHeight, int srcWidth, int srcChannels, float[] dst, int dstOffset) {
+        process(src, null, srcHeight, srcWidth, srcChannels, dst, dstOffset, nextImageIndex());
+    }
+
+    /**
+     * 处理打包的ARGB像素（如 BufferedImage.getRGB 的结果），按RGB三通道取值[0, 255]
+     *
+     * @param argb      打包像素 [srcHeight * srcWidth]
+     * @param srcHeight 源高度
+     * @param srcWidth  源宽度
+     * @param dst       目标缓冲区
+     * @param dstOffset 写入起始位置
+     */
+    public void processArgbInto(int[] argb, int srcHeight, int srcWidth, float[] dst, int dstOffset) {
+        process(null, argb, srcHeight, srcWidth, 3, dst, dstOffset, nextImageIndex());
+    }
+
+    /**
+     * 单张图像的融合处理，src与argb二选一
+     */
+    private void process(float[] src, int[] argb, int srcHeight, int srcWidth, int srcChannels,
+                         float[] dst, int dstOffset, long imageIndex) {
+        int height = outputHeight(srcHeight);
+        int width = outputWidth(srcWidth);
+        int channels = outputChannels(srcChannels);
+        int[][] tables = indexTables(srcHeight, srcWidth, height, width);
+        int[] rowOffsets = tables[0];
+        int[] columns = tables[1];
+
+        // 每通道的乘加系数：(v * scale - mean) / std
+        float[] mul = new float[channels];
+        float[] add = new float[channels];
+        for (int c = 0; c < channels; c++) {
+            if (mean != null && c < mean.length) {
+                mul[c] = inputScale / std[c];
+                add[c] = -mean[c] / std[c];
+            } else {
+                mul[c] = inputScale;
+            }
+        }
+
+        Random random = augments() ? new Random(seed ^ (imageIndex * 0x9E3779B97F4A7C15L)) : null;
+        boolean flip = random != null && flipProbability > 0 && random.nextDouble() < flipProbability;
+        boolean clip = !Float.isNaN(clipMin);
+        int plane = height * width;
+        // CHW布局下同一像素的通道相隔一个平面，HWC布局下相邻
+        int channelStride = layout == Layout.CHW ? plane : 1;
+        int pixelStride = layout == Layout.CHW ? 1 : channels;
+
+        for (int y = 0; y < height; y++) {
+            int srcRow = rowOffsets[y];
+            int rowBase = dstOffset + y * width * pixelStride;
+            for (int x = 0; x < width; x++) {
+                int srcPixel = srcRow + columns[flip ? width - 1 - x : x];
+                int out = rowBase + x * pixelStride;
+                for (int c = 0; c < channels; c++) {
+                    // 输出通道多于源通道时（如灰度转RGB）循环复用源通道
+                    int sc = c < srcChannels ? c : c % srcChannels;
+                    float v = src != null
+                            ? src[srcPixel * srcChannels + sc]
+                            : (argb[srcPixel] >> (16 - 8 * sc)) & 0xFF;
+                    v = v * mul[c] + add[c];
+                    if (noiseLevel > 0) {
+                        v += (float) ((random.nextDouble() - 0.5) * 2 * noiseLevel);
+                    }
+                    if (clip) {
+                        v = Math.max(clipMin, Math.min(clipMax, v));
+                    }
+                    dst[out + c * channelStride] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * 最近邻缩放的源索引表：行表为源行起始像素序号，列表为源列号
+     */
+    private int[][] indexTables(int srcHeight, int srcWidth, int height, int width) {
+        long key = ((long) srcHeight << 32) | srcWidth;
+        return indexTables.computeIfAbsent(key, k -> {
+            int[] rowOffsets = new int[height];
+            for (int y = 0; y < height; y++) {
+                rowOffsets[y] = (int) ((long) y * srcHeight / height) * srcWidth;
+            }
+            int[] columns = new int[width];
+            for (int x = 0; x < width; x++) {
+                columns[x] = (int) ((long) x * srcWidth / width);
+            }
+            return new int[][]{rowOffsets, columns};
+        });
+    }
+
+    /**
+     * 将 [0, count) 切分为若干连续区间在线程池上执行，全部完成后返回
+     */
+    static void parallelFor(int count, ExecutorService executor, IntConsumer body) {
+        int parallelism = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        int chunks = Math.min(count, Math.max(1, parallelism));
+        if (chunks <= 1) {
+            for (int i = 0; i < count; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = (int) ((long) count * chunk / chunks);
+            int to = (int) ((long) count * (chunk + 1) / chunks);
+            futures.add(executor.submit(() -> {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("图像预处理被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("图像预处理失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    long nextImageIndex() {
+        return augments() ? imageSequence.getAndIncrement() : 0;
+    }
+
+    private boolean augments() {
+        return flipProbability > 0 || noiseLevel > 0;
+    }
+
+    /**
+     * 单张图像的输出形状
+     */
+    public Shape imageShape(int channels, int height, int width) {
+        return layout == Layout.CHW ? Shape.of(channels, height, width) : Shape.of(height, width, channels);
+    }
+
+    public int outputHeight(int srcHeight) {
+        return targetHeight > 0 ? targetHeight : srcHeight;
+    }
+
+    public int outputWidth(int srcWidth) {
+        return targetWidth > 0 ? targetWidth : srcWidth;
+    }
+
+    public int outputChannels(int srcChannels) {
+        return outputChannels > 0 ? outputChannels : srcChannels;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * 流水线构建器，各阶段的执行顺序固定为 缩放 → 归一化 → 布局 → 增强，与调用顺序无关
+     */
+    public static class Builder {
+        private int targetHeight;
+        private int targetWidth;
+        private int outputChannels;
+        private float inputScale = 1.0f;
+        private float[] mean;
+        private float[] std;
+        private Layout layout = Layout.CHW;
+        private double flipProbability;
+        private float noiseLevel;
+        private float clipMin = Float.NaN;
+        private float clipMax = Float.NaN;
+        private long seed = 42L;
+
+        /**
+         * 最近邻缩放到目标尺寸，不设置时保持源尺寸
+         */
+        public Builder resize(int height, int width) {
+            if (height <= 0 || width <= 0) {
+                throw new IllegalArgumentException("目标尺寸必须为正: " + height + "x" + width);
+            }
+            this.targetHeight = height;
+            this.targetWidth = width;
+            return this;
+        }
+
+        /**
+         * 像素缩放系数，如 1/255 将[0, 255]映射到[0, 1]
+         */
+        public Builder scale(float inputScale) {
+            this.inputScale = inputScale;
+            return this;
+        }
+
+        /**
+         * 按通道减均值除标准差（在scale之后），超出长度的通道不做归一化
+         */
+        public Builder normalize(float[] mean, float[] std) {
+            if (mean.length != std.length) {
+                throw new IllegalArgumentException("均值与标准差长度不一致");
+            }
+            this.mean = mean.clone();
+            this.std = std.clone();
+            return this;
+        }
+
+        /**
+         * 输出通道数，多于源通道时循环复用源通道（灰度转RGB）
+         */
+        public Builder channels(int outputChannels) {
+            this.outputChannels = outputChannels;
+            return this;
+        }
+
+        public Builder layout(Layout layout) {
+            this.layout = layout;
+            return this;
+        }
+
+        /**
+         * 随机水平翻转（数据增强）
+         */
+        public Builder randomHorizontalFlip(double probability) {
+            this.flipProbability = probability;
+            return this;
+        }
+
+        /**
+         * 在[-level, level]内添加均匀噪声（数据增强）
+         */
+        public Builder noise(float level) {
+            this.noiseLevel = level;
+            return this;
+        }
+
+        /**
+         * 将输出裁剪到[min, max]
+         */
+        public Builder clip(float min, float max) {
+            this.clipMin = min;
+            this.clipMax = max;
+            return this;
+        }
+
+        /**
+         * 数据增强的随机种子
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public ImagePipeline build() {
+            return new ImagePipeline(this);
+        }
+    }
+}
@@ -9,7 +9,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import javax.imageio.ImageIO;
 
 /**
@@ -19,8 +22,10 @@ import javax.imageio.ImageIO;
  * 支持以下功能：
  * 1. 多种图像格式的输入支持
  * 2. 图像预处理功能（缩放、归一化等）
- * 3. 支持批量图像处理
+ * 3. 支持批量图像处理（并行预处理并直接写入预分配的批张量）
  * 4. 灵活的输出格式化
+ * <p>
+ * 像素级的缩放、归一化与布局转换由编译好的 {@link ImagePipeline} 一次遍历完成。
  *
  * @author TinyDL
  * @version 1.0
@@ -57,6 +62,16 @@ public class ImageTranslator implements Translator<Object, String> {
      */
     private Map<Integer, String> classLabels = new HashMap<>();
     
+    /**
+     * 彩色图像预处理流水线（按需编译，归一化参数变化时失效）
+     */
+    private volatile ImagePipeline rgbPipeline;
+    
+    /**
+     * 灰度图像预处理流水线：缩放并复制为3通道，不做归一化
+     */
+    private volatile ImagePipeline grayscalePipeline;
+    
     /**
      * 默认构造函数
      */
@@ -102,65 +117,133 @@ public class ImageTranslator implements Translator<Object, String> {
     public void setNormalizationParams(float[] meanValues, float[] stdValues) {
         this.meanValues = meanValues.clone();
         this.stdValues = stdValues.clone();
+        this.rgbPipeline = null;
     }
 
     @Override
     public NdArray input2NdArray(Object input) {
+        try {
+            int channels = outputChannels(input);
+            float[] data = new float[channels * targetHeight * targetWidth];
+            fillInput(input, data, 0);
+            return NdArray.of(data, Shape.of(channels, targetHeight, targetWidth));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("图像转换失败: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * 批量转换输入，在公共线程池上并行预处理
+     * 
+     * @param inputs 输入列表，支持的类型同 {@link #input2NdArray(Object)}
+     * @return 批张量 [batch, channels, targetHeight, targetWidth]
+     */
+    @Override
+    public NdArray batchInput2NdArray(List<Object> inputs) {
+        return batchInput2NdArray(inputs, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * 批量转换输入，每张图像由线程池中的线程解码、预处理并写入批张量的对应位置
+     * 
+     * @param inputs 输入列表，各输入的输出通道数必须一致
+     * @param executor 执行预处理的线程池
+     * @return 批张量 [batch, channels, targetHeight, targetWidth]
+     */
+    public NdArray batchInput2NdArray(List<Object> inputs, ExecutorService executor) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("输入列表为空");
+        }
+        int channels = outputChannels(inputs.get(0));
+        for (Object input : inputs) {
+            if (outputChannels(input) != channels) {
+                throw new IllegalArgumentException("批量转换要求输出通道数一致");
+            }
+        }
+        int imageSize = channels * targetHeight * targetWidth;
+        float[] batch = new float[inputs.size() * imageSize];
+        try {
+            ImagePipeline.parallelFor(inputs.size(), executor, i -> fillInput(inputs.get(i), batch, i * imageSize));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("图像转换失败: " + e.getMessage(), e);
+        }
+        return NdArray.of(batch, Shape.of(inputs.size(), channels, targetHeight, targetWidth));
+    }
+    
+    /**
+     * 输入转换后的通道数
+     */
+    private int outputChannels(Object input) {
+        if (input instanceof int[][][]) {
+            return ((int[][][]) input)[0][0].length;
+        }
+        if (input instanceof float[][] || input instanceof BufferedImage
+                || input instanceof String || input instanceof File) {
+            return 3;
+        }
+        throw new IllegalArgumentException("不支持的输入类型: " + input.getClass().getName());
+    }
+    
+    /**
+     * 将单个输入预处理后写入目标缓冲区
+     */
+    private void fillInput(Object input, float[] dst, int offset) {
         try {
             if (input instanceof float[][]) {
                 // 处理二维浮点数数组
-                return handleFloatArray((float[][]) input);
+                handleFloatArray((float[][]) input, dst, offset);
             } else if (input instanceof BufferedImage) {
                 // 处理BufferedImage
-                return handleBufferedImage((BufferedImage) input);
+                handleBufferedImage((BufferedImage) input, dst, offset);
             } else if (input instanceof String) {
                 // 处理文件路径
-                return handleImageFile((String) input);
+                handleImageFile((String) input, dst, offset);
             } else if (input instanceof File) {
                 // 处理File对象
-                return handleImageFile(((File) input).getAbsolutePath());
+                handleImageFile(((File) input).getAbsolutePath(), dst, offset);
             } else if (input instanceof int[][][]) {
                 // 处理RGB数组
-                return handleRGBArray((int[][][]) input);
+                handleRGBArray((int[][][]) input, dst, offset);
             } else {
                 throw new IllegalArgumentException("不支持的输入类型: " + input.getClass().getName());
             }
-        } catch (Exception e) {
-            throw new RuntimeException("图像转换失败: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
     
     /**
      * 处理二维浮点数数组
      */
-    private NdArray handleFloatArray(float[][] data) {
+    private void handleFloatArray(float[][] data, float[] dst, int offset) {
         // 假设输入是灰度图像数据
-        float[][][] processedData = preprocessGrayscaleImage(data);
-        return NdArray.of(processedData);
+        int height = data.length;
+        int width = data[0].length;
+        float[] flat = new float[height * width];
+        for (int h = 0; h < height; h++) {
+            System.arraycopy(data[h], 0, flat, h * width, width);
+        }
+        getGrayscalePipeline().processInto(flat, height, width, 1, dst, offset);
     }
     
     /**
      * 处理BufferedImage
      */
-    private NdArray handleBufferedImage(BufferedImage image) {
-        // 缩放图像
-        BufferedImage resizedImage = resizeImage(image, targetWidth, targetHeight);
-        
-        // 转换为RGB数组
-        float[][][] rgbData = bufferedImageToRGBArray(resizedImage);
-        
-        // 归一化
-        if (normalize) {
-            normalizeRGBData(rgbData);
+    private void handleBufferedImage(BufferedImage image, float[] dst, int offset) {
+        // 缩放图像（保持平滑缩放的质量）
+        if (image.getWidth() != targetWidth || image.getHeight() != targetHeight) {
+            image = resizeImage(image, targetWidth, targetHeight);
         }
         
-        return NdArray.of(rgbData);
+        // 一次性读取全部像素，再由流水线完成归一化与布局转换
+        int[] argb = image.getRGB(0, 0, targetWidth, targetHeight, null, 0, targetWidth);
+        getRgbPipeline().processArgbInto(argb, targetHeight, targetWidth, dst, offset);
     }
     
     /**
      * 处理图像文件
      */
-    private NdArray handleImageFile(String filePath) throws IOException {
+    private void handleImageFile(String filePath, float[] dst, int offset) throws IOException {
         File file = new File(filePath);
         if (!file.exists()) {
             throw new IOException("图像文件不存在: " + filePath);
@@ -171,39 +254,58 @@ public class ImageTranslator implements Translator<Object, String> {
             throw new IOException("无法读取图像文件: " + filePath);
         }
         
-        return handleBufferedImage(image);
+        handleBufferedImage(image, dst, offset);
     }
     
     /**
      * 处理RGB数组
      */
-    private NdArray handleRGBArray(int[][][] rgbArray) {
+    private void handleRGBArray(int[][][] rgbArray, float[] dst, int offset) {
         int height = rgbArray.length;
         int width = rgbArray[0].length;
         int channels = rgbArray[0][0].length;
         
-        // 转换为float数组
-        float[][][] floatData = new float[channels][height][width];
-        
+        // 展平为HWC扁平数组，缩放与归一化由流水线一次完成
+        float[] flat = new float[height * width * channels];
+        int idx = 0;
         for (int h = 0; h < height; h++) {
             for (int w = 0; w < width; w++) {
                 for (int c = 0; c < channels; c++) {
-                    floatData[c][h][w] = rgbArray[h][w][c] / 255.0f;
+                    flat[idx++] = rgbArray[h][w][c];
                 }
             }
         }
         
-        // 缩放到目标尺寸
-        if (height != targetHeight || width != targetWidth) {
-            floatData = resizeRGBData(floatData, targetWidth, targetHeight);
+        getRgbPipeline().processInto(flat, height, width, channels, dst, offset);
+    }
+    
+    private ImagePipeline getRgbPipeline() {
+        ImagePipeline pipeline = rgbPipeline;
+        if (pipeline == null) {
+            ImagePipeline.Builder builder = ImagePipeline.builder()
+                .resize(targetHeight, targetWidth)
+                .scale(1.0f / 255.0f)
+                .layout(ImagePipeline.Layout.CHW);
+            if (normalize) {
+                builder.normalize(meanValues, stdValues);
+            }
+            pipeline = builder.build();
+            rgbPipeline = pipeline;
         }
-        
-        // 归一化
-        if (normalize) {
-            normalizeRGBData(floatData);
+        return pipeline;
+    }
+    
+    private ImagePipeline getGrayscalePipeline() {
+        ImagePipeline pipeline = grayscalePipeline;
+        if (pipeline == null) {
+            pipeline = ImagePipeline.builder()
+                .resize(targetHeight, targetWidth)
+                .channels(3)
+                .layout(ImagePipeline.Layout.CHW)
+                .build();
+            grayscalePipeline = pipeline;
         }
-        
-        return NdArray.of(floatData);
+        return pipeline;
     }
     
     /**
@@ -217,120 +319,6 @@ public class ImageTranslator implements Translator<Object, String> {
         g2d.dispose();
         return resizedImage;
     }
-    
-    /**
-     * 将BufferedImage转换为RGB数组
-     */
-    private float[][][] bufferedImageToRGBArray(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        float[][][] rgbArray = new float[3][height][width]; // RGB三通道
-        
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgb = image.getRGB(x, y);
-                rgbArray[0][y][x] = ((rgb >> 16) & 0xFF) / 255.0f; // R
-                rgbArray[1][y][x] = ((rgb >> 8) & 0xFF) / 255.0f;  // G
-                rgbArray[2][y][x] = (rgb & 0xFF) / 255.0f;         // B
-            }
-        }
-        
-        return rgbArray;
-    }
-    
-    /**
-     * 预处理灰度图像
-     */
-    private float[][][] preprocessGrayscaleImage(float[][] grayData) {
-        int height = grayData.length;
-        int width = grayData[0].length;
-        
-        // 缩放到目标尺寸
-        float[][] resizedData = resizeGrayscaleData(grayData, targetWidth, targetHeight);
-        
-        // 转换为3通道（复制灰度值到RGB三个通道）
-        float[][][] rgbData = new float[3][targetHeight][targetWidth];
-        for (int c = 0; c < 3; c++) {
-            for (int h = 0; h < targetHeight; h++) {
-                System.arraycopy(resizedData[h], 0, rgbData[c][h], 0, targetWidth);
-            }
-        }
-        
-        return rgbData;
-    }
-    
-    /**
-     * 缩放灰度图像数据（简单的最近邻插值）
-     */
-    private float[][] resizeGrayscaleData(float[][] data, int newWidth, int newHeight) {
-        int oldHeight = data.length;
-        int oldWidth = data[0].length;
-        
-        if (oldHeight == newHeight && oldWidth == newWidth) {
-            return data;
-        }
-        
-        float[][] resized = new float[newHeight][newWidth];
-        float xRatio = (float) oldWidth / newWidth;
-        float yRatio = (float) oldHeight / newHeight;
-        
-        for (int y = 0; y < newHeight; y++) {
-            for (int x = 0; x < newWidth; x++) {
-                int oldX = (int) (x * xRatio);
-                int oldY = (int) (y * yRatio);
-                // 边界检查
-                oldX = Math.min(oldX, oldWidth - 1);
-                oldY = Math.min(oldY, oldHeight - 1);
-                resized[y][x] = data[oldY][oldX];
-            }
-        }
-        
-        return resized;
-    }
-    
-    /**
-     * 缩放RGB数据
-     */
-    private float[][][] resizeRGBData(float[][][] data, int newWidth, int newHeight) {
-        int channels = data.length;
-        int oldHeight = data[0].length;
-        int oldWidth = data[0][0].length;
-        
-        float[][][] resized = new float[channels][newHeight][newWidth];
-        float xRatio = (float) oldWidth / newWidth;
-        float yRatio = (float) oldHeight / newHeight;
-        
-        for (int c = 0; c < channels; c++) {
-            for (int y = 0; y < newHeight; y++) {
-                for (int x = 0; x < newWidth; x++) {
-                    int oldX = (int) (x * xRatio);
-                    int oldY = (int) (y * yRatio);
-                    oldX = Math.min(oldX, oldWidth - 1);
-                    oldY = Math.min(oldY, oldHeight - 1);
-                    resized[c][y][x] = data[c][oldY][oldX];
-                }
-            }
-        }
-        
-        return resized;
-    }
-    
-    /**
-     * 对RGB数据进行归一化
-     */
-    private void normalizeRGBData(float[][][] rgbData) {
-        int channels = Math.min(rgbData.length, meanValues.length);
-        int height = rgbData[0].length;
-        int width = rgbData[0][0].length;
-        
-        for (int c = 0; c < channels; c++) {
-            for (int h = 0; h < height; h++) {
-                for (int w = 0; w < width; w++) {
-                    rgbData[c][h][w] = (rgbData[c][h][w] - meanValues[c]) / stdValues[c];
-                }
-            }
-        }
-    }
 
     @Override
     public String ndArray2Output(NdArray ndArray) {
@@ -5,6 +5,8 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.util.Config;
 
+import java.util.List;
+
 /**
  * 模型推理器
  * <p>
@@ -47,4 +49,19 @@ public class Predictor<I, O> {
 
         return translator.ndArray2Output(_output.getValue());
     }
+
+    /**
+     * 批量预测：一次编码、一次前向、一次解码
+     *
+     * @param inputs 输入数据列表
+     * @return 与输入顺序一致的预测结果
+     */
+    public List<O> predictBatch(List<I> inputs) {
+        NdArray _input = translator.batchInput2NdArray(inputs);
+        Config.train = false;
+
+        Variable _output = model.forward(new Variable(_input));
+
+        return translator.batchNdArray2Output(_output.getValue(), inputs.size());
+    }
 }
\ No newline at end of file
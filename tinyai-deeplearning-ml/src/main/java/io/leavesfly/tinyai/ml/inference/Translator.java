@@ -1,12 +1,18 @@
 package io.leavesfly.tinyai.ml.inference;
 
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 数据转换器接口
  * 
  * 该接口定义了输入数据和输出数据与NdArray之间的转换方法，
  * 用于模型推理时的数据预处理和后处理。
+ * 批量方法供 {@link BatchingPredictor} 合并多个请求做一次前向计算，
+ * 默认实现沿第0维拼接/拆分单个输入的结果，转换器可覆盖以提供更高效的批量实现。
  * 
  * @param <I> 输入数据类型
  * @param <O> 输出数据类型
@@ -30,4 +36,56 @@ public interface Translator<I, O> {
      */
     O ndArray2Output(NdArray ndArray);
 
+    /**
+     * 将一批输入转换为一个NdArray
+     * 默认逐个转换后沿第0维拼接，要求每个输入转换后的形状相同
+     * @param inputs 输入数据列表
+     * @return 拼接后的NdArray，第0维长度为 batch * 单个输入的第0维长度
+     */
+    default NdArray batchInput2NdArray(List<I> inputs) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("输入列表为空");
+        }
+        NdArray first = input2NdArray(inputs.get(0));
+        Shape shape = first.getShape();
+        int size = shape.size();
+        float[] batch = new float[inputs.size() * size];
+        System.arraycopy(first.getArray(), 0, batch, 0, size);
+        for (int i = 1; i < inputs.size(); i++) {
+            NdArray array = input2NdArray(inputs.get(i));
+            if (!array.getShape().equals(shape)) {
+                throw new IllegalArgumentException("批量转换要求形状一致: " + shape + " vs " + array.getShape());
+            }
+            System.arraycopy(array.getArray(), 0, batch, i * size, size);
+        }
+        int[] dims = shape.getShape().clone();
+        dims[0] *= inputs.size();
+        return NdArray.of(batch, Shape.of(dims));
+    }
+
+    /**
+     * 将一批前向结果转换为输出数据
+     * 默认沿第0维等分为batchSize份，逐份调用 {@link #ndArray2Output(NdArray)}
+     * @param ndArray 批量前向结果
+     * @param batchSize 批大小
+     * @return 与输入顺序一致的输出列表
+     */
+    default List<O> batchNdArray2Output(NdArray ndArray, int batchSize) {
+        int[] dims = ndArray.getShape().getShape().clone();
+        if (dims[0] % batchSize != 0) {
+            throw new IllegalArgumentException("输出第0维 " + dims[0] + " 不能按批大小 " + batchSize + " 拆分");
+        }
+        dims[0] /= batchSize;
+        Shape sliceShape = Shape.of(dims);
+        int size = sliceShape.size();
+        float[] data = ndArray.getArray();
+        List<O> outputs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            float[] slice = new float[size];
+            System.arraycopy(data, i * size, slice, 0, size);
+            outputs.add(ndArray2Output(NdArray.of(slice, sliceShape)));
+        }
+        return outputs;
+    }
+
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package io.leavesfly.tinyai.ml.parallel;
 
+import io.leavesfly.tinyai.ml.GradientAccumulator;
 import io.leavesfly.tinyai.ml.Model;
 import io.leavesfly.tinyai.ml.dataset.Batch;
 import io.leavesfly.tinyai.ml.loss.Loss;
@@ -26,6 +27,7 @@ public class ParallelBatchProcessor implements Callable<ParallelBatchProcessor.B
     private final Loss loss;
     private final GradientAggregator gradientAggregator;
     private final int threadId;
+    private final int microBatchSize;
     
     /**
      * 构造并行批次处理器
@@ -37,16 +39,35 @@ public class ParallelBatchProcessor implements Callable<ParallelBatchProcessor.B
      */
     public ParallelBatchProcessor(Batch batch, Model model, Loss loss,
                                   GradientAggregator gradientAggregator, int threadId) {
+        this(batch, model, loss, gradientAggregator, threadId, 0);
+    }
+    
+    /**
+     * 构造并行批次处理器（支持微批次）
+     * @param batch 要处理的数据批次
+     * @param model 深拷贝的模型实例（每个线程独立）
+     * @param loss 损失函数
+     * @param gradientAggregator 梯度聚合器
+     * @param threadId 线程ID，用于调试
+     * @param microBatchSize 微批次大小，大于0且小于批次大小时在线程内分微批次累加梯度
+     */
+    public ParallelBatchProcessor(Batch batch, Model model, Loss loss,
+                                  GradientAggregator gradientAggregator, int threadId, int microBatchSize) {
         this.batch = batch;
         this.model = model;
         this.loss = loss;
         this.gradientAggregator = gradientAggregator;
         this.threadId = threadId;
+        this.microBatchSize = microBatchSize;
     }
     
     @Override
     public BatchProcessResult call() throws Exception {
         try {
+            if (microBatchSize > 0 && microBatchSize < batch.getSize()) {
+                return processMicroBatches();
+            }
+            
             // 1. 准备输入数据
             Variable variableX = batch.toVariableX().setName("x_" + threadId).setRequireGrad(false);
             Variable variableY = batch.toVariableY().setName("y_" + threadId).setRequireGrad(false);
@@ -90,6 +111,28 @@ public class ParallelBatchProcessor implements Callable<ParallelBatchProcessor.B
         }
     }
     
+    /**
+     * 在线程内按微批次前向与反向，梯度按样本数加权累加后一次性提交
+     */
+    private BatchProcessResult processMicroBatches() {
+        GradientAccumulator accumulator = new GradientAccumulator(model);
+        model.clearGrads();
+        float lossValue = 0f;
+        for (Batch microBatch : batch.split(microBatchSize)) {
+            Variable variableX = microBatch.toVariableX().setName("x_" + threadId).setRequireGrad(false);
+            Variable variableY = microBatch.toVariableY().setName("y_" + threadId).setRequireGrad(false);
+            Variable lossVariable = loss.loss(variableY, model.forward(variableX));
+            float weight = (float) microBatch.getSize() / batch.getSize();
+            lossValue += weight * lossVariable.getValue().getNumber().floatValue();
+            lossVariable.backward();
+            lossVariable.unChainBackward();
+            accumulator.accumulate(weight);
+        }
+        accumulator.apply();
+        gradientAggregator.submitGradients(model.getAllParams());
+        return new BatchProcessResult(threadId, lossValue, batch.getSize(), true, null);
+    }
+    
     /**
      * 批次处理结果
      */
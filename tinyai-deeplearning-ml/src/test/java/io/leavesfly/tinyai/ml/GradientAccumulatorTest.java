@@ -0,0 +1,99 @@
+package io.leavesfly.tinyai.ml;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ml.dataset.Batch;
+import io.leavesfly.tinyai.ml.loss.MeanSquaredLoss;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.Parameter;
+import io.leavesfly.tinyai.nnet.block.MlpBlock;
+import io.leavesfly.tinyai.util.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * GradientAccumulator的单元测试
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class GradientAccumulatorTest {
+
+    private Model model;
+    private Batch batch;
+
+    @Before
+    public void setUp() {
+        Config.train = true;
+        model = new Model("accum_mlp", new MlpBlock("mlp", 6, Config.ActiveFunc.Sigmoid, 3, 5, 2));
+        NdArray[] x = new NdArray[6];
+        NdArray[] y = new NdArray[6];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = NdArray.likeRandomN(Shape.of(1, 3), i + 1);
+            y[i] = NdArray.likeRandomN(Shape.of(1, 2), i + 100);
+        }
+        batch = new Batch(x, y);
+    }
+
+    private float forwardBackward(Batch b) {
+        Variable lossVariable = new MeanSquaredLoss().loss(b.toVariableY().setRequireGrad(false),
+                model.forward(b.toVariableX().setRequireGrad(false)));
+        lossVariable.backward();
+        lossVariable.unChainBackward();
+        return lossVariable.getValue().getNumber().floatValue();
+    }
+
+    @Test
+    public void testMicroBatchesMatchFullBatch() {
+        model.clearGrads();
+        float fullLoss = forwardBackward(batch);
+        Map<String, NdArray> expected = new HashMap<>();
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            expected.put(entry.getKey(), entry.getValue().getGrad());
+        }
+
+        GradientAccumulator accumulator = new GradientAccumulator(model);
+        accumulator.reset();
+        List<Batch> microBatches = batch.split(4);
+        assertEquals(2, microBatches.size());
+        assertEquals(2, microBatches.get(1).getSize());
+
+        float loss = 0f;
+        for (Batch microBatch : microBatches) {
+            float weight = (float) microBatch.getSize() / batch.getSize();
+            loss += weight * forwardBackward(microBatch);
+            accumulator.accumulate(weight);
+        }
+        assertEquals(2, accumulator.getAccumulatedCount());
+        accumulator.apply();
+
+        assertEquals(fullLoss, loss, 1e-5f);
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            assertArrayEquals(entry.getKey(), expected.get(entry.getKey()).getArray(),
+                    entry.getValue().getGrad().getArray(), 1e-5f);
+            assertSame(accumulator.getBuffer(entry.getKey()), entry.getValue().getGrad());
+        }
+
+        accumulator.reset();
+        assertEquals(0, accumulator.getAccumulatedCount());
+        for (Parameter parameter : model.getAllParams().values()) {
+            assertNull(parameter.getGrad());
+        }
+    }
+
+    @Test
+    public void testSelectMicroBatchSizeFromBudget() {
+        MeanSquaredLoss loss = new MeanSquaredLoss();
+        assertEquals(1, GradientAccumulator.selectMicroBatchSize(model, loss, batch, 1));
+        assertEquals(batch.getSize(), GradientAccumulator.selectMicroBatchSize(model, loss, batch, 1L << 30));
+
+        int size = GradientAccumulator.selectMicroBatchSize(model, loss, batch, 1200);
+        assertTrue(size >= 1 && size <= batch.getSize());
+    }
+}
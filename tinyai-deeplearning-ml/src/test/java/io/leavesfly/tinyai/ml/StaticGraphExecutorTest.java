@@ -0,0 +1,89 @@
+package io.leavesfly.tinyai.ml;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ml.loss.MeanSquaredLoss;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.Parameter;
+import io.leavesfly.tinyai.nnet.block.MlpBlock;
+import io.leavesfly.tinyai.util.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * StaticGraphExecutor的单元测试
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class StaticGraphExecutorTest {
+
+    private Model model;
+    private StaticGraphExecutor executor;
+
+    @Before
+    public void setUp() {
+        Config.train = true;
+        model = new Model("static_mlp", new MlpBlock("mlp", 4, Config.ActiveFunc.Sigmoid, 3, 5, 2));
+        executor = new StaticGraphExecutor(model, new MeanSquaredLoss());
+    }
+
+    private Map<String, NdArray> eagerGrads(NdArray x, NdArray y, float[] lossOut) {
+        model.clearGrads();
+        Variable loss = new MeanSquaredLoss().loss(new Variable(y, "y", false),
+                model.forward(new Variable(x, "x", false)));
+        lossOut[0] = loss.getValue().getNumber().floatValue();
+        loss.backward();
+        loss.unChainBackward();
+        Map<String, NdArray> grads = new HashMap<>();
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            grads.put(entry.getKey(), entry.getValue().getGrad());
+        }
+        return grads;
+    }
+
+    @Test
+    public void testCaptureVerifyThenReplay() {
+        NdArray y = NdArray.zeros(Shape.of(4, 2));
+        for (int i = 0; i < 3; i++) {
+            model.clearGrads();
+            executor.step(NdArray.likeRandomN(Shape.of(4, 3), i + 1), y);
+        }
+        assertEquals(2, executor.getCaptureCount());
+        assertEquals(1, executor.getReplayCount());
+        assertTrue(executor.isReplayable(NdArray.zeros(Shape.of(4, 3)), y));
+
+        NdArray x = NdArray.likeRandomN(Shape.of(4, 3), 42);
+        model.clearGrads();
+        float replayLoss = executor.step(x, y);
+        Map<String, NdArray> replayGrads = new HashMap<>();
+        for (Map.Entry<String, Parameter> entry : model.getAllParams().entrySet()) {
+            replayGrads.put(entry.getKey(), entry.getValue().getGrad());
+        }
+
+        float[] eagerLoss = new float[1];
+        Map<String, NdArray> grads = eagerGrads(x, y, eagerLoss);
+        assertEquals(eagerLoss[0], replayLoss, 1e-6f);
+        for (String name : grads.keySet()) {
+            assertArrayEquals(name, grads.get(name).getArray(), replayGrads.get(name).getArray(), 1e-5f);
+        }
+    }
+
+    @Test
+    public void testShapeChangeTriggersRecapture() {
+        NdArray y4 = NdArray.zeros(Shape.of(4, 2));
+        NdArray y2 = NdArray.zeros(Shape.of(2, 2));
+        executor.step(NdArray.likeRandomN(Shape.of(4, 3), 1), y4);
+        executor.step(NdArray.likeRandomN(Shape.of(4, 3), 2), y4);
+        executor.step(NdArray.likeRandomN(Shape.of(2, 3), 3), y2);
+
+        assertEquals(3, executor.getCaptureCount());
+        assertTrue(executor.isReplayable(NdArray.zeros(Shape.of(4, 3)), y4));
+        assertFalse(executor.isReplayable(NdArray.zeros(Shape.of(2, 3)), y2));
+    }
+}
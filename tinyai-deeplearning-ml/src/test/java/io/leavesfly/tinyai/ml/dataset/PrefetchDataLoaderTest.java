@@ -0,0 +1,136 @@
+package io.leavesfly.tinyai.ml.dataset;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.NdArrayUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * PrefetchDataLoader的单元测试
+ *
+ * @author TinyDL
+ * @version 1.0
+ */
+public class PrefetchDataLoaderTest {
+
+    private NdArray[] xs;
+    private NdArray[] ys;
+    private final List<PrefetchDataLoader> loaders = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        xs = new NdArray[10];
+        ys = new NdArray[10];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = NdArray.of(new float[][]{{i, i + 0.5f}});
+            ys[i] = NdArray.of(new float[][]{{i}});
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (PrefetchDataLoader loader : loaders) {
+            loader.close();
+        }
+    }
+
+    private PrefetchDataLoader loader(int batchSize, Long seed) {
+        PrefetchDataLoader loader = new PrefetchDataLoader(xs, ys, batchSize);
+        loader.setNumWorkers(3);
+        loader.setQueueCapacity(2);
+        loader.setSeed(seed);
+        loaders.add(loader);
+        return loader;
+    }
+
+    /**
+     * 一轮中各批次标签拼成的序列（拷贝，避免缓冲区复用的影响）
+     */
+    private static List<Float> labels(PrefetchDataLoader loader) {
+        List<Float> labels = new ArrayList<>();
+        for (Batch batch : loader) {
+            for (float v : batch.toVariableY().getValue().getArray()) {
+                labels.add(v);
+            }
+        }
+        return labels;
+    }
+
+    @Test
+    public void testCollationMatchesMerge() {
+        PrefetchDataLoader loader = loader(4, null);
+        List<Integer> sizes = new ArrayList<>();
+        for (Batch batch : loader) {
+            NdArray expected = NdArrayUtil.merge(0, batch.getX());
+            assertEquals(expected.getShape(), batch.toVariableX().getValue().getShape());
+            assertArrayEquals(expected.getArray(), batch.toVariableX().getValue().getArray(), 0f);
+            sizes.add(batch.getSize());
+        }
+        assertEquals(3, sizes.size());
+        assertEquals(Integer.valueOf(2), sizes.get(2));
+    }
+
+    @Test
+    public void testSeededShuffleIsDeterministic() {
+        List<Float> first = labels(loader(3, 7L));
+        List<Float> second = labels(loader(3, 7L));
+        assertEquals(first, second);
+        assertEquals(10, new HashSet<>(first).size());
+
+        PrefetchDataLoader loader = loader(3, 7L);
+        List<Float> epoch0 = labels(loader);
+        List<Float> epoch1 = labels(loader);
+        assertEquals(first, epoch0);
+        assertNotEquals(epoch0, epoch1);
+    }
+
+    @Test
+    public void testBuffersReusedAndBackpressureReported() throws InterruptedException {
+        PrefetchDataLoader loader = loader(2, null);
+        loader.setQueueCapacity(1);
+        for (int epoch = 0; epoch < 2; epoch++) {
+            for (Batch ignored : loader) {
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(10, loader.getBatchesConsumed());
+        assertTrue(loader.getBufferReuses() > 0);
+        assertTrue(loader.getProducerWaitNanos() > 0);
+        assertTrue(loader.getMaxQueueDepth() <= 1);
+        assertNotNull(loader.getMetricsReport());
+    }
+
+    @Test
+    public void testStreamSourceWithTransform() {
+        List<StreamDataset.DataItem> items = new ArrayList<>();
+        for (int i = 0; i < xs.length; i++) {
+            items.add(new StreamDataset.DataItem(xs[i], ys[i]));
+        }
+        PrefetchDataLoader loader = new PrefetchDataLoader(items::iterator, 4);
+        loaders.add(loader);
+        loader.setSeed(3L);
+        loader.setShuffleBufferSize(4);
+        loader.setTransform(item -> new StreamDataset.DataItem(item.getX(), item.getY().mulNum(2f)));
+
+        Set<Float> seen = new HashSet<>(labels(loader));
+        assertEquals(10, seen.size());
+        assertTrue(seen.contains(18f));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testProducerFailurePropagates() {
+        PrefetchDataLoader loader = loader(2, null);
+        loader.setTransform(item -> {
+            throw new IllegalStateException("decode error");
+        });
+        labels(loader);
+    }
+}
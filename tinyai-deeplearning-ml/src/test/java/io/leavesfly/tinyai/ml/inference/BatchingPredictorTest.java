@@ -0,0 +1,178 @@
+package io.leavesfly.tinyai.ml.inference;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ml.Model;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.Block;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 动态微批处理推理器测试
+ */
+public class BatchingPredictorTest {
+
+    private static class TestBlock extends Block {
+        TestBlock() {
+            super("TestBlock", Shape.of(1, 1));
+        }
+
+        @Override
+        public void init() {
+            alreadyInit = true;
+        }
+    }
+
+    /**
+     * 乘以2并记录前向次数与每次的行数
+     */
+    private static class DoublingModel extends Model {
+        final AtomicInteger forwardCalls = new AtomicInteger();
+        final List<Integer> rows = new ArrayList<>();
+
+        DoublingModel() {
+            super("DoublingModel", new TestBlock());
+        }
+
+        @Override
+        public Variable forward(Variable... inputs) {
+            forwardCalls.incrementAndGet();
+            synchronized (rows) {
+                rows.add(inputs[0].getValue().getShape().getDimension(0));
+            }
+            for (float value : inputs[0].getValue().getArray()) {
+                if (value == 1000f) {
+                    throw new StackOverflowError("模拟模型内部错误");
+                }
+            }
+            return inputs[0].mul(new Variable(NdArray.of(2.0f)));
+        }
+    }
+
+    private static class NumericTranslator implements Translator<Double, Double> {
+        @Override
+        public NdArray input2NdArray(Double input) {
+            if (input < 0) {
+                throw new IllegalArgumentException("输入不能为负数");
+            }
+            return NdArray.of(new float[][]{{input.floatValue()}});
+        }
+
+        @Override
+        public Double ndArray2Output(NdArray output) {
+            return (double) output.getArray()[0];
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        DoublingModel model = new DoublingModel();
+        try (BatchingPredictor<Double, Double> predictor =
+                     new BatchingPredictor<>(new NumericTranslator(), model, 8, 50)) {
+            List<CompletableFuture<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(predictor.submit((double) i));
+            }
+            for (int i = 0; i < 32; i++) {
+                assertEquals(2.0 * i, futures.get(i).get(5, TimeUnit.SECONDS), 1e-6);
+            }
+
+            assertEquals(32, predictor.getCompletedRequests());
+            assertTrue("请求应被合并为少量批次", model.forwardCalls.get() < 32);
+            long[] histogram = predictor.getBatchSizeHistogram();
+            long requests = 0;
+            for (int size = 1; size < histogram.length; size++) {
+                requests += histogram[size] * size;
+            }
+            assertEquals(32, requests);
+            for (int rows : model.rows) {
+                assertTrue(rows <= 8);
+            }
+            assertTrue(predictor.getAverageBatchSize() > 1.0);
+            assertTrue(predictor.getP99LatencyMillis() >= predictor.getP50LatencyMillis());
+            assertEquals(0, predictor.getQueueDepth());
+        }
+    }
+
+    @Test
+    public void testFailedBatchCompletesFuturesExceptionally() throws Exception {
+        DoublingModel model = new DoublingModel();
+        BatchingPredictor<Double, Double> predictor =
+                new BatchingPredictor<>(new NumericTranslator(), model, 4, 0);
+        CompletableFuture<Double> bad = predictor.submit(-1.0);
+        try {
+            bad.get(5, TimeUnit.SECONDS);
+            fail("负数输入应导致失败");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(3.0, predictor.predict(1.5), 1e-6);
+        assertEquals(1, predictor.getFailedRequests());
+
+        predictor.close();
+        assertTrue(predictor.submit(1.0).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPredictorBatchMatchesSingle() {
+        Predictor<Double, Double> predictor = new Predictor<>(new NumericTranslator(), new DoublingModel());
+        List<Double> outputs = predictor.predictBatch(Arrays.asList(1.0, 2.5, 4.0));
+        assertEquals(Arrays.asList(2.0, 5.0, 8.0), outputs);
+        assertEquals(predictor.predict(2.5), outputs.get(1));
+    }
+
+    @Test
+    public void testBadInputFailsOnlyItsOwnRequest() throws Exception {
+        DoublingModel model = new DoublingModel();
+        try (BatchingPredictor<Double, Double> predictor =
+                     new BatchingPredictor<>(new NumericTranslator(), model, 8, 200)) {
+            List<CompletableFuture<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(predictor.submit(i == 3 ? -1.0 : (double) i));
+            }
+            for (int i = 0; i < 8; i++) {
+                if (i == 3) {
+                    try {
+                        futures.get(i).get(5, TimeUnit.SECONDS);
+                        fail("负数输入应导致失败");
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IllegalArgumentException);
+                    }
+                } else {
+                    assertEquals(2.0 * i, futures.get(i).get(5, TimeUnit.SECONDS), 1e-6);
+                }
+            }
+            assertEquals(1, predictor.getFailedRequests());
+            assertEquals(7, predictor.getCompletedRequests());
+        }
+    }
+
+    @Test
+    public void testErrorInModelDoesNotStopDispatcher() throws Exception {
+        DoublingModel model = new DoublingModel();
+        try (BatchingPredictor<Double, Double> predictor =
+                     new BatchingPredictor<>(new NumericTranslator(), model, 4, 100)) {
+            CompletableFuture<Double> ok = predictor.submit(1.0);
+            CompletableFuture<Double> bad = predictor.submit(1000.0);
+            try {
+                bad.get(5, TimeUnit.SECONDS);
+                fail("模型错误应传给调用方");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            assertEquals(2.0, ok.get(5, TimeUnit.SECONDS), 1e-6);
+            // 调度线程仍在运行
+            assertEquals(5.0, predictor.predict(2.5), 1e-6);
+        }
+    }
+}
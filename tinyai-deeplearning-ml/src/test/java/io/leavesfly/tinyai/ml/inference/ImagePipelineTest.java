@@ -0,0 +1,121 @@
+package io.leavesfly.tinyai.ml.inference;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * 融合图像预处理流水线测试
+ */
+public class ImagePipelineTest {
+
+    private NdArray randomImage(Random random, int height, int width, int channels) {
+        float[] data = new float[height * width * channels];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(256);
+        }
+        return NdArray.of(data, Shape.of(height, width, channels));
+    }
+
+    @Test
+    public void testFusedStepsMatchReference() {
+        Random random = new Random(1);
+        NdArray image = randomImage(random, 10, 14, 3);
+        float[] mean = {0.5f, 0.4f, 0.3f};
+        float[] std = {0.2f, 0.25f, 0.3f};
+        ImagePipeline pipeline = ImagePipeline.builder()
+                .resize(5, 7).scale(1.0f / 255.0f).normalize(mean, std).build();
+
+        NdArray out = pipeline.process(image);
+        assertEquals(Shape.of(3, 5, 7), out.getShape());
+
+        float[] src = image.getArray();
+        float[] result = out.getArray();
+        for (int c = 0; c < 3; c++) {
+            for (int y = 0; y < 5; y++) {
+                for (int x = 0; x < 7; x++) {
+                    float v = src[((y * 2) * 14 + x * 2) * 3 + c] / 255.0f;
+                    assertEquals((v - mean[c]) / std[c], result[c * 35 + y * 7 + x], 1e-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBatchIsIndependentOfThreadCount() {
+        Random random = new Random(2);
+        List<NdArray> images = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            images.add(randomImage(random, 8, 8, 3));
+        }
+
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            NdArray serial = ImagePipeline.builder().randomHorizontalFlip(0.5).noise(3.0f)
+                    .layout(ImagePipeline.Layout.HWC).seed(7).build().processBatch(images, single);
+            NdArray parallel = ImagePipeline.builder().randomHorizontalFlip(0.5).noise(3.0f)
+                    .layout(ImagePipeline.Layout.HWC).seed(7).build().processBatch(images, pool);
+
+            assertEquals(Shape.of(9, 8, 8, 3), parallel.getShape());
+            assertArrayEquals(serial.getArray(), parallel.getArray(), 0.0f);
+        } finally {
+            single.shutdown();
+            pool.shutdown();
+        }
+
+        // 翻转概率为1时每行像素顺序完全反转
+        NdArray flipped = ImagePipeline.builder().randomHorizontalFlip(1.0)
+                .layout(ImagePipeline.Layout.HWC).build().process(images.get(0));
+        float[] src = images.get(0).getArray();
+        float[] dst = flipped.getArray();
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(src[(y * 8 + x) * 3 + c], dst[(y * 8 + 7 - x) * 3 + c], 0.0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTranslatorBatchMatchesSingleInputs() {
+        ImageTranslator translator = new ImageTranslator(6, 4, true);
+        BufferedImage image = new BufferedImage(6, 4, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(3);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 6; x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        int[][][] rgb = new int[8][12][3];
+        for (int[][] row : rgb) {
+            for (int[] pixel : row) {
+                Arrays.setAll(pixel, i -> random.nextInt(256));
+            }
+        }
+
+        NdArray batch = translator.batchInput2NdArray(Arrays.asList(image, rgb));
+        assertEquals(Shape.of(2, 3, 4, 6), batch.getShape());
+
+        float[] first = translator.input2NdArray(image).getArray();
+        float[] second = translator.input2NdArray(rgb).getArray();
+        float[] all = batch.getArray();
+        assertArrayEquals(first, Arrays.copyOfRange(all, 0, 72), 0.0f);
+        assertArrayEquals(second, Arrays.copyOfRange(all, 72, 144), 0.0f);
+
+        // 逐像素检查BufferedImage的红色通道归一化结果
+        int red = (image.getRGB(2, 1) >> 16) & 0xFF;
+        assertEquals((red / 255.0f - 0.485f) / 0.229f, first[6 + 2], 1e-5);
+    }
+}
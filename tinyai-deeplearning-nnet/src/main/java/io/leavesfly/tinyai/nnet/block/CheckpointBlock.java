@@ -0,0 +1,245 @@
+package io.leavesfly.tinyai.nnet.block;
+
+import io.leavesfly.tinyai.func.Function;
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.LayerAble;
+import io.leavesfly.tinyai.util.Config;
+
+import java.util.*;
+
+/**
+ * 激活检查点块（梯度检查点）
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * CheckpointBlock包装一个层或块（通常是一个Transformer块），用计算换显存：
+ * 前向时内部层照常执行，但只保留块的输入与输出，内部的中间激活随计算图一起释放；
+ * 反向传播到该块时，用保存的输入重新执行一次内部前向重建计算图，再在重建的图上反向，
+ * 得到输入梯度，参数梯度直接累加到内部层的参数上。
+ * <p>
+ * 代价是每个检查点块多一次前向计算。内部层含随机性（如Dropout）或有状态（如BatchNorm的滑动统计）时，
+ * 重算会再次采样或更新状态。内部层自身断开计算图时，输入梯度按零处理，与不使用检查点时一致。
+ * 非训练模式下直接调用内部层，不做任何额外处理。
+ */
+public class CheckpointBlock extends Block {
+
+    /**
+     * 被包装的层
+     */
+    private final LayerAble inner;
+
+    private long forwardCount;
+
+    private long recomputeCount;
+
+    private long forwardNanos;
+
+    private long recomputeNanos;
+
+    /**
+     * 最近一次前向中释放的中间激活字节数
+     */
+    private long lastReleasedBytes;
+
+    /**
+     * 累计释放的中间激活字节数
+     */
+    private long totalReleasedBytes;
+
+    /**
+     * 构造函数，创建一个激活检查点块
+     *
+     * @param _name 块的名称
+     * @param inner 被包装的层或块，应已完成初始化
+     */
+    public CheckpointBlock(String _name, LayerAble inner) {
+        super(_name, inner.getInputShape(), inner.getOutputShape());
+        this.inner = inner;
+        // 内部层已经初始化过，这里不再调用addLayer避免重复init
+        layers.add(inner);
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public Variable layerForward(Variable... inputs) {
+        if (!Config.train) {
+            return inner.layerForward(inputs);
+        }
+        // 每次调用新建函数节点，保证同一个块在一次前向中被多次调用时各自保存输入
+        return new Checkpoint().call(inputs);
+    }
+
+    /**
+     * 检查点函数节点，计算图中以单个节点代替内部层的全部函数
+     */
+    private class Checkpoint extends Function {
+
+        @Override
+        public NdArray forward(NdArray... inputs) {
+            long start = System.nanoTime();
+            Variable[] proxies = detach(inputs);
+            Variable y = inner.layerForward(proxies);
+            long released = activationBytes(y, proxies);
+            lastReleasedBytes = released;
+            totalReleasedBytes += released;
+            forwardCount++;
+            forwardNanos += System.nanoTime() - start;
+            // 只返回输出值，内部计算图不再被引用，可以被回收
+            return y.getValue();
+        }
+
+        @Override
+        public List<NdArray> backward(NdArray yGrad) {
+            long start = System.nanoTime();
+            NdArray[] values = new NdArray[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                values[i] = inputs[i].getValue();
+            }
+
+            boolean originalTrainMode = Config.train;
+            Config.train = true;
+            Variable[] proxies = detach(values);
+            Variable y;
+            try {
+                y = inner.layerForward(proxies);
+            } finally {
+                Config.train = originalTrainMode;
+            }
+            y.setGrad(yGrad);
+            y.backward();
+            y.unChainBackward();
+
+            List<NdArray> grads = new ArrayList<>(proxies.length);
+            for (Variable proxy : proxies) {
+                NdArray grad = proxy.getGrad();
+                grads.add(grad != null ? grad : NdArray.zeros(proxy.getValue().getShape()));
+            }
+            recomputeCount++;
+            recomputeNanos += System.nanoTime() - start;
+            return grads;
+        }
+
+        @Override
+        public int requireInputNum() {
+            return -1;
+        }
+    }
+
+    private static Variable[] detach(NdArray[] values) {
+        Variable[] proxies = new Variable[values.length];
+        for (int i = 0; i < values.length; i++) {
+            proxies[i] = new Variable(values[i]);
+        }
+        return proxies;
+    }
+
+    /**
+     * 统计计算图中除输入与叶子之外的中间变量占用的字节数（不含输出本身）
+     */
+    private static long activationBytes(Variable output, Variable[] proxies) {
+        Set<Variable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        visited.addAll(Arrays.asList(proxies));
+        Deque<Variable> stack = new ArrayDeque<>();
+        stack.push(output);
+        visited.add(output);
+        long floats = 0;
+        while (!stack.isEmpty()) {
+            Variable v = stack.pop();
+            Function creator = v.getCreator();
+            if (creator == null || creator.getInputs() == null) {
+                continue;
+            }
+            if (v != output) {
+                floats += v.getValue().getShape().size();
+            }
+            for (Variable x : creator.getInputs()) {
+                if (x != null && visited.add(x)) {
+                    stack.push(x);
+                }
+            }
+        }
+        return floats * Float.BYTES;
+    }
+
+    /**
+     * 对一组层按间隔启用检查点：下标能被everyN整除的层被包装为CheckpointBlock，其余层原样返回
+     *
+     * @param layers 按执行顺序排列的层
+     * @param everyN 间隔，1表示每层都启用，小于等于0表示全部不启用
+     * @return 与layers一一对应的执行层
+     */
+    public static LayerAble[] wrapEvery(List<? extends LayerAble> layers, int everyN) {
+        LayerAble[] result = new LayerAble[layers.size()];
+        for (int i = 0; i < result.length; i++) {
+            LayerAble layer = layers.get(i);
+            result[i] = everyN > 0 && i % everyN == 0
+                    ? new CheckpointBlock(layer.getName() + "_ckpt", layer) : layer;
+        }
+        return result;
+    }
+
+    /**
+     * 汇总一组层中检查点块的显存与计算权衡
+     *
+     * @param layers 执行层，非CheckpointBlock的层被忽略
+     * @return 可读的统计信息
+     */
+    public static String summarize(LayerAble[] layers) {
+        long released = 0;
+        long forward = 0;
+        long recompute = 0;
+        int count = 0;
+        for (LayerAble layer : layers) {
+            if (layer instanceof CheckpointBlock) {
+                CheckpointBlock block = (CheckpointBlock) layer;
+                released += block.lastReleasedBytes;
+                forward += block.forwardNanos;
+                recompute += block.recomputeNanos;
+                count++;
+            }
+        }
+        return String.format("检查点块: %d/%d, 每步释放激活: %.2f MB, 前向耗时: %.2f ms, 重算耗时: %.2f ms",
+                count, layers.length, released / (1024.0 * 1024.0), forward / 1e6, recompute / 1e6);
+    }
+
+    /**
+     * 获取单块的显存与计算权衡统计
+     */
+    public String getTradeoffReport() {
+        return summarize(new LayerAble[]{this});
+    }
+
+    public LayerAble getInner() {
+        return inner;
+    }
+
+    public long getForwardCount() {
+        return forwardCount;
+    }
+
+    public long getRecomputeCount() {
+        return recomputeCount;
+    }
+
+    public long getForwardNanos() {
+        return forwardNanos;
+    }
+
+    public long getRecomputeNanos() {
+        return recomputeNanos;
+    }
+
+    public long getLastReleasedBytes() {
+        return lastReleasedBytes;
+    }
+
+    public long getTotalReleasedBytes() {
+        return totalReleasedBytes;
+    }
+}
@@ -0,0 +1,118 @@
+package io.leavesfly.tinyai.nnet.block;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.func.fusion.FusedGraph;
+import io.leavesfly.tinyai.func.fusion.FusionCompiler;
+import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.LayerAble;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 逐元素算子融合块
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * FusionBlock包装一个由逐元素函数组成的层或块（如GELU、Swish、SwiGLU门控等激活块）。
+ * 每种输入形状第一次调用时追踪一次内部前向，把记录下的Mul/Add/Tanh/Pow/Sigmoid等函数链
+ * 编译成一个融合内核并按形状缓存；之后同形状的调用只执行一次内存遍历，反向也合并为一个节点。
+ * 内部计算图含有非逐元素函数（如矩阵乘法、广播加偏置）时，该形状被标记为不可融合，直接回退到内部层执行。
+ */
+public class FusionBlock extends Block {
+
+    /**
+     * 被包装的层
+     */
+    private final LayerAble inner;
+
+    /**
+     * 按输入形状缓存的融合图，Boolean.FALSE表示该形状不可融合
+     */
+    private transient Map<String, Object> cache;
+
+    private long traceCount;
+
+    private long fusedCallCount;
+
+    private long fallbackCount;
+
+    /**
+     * 构造函数，创建一个融合块
+     *
+     * @param _name 块的名称
+     * @param inner 被包装的逐元素层或块
+     */
+    public FusionBlock(String _name, LayerAble inner) {
+        super(_name, inner.getInputShape(), inner.getOutputShape());
+        this.inner = inner;
+        addLayer(inner);
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public Variable layerForward(Variable... inputs) {
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+        }
+        String key = shapeKey(inputs);
+        Object entry = cache.get(key);
+        if (entry == null) {
+            FusedGraph graph = FusionCompiler.trace(inner::layerForward, inputs);
+            traceCount++;
+            entry = graph != null ? graph : Boolean.FALSE;
+            cache.put(key, entry);
+        }
+
+        if (entry instanceof FusedGraph) {
+            fusedCallCount++;
+            return ((FusedGraph) entry).apply(inputs);
+        }
+        fallbackCount++;
+        return inner.layerForward(inputs);
+    }
+
+    /**
+     * 清空融合缓存，内部层结构或常量变化后需要调用
+     */
+    public void invalidate() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private String shapeKey(Variable... inputs) {
+        StringBuilder key = new StringBuilder();
+        for (Variable input : inputs) {
+            key.append(input.getValue().getShape()).append(';');
+        }
+        return key.toString();
+    }
+
+    /**
+     * 指定形状的输入是否已被编译为融合内核
+     */
+    public boolean isFused(Variable... inputs) {
+        return cache != null && cache.get(shapeKey(inputs)) instanceof FusedGraph;
+    }
+
+    public LayerAble getInner() {
+        return inner;
+    }
+
+    public long getTraceCount() {
+        return traceCount;
+    }
+
+    public long getFusedCallCount() {
+        return fusedCallCount;
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount;
+    }
+}
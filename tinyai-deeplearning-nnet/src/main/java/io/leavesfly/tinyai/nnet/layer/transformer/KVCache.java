@@ -0,0 +1,181 @@
+package io.leavesfly.tinyai.nnet.layer.transformer;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.Arrays;
+
+/**
+ * 单条序列的逐层键值缓存（batch_size = 1）
+ * <p>
+ * 每层按 token 优先的布局 [seq_len][num_heads][head_dim] 存放键和值，追加新 token 时只需在数组尾部写入，
+ * 截取前缀时直接复制数组开头部分。增量解码时每层只需为新 token 计算 K/V，历史部分从缓存读取。
+ * <p>
+ * 键存放的是已应用位置编码（如RoPE）之后的值，因此缓存只在相同位置上复用才有效——前缀缓存正是这种情况。
+ */
+public class KVCache {
+
+    private final int numLayers;
+    private final int numHeads;
+    private final int headDim;
+    private final float[][] keys;
+    private final float[][] values;
+    private final int[] lengths;
+
+    /**
+     * @param numLayers 层数
+     * @param numHeads  缓存的键值头数（分组查询注意力时为键值头数）
+     * @param headDim   头维度
+     */
+    public KVCache(int numLayers, int numHeads, int headDim) {
+        this.numLayers = numLayers;
+        this.numHeads = numHeads;
+        this.headDim = headDim;
+        this.keys = new float[numLayers][];
+        this.values = new float[numLayers][];
+        this.lengths = new int[numLayers];
+        for (int layer = 0; layer < numLayers; layer++) {
+            keys[layer] = new float[0];
+            values[layer] = new float[0];
+        }
+    }
+
+    /**
+     * 缓存的 token 数（以最后一层为准，全部层追加完成后各层一致）
+     */
+    public int getLength() {
+        return numLayers == 0 ? 0 : lengths[numLayers - 1];
+    }
+
+    /**
+     * 指定层已缓存的 token 数
+     */
+    public int getLength(int layer) {
+        return lengths[layer];
+    }
+
+    /**
+     * 向指定层追加新 token 的键和值
+     *
+     * @param layer     层索引
+     * @param newKeys   形状 [1, num_heads, new_len, head_dim]
+     * @param newValues 形状 [1, num_heads, new_len, head_dim]
+     */
+    public void append(int layer, NdArray newKeys, NdArray newValues) {
+        Shape shape = newKeys.getShape();
+        if (shape.getDimension(0) != 1 || shape.getDimension(1) != numHeads || shape.getDimension(3) != headDim) {
+            throw new IllegalArgumentException("KV缓存只支持batch_size=1且头数、头维度与缓存一致的输入: " + shape);
+        }
+        int newLen = shape.getDimension(2);
+        int stride = numHeads * headDim;
+        int offset = lengths[layer] * stride;
+        int required = offset + newLen * stride;
+        if (keys[layer].length < required) {
+            int capacity = Math.max(required, keys[layer].length * 2);
+            keys[layer] = Arrays.copyOf(keys[layer], capacity);
+            values[layer] = Arrays.copyOf(values[layer], capacity);
+        }
+        float[] layerKeys = keys[layer];
+        float[] layerValues = values[layer];
+        for (int s = 0; s < newLen; s++) {
+            for (int h = 0; h < numHeads; h++) {
+                int base = offset + s * stride + h * headDim;
+                for (int d = 0; d < headDim; d++) {
+                    layerKeys[base + d] = newKeys.get(0, h, s, d);
+                    layerValues[base + d] = newValues.get(0, h, s, d);
+                }
+            }
+        }
+        lengths[layer] += newLen;
+    }
+
+    /**
+     * 读取指定层的全部键，形状 [1, num_heads, len, head_dim]
+     */
+    public NdArray getKeys(int layer) {
+        return toNdArray(keys[layer], lengths[layer]);
+    }
+
+    /**
+     * 读取指定层的全部值，形状 [1, num_heads, len, head_dim]
+     */
+    public NdArray getValues(int layer) {
+        return toNdArray(values[layer], lengths[layer]);
+    }
+
+    private NdArray toNdArray(float[] data, int length) {
+        NdArray result = NdArray.of(Shape.of(1, numHeads, length, headDim));
+        int stride = numHeads * headDim;
+        for (int s = 0; s < length; s++) {
+            for (int h = 0; h < numHeads; h++) {
+                int base = s * stride + h * headDim;
+                for (int d = 0; d < headDim; d++) {
+                    result.set(data[base + d], 0, h, s, d);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 复制前 length 个 token 的缓存，得到的新缓存可独立追加
+     */
+    public KVCache truncate(int length) {
+        if (length < 0 || length > getLength()) {
+            throw new IllegalArgumentException("截取长度超出缓存范围: " + length);
+        }
+        KVCache copy = new KVCache(numLayers, numHeads, headDim);
+        int size = length * numHeads * headDim;
+        for (int layer = 0; layer < numLayers; layer++) {
+            copy.keys[layer] = Arrays.copyOf(keys[layer], size);
+            copy.values[layer] = Arrays.copyOf(values[layer], size);
+            copy.lengths[layer] = length;
+        }
+        return copy;
+    }
+
+    /**
+     * 用另一份缓存的内容替换当前内容（如载入前缀缓存的命中结果），两者的层数、头数、头维度必须一致
+     */
+    public void copyFrom(KVCache source) {
+        if (source.numLayers != numLayers || source.numHeads != numHeads || source.headDim != headDim) {
+            throw new IllegalArgumentException("KV缓存结构不一致，无法复制");
+        }
+        for (int layer = 0; layer < numLayers; layer++) {
+            int size = source.lengths[layer] * numHeads * headDim;
+            keys[layer] = Arrays.copyOf(source.keys[layer], size);
+            values[layer] = Arrays.copyOf(source.values[layer], size);
+            lengths[layer] = source.lengths[layer];
+        }
+    }
+
+    /**
+     * 完整复制
+     */
+    public KVCache copy() {
+        return truncate(getLength());
+    }
+
+    /**
+     * 有效数据占用的字节数（float32）
+     */
+    public long sizeInBytes() {
+        long floats = 0;
+        for (int layer = 0; layer < numLayers; layer++) {
+            floats += 2L * lengths[layer] * numHeads * headDim;
+        }
+        return floats * Float.BYTES;
+    }
+
+    public int getNumLayers() {
+        return numLayers;
+    }
+
+    public int getNumHeads() {
+        return numHeads;
+    }
+
+    public int getHeadDim() {
+        return headDim;
+    }
+}
@@ -128,6 +128,80 @@ public class MultiHeadAttention extends Layer {
         return new Variable(result);
     }
 
+    /**
+     * 带键值缓存的自注意力前向（增量解码 / 前缀复用）
+     * <p>
+     * 只为新 token 计算 Q/K/V，新的 K/V 追加到缓存后与历史 K/V 一起参与注意力；
+     * 第 i 个新 token 位于绝对位置 past + i，只能看到位置不超过它的键。
+     *
+     * @param x     新 token 的输入，形状 (1, new_len, d_model)
+     * @param cache 键值缓存，调用后该层长度增加 new_len
+     * @param layer 当前层在缓存中的索引
+     * @return 新 token 的注意力输出，形状 (1, new_len, d_model)
+     */
+    public Variable forwardWithCache(Variable x, KVCache cache, int layer) {
+        NdArray input = x.getValue();
+        int batchSize = input.getShape().getDimension(0);
+        int newLen = input.getShape().getDimension(1);
+        if (batchSize != 1) {
+            throw new IllegalArgumentException("带缓存的注意力只支持batch_size=1");
+        }
+
+        NdArray input2D = reshapeTo2D(input);
+        NdArray qData = reshapeFrom2D(queryLayer.layerForward(new Variable(input2D)).getValue(), 1, newLen, dModel);
+        NdArray kData = reshapeFrom2D(keyLayer.layerForward(new Variable(input2D)).getValue(), 1, newLen, dModel);
+        NdArray vData = reshapeFrom2D(valueLayer.layerForward(new Variable(input2D)).getValue(), 1, newLen, dModel);
+
+        NdArray qHeads = reshapeForHeads(qData, 1, newLen, numHeads, dK);
+        int past = cache.getLength(layer);
+        cache.append(layer, reshapeForHeads(kData, 1, newLen, numHeads, dK), reshapeForHeads(vData, 1, newLen, numHeads, dV));
+        NdArray kHeads = cache.getKeys(layer);
+        NdArray vHeads = cache.getValues(layer);
+        int totalLen = past + newLen;
+
+        double scale = 1.0 / Math.sqrt(dK);
+        NdArray attention = NdArray.of(Shape.of(1, numHeads, newLen, dV));
+        for (int h = 0; h < numHeads; h++) {
+            NdArray scores = NdArray.of(Shape.of(newLen, totalLen));
+            for (int i = 0; i < newLen; i++) {
+                for (int j = 0; j < totalLen; j++) {
+                    float score = 0.0f;
+                    for (int d = 0; d < dK; d++) {
+                        score += qHeads.get(0, h, i, d) * kHeads.get(0, h, j, d);
+                    }
+                    scores.set((float) (score * scale), i, j);
+                }
+                if (useMask) {
+                    for (int j = past + i + 1; j < totalLen; j++) {
+                        scores.set(Float.NEGATIVE_INFINITY, i, j);
+                    }
+                }
+            }
+            NdArray attentionWeights = scores.softMax();
+            for (int i = 0; i < newLen; i++) {
+                for (int d = 0; d < dV; d++) {
+                    float output = 0.0f;
+                    for (int j = 0; j < totalLen; j++) {
+                        output += attentionWeights.get(i, j) * vHeads.get(0, h, j, d);
+                    }
+                    attention.set(output, 0, h, i, d);
+                }
+            }
+        }
+
+        NdArray concatenated = concatenateHeads(attention, 1, newLen);
+        Variable output = outputLayer.layerForward(new Variable(reshapeTo2D(concatenated)));
+        return new Variable(reshapeFrom2D(output.getValue(), 1, newLen, dModel));
+    }
+
+    public int getNumHeads() {
+        return numHeads;
+    }
+
+    public int getHeadDim() {
+        return dK;
+    }
+
     /**
      * 将三维张量重塑为二维矩阵以用于线性变换
      */
@@ -0,0 +1,314 @@
+package io.leavesfly.tinyai.nnet.layer.transformer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 跨请求共享的前缀键值缓存
+ * <p>
+ * 以 token id 序列为键组织成基数树（radix tree），节点上挂载从根到该节点整条路径的 {@link KVCache}。
+ * 新请求沿树匹配最长公共前缀，直接复用前缀部分的逐层 K/V，只需对剩余 token 做预填充。
+ * <p>
+ * 因果注意力下前缀的 K/V 与后续 token 无关，任意较长序列的缓存截断后即为其前缀的缓存，因此：
+ * <ul>
+ *   <li>匹配可以停在边的中间，从下方任一挂载缓存的节点截取所需长度</li>
+ *   <li>插入较长序列时，路径上祖先节点的缓存变为冗余并被释放</li>
+ * </ul>
+ * 缓存总字节数超过上限时按 LRU 淘汰，淘汰后无缓存且无子节点的节点被剪除，单子节点链被压缩。
+ * 所有方法线程安全。
+ */
+public class PrefixKVCache {
+
+    private static final class Node {
+        int[] edge;
+        Node parent;
+        final Map<Integer, Node> children = new HashMap<>();
+        KVCache cache;
+    }
+
+    /**
+     * 前缀匹配结果
+     */
+    public static final class Match {
+        private final int length;
+        private final KVCache cache;
+
+        Match(int length, KVCache cache) {
+            this.length = length;
+            this.cache = cache;
+        }
+
+        /**
+         * 命中的前缀长度，0 表示未命中
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * 前缀部分的缓存副本（可直接继续追加），未命中时为 null
+         */
+        public KVCache getCache() {
+            return cache;
+        }
+    }
+
+    private final Node root = new Node();
+    private final long maxBytes;
+    private final LinkedHashMap<Node, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private long lookups;
+    private long hits;
+    private long requestedTokens;
+    private long matchedTokens;
+    private long insertions;
+    private long evictions;
+
+    /**
+     * @param maxBytes 缓存总字节数上限
+     */
+    public PrefixKVCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        root.edge = new int[0];
+    }
+
+    /**
+     * 查找最长的已缓存前缀
+     *
+     * @param tokens    请求的 token 序列
+     * @param maxLength 最多复用的长度（通常为 tokens.length - 1，保证至少有一个 token 需要计算以得到 logits）
+     * @return 匹配结果
+     */
+    public synchronized Match lookup(int[] tokens, int maxLength) {
+        lookups++;
+        requestedTokens += tokens.length;
+        int limit = Math.min(tokens.length, maxLength);
+        Node node = root;
+        int matched = 0;
+        while (matched < limit) {
+            Node child = node.children.get(tokens[matched]);
+            if (child == null) {
+                break;
+            }
+            int common = commonPrefix(child.edge, tokens, matched, limit);
+            matched += common;
+            node = child;
+            if (common < child.edge.length) {
+                break;
+            }
+        }
+        if (matched == 0) {
+            return new Match(0, null);
+        }
+        Node holder = findHolder(node);
+        if (holder == null) {
+            return new Match(0, null);
+        }
+        lru.get(holder);
+        hits++;
+        matchedTokens += matched;
+        return new Match(matched, holder.cache.truncate(matched));
+    }
+
+    /**
+     * 缓存一条序列的 K/V
+     *
+     * @param tokens token 序列
+     * @param cache  该序列的缓存（长度不小于 tokens.length，超出部分被忽略；内部保存副本）
+     */
+    public synchronized void insert(int[] tokens, KVCache cache) {
+        int n = tokens.length;
+        if (n == 0) {
+            return;
+        }
+        if (cache.getLength() < n) {
+            throw new IllegalArgumentException("缓存长度小于token序列长度");
+        }
+        insertions++;
+
+        Node node = root;
+        int pos = 0;
+        while (pos < n) {
+            Node child = node.children.get(tokens[pos]);
+            if (child == null) {
+                Node leaf = new Node();
+                leaf.edge = Arrays.copyOfRange(tokens, pos, n);
+                leaf.parent = node;
+                node.children.put(leaf.edge[0], leaf);
+                node = leaf;
+                pos = n;
+                break;
+            }
+            int common = commonPrefix(child.edge, tokens, pos, n);
+            if (common < child.edge.length) {
+                node = split(child, common);
+            } else {
+                node = child;
+            }
+            pos += common;
+        }
+
+        Node target = node;
+        Node existing = findHolder(target);
+        if (existing != null) {
+            // 已有相同或更长的缓存可以截取出该前缀
+            lru.get(existing);
+            return;
+        }
+        target.cache = cache.truncate(n);
+        bytes += target.cache.sizeInBytes();
+        lru.put(target, Boolean.TRUE);
+
+        // 祖先的缓存可由新缓存截取得到，释放以节省内存
+        for (Node ancestor = target.parent; ancestor != null && ancestor != root; ) {
+            Node next = ancestor.parent;
+            if (ancestor.cache != null) {
+                release(ancestor);
+                compress(ancestor);
+            }
+            ancestor = next;
+        }
+
+        while (bytes > maxBytes && !lru.isEmpty()) {
+            Iterator<Node> eldest = lru.keySet().iterator();
+            Node victim = eldest.next();
+            eldest.remove();
+            bytes -= victim.cache.sizeInBytes();
+            victim.cache = null;
+            evictions++;
+            prune(victim);
+        }
+    }
+
+    /**
+     * 在 child 的边上第 at 个位置拆分，返回新插入的中间节点
+     */
+    private Node split(Node child, int at) {
+        Node middle = new Node();
+        middle.edge = Arrays.copyOfRange(child.edge, 0, at);
+        middle.parent = child.parent;
+        child.parent.children.put(middle.edge[0], middle);
+        child.edge = Arrays.copyOfRange(child.edge, at, child.edge.length);
+        child.parent = middle;
+        middle.children.put(child.edge[0], child);
+        return middle;
+    }
+
+    /**
+     * 在子树中找一个挂载缓存的节点（优先自身）
+     */
+    private Node findHolder(Node node) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (current.cache != null) {
+                return current;
+            }
+            for (Node child : current.children.values()) {
+                stack.push(child);
+            }
+        }
+        return null;
+    }
+
+    private void release(Node node) {
+        lru.remove(node);
+        bytes -= node.cache.sizeInBytes();
+        node.cache = null;
+    }
+
+    /**
+     * 剪除没有缓存也没有子节点的节点，并压缩剩余的单子节点链
+     */
+    private void prune(Node node) {
+        while (node != root && node.cache == null && node.children.isEmpty()) {
+            Node parent = node.parent;
+            parent.children.remove(node.edge[0]);
+            node = parent;
+        }
+        compress(node);
+    }
+
+    /**
+     * 无缓存且只有一个子节点的内部节点与子节点合并
+     */
+    private void compress(Node node) {
+        if (node == root || node.cache != null || node.children.size() != 1) {
+            return;
+        }
+        Node child = node.children.values().iterator().next();
+        int[] merged = Arrays.copyOf(node.edge, node.edge.length + child.edge.length);
+        System.arraycopy(child.edge, 0, merged, node.edge.length, child.edge.length);
+        child.edge = merged;
+        child.parent = node.parent;
+        node.parent.children.put(merged[0], child);
+    }
+
+    private static int commonPrefix(int[] edge, int[] tokens, int from, int limit) {
+        int max = Math.min(edge.length, limit - from);
+        int i = 0;
+        while (i < max && edge[i] == tokens[from + i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        root.children.clear();
+        lru.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 挂载缓存的序列数
+     */
+    public synchronized int getEntryCount() {
+        return lru.size();
+    }
+
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * 请求 token 中由缓存提供的比例
+     */
+    public synchronized double getTokenHitRate() {
+        return requestedTokens == 0 ? 0.0 : (double) matchedTokens / requestedTokens;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("PrefixKVCache{entries=%d, bytes=%d/%d, lookups=%d, hits=%d, tokenHitRate=%.2f, insertions=%d, evictions=%d}",
+                lru.size(), bytes, maxBytes, lookups, hits, getTokenHitRate(), insertions, evictions);
+    }
+}
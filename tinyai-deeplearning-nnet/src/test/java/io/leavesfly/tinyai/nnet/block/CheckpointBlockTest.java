@@ -0,0 +1,105 @@
+package io.leavesfly.tinyai.nnet.block;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.LayerAble;
+import io.leavesfly.tinyai.nnet.Parameter;
+import io.leavesfly.tinyai.util.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * CheckpointBlock的单元测试
+ * <p>
+ * 验证检查点块的输出、输入梯度与参数梯度和直接执行内部层完全一致，并统计重算次数。
+ */
+public class CheckpointBlockTest {
+
+    private boolean originalTrainMode;
+
+    @Before
+    public void setUp() {
+        originalTrainMode = Config.train;
+        Config.train = true;
+    }
+
+    @After
+    public void tearDown() {
+        Config.train = originalTrainMode;
+    }
+
+    private static Map<String, NdArray> grads(MlpBlock mlp) {
+        Map<String, NdArray> grads = new HashMap<>();
+        for (Map.Entry<String, Parameter> entry : mlp.getAllParams().entrySet()) {
+            grads.put(entry.getKey(), entry.getValue().getGrad());
+        }
+        return grads;
+    }
+
+    @Test
+    public void testGradientsMatchDirectExecution() {
+        MlpBlock mlp = new MlpBlock("mlp", 4, Config.ActiveFunc.Sigmoid, 3, 5, 2);
+        NdArray data = NdArray.likeRandomN(Shape.of(4, 3), 1);
+
+        Variable x1 = new Variable(data);
+        Variable y1 = mlp.layerForward(x1).tanh().sum();
+        y1.backward();
+        Map<String, NdArray> expected = grads(mlp);
+
+        mlp.clearGrads();
+        CheckpointBlock checkpoint = new CheckpointBlock("ckpt", mlp);
+        Variable x2 = new Variable(data);
+        Variable y2 = checkpoint.layerForward(x2).tanh().sum();
+        assertEquals(1, checkpoint.getForwardCount());
+        assertEquals(0, checkpoint.getRecomputeCount());
+        assertTrue(checkpoint.getLastReleasedBytes() > 0);
+
+        y2.backward();
+        assertEquals(1, checkpoint.getRecomputeCount());
+        assertEquals(y1.getValue().getNumber().floatValue(), y2.getValue().getNumber().floatValue(), 1e-6f);
+        assertArrayEquals(x1.getGrad().getArray(), x2.getGrad().getArray(), 1e-6f);
+        Map<String, NdArray> actual = grads(mlp);
+        for (String name : expected.keySet()) {
+            assertArrayEquals(name, expected.get(name).getArray(), actual.get(name).getArray(), 1e-6f);
+        }
+        assertEquals(expected.keySet(), checkpoint.getAllParams().keySet());
+    }
+
+    @Test
+    public void testWrapEveryN() {
+        MlpBlock a = new MlpBlock("a", 2, Config.ActiveFunc.Sigmoid, 3, 3);
+        MlpBlock b = new MlpBlock("b", 2, Config.ActiveFunc.Sigmoid, 3, 3);
+        MlpBlock c = new MlpBlock("c", 2, Config.ActiveFunc.Sigmoid, 3, 3);
+        LayerAble[] blocks = CheckpointBlock.wrapEvery(Arrays.asList(a, b, c), 2);
+        assertTrue(blocks[0] instanceof CheckpointBlock);
+        assertSame(b, blocks[1]);
+        assertTrue(blocks[2] instanceof CheckpointBlock);
+
+        Variable hidden = new Variable(NdArray.likeRandomN(Shape.of(2, 3), 3));
+        for (LayerAble block : blocks) {
+            hidden = block.layerForward(hidden);
+        }
+        hidden.sum().backward();
+        assertNotNull(a.getAllParams().values().iterator().next().getGrad());
+        assertTrue(CheckpointBlock.summarize(blocks).startsWith("检查点块: 2/3"));
+    }
+
+    @Test
+    public void testInferenceModeBypassesCheckpoint() {
+        MlpBlock mlp = new MlpBlock("mlp", 2, Config.ActiveFunc.Sigmoid, 3, 2);
+        CheckpointBlock checkpoint = new CheckpointBlock("ckpt", mlp);
+        Config.train = false;
+        NdArray data = NdArray.likeRandomN(Shape.of(2, 3), 5);
+        Variable y = checkpoint.layerForward(new Variable(data));
+        assertEquals(0, checkpoint.getForwardCount());
+        assertArrayEquals(mlp.layerForward(new Variable(data)).getValue().getArray(), y.getValue().getArray(), 1e-6f);
+    }
+}
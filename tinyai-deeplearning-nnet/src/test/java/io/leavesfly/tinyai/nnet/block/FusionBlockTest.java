@@ -0,0 +1,169 @@
+package io.leavesfly.tinyai.nnet.block;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.Layer;
+import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
+import io.leavesfly.tinyai.util.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * FusionBlock的单元测试
+ * <p>
+ * 测试按形状缓存的逐元素融合、梯度正确性以及不可融合时的回退。
+ */
+public class FusionBlockTest {
+
+    private boolean originalTrainMode;
+
+    @Before
+    public void setUp() {
+        originalTrainMode = Config.train;
+        Config.train = true;
+    }
+
+    @After
+    public void tearDown() {
+        Config.train = originalTrainMode;
+    }
+
+    /**
+     * 用基础函数展开的Swish激活层：x * sigmoid(x)
+     */
+    private static class SwishLayer extends Layer {
+        SwishLayer(String name) {
+            super(name, null, null);
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public Variable layerForward(Variable... inputs) {
+            return inputs[0].mul(inputs[0].sigmoid());
+        }
+
+        @Override
+        public NdArray forward(NdArray... inputs) {
+            return null;
+        }
+
+        @Override
+        public List<NdArray> backward(NdArray yGrad) {
+            return null;
+        }
+    }
+
+    /**
+     * 在NdArray上直接计算、用 new Variable(ndarray) 返回结果的层，计算图在输出处断开
+     */
+    private static class DetachedSwishLayer extends Layer {
+        DetachedSwishLayer(String name) {
+            super(name, null, null);
+        }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public Variable layerForward(Variable... inputs) {
+            NdArray x = inputs[0].getValue();
+            return new Variable(x.mul(x.sigmoid()));
+        }
+
+        @Override
+        public NdArray forward(NdArray... inputs) {
+            return null;
+        }
+
+        @Override
+        public List<NdArray> backward(NdArray yGrad) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testFusedForwardAndBackward() {
+        FusionBlock block = new FusionBlock("fused_swish", new SwishLayer("swish"));
+        NdArray data = NdArray.of(new float[][]{{-2f, -1f, 0f}, {1f, 2f, 3f}});
+
+        Variable x = new Variable(data);
+        Variable y = block.layerForward(x);
+        y.backward();
+
+        Variable ex = new Variable(data);
+        Variable ey = ex.mul(ex.sigmoid());
+        ey.backward();
+
+        assertTrue(block.isFused(x));
+        assertArrayEquals(ey.getValue().getArray(), y.getValue().getArray(), 1e-6f);
+        assertArrayEquals(ex.getGrad().getArray(), x.getGrad().getArray(), 1e-6f);
+    }
+
+    @Test
+    public void testKernelCachedPerShape() {
+        FusionBlock block = new FusionBlock("fused_swish", new SwishLayer("swish"));
+
+        block.layerForward(new Variable(NdArray.of(Shape.of(2, 4))));
+        block.layerForward(new Variable(NdArray.of(Shape.of(2, 4))));
+        assertEquals(1, block.getTraceCount());
+
+        block.layerForward(new Variable(NdArray.of(Shape.of(3, 4))));
+        assertEquals(2, block.getTraceCount());
+        assertEquals(3, block.getFusedCallCount());
+    }
+
+    @Test
+    public void testFallbackForNonElementwiseLayer() {
+        FusionBlock block = new FusionBlock("fused_linear", new LinearLayer("fc", 3, 2, true));
+        Variable x = new Variable(NdArray.likeRandomN(Shape.of(4, 3)));
+
+        Variable y = block.layerForward(x);
+        block.layerForward(x);
+
+        assertFalse(block.isFused(x));
+        assertEquals(Shape.of(4, 2), y.getValue().getShape());
+        assertEquals(1, block.getTraceCount());
+        assertEquals(2, block.getFallbackCount());
+        assertFalse(block.getAllParams().isEmpty());
+    }
+
+    @Test
+    public void testDetachedLayerFallsBackToEager() {
+        DetachedSwishLayer inner = new DetachedSwishLayer("detached_swish");
+        FusionBlock block = new FusionBlock("fused_detached", inner);
+        NdArray first = NdArray.of(new float[][]{{0.5f, 1f}, {1.5f, 2f}});
+        NdArray second = NdArray.of(new float[][]{{-3f, 0f}, {4f, 9f}});
+
+        NdArray firstOutput = block.layerForward(new Variable(first)).getValue();
+        NdArray secondOutput = block.layerForward(new Variable(second)).getValue();
+
+        assertFalse(block.isFused(new Variable(second)));
+        assertEquals(2, block.getFallbackCount());
+        assertArrayEquals(inner.layerForward(new Variable(first)).getValue().getArray(), firstOutput.getArray(), 1e-6f);
+        assertArrayEquals(inner.layerForward(new Variable(second)).getValue().getArray(), secondOutput.getArray(), 1e-6f);
+    }
+
+    @Test
+    public void testFusedOutputFollowsInput() {
+        FusionBlock block = new FusionBlock("fused_swish", new SwishLayer("swish"));
+        NdArray first = NdArray.of(new float[][]{{0.5f, 1f}, {1.5f, 2f}});
+        NdArray second = NdArray.of(new float[][]{{-3f, 0f}, {4f, 9f}});
+
+        block.layerForward(new Variable(first));
+        NdArray fused = block.layerForward(new Variable(second)).getValue();
+
+        assertTrue(block.isFused(new Variable(second)));
+        Variable ex = new Variable(second);
+        assertArrayEquals(ex.mul(ex.sigmoid()).getValue().getArray(), fused.getArray(), 1e-6f);
+    }
+}
@@ -0,0 +1,203 @@
+package io.leavesfly.tinyai.nnet.layer.transformer;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * KVCache 与 PrefixKVCache 的单元测试
+ *
+ * 测试内容：
+ * 1. KV缓存的追加、读取、截取和复制
+ * 2. 基数树的最长前缀匹配（含停在边中间的匹配）
+ * 3. 插入较长序列后祖先缓存的释放
+ * 4. 超出字节上限时的LRU淘汰
+ */
+public class PrefixKVCacheTest {
+
+    private static final int LAYERS = 2;
+    private static final int HEADS = 2;
+    private static final int HEAD_DIM = 3;
+
+    /**
+     * 构造一条序列的缓存，键值由token和位置决定，便于校验截取结果
+     */
+    private KVCache kvFor(int[] tokens) {
+        KVCache cache = new KVCache(LAYERS, HEADS, HEAD_DIM);
+        for (int layer = 0; layer < LAYERS; layer++) {
+            NdArray keys = NdArray.of(Shape.of(1, HEADS, tokens.length, HEAD_DIM));
+            NdArray values = NdArray.of(Shape.of(1, HEADS, tokens.length, HEAD_DIM));
+            for (int h = 0; h < HEADS; h++) {
+                for (int s = 0; s < tokens.length; s++) {
+                    for (int d = 0; d < HEAD_DIM; d++) {
+                        keys.set(tokens[s] * 100 + layer * 10 + h + d * 0.1f, 0, h, s, d);
+                        values.set(-(tokens[s] * 100 + layer * 10 + h + d * 0.1f), 0, h, s, d);
+                    }
+                }
+            }
+            cache.append(layer, keys, values);
+        }
+        return cache;
+    }
+
+    private void assertCacheEquals(KVCache expected, KVCache actual) {
+        assertEquals(expected.getLength(), actual.getLength());
+        for (int layer = 0; layer < LAYERS; layer++) {
+            assertArrayEquals(expected.getKeys(layer).getArray(), actual.getKeys(layer).getArray(), 0.0f);
+            assertArrayEquals(expected.getValues(layer).getArray(), actual.getValues(layer).getArray(), 0.0f);
+        }
+    }
+
+    @Test
+    public void testKVCacheAppendAndTruncate() {
+        KVCache cache = kvFor(new int[]{1, 2});
+        KVCache more = kvFor(new int[]{3});
+        for (int layer = 0; layer < LAYERS; layer++) {
+            cache.append(layer, more.getKeys(layer), more.getValues(layer));
+        }
+
+        assertEquals(3, cache.getLength());
+        assertCacheEquals(kvFor(new int[]{1, 2, 3}), cache);
+        assertCacheEquals(kvFor(new int[]{1, 2}), cache.truncate(2));
+        assertEquals(2L * LAYERS * 3 * HEADS * HEAD_DIM * Float.BYTES, cache.sizeInBytes());
+
+        // 截取结果是独立副本
+        KVCache prefix = cache.truncate(1);
+        for (int layer = 0; layer < LAYERS; layer++) {
+            prefix.append(layer, more.getKeys(layer), more.getValues(layer));
+        }
+        assertCacheEquals(kvFor(new int[]{1, 2, 3}), cache);
+
+        KVCache loaded = new KVCache(LAYERS, HEADS, HEAD_DIM);
+        loaded.copyFrom(prefix);
+        assertCacheEquals(kvFor(new int[]{1, 3}), loaded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKVCacheRejectsMismatchedHeads() {
+        KVCache cache = new KVCache(LAYERS, HEADS, HEAD_DIM);
+        cache.append(0, NdArray.of(Shape.of(1, HEADS + 1, 1, HEAD_DIM)), NdArray.of(Shape.of(1, HEADS + 1, 1, HEAD_DIM)));
+    }
+
+    @Test
+    public void testLongestPrefixMatch() {
+        PrefixKVCache prefixCache = new PrefixKVCache(1 << 20);
+        int[] first = {1, 2, 3, 4, 5};
+        int[] second = {1, 2, 7, 8};
+        prefixCache.insert(first, kvFor(first));
+        prefixCache.insert(second, kvFor(second));
+        assertEquals(2, prefixCache.getEntryCount());
+
+        // 完整匹配第一条
+        PrefixKVCache.Match match = prefixCache.lookup(new int[]{1, 2, 3, 4, 5, 6}, 5);
+        assertEquals(5, match.getLength());
+        assertCacheEquals(kvFor(first), match.getCache());
+
+        // 停在 [3,4,5] 这条边的中间
+        match = prefixCache.lookup(new int[]{1, 2, 3, 9}, 3);
+        assertEquals(3, match.getLength());
+        assertCacheEquals(kvFor(new int[]{1, 2, 3}), match.getCache());
+
+        // 只匹配到分叉点
+        match = prefixCache.lookup(new int[]{1, 2, 9}, 2);
+        assertEquals(2, match.getLength());
+        assertCacheEquals(kvFor(new int[]{1, 2}), match.getCache());
+
+        // maxLength 限制复用长度
+        match = prefixCache.lookup(first, first.length - 1);
+        assertEquals(4, match.getLength());
+
+        // 未命中
+        match = prefixCache.lookup(new int[]{9, 1, 2}, 2);
+        assertEquals(0, match.getLength());
+        assertNull(match.getCache());
+
+        assertEquals(5, prefixCache.getLookups());
+        assertEquals(4, prefixCache.getHits());
+    }
+
+    @Test
+    public void testLongerInsertReleasesAncestor() {
+        PrefixKVCache prefixCache = new PrefixKVCache(1 << 20);
+        int[] shorter = {1, 2, 3};
+        int[] longer = {1, 2, 3, 4, 5};
+        prefixCache.insert(shorter, kvFor(shorter));
+        long shorterBytes = prefixCache.getSizeInBytes();
+        prefixCache.insert(longer, kvFor(longer));
+
+        // 较短序列的缓存可从较长序列截取，只保留一份
+        assertEquals(1, prefixCache.getEntryCount());
+        assertEquals(kvFor(longer).sizeInBytes(), prefixCache.getSizeInBytes());
+        assertTrue(prefixCache.getSizeInBytes() < shorterBytes + kvFor(longer).sizeInBytes());
+
+        PrefixKVCache.Match match = prefixCache.lookup(new int[]{1, 2, 3, 8}, 3);
+        assertEquals(3, match.getLength());
+        assertCacheEquals(kvFor(shorter), match.getCache());
+
+        // 已被更长缓存覆盖的前缀不再重复存储
+        prefixCache.insert(shorter, kvFor(shorter));
+        assertEquals(1, prefixCache.getEntryCount());
+    }
+
+    @Test
+    public void testLruEvictionUnderMemoryCap() {
+        int[] a = {1, 2, 3};
+        int[] b = {4, 5, 6};
+        int[] c = {7, 8, 9};
+        long entryBytes = kvFor(a).sizeInBytes();
+        PrefixKVCache prefixCache = new PrefixKVCache(entryBytes * 2);
+
+        prefixCache.insert(a, kvFor(a));
+        prefixCache.insert(b, kvFor(b));
+        // 访问a，使b成为最久未使用
+        assertEquals(2, prefixCache.lookup(new int[]{1, 2, 3}, 2).getLength());
+        prefixCache.insert(c, kvFor(c));
+
+        assertEquals(2, prefixCache.getEntryCount());
+        assertEquals(1, prefixCache.getEvictions());
+        assertTrue(prefixCache.getSizeInBytes() <= prefixCache.getMaxBytes());
+        assertEquals(0, prefixCache.lookup(new int[]{4, 5, 6}, 3).getLength());
+        assertEquals(3, prefixCache.lookup(new int[]{1, 2, 3}, 3).getLength());
+        assertEquals(3, prefixCache.lookup(new int[]{7, 8, 9}, 3).getLength());
+
+        prefixCache.clear();
+        assertEquals(0, prefixCache.getEntryCount());
+        assertEquals(0, prefixCache.getSizeInBytes());
+    }
+
+    @Test
+    public void testCachedAttentionMatchesFullForward() {
+        MultiHeadAttention attention = new MultiHeadAttention("cached_attn", 8, 2, true);
+        NdArray input = NdArray.likeRandomN(Shape.of(1, 5, 8));
+        NdArray full = attention.layerForward(new Variable(input)).getValue();
+
+        KVCache cache = new KVCache(1, attention.getNumHeads(), attention.getHeadDim());
+        NdArray prefix = NdArray.of(Shape.of(1, 3, 8));
+        for (int s = 0; s < 3; s++) {
+            for (int d = 0; d < 8; d++) {
+                prefix.set(input.get(0, s, d), 0, s, d);
+            }
+        }
+        NdArray first = attention.forwardWithCache(new Variable(prefix), cache, 0).getValue();
+        for (int s = 0; s < 3; s++) {
+            for (int d = 0; d < 8; d++) {
+                assertEquals(full.get(0, s, d), first.get(0, s, d), 1e-4f);
+            }
+        }
+        // 之后逐个token增量计算
+        for (int s = 3; s < 5; s++) {
+            NdArray step = NdArray.of(Shape.of(1, 1, 8));
+            for (int d = 0; d < 8; d++) {
+                step.set(input.get(0, s, d), 0, 0, d);
+            }
+            NdArray output = attention.forwardWithCache(new Variable(step), cache, 0).getValue();
+            for (int d = 0; d < 8; d++) {
+                assertEquals(full.get(0, s, d), output.get(0, 0, d), 1e-4f);
+            }
+        }
+        assertEquals(5, cache.getLength());
+    }
+}
@@ -2,6 +2,8 @@ package io.leavesfly.tinyai.rl;
 
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ml.Model;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Parameter;
 
 import java.util.HashMap;
@@ -93,6 +95,28 @@ public abstract class Agent {
      */
     public abstract Variable selectAction(Variable state);
     
+    /**
+     * 为一批状态同时选择动作（配合VectorEnvironment使用）
+     * 
+     * 默认实现逐行调用selectAction，基于神经网络的智能体应重写为一次批量前向。
+     * 
+     * @param states 状态批次，形状为 (N, stateDim)
+     * @return 每个状态对应的动作索引
+     */
+    public int[] selectActions(NdArray states) {
+        int batchSize = states.getShape().getDimension(0);
+        int dim = states.getShape().size() / batchSize;
+        float[] data = states.getArray();
+        int[] actions = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            float[] row = new float[dim];
+            System.arraycopy(data, i * dim, row, 0, dim);
+            Variable action = selectAction(new Variable(NdArray.of(row, Shape.of(1, dim))));
+            actions[i] = (int) action.getValue().getNumber().floatValue();
+        }
+        return actions;
+    }
+    
     /**
      * 从经验中学习更新模型
      * 
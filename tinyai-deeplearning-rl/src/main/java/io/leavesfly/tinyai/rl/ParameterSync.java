@@ -0,0 +1,139 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.ml.Model;
+import io.leavesfly.tinyai.nnet.Parameter;
+
+import java.util.Map;
+
+/**
+ * 参数同步器
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * ParameterSync在构造时按名称把在线网络与目标网络的参数一一配对，之后每次同步只做扁平数组操作：
+ * 硬更新为 System.arraycopy，软更新（Polyak平均）为原地的 θ' ← θ' + τ(θ - θ')，
+ * 不再遍历模型结构、也不分配新数组。
+ * <p>
+ * 优化器更新参数时可能替换参数的NdArray，因此每次同步都重新读取在线参数的底层数组；
+ * 目标网络不参与优化，其数组在同步中被原地改写。
+ */
+public class ParameterSync {
+
+    private final Parameter[] sources;
+    private final Parameter[] targets;
+
+    /**
+     * 参数总个数（浮点数个数）
+     */
+    private final long parameterCount;
+
+    private long hardUpdates;
+    private long softUpdates;
+
+    /**
+     * 构造函数
+     *
+     * @param online 在线网络
+     * @param target 目标网络，结构必须与在线网络一致
+     */
+    public ParameterSync(Model online, Model target) {
+        this(online.getAllParams(), target.getAllParams());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param online 在线网络参数
+     * @param target 目标网络参数，名称与大小必须与在线网络一致
+     */
+    public ParameterSync(Map<String, Parameter> online, Map<String, Parameter> target) {
+        if (online.size() != target.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "在线网络与目标网络参数个数不一致: %d vs %d", online.size(), target.size()));
+        }
+        this.sources = new Parameter[online.size()];
+        this.targets = new Parameter[online.size()];
+        int i = 0;
+        long count = 0;
+        for (Map.Entry<String, Parameter> entry : online.entrySet()) {
+            Parameter targetParam = target.get(entry.getKey());
+            if (targetParam == null) {
+                throw new IllegalArgumentException("目标网络中不存在参数: " + entry.getKey());
+            }
+            int size = entry.getValue().getValue().getShape().size();
+            if (targetParam.getValue().getShape().size() != size) {
+                throw new IllegalArgumentException("参数 " + entry.getKey() + " 的大小不一致: "
+                        + entry.getValue().getValue().getShape() + " vs " + targetParam.getValue().getShape());
+            }
+            sources[i] = entry.getValue();
+            targets[i] = targetParam;
+            count += size;
+            i++;
+        }
+        this.parameterCount = count;
+    }
+
+    /**
+     * 硬更新：目标网络参数 ← 在线网络参数
+     */
+    public void hardUpdate() {
+        for (int i = 0; i < sources.length; i++) {
+            copy(sources[i].getValue().getArray(), targets[i].getValue().getArray());
+        }
+        hardUpdates++;
+    }
+
+    /**
+     * 软更新（Polyak平均）：θ' ← (1 - τ)θ' + τθ
+     *
+     * @param tau 平均系数，取值 (0, 1]，1等价于硬更新
+     */
+    public void softUpdate(float tau) {
+        if (tau <= 0f || tau > 1f) {
+            throw new IllegalArgumentException("τ必须在(0, 1]之间: " + tau);
+        }
+        if (tau == 1f) {
+            hardUpdate();
+            return;
+        }
+        for (int i = 0; i < sources.length; i++) {
+            polyak(sources[i].getValue().getArray(), targets[i].getValue().getArray(), tau);
+        }
+        softUpdates++;
+    }
+
+    /**
+     * 扁平数组拷贝
+     */
+    public static void copy(float[] source, float[] target) {
+        if (source.length != target.length) {
+            throw new IllegalArgumentException("数组长度不一致: " + source.length + " vs " + target.length);
+        }
+        System.arraycopy(source, 0, target, 0, source.length);
+    }
+
+    /**
+     * 扁平数组上的原地Polyak平均：target ← target + τ(source - target)
+     */
+    public static void polyak(float[] source, float[] target, float tau) {
+        if (source.length != target.length) {
+            throw new IllegalArgumentException("数组长度不一致: " + source.length + " vs " + target.length);
+        }
+        for (int j = 0; j < target.length; j++) {
+            target[j] += tau * (source[j] - target[j]);
+        }
+    }
+
+    public long getParameterCount() {
+        return parameterCount;
+    }
+
+    public long getHardUpdates() {
+        return hardUpdates;
+    }
+
+    public long getSoftUpdates() {
+        return softUpdates;
+    }
+}
@@ -0,0 +1,143 @@
+package io.leavesfly.tinyai.rl;
+
+/**
+ * 优先经验回放缓冲区
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * PrioritizedReplayBuffer在TransitionBuffer的基础上按优先级比例采样：
+ * 样本i被采到的概率为 P(i) = p_i^α / Σ p_k^α，p_i = |TD误差| + ε。
+ * 新写入的转移使用当前最大优先级，保证至少被采样一次。
+ * <p>
+ * 非均匀采样引入的偏差用重要性采样权重 w_i = (N · P(i))^-β / max_k w_k 修正，
+ * β从初始值线性增大到1。优先级保存在SumTree中，更新与采样都是O(log n)。
+ */
+public class PrioritizedReplayBuffer extends TransitionBuffer {
+
+    /**
+     * 避免优先级为0的小常数
+     */
+    private static final float PRIORITY_EPSILON = 1e-6f;
+
+    private final SumTree tree;
+
+    /**
+     * 优先级指数，0表示均匀采样
+     */
+    private final float alpha;
+
+    /**
+     * 重要性采样指数及其每次采样的增量
+     */
+    private float beta;
+    private final float betaIncrement;
+
+    /**
+     * 已出现的最大优先级（未取α次幂）
+     */
+    private float maxPriority = 1f;
+
+    /**
+     * 构造函数，β在100000次采样内增大到1
+     *
+     * @param capacity 缓冲区最大容量
+     * @param stateDim 状态维度
+     * @param alpha    优先级指数，常用0.6
+     * @param beta     初始重要性采样指数，常用0.4
+     */
+    public PrioritizedReplayBuffer(int capacity, int stateDim, float alpha, float beta) {
+        this(capacity, stateDim, alpha, beta, 100000);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param capacity       缓冲区最大容量
+     * @param stateDim       状态维度
+     * @param alpha          优先级指数
+     * @param beta           初始重要性采样指数
+     * @param betaAnnealSteps β增大到1所需的采样次数
+     */
+    public PrioritizedReplayBuffer(int capacity, int stateDim, float alpha, float beta, int betaAnnealSteps) {
+        super(capacity, stateDim);
+        this.tree = new SumTree(capacity);
+        this.alpha = alpha;
+        this.beta = beta;
+        this.betaIncrement = betaAnnealSteps > 0 ? (1f - beta) / betaAnnealSteps : 0f;
+    }
+
+    @Override
+    public synchronized int push(float[] state, float action, float reward, float[] nextState, boolean done) {
+        int slot = super.push(state, action, reward, nextState, done);
+        tree.set(slot, (float) Math.pow(maxPriority, alpha));
+        return slot;
+    }
+
+    /**
+     * 按优先级分层采样：把[0, total)等分为batchSize段，每段内均匀取一个前缀和
+     *
+     * @param batchSize 批次大小
+     * @return 带槽位下标与重要性采样权重的经验批次
+     */
+    @Override
+    public synchronized TransitionBatch sample(int batchSize) {
+        checkCanSample(batchSize);
+        int n = size();
+        float total = tree.total();
+        float segment = total / batchSize;
+        // 最小优先级对应最大权重，用于归一化
+        double maxWeight = Math.pow(n * tree.min() / total, -beta);
+
+        int[] indices = new int[batchSize];
+        float[] weights = new float[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            float prefix = Math.min((i + random.nextFloat()) * segment, Math.nextDown(total));
+            int slot = tree.find(prefix);
+            indices[i] = slot;
+            double probability = tree.get(slot) / total;
+            weights[i] = (float) (Math.pow(n * probability, -beta) / maxWeight);
+        }
+        beta = Math.min(1f, beta + betaIncrement);
+        return gather(indices, weights);
+    }
+
+    /**
+     * 用新的TD误差更新样本优先级
+     *
+     * @param indices  批次中的槽位下标（TransitionBatch.getIndices）
+     * @param tdErrors 对应的TD误差
+     */
+    public synchronized void updatePriorities(int[] indices, float[] tdErrors) {
+        if (indices.length != tdErrors.length) {
+            throw new IllegalArgumentException("槽位个数与TD误差个数不一致");
+        }
+        for (int i = 0; i < indices.length; i++) {
+            float priority = Math.abs(tdErrors[i]) + PRIORITY_EPSILON;
+            maxPriority = Math.max(maxPriority, priority);
+            tree.set(indices[i], (float) Math.pow(priority, alpha));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        tree.clear();
+        maxPriority = 1f;
+    }
+
+    public synchronized float getBeta() {
+        return beta;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * 获取槽位的采样优先级（已取α次幂）
+     */
+    public synchronized float getPriority(int index) {
+        return tree.get(index);
+    }
+}
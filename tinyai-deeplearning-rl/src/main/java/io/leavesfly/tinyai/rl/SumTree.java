@@ -0,0 +1,130 @@
+package io.leavesfly.tinyai.rl;
+
+import java.util.Arrays;
+
+/**
+ * 求和树（Sum Tree）
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * SumTree是一棵用数组表示的完全二叉树，叶子存放每个槽位的优先级，内部节点存放子树优先级之和，
+ * 同时维护一棵结构相同的最小值树。修改单个优先级与按前缀和查找槽位都是O(log n)，
+ * 是优先经验回放（Prioritized Experience Replay）按优先级比例采样的基础结构。
+ */
+public class SumTree {
+
+    /**
+     * 槽位个数
+     */
+    private final int capacity;
+
+    /**
+     * 叶子层起始下标（不小于capacity的2的幂）
+     */
+    private final int leafOffset;
+
+    /**
+     * 求和树与最小值树，下标1为根，节点i的子节点为2i与2i+1
+     */
+    private final float[] sums;
+    private final float[] mins;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 槽位个数
+     */
+    public SumTree(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0: " + capacity);
+        }
+        this.capacity = capacity;
+        int offset = 1;
+        while (offset < capacity) {
+            offset <<= 1;
+        }
+        this.leafOffset = offset;
+        this.sums = new float[2 * offset];
+        this.mins = new float[2 * offset];
+        Arrays.fill(mins, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * 设置槽位的优先级
+     *
+     * @param index    槽位下标
+     * @param priority 非负优先级
+     */
+    public void set(int index, float priority) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException("槽位下标越界: " + index);
+        }
+        if (priority < 0 || Float.isNaN(priority)) {
+            throw new IllegalArgumentException("优先级必须为非负数: " + priority);
+        }
+        int node = leafOffset + index;
+        sums[node] = priority;
+        mins[node] = priority;
+        node >>= 1;
+        while (node >= 1) {
+            sums[node] = sums[2 * node] + sums[2 * node + 1];
+            mins[node] = Math.min(mins[2 * node], mins[2 * node + 1]);
+            node >>= 1;
+        }
+    }
+
+    /**
+     * 获取槽位的优先级
+     */
+    public float get(int index) {
+        return sums[leafOffset + index];
+    }
+
+    /**
+     * 所有优先级之和
+     */
+    public float total() {
+        return sums[1];
+    }
+
+    /**
+     * 已设置槽位中的最小优先级，没有设置过任何槽位时为正无穷
+     */
+    public float min() {
+        return mins[1];
+    }
+
+    /**
+     * 查找前缀和首次超过给定值的槽位
+     *
+     * @param prefixSum 取值范围 [0, total)
+     * @return 槽位下标
+     */
+    public int find(float prefixSum) {
+        int node = 1;
+        float remaining = prefixSum;
+        while (node < leafOffset) {
+            int left = 2 * node;
+            if (remaining < sums[left] || sums[left + 1] <= 0f) {
+                node = left;
+            } else {
+                remaining -= sums[left];
+                node = left + 1;
+            }
+        }
+        return Math.min(node - leafOffset, capacity - 1);
+    }
+
+    /**
+     * 清空所有优先级
+     */
+    public void clear() {
+        Arrays.fill(sums, 0f);
+        Arrays.fill(mins, Float.POSITIVE_INFINITY);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,118 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.Arrays;
+
+/**
+ * 经验批次
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * TransitionBatch以结构数组（struct-of-arrays）的形式保存一批状态转移：
+ * 状态与下一状态是 (B, stateDim) 的NdArray，直接包装连续的float数组，
+ * 可以一次前向送入网络；动作、奖励、结束标志为原始类型数组。
+ * 来自优先经验回放的批次还带有缓冲区槽位下标与重要性采样权重。
+ */
+public class TransitionBatch {
+
+    private final NdArray states;
+    private final float[] actions;
+    private final float[] rewards;
+    private final NdArray nextStates;
+    private final boolean[] dones;
+
+    /**
+     * 样本在缓冲区中的槽位，用于回写优先级；不来自缓冲区时为null
+     */
+    private final int[] indices;
+
+    /**
+     * 重要性采样权重，均匀采样时全为1
+     */
+    private final float[] weights;
+
+    public TransitionBatch(NdArray states, float[] actions, float[] rewards, NdArray nextStates,
+                           boolean[] dones, int[] indices, float[] weights) {
+        this.states = states;
+        this.actions = actions;
+        this.rewards = rewards;
+        this.nextStates = nextStates;
+        this.dones = dones;
+        this.indices = indices;
+        this.weights = weights;
+    }
+
+    /**
+     * 把Experience数组打包成批次，每个状态整行拷贝一次
+     *
+     * @param experiences 经验数组
+     * @param stateDim    状态维度
+     * @return 经验批次
+     */
+    public static TransitionBatch of(Experience[] experiences, int stateDim) {
+        int batchSize = experiences.length;
+        float[] states = new float[batchSize * stateDim];
+        float[] nextStates = new float[batchSize * stateDim];
+        float[] actions = new float[batchSize];
+        float[] rewards = new float[batchSize];
+        boolean[] dones = new boolean[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            Experience exp = experiences[i];
+            System.arraycopy(exp.getState().getValue().getArray(), 0, states, i * stateDim, stateDim);
+            System.arraycopy(exp.getNextState().getValue().getArray(), 0, nextStates, i * stateDim, stateDim);
+            actions[i] = exp.getAction().getValue().getNumber().floatValue();
+            rewards[i] = exp.getReward();
+            dones[i] = exp.isDone();
+        }
+        float[] weights = new float[batchSize];
+        Arrays.fill(weights, 1f);
+        return new TransitionBatch(NdArray.of(states, Shape.of(batchSize, stateDim)), actions, rewards,
+                NdArray.of(nextStates, Shape.of(batchSize, stateDim)), dones, null, weights);
+    }
+
+    public int size() {
+        return rewards.length;
+    }
+
+    public NdArray getStates() {
+        return states;
+    }
+
+    public float[] getActions() {
+        return actions;
+    }
+
+    /**
+     * 获取离散动作下标
+     */
+    public int[] getActionIndices() {
+        int[] result = new int[actions.length];
+        for (int i = 0; i < actions.length; i++) {
+            result[i] = (int) actions[i];
+        }
+        return result;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public NdArray getNextStates() {
+        return nextStates;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public float[] getWeights() {
+        return weights;
+    }
+}
@@ -0,0 +1,203 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 结构数组经验回放缓冲区
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * TransitionBuffer是ReplayBuffer的结构数组版本：状态、动作、奖励、下一状态、结束标志
+ * 分别存放在预先分配的原始类型数组中，写满后按环形覆盖最旧的数据。
+ * 存储时不保留Variable对象，采样时按行拷贝到连续数组并直接包装为 (B, stateDim) 的NdArray，
+ * 避免逐元素读取与中间对象。
+ * <p>
+ * 所有公开方法都是同步的，可以由多个采样线程写入、一个学习线程采样。
+ */
+public class TransitionBuffer {
+
+    protected final int capacity;
+
+    protected final int stateDim;
+
+    private final float[] states;
+    private final float[] actions;
+    private final float[] rewards;
+    private final float[] nextStates;
+    private final boolean[] dones;
+
+    /**
+     * 下一个写入槽位
+     */
+    private int position;
+
+    /**
+     * 当前存储的转移数
+     */
+    private int size;
+
+    protected Random random;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 缓冲区最大容量
+     * @param stateDim 状态维度
+     */
+    public TransitionBuffer(int capacity, int stateDim) {
+        if (capacity <= 0 || stateDim <= 0) {
+            throw new IllegalArgumentException("容量与状态维度必须大于0");
+        }
+        this.capacity = capacity;
+        this.stateDim = stateDim;
+        this.states = new float[capacity * stateDim];
+        this.nextStates = new float[capacity * stateDim];
+        this.actions = new float[capacity];
+        this.rewards = new float[capacity];
+        this.dones = new boolean[capacity];
+        this.random = new Random();
+    }
+
+    /**
+     * 添加一条转移
+     *
+     * @param state     当前状态，长度为stateDim
+     * @param action    动作
+     * @param reward    奖励
+     * @param nextState 下一状态，长度为stateDim
+     * @param done      是否结束
+     * @return 写入的槽位
+     */
+    public synchronized int push(float[] state, float action, float reward, float[] nextState, boolean done) {
+        if (state.length != stateDim || nextState.length != stateDim) {
+            throw new IllegalArgumentException(String.format(
+                    "状态长度与缓冲区状态维度不一致：期望 %d，实际 %d/%d", stateDim, state.length, nextState.length));
+        }
+        int slot = position;
+        System.arraycopy(state, 0, states, slot * stateDim, stateDim);
+        System.arraycopy(nextState, 0, nextStates, slot * stateDim, stateDim);
+        actions[slot] = action;
+        rewards[slot] = reward;
+        dones[slot] = done;
+        position = (position + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        return slot;
+    }
+
+    /**
+     * 添加一条经验，直接拷贝状态的底层数组
+     *
+     * @param experience 经验
+     * @return 写入的槽位
+     */
+    public int push(Experience experience) {
+        return push(experience.getState().getValue().getArray(),
+                experience.getAction().getValue().getNumber().floatValue(),
+                experience.getReward(),
+                experience.getNextState().getValue().getArray(),
+                experience.isDone());
+    }
+
+    /**
+     * 均匀随机采样一批转移（有放回）
+     *
+     * @param batchSize 批次大小
+     * @return 经验批次
+     */
+    public synchronized TransitionBatch sample(int batchSize) {
+        checkCanSample(batchSize);
+        int[] indices = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            indices[i] = random.nextInt(size);
+        }
+        float[] weights = new float[batchSize];
+        Arrays.fill(weights, 1f);
+        return gather(indices, weights);
+    }
+
+    protected void checkCanSample(int batchSize) {
+        if (batchSize > size) {
+            throw new IllegalArgumentException(
+                    String.format("批次大小 %d 大于缓冲区当前大小 %d", batchSize, size));
+        }
+    }
+
+    /**
+     * 按槽位收集一批转移，每个状态整行拷贝
+     */
+    protected TransitionBatch gather(int[] indices, float[] weights) {
+        int batchSize = indices.length;
+        float[] batchStates = new float[batchSize * stateDim];
+        float[] batchNextStates = new float[batchSize * stateDim];
+        float[] batchActions = new float[batchSize];
+        float[] batchRewards = new float[batchSize];
+        boolean[] batchDones = new boolean[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            int slot = indices[i];
+            System.arraycopy(states, slot * stateDim, batchStates, i * stateDim, stateDim);
+            System.arraycopy(nextStates, slot * stateDim, batchNextStates, i * stateDim, stateDim);
+            batchActions[i] = actions[slot];
+            batchRewards[i] = rewards[slot];
+            batchDones[i] = dones[slot];
+        }
+        return new TransitionBatch(NdArray.of(batchStates, Shape.of(batchSize, stateDim)), batchActions,
+                batchRewards, NdArray.of(batchNextStates, Shape.of(batchSize, stateDim)), batchDones,
+                indices, weights);
+    }
+
+    public synchronized boolean canSample(int batchSize) {
+        return size >= batchSize;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getStateDim() {
+        return stateDim;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized boolean isFull() {
+        return size >= capacity;
+    }
+
+    public synchronized float getUsageRate() {
+        return (float) size / capacity;
+    }
+
+    /**
+     * 清空缓冲区（不释放预分配的数组）
+     */
+    public synchronized void clear() {
+        position = 0;
+        size = 0;
+    }
+
+    /**
+     * 设置随机种子，便于复现采样序列
+     */
+    public synchronized void setSeed(long seed) {
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{size=%d/%d, usage=%.2f%%}",
+                getClass().getSimpleName(), size(), capacity, getUsageRate() * 100);
+    }
+}
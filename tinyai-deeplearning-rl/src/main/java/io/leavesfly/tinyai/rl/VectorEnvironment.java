@@ -0,0 +1,297 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * 向量化环境
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * VectorEnvironment同时持有N个同类环境实例，把它们当作一个批次一起推进：
+ * 状态按行拼成 (N, stateDim) 的NdArray，智能体一次前向即可为N个环境选择动作（见Agent.selectActions），
+ * 避免逐个环境做单行矩阵乘法。
+ * <p>
+ * 某个环境回合结束时会自动重置，返回的下一状态是重置后的初始状态，
+ * 回合真正的终止状态保存在VectorStepResult.getFinalStates中，供存储经验使用。
+ * 指定多个线程时，各环境分组在线程池中并行执行step。
+ */
+public class VectorEnvironment implements AutoCloseable {
+
+    private final Environment[] envs;
+
+    private final int stateDim;
+
+    /**
+     * 并行执行step的线程池，单线程时为null
+     */
+    private final ExecutorService executor;
+
+    private final int numThreads;
+
+    /**
+     * 每个环境当前回合的累计奖励与步数
+     */
+    private final float[] runningReturns;
+    private final int[] runningLengths;
+
+    /**
+     * 已完成回合的回报与长度
+     */
+    private final List<Float> completedReturns = new ArrayList<>();
+    private final List<Integer> completedLengths = new ArrayList<>();
+
+    private long totalSteps;
+
+    /**
+     * 构造函数（单线程）
+     *
+     * @param factory 环境工厂
+     * @param numEnvs 环境个数
+     */
+    public VectorEnvironment(Supplier<? extends Environment> factory, int numEnvs) {
+        this(factory, numEnvs, 1);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param factory    环境工厂，每次调用应返回独立的环境实例
+     * @param numEnvs    环境个数
+     * @param numThreads 执行step的线程数，1表示在调用线程中顺序执行
+     */
+    public VectorEnvironment(Supplier<? extends Environment> factory, int numEnvs, int numThreads) {
+        this(create(factory, numEnvs), numThreads);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param envs       环境实例，状态维度必须相同
+     * @param numThreads 执行step的线程数，1表示在调用线程中顺序执行
+     */
+    public VectorEnvironment(Environment[] envs, int numThreads) {
+        if (envs.length == 0) {
+            throw new IllegalArgumentException("至少需要一个环境");
+        }
+        this.envs = envs;
+        this.stateDim = envs[0].getStateDim();
+        for (Environment env : envs) {
+            if (env.getStateDim() != stateDim || env.getActionDim() != envs[0].getActionDim()) {
+                throw new IllegalArgumentException("向量化环境要求所有环境的状态与动作维度一致");
+            }
+        }
+        this.numThreads = Math.max(1, Math.min(numThreads, envs.length));
+        this.executor = this.numThreads > 1 ? Executors.newFixedThreadPool(this.numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "vector-env");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.runningReturns = new float[envs.length];
+        this.runningLengths = new int[envs.length];
+    }
+
+    private static Environment[] create(Supplier<? extends Environment> factory, int numEnvs) {
+        Environment[] envs = new Environment[numEnvs];
+        for (int i = 0; i < numEnvs; i++) {
+            envs[i] = factory.get();
+        }
+        return envs;
+    }
+
+    /**
+     * 重置全部环境
+     *
+     * @return 初始状态批次 (N, stateDim)
+     */
+    public NdArray reset() {
+        float[] states = new float[envs.length * stateDim];
+        for (int i = 0; i < envs.length; i++) {
+            copyState(envs[i].reset(), states, i);
+            runningReturns[i] = 0f;
+            runningLengths[i] = 0;
+        }
+        return NdArray.of(states, Shape.of(envs.length, stateDim));
+    }
+
+    /**
+     * 所有环境各执行一个动作
+     *
+     * @param actions 每个环境的动作，长度为N
+     * @return 批量步骤结果
+     */
+    public VectorStepResult step(int[] actions) {
+        if (actions.length != envs.length) {
+            throw new IllegalArgumentException(String.format(
+                    "动作个数与环境个数不一致：期望 %d，实际 %d", envs.length, actions.length));
+        }
+        float[] nextStates = new float[envs.length * stateDim];
+        float[] rewards = new float[envs.length];
+        boolean[] dones = new boolean[envs.length];
+        Variable[] finalStates = new Variable[envs.length];
+
+        if (executor == null) {
+            stepRange(0, envs.length, actions, nextStates, rewards, dones, finalStates);
+        } else {
+            int chunk = (envs.length + numThreads - 1) / numThreads;
+            List<Future<?>> futures = new ArrayList<>();
+            for (int start = 0; start < envs.length; start += chunk) {
+                int from = start;
+                int to = Math.min(start + chunk, envs.length);
+                futures.add(executor.submit(() -> stepRange(from, to, actions, nextStates, rewards, dones, finalStates)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("向量化环境执行被中断", e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("环境执行失败: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+
+        // 回合统计在调用线程中汇总，避免并发修改列表
+        for (int i = 0; i < envs.length; i++) {
+            runningReturns[i] += rewards[i];
+            runningLengths[i]++;
+            if (dones[i]) {
+                completedReturns.add(runningReturns[i]);
+                completedLengths.add(runningLengths[i]);
+                runningReturns[i] = 0f;
+                runningLengths[i] = 0;
+            }
+        }
+        totalSteps += envs.length;
+        return new VectorStepResult(NdArray.of(nextStates, Shape.of(envs.length, stateDim)),
+                rewards, dones, finalStates);
+    }
+
+    /**
+     * 以NdArray形式给出动作的便捷方法，按元素顺序取整
+     */
+    public VectorStepResult step(NdArray actions) {
+        float[] data = actions.getArray();
+        int[] intActions = new int[data.length];
+        for (int i = 0; i < data.length; i++) {
+            intActions[i] = (int) data[i];
+        }
+        return step(intActions);
+    }
+
+    private void stepRange(int from, int to, int[] actions, float[] nextStates, float[] rewards,
+                           boolean[] dones, Variable[] finalStates) {
+        for (int i = from; i < to; i++) {
+            Environment env = envs[i];
+            Variable action = new Variable(NdArray.of(new float[]{actions[i]}, Shape.of(1)));
+            Environment.StepResult result = env.step(action);
+            rewards[i] = result.getReward();
+            dones[i] = result.isDone();
+            if (result.isDone()) {
+                finalStates[i] = result.getNextState();
+                copyState(env.reset(), nextStates, i);
+            } else {
+                copyState(result.getNextState(), nextStates, i);
+            }
+        }
+    }
+
+    private void copyState(Variable state, float[] target, int row) {
+        float[] data = state.getValue().getArray();
+        if (data.length != stateDim) {
+            throw new IllegalStateException("环境状态长度与状态维度不一致: " + data.length + " vs " + stateDim);
+        }
+        System.arraycopy(data, 0, target, row * stateDim, stateDim);
+    }
+
+    /**
+     * 取出并清空已完成回合的回报
+     */
+    public List<Float> drainCompletedReturns() {
+        List<Float> returns = new ArrayList<>(completedReturns);
+        completedReturns.clear();
+        completedLengths.clear();
+        return returns;
+    }
+
+    public List<Integer> getCompletedLengths() {
+        return completedLengths;
+    }
+
+    public int getNumEnvs() {
+        return envs.length;
+    }
+
+    public int getStateDim() {
+        return stateDim;
+    }
+
+    public int getActionDim() {
+        return envs[0].getActionDim();
+    }
+
+    public Environment getEnv(int index) {
+        return envs[index];
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 批量步骤结果
+     */
+    public static class VectorStepResult {
+        /** 下一状态批次，回合结束的环境为重置后的初始状态 */
+        private final NdArray nextStates;
+        /** 每个环境的奖励 */
+        private final float[] rewards;
+        /** 每个环境本步是否结束回合 */
+        private final boolean[] dones;
+        /** 回合结束的环境在重置前的终止状态，未结束的为null */
+        private final Variable[] finalStates;
+
+        public VectorStepResult(NdArray nextStates, float[] rewards, boolean[] dones, Variable[] finalStates) {
+            this.nextStates = nextStates;
+            this.rewards = rewards;
+            this.dones = dones;
+            this.finalStates = finalStates;
+        }
+
+        public NdArray getNextStates() { return nextStates; }
+        public float[] getRewards() { return rewards; }
+        public boolean[] getDones() { return dones; }
+        public Variable[] getFinalStates() { return finalStates; }
+
+        /**
+         * 获取第i个环境的状态转移终点：回合结束时为终止状态，否则为下一状态
+         */
+        public Variable getTransitionNextState(int i) {
+            if (finalStates[i] != null) {
+                return finalStates[i];
+            }
+            int dim = nextStates.getShape().size() / dones.length;
+            float[] row = new float[dim];
+            System.arraycopy(nextStates.getArray(), i * dim, row, 0, dim);
+            return new Variable(NdArray.of(row, Shape.of(1, dim)));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package io.leavesfly.tinyai.rl.agent;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 批量多臂老虎机引擎
+ * <p>
+ * 同时维护 M 个相互独立的实验（每个实验 K 个臂）的统计量，适用于在线A/B分流等场景：
+ * - 统计量按 实验×臂 展平存放在原子数组中：选择次数与奖励和（double位模式），
+ *   奖励反馈通过无锁的原子自增与CAS累加写入，可由任意线程并发调用
+ * - 正态-正态共轭的汤普森后验只依赖选择次数与奖励和，无需额外状态即可精确恢复，
+ *   与 {@link ThompsonSamplingBanditAgent} 的逐次递推结果一致
+ * - 批量选择一次遍历所有请求：ε-贪心与UCB的最优臂在同一批次内对每个实验只计算一次，
+ *   汤普森采样为每个请求独立采样
+ * <p>
+ * 读取统计量时不加锁，并发更新期间选择看到的次数与奖励和可能相差一次反馈，这对老虎机算法没有影响。
+ *
+ * @author leavesfly
+ */
+public class BatchedBanditEngine {
+
+    /**
+     * 选臂策略
+     */
+    public enum Strategy {
+        EPSILON_GREEDY,
+        UCB,
+        THOMPSON
+    }
+
+    private final int numExperiments;
+    private final int numArms;
+    private final Strategy strategy;
+
+    /**
+     * 每个(实验, 臂)的选择次数，下标 experiment * numArms + arm
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * 每个(实验, 臂)的奖励和，以double位模式存储
+     */
+    private final AtomicLongArray rewardSums;
+
+    /**
+     * 每个实验的总选择次数
+     */
+    private final AtomicLongArray totals;
+
+    private volatile float epsilon = 0.1f;
+    private volatile float confidenceParam = (float) Math.sqrt(2.0);
+    private volatile float priorMean = 0.0f;
+    private volatile float priorPrecision = 1.0f;
+    private volatile float noisePrecision = 1.0f;
+
+    /**
+     * 构造函数
+     *
+     * @param numExperiments 实验数量
+     * @param numArms        每个实验的臂数量
+     * @param strategy       选臂策略
+     */
+    public BatchedBanditEngine(int numExperiments, int numArms, Strategy strategy) {
+        if (numExperiments <= 0 || numArms <= 0) {
+            throw new IllegalArgumentException("实验数和臂数必须为正数");
+        }
+        this.numExperiments = numExperiments;
+        this.numArms = numArms;
+        this.strategy = strategy;
+        this.counts = new AtomicLongArray(numExperiments * numArms);
+        this.rewardSums = new AtomicLongArray(numExperiments * numArms);
+        this.totals = new AtomicLongArray(numExperiments);
+    }
+
+    /**
+     * 为一批请求选择臂，使用当前线程的随机数生成器
+     *
+     * @param experiments 每个请求所属的实验
+     * @param arms        输出：每个请求选中的臂
+     */
+    public void selectArms(int[] experiments, int[] arms) {
+        selectArms(experiments, arms, ThreadLocalRandom.current());
+    }
+
+    /**
+     * 为一批请求选择臂
+     *
+     * @param experiments 每个请求所属的实验
+     * @param arms        输出：每个请求选中的臂
+     * @param random      随机数生成器（可传入固定种子以便重现）
+     */
+    public void selectArms(int[] experiments, int[] arms, Random random) {
+        if (arms.length < experiments.length) {
+            throw new IllegalArgumentException("输出数组长度不足");
+        }
+        if (strategy == Strategy.THOMPSON || experiments.length == 1) {
+            for (int r = 0; r < experiments.length; r++) {
+                arms[r] = selectArm(experiments[r], random);
+            }
+            return;
+        }
+
+        // 同一批次内每个实验的确定性最优臂只计算一次。缓存用按批次大小分配的开放寻址表，
+        // 只容纳本批次出现的实验，开销与批次大小成正比，与实验总数无关
+        int capacity = Integer.highestOneBit(Math.max(1, experiments.length) * 2 - 1) << 1;
+        int mask = capacity - 1;
+        int[] cachedExperiment = new int[capacity];
+        int[] cachedArm = new int[capacity];
+        Arrays.fill(cachedExperiment, -1);
+        for (int r = 0; r < experiments.length; r++) {
+            int experiment = checkExperiment(experiments[r]);
+            if (strategy == Strategy.EPSILON_GREEDY && random.nextFloat() < epsilon) {
+                arms[r] = random.nextInt(numArms);
+                continue;
+            }
+            int slot = (experiment * 0x9E3779B9 >>> 16) & mask;
+            while (cachedExperiment[slot] != -1 && cachedExperiment[slot] != experiment) {
+                slot = (slot + 1) & mask;
+            }
+            if (cachedExperiment[slot] == -1) {
+                cachedExperiment[slot] = experiment;
+                cachedArm[slot] = greedyArm(experiment);
+            }
+            arms[r] = cachedArm[slot];
+        }
+    }
+
+    /**
+     * 为单个请求选择臂，使用当前线程的随机数生成器
+     */
+    public int selectArm(int experiment) {
+        return selectArm(experiment, ThreadLocalRandom.current());
+    }
+
+    /**
+     * 为单个请求选择臂，直接读取该实验的统计量，不分配批次缓存
+     */
+    public int selectArm(int experiment, Random random) {
+        checkExperiment(experiment);
+        if (strategy == Strategy.THOMPSON) {
+            return sampleThompson(experiment, random);
+        }
+        if (strategy == Strategy.EPSILON_GREEDY && random.nextFloat() < epsilon) {
+            return random.nextInt(numArms);
+        }
+        return greedyArm(experiment);
+    }
+
+    /**
+     * 记录一次奖励反馈（无锁，可并发调用）
+     *
+     * @param experiment 实验
+     * @param arm        被选择的臂
+     * @param reward     奖励
+     */
+    public void update(int experiment, int arm, float reward) {
+        int index = index(checkExperiment(experiment), arm);
+        counts.incrementAndGet(index);
+        long current;
+        long next;
+        do {
+            current = rewardSums.get(index);
+            next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + reward);
+        } while (!rewardSums.compareAndSet(index, current, next));
+        totals.incrementAndGet(experiment);
+    }
+
+    /**
+     * 批量记录奖励反馈
+     */
+    public void updateBatch(int[] experiments, int[] arms, float[] rewards) {
+        for (int r = 0; r < experiments.length; r++) {
+            update(experiments[r], arms[r], rewards[r]);
+        }
+    }
+
+    /**
+     * ε-贪心的利用臂或UCB臂
+     */
+    private int greedyArm(int experiment) {
+        return strategy == Strategy.UCB ? bestUcbArm(experiment) : bestArm(experiment);
+    }
+
+    private int sampleThompson(int experiment, Random random) {
+        float prior = priorPrecision;
+        float noise = noisePrecision;
+        int base = experiment * numArms;
+        int bestArm = 0;
+        double bestSample = Double.NEGATIVE_INFINITY;
+        for (int arm = 0; arm < numArms; arm++) {
+            long n = counts.get(base + arm);
+            double sum = Double.longBitsToDouble(rewardSums.get(base + arm));
+            // 后验精度 = 先验精度 + n * 噪声精度；后验均值 = (先验精度 * 先验均值 + 噪声精度 * 奖励和) / 后验精度
+            double precision = prior + n * noise;
+            double mean = (prior * priorMean + noise * sum) / precision;
+            double sample = mean + Math.sqrt(1.0 / precision) * random.nextGaussian();
+            if (sample > bestSample) {
+                bestSample = sample;
+                bestArm = arm;
+            }
+        }
+        return bestArm;
+    }
+
+    private int bestUcbArm(int experiment) {
+        int base = experiment * numArms;
+        // 未被选择过的臂优先
+        for (int arm = 0; arm < numArms; arm++) {
+            if (counts.get(base + arm) == 0) {
+                return arm;
+            }
+        }
+        double logTotal = Math.log(totals.get(experiment));
+        float c = confidenceParam;
+        int bestArm = 0;
+        double bestUcb = Double.NEGATIVE_INFINITY;
+        for (int arm = 0; arm < numArms; arm++) {
+            long n = counts.get(base + arm);
+            double ucb = Double.longBitsToDouble(rewardSums.get(base + arm)) / n + c * Math.sqrt(logTotal / n);
+            if (ucb > bestUcb) {
+                bestUcb = ucb;
+                bestArm = arm;
+            }
+        }
+        return bestArm;
+    }
+
+    /**
+     * 估计平均奖励最高的臂，未被选择过的臂估计值为0
+     */
+    public int bestArm(int experiment) {
+        int base = checkExperiment(experiment) * numArms;
+        int bestArm = 0;
+        double bestMean = Double.NEGATIVE_INFINITY;
+        for (int arm = 0; arm < numArms; arm++) {
+            double mean = meanOf(base + arm);
+            if (mean > bestMean) {
+                bestMean = mean;
+                bestArm = arm;
+            }
+        }
+        return bestArm;
+    }
+
+    private double meanOf(int index) {
+        long n = counts.get(index);
+        return n == 0 ? 0.0 : Double.longBitsToDouble(rewardSums.get(index)) / n;
+    }
+
+    public long getCount(int experiment, int arm) {
+        return counts.get(index(checkExperiment(experiment), arm));
+    }
+
+    public float getEstimatedReward(int experiment, int arm) {
+        return (float) meanOf(index(checkExperiment(experiment), arm));
+    }
+
+    /**
+     * 汤普森后验均值
+     */
+    public float getPosteriorMean(int experiment, int arm) {
+        int index = index(checkExperiment(experiment), arm);
+        double precision = priorPrecision + counts.get(index) * noisePrecision;
+        return (float) ((priorPrecision * priorMean
+                + noisePrecision * Double.longBitsToDouble(rewardSums.get(index))) / precision);
+    }
+
+    public long getTotalPulls(int experiment) {
+        return totals.get(checkExperiment(experiment));
+    }
+
+    /**
+     * 清空指定实验的统计量（不应与该实验的并发更新同时进行）
+     */
+    public void reset(int experiment) {
+        int base = checkExperiment(experiment) * numArms;
+        for (int arm = 0; arm < numArms; arm++) {
+            counts.set(base + arm, 0);
+            rewardSums.set(base + arm, 0);
+        }
+        totals.set(experiment, 0);
+    }
+
+    public void reset() {
+        for (int experiment = 0; experiment < numExperiments; experiment++) {
+            reset(experiment);
+        }
+    }
+
+    private int index(int experiment, int arm) {
+        if (arm < 0 || arm >= numArms) {
+            throw new IllegalArgumentException("无效的臂: " + arm);
+        }
+        return experiment * numArms + arm;
+    }
+
+    private int checkExperiment(int experiment) {
+        if (experiment < 0 || experiment >= numExperiments) {
+            throw new IllegalArgumentException("无效的实验: " + experiment);
+        }
+        return experiment;
+    }
+
+    public int getNumExperiments() {
+        return numExperiments;
+    }
+
+    public int getNumArms() {
+        return numArms;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public float getEpsilon() {
+        return epsilon;
+    }
+
+    public void setEpsilon(float epsilon) {
+        this.epsilon = Math.max(0.0f, Math.min(1.0f, epsilon));
+    }
+
+    public float getConfidenceParam() {
+        return confidenceParam;
+    }
+
+    public void setConfidenceParam(float confidenceParam) {
+        this.confidenceParam = confidenceParam;
+    }
+
+    /**
+     * 设置汤普森采样的先验与观测噪声精度
+     */
+    public void setThompsonPrior(float priorMean, float priorPrecision, float noisePrecision) {
+        this.priorMean = priorMean;
+        this.priorPrecision = priorPrecision;
+        this.noisePrecision = Math.max(0.001f, noisePrecision);
+    }
+}
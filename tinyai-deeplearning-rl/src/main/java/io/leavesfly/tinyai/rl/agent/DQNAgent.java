@@ -2,13 +2,14 @@ package io.leavesfly.tinyai.rl.agent;
 
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ml.Model;
-import io.leavesfly.tinyai.ml.loss.Loss;
-import io.leavesfly.tinyai.ml.loss.MeanSquaredLoss;
 import io.leavesfly.tinyai.ml.optimize.Adam;
 import io.leavesfly.tinyai.ml.optimize.Optimizer;
 import io.leavesfly.tinyai.rl.Agent;
 import io.leavesfly.tinyai.rl.Experience;
-import io.leavesfly.tinyai.rl.ReplayBuffer;
+import io.leavesfly.tinyai.rl.ParameterSync;
+import io.leavesfly.tinyai.rl.PrioritizedReplayBuffer;
+import io.leavesfly.tinyai.rl.TransitionBatch;
+import io.leavesfly.tinyai.rl.TransitionBuffer;
 import io.leavesfly.tinyai.rl.policy.EpsilonGreedyPolicy;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
@@ -32,11 +33,12 @@ public class DQNAgent extends Agent {
     // DQN特有参数
     private final int batchSize;              // 批次大小
     private final int targetUpdateFreq;       // 目标网络更新频率
-    private final ReplayBuffer replayBuffer;  // 经验回放缓冲区
+    private TransitionBuffer replayBuffer;    // 经验回放缓冲区
     private final Model targetModel;          // 目标网络
+    private final ParameterSync targetSync;   // 目标网络参数同步器
+    private float targetTau;                  // 软更新系数，0表示按频率硬更新
     private final EpsilonGreedyPolicy policy; // ε-贪婪策略
     private final Optimizer optimizer;        // 优化器
-    private final Loss lossFunction;          // 损失函数
 
     // 训练统计
     private int updateCount;                  // 更新次数计数
@@ -65,7 +67,7 @@ public class DQNAgent extends Agent {
 
         this.batchSize = batchSize;
         this.targetUpdateFreq = targetUpdateFreq;
-        this.replayBuffer = new ReplayBuffer(bufferSize);
+        this.replayBuffer = new TransitionBuffer(bufferSize, stateDim);
         this.updateCount = 0;
         this.averageLoss = 0.0f;
         this.totalLoss = 0.0f;
@@ -76,15 +78,15 @@ public class DQNAgent extends Agent {
 
         // 创建目标网络（复制主网络）
         this.targetModel = createQNetwork(stateDim, actionDim, hiddenSizes);
-        copyModelWeights(model, targetModel);
+        this.targetSync = new ParameterSync(model, targetModel);
+        targetSync.hardUpdate();
 
         // 创建ε-贪婪策略
         this.policy = new EpsilonGreedyPolicy(stateDim, actionDim, epsilon,
                 state -> model.forward(state));
 
-        // 创建优化器和损失函数
+        // 创建优化器
         this.optimizer = new Adam(model, learningRate, 0.9f, 0.999f, 1e-3f); // 使用安全的epsilon值
-        this.lossFunction = new MeanSquaredLoss();
     }
 
     /**
@@ -113,18 +115,6 @@ public class DQNAgent extends Agent {
         return new Model(name + "_QModel", mlpBlock);
     }
 
-    /**
-     * 复制模型权重
-     *
-     * @param source 源模型
-     * @param target 目标模型
-     */
-    private void copyModelWeights(Model source, Model target) {
-        // 这里应该实现权重复制逻辑
-        // 由于TinyDL框架的限制，暂时使用简化实现
-        System.out.println("目标网络权重已更新");
-    }
-
     @Override
     public Variable selectAction(Variable state) {
         if (training) {
@@ -136,6 +126,26 @@ public class DQNAgent extends Agent {
         }
     }
 
+    /**
+     * 批量选择动作：N个状态只做一次Q网络前向
+     *
+     * @param states 状态批次，形状为 (N, stateDim)
+     * @return 每个状态对应的动作索引
+     */
+    @Override
+    public int[] selectActions(NdArray states) {
+        if (training) {
+            return policy.selectActions(states);
+        }
+        int batchSize = states.getShape().getDimension(0);
+        float[] qValues = model.forward(new Variable(states)).getValue().getArray();
+        int[] actions = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            actions[i] = EpsilonGreedyPolicy.argmaxRow(qValues, i, actionDim);
+        }
+        return actions;
+    }
+
     /**
      * 选择贪婪动作（Q值最大的动作）
      *
@@ -170,69 +180,73 @@ public class DQNAgent extends Agent {
 
         // 如果有足够的经验，进行学习
         if (replayBuffer.canSample(batchSize)) {
-            Experience[] batch = replayBuffer.sample(batchSize);
-            learnBatch(batch);
+            learnBatch(replayBuffer.sample(batchSize));
         }
     }
 
     @Override
     public void learnBatch(Experience[] experiences) {
         if (experiences.length == 0) return;
+        learnBatch(TransitionBatch.of(experiences, stateDim));
+    }
 
-        // 准备批量数据
-        float[][] states = new float[experiences.length][stateDim];
-        float[][] actions = new float[experiences.length][1];
-        float[][] rewards = new float[experiences.length][1];
-        float[][] nextStates = new float[experiences.length][stateDim];
-        boolean[] dones = new boolean[experiences.length];
-
-        // 提取批量数据
-        for (int i = 0; i < experiences.length; i++) {
-            Experience exp = experiences[i];
-
-            // 状态
-            NdArray stateArray = exp.getState().getValue();
-            for (int j = 0; j < stateDim; j++) {
-                states[i][j] = stateArray.get(0, j);
-            }
-
-            // 动作
-            actions[i][0] = exp.getAction().getValue().getNumber().floatValue();
-
-            // 奖励
-            rewards[i][0] = exp.getReward();
-
-            // 下一状态
-            NdArray nextStateArray = exp.getNextState().getValue();
-            for (int j = 0; j < stateDim; j++) {
-                nextStates[i][j] = nextStateArray.get(0, j);
-            }
-
-            // 是否结束
-            dones[i] = exp.isDone();
-        }
+    /**
+     * 在结构数组批次上学习：当前Q值与目标Q值各做一次批量前向
+     * <p>
+     * 当前Q值通过getItem按 (样本, 动作) 取出，梯度只回传到被选中的动作；
+     * 损失按批次中的重要性采样权重加权，来自优先经验回放的批次会用新的TD误差回写优先级。
+     *
+     * @param batch 经验批次
+     */
+    public void learnBatch(TransitionBatch batch) {
+        int size = batch.size();
+        if (size == 0) return;
 
         // 计算目标Q值
-        Variable targetQValues = computeTargetQValues(nextStates, rewards, dones);
+        float[] targetValues = computeTargetQValues(batch);
+        Variable targetQValues = new Variable(NdArray.of(targetValues, Shape.of(1, size))).setRequireGrad(false);
 
         // 计算当前Q值
-        Variable currentQValues = computeCurrentQValues(states, actions);
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        Variable qValues = model.forward(new Variable(batch.getStates()).setRequireGrad(false));
+        Variable currentQValues = qValues.getItem(rows, batch.getActionIndices());
 
-        // 计算损失并更新网络
-        Variable loss = lossFunction.loss(targetQValues, currentQValues);
+        // 计算损失：加权均方误差，权重全为1时与MSE一致
+        float[] scaledWeights = new float[size];
+        for (int i = 0; i < size; i++) {
+            scaledWeights[i] = batch.getWeights()[i] / size;
+        }
+        Variable weights = new Variable(NdArray.of(scaledWeights, Shape.of(1, size))).setRequireGrad(false);
+        Variable loss = currentQValues.sub(targetQValues).squ().mul(weights).sum();
 
         // 反向传播
         model.clearGrads();
         loss.backward();
         optimizer.update();
+        loss.unChainBackward();
+
+        // 回写优先级
+        if (replayBuffer instanceof PrioritizedReplayBuffer && batch.getIndices() != null) {
+            float[] current = currentQValues.getValue().getArray();
+            float[] tdErrors = new float[size];
+            for (int i = 0; i < size; i++) {
+                tdErrors[i] = targetValues[i] - current[i];
+            }
+            ((PrioritizedReplayBuffer) replayBuffer).updatePriorities(batch.getIndices(), tdErrors);
+        }
 
         // 更新统计
         updateLossStatistics(loss.getValue().getNumber().floatValue());
         incrementTrainingStep();
 
-        // 定期更新目标网络
-        if (trainingStep % targetUpdateFreq == 0) {
-            copyModelWeights(model, targetModel);
+        // 更新目标网络：设置了τ时每步软更新，否则定期硬更新
+        if (targetTau > 0f) {
+            targetSync.softUpdate(targetTau);
+        } else if (trainingStep % targetUpdateFreq == 0) {
+            targetSync.hardUpdate();
         }
 
         // 衰减探索率
@@ -240,104 +254,114 @@ public class DQNAgent extends Agent {
     }
 
     /**
-     * 计算目标Q值
+     * 计算目标Q值：r + γ · max Q_target(s', a')，终止状态只取奖励
      *
-     * @param nextStates 下一状态批次
-     * @param rewards    奖励批次
-     * @param dones      结束标志批次
-     * @return 目标Q值
+     * @param batch 经验批次
+     * @return 每个样本的目标Q值
      */
-    private Variable computeTargetQValues(float[][] nextStates, float[][] rewards, boolean[] dones) {
-        int batchSize = nextStates.length;
-        float[] targetValues = new float[batchSize];
-
-        for (int i = 0; i < batchSize; i++) {
+    private float[] computeTargetQValues(TransitionBatch batch) {
+        int size = batch.size();
+        float[] nextQ = targetModel.forward(new Variable(batch.getNextStates()).setRequireGrad(false))
+                .getValue().getArray();
+        float[] rewards = batch.getRewards();
+        boolean[] dones = batch.getDones();
+        float[] targetValues = new float[size];
+        for (int i = 0; i < size; i++) {
             if (dones[i]) {
-                // 如果是终止状态，目标值就是奖励
-                targetValues[i] = rewards[i][0];
+                targetValues[i] = rewards[i];
             } else {
-                // 否则使用Bellman方程：r + γ * max(Q(s', a'))
-                Variable nextState = new Variable(NdArray.of(nextStates[i], Shape.of(1, stateDim)));
-                Variable nextQValues = targetModel.forward(nextState);
-
-                // 找到最大Q值
-                float maxNextQ = findMaxQValue(nextQValues);
-                targetValues[i] = rewards[i][0] + gamma * maxNextQ;
+                int best = EpsilonGreedyPolicy.argmaxRow(nextQ, i, actionDim);
+                targetValues[i] = rewards[i] + gamma * nextQ[i * actionDim + best];
             }
         }
-
-        return new Variable(NdArray.of(targetValues, Shape.of(batchSize, 1)));
+        return targetValues;
     }
 
     /**
-     * 计算当前Q值
+     * 更新损失统计
      *
-     * @param states  状态批次
-     * @param actions 动作批次
-     * @return 当前Q值
+     * @param loss 当前损失
      */
-    private Variable computeCurrentQValues(float[][] states, float[][] actions) {
-        int batchSize = states.length;
-        float[] currentValues = new float[batchSize];
-
-        for (int i = 0; i < batchSize; i++) {
-            Variable state = new Variable(NdArray.of(states[i], Shape.of(1, stateDim)));
-            Variable qValues = model.forward(state);
+    private void updateLossStatistics(float loss) {
+        totalLoss += loss;
+        lossCount++;
+        averageLoss = totalLoss / lossCount;
+    }
 
-            int actionIndex = (int) actions[i][0];
-            currentValues[i] = qValues.getValue().get(0, actionIndex);
-        }
+    /**
+     * 获取平均损失
+     *
+     * @return 平均损失
+     */
+    public float getAverageLoss() {
+        return averageLoss;
+    }
 
-        return new Variable(NdArray.of(currentValues, Shape.of(batchSize, 1)));
+    /**
+     * 获取经验回放缓冲区使用率
+     *
+     * @return 使用率
+     */
+    public float getBufferUsage() {
+        return replayBuffer.getUsageRate();
     }
 
     /**
-     * 找到Q值向量中的最大值
+     * 切换为优先经验回放，已存储的经验会被丢弃
      *
-     * @param qValues Q值向量
-     * @return 最大Q值
+     * @param alpha 优先级指数
+     * @param beta  初始重要性采样指数
      */
-    private float findMaxQValue(Variable qValues) {
-        NdArray qArray = qValues.getValue();
-        float maxQ = qArray.get(0, 0);
+    public void enablePrioritizedReplay(float alpha, float beta) {
+        this.replayBuffer = new PrioritizedReplayBuffer(replayBuffer.getCapacity(), stateDim, alpha, beta);
+    }
 
-        for (int i = 1; i < actionDim; i++) {
-            float q = qArray.get(0, i);
-            if (q > maxQ) {
-                maxQ = q;
-            }
+    /**
+     * 设置目标网络软更新系数
+     *
+     * @param tau Polyak平均系数，(0, 1]表示每次学习后软更新，0表示恢复按targetUpdateFreq硬更新
+     */
+    public void setTargetTau(float tau) {
+        if (tau < 0f || tau > 1f) {
+            throw new IllegalArgumentException("τ必须在[0, 1]之间: " + tau);
         }
+        this.targetTau = tau;
+    }
 
-        return maxQ;
+    /**
+     * 获取目标网络
+     *
+     * @return 目标网络
+     */
+    public Model getTargetModel() {
+        return targetModel;
     }
 
     /**
-     * 更新损失统计
+     * 获取目标网络参数同步器
      *
-     * @param loss 当前损失
+     * @return 参数同步器
      */
-    private void updateLossStatistics(float loss) {
-        totalLoss += loss;
-        lossCount++;
-        averageLoss = totalLoss / lossCount;
+    public ParameterSync getTargetSync() {
+        return targetSync;
     }
 
     /**
-     * 获取平均损失
+     * 获取每次学习的批次大小
      *
-     * @return 平均损失
+     * @return 批次大小
      */
-    public float getAverageLoss() {
-        return averageLoss;
+    public int getBatchSize() {
+        return batchSize;
     }
 
     /**
-     * 获取经验回放缓冲区使用率
+     * 获取经验回放缓冲区
      *
-     * @return 使用率
+     * @return 经验回放缓冲区
      */
-    public float getBufferUsage() {
-        return replayBuffer.getUsageRate();
+    public TransitionBuffer getReplayBuffer() {
+        return replayBuffer;
     }
 
     /**
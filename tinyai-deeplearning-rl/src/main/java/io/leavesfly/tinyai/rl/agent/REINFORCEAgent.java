@@ -6,7 +6,9 @@ import io.leavesfly.tinyai.ml.optimize.Adam;
 import io.leavesfly.tinyai.ml.optimize.Optimizer;
 import io.leavesfly.tinyai.rl.Agent;
 import io.leavesfly.tinyai.rl.Experience;
+import io.leavesfly.tinyai.rl.TransitionBatch;
 import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.block.MlpBlock;
 
 import java.util.ArrayList;
@@ -161,6 +163,35 @@ public class REINFORCEAgent extends Agent {
         return new Variable(NdArray.of(action));
     }
     
+    /**
+     * 批量采样动作：N个状态只做一次策略网络前向与softmax
+     * 
+     * 向量化环境中各环境处于不同回合，这里不记录单回合的对数概率；
+     * 需要按回合更新策略时仍应使用selectAction逐步交互。
+     * 
+     * @param states 状态批次，形状为 (N, stateDim)
+     * @return 每个状态对应的动作索引
+     */
+    @Override
+    public int[] selectActions(NdArray states) {
+        int batchSize = states.getShape().getDimension(0);
+        float[] probs = applySoftmax(model.forward(new Variable(states))).getValue().getArray();
+        int[] actions = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            float randomValue = random.nextFloat();
+            float cumulativeProb = 0.0f;
+            actions[i] = actionDim - 1;
+            for (int a = 0; a < actionDim; a++) {
+                cumulativeProb += probs[i * actionDim + a];
+                if (randomValue <= cumulativeProb) {
+                    actions[i] = a;
+                    break;
+                }
+            }
+        }
+        return actions;
+    }
+    
     /**
      * 应用Softmax函数
      * 
@@ -270,6 +301,60 @@ public class REINFORCEAgent extends Agent {
         incrementTrainingStep();
     }
     
+    /**
+     * 从一条完整轨迹学习（例如由异步执行者采集的回合）
+     * 
+     * 与learnFromEpisode不同，这里不依赖selectAction记录的对数概率，
+     * 而是对整条轨迹的状态做一次批量前向重新计算 log π(a_t|s_t)，
+     * 损失 -(1/T) Σ log π(a_t|s_t) · A_t 只反向传播一次。
+     * 
+     * @param trajectory 按时间顺序排列的一个回合的经验
+     */
+    public void learnFromTrajectory(Experience[] trajectory) {
+        if (trajectory.length == 0) return;
+        
+        clearEpisodeData();
+        for (Experience experience : trajectory) {
+            episodeExperiences.add(experience);
+            episodeRewards.add(experience.getReward());
+        }
+        
+        List<Float> returns = computeReturns(episodeRewards);
+        List<Float> baselines = null;
+        if (useBaseline) {
+            baselines = computeBaselines();
+            updateBaseline(returns);
+        }
+        
+        TransitionBatch batch = TransitionBatch.of(trajectory, stateDim);
+        int length = batch.size();
+        int[] rows = new int[length];
+        float[] scaledAdvantages = new float[length];
+        for (int t = 0; t < length; t++) {
+            rows[t] = t;
+            float advantage = returns.get(t);
+            if (baselines != null) {
+                advantage -= baselines.get(t);
+            }
+            scaledAdvantages[t] = -advantage / length;
+        }
+        
+        Variable probabilities = applySoftmax(model.forward(new Variable(batch.getStates()).setRequireGrad(false)));
+        Variable logProbs = probabilities.getItem(rows, batch.getActionIndices()).clip(1e-8f, 1.0f).log();
+        Variable advantages = new Variable(NdArray.of(scaledAdvantages, Shape.of(1, length))).setRequireGrad(false);
+        Variable policyLoss = logProbs.mul(advantages).sum();
+        
+        model.clearGrads();
+        policyLoss.backward();
+        policyOptimizer.update();
+        policyLoss.unChainBackward();
+        averagePolicyLoss = policyLoss.getValue().getNumber().floatValue();
+        
+        updateStatistics(returns);
+        clearEpisodeData();
+        incrementTrainingStep();
+    }
+    
     /**
      * 计算回报（蒙特卡罗）
      * 
@@ -145,6 +145,35 @@ public class MultiArmedBanditEnvironment extends Environment {
         return new StepResult(currentState, reward, done, info);
     }
     
+    /**
+     * 批量拉动多个臂，不构造Variable与info映射，适合大批量仿真
+     * 每次拉动计为一步，累计奖励与悔恨值的更新与step一致
+     * 
+     * @param arms 依次拉动的臂
+     * @param rewards 输出：对应的奖励
+     * @return 环境是否已结束
+     */
+    public boolean pullArms(int[] arms, float[] rewards) {
+        if (done) {
+            throw new IllegalStateException("环境已结束，请先调用reset()");
+        }
+        if (arms.length > maxSteps - currentStep) {
+            throw new IllegalArgumentException("拉动次数超过剩余步数: " + arms.length);
+        }
+        for (int i = 0; i < arms.length; i++) {
+            int armIndex = arms[i];
+            if (armIndex < 0 || armIndex >= actionDim) {
+                throw new IllegalArgumentException("无效的动作: " + armIndex);
+            }
+            rewards[i] = generateReward(armIndex);
+            totalReward += rewards[i];
+            totalRegret += trueRewards[optimalArm] - trueRewards[armIndex];
+        }
+        currentStep += arms.length;
+        done = currentStep >= maxSteps;
+        return done;
+    }
+    
     /**
      * 根据指定臂的奖励分布生成奖励
      * 
@@ -0,0 +1,360 @@
+package io.leavesfly.tinyai.rl.parallel;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.rl.Agent;
+import io.leavesfly.tinyai.rl.Environment;
+import io.leavesfly.tinyai.rl.Experience;
+import io.leavesfly.tinyai.rl.TransitionBuffer;
+import io.leavesfly.tinyai.rl.agent.DQNAgent;
+import io.leavesfly.tinyai.rl.agent.REINFORCEAgent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 异步执行者-学习者训练器
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * ActorLearnerTrainer按Ape-X的方式把数据采集与学习拆到不同线程：
+ * 多个执行者（actor）线程各自持有一份策略副本与环境，持续与环境交互并把经验写入共享存储；
+ * 一个学习者（learner）线程只负责训练，并每隔若干次更新发布一次带版本号的权重快照。
+ * 执行者每隔syncInterval步检查快照版本，有新版本时整体拷贝到本地副本，
+ * 因此执行者使用的策略可能略微滞后，但不会读到更新到一半的参数。
+ * <p>
+ * 两种学习方式：
+ * 1. DQNAgent：执行者把单步转移写入学习者的经验回放缓冲区，学习者不断采样批次训练；
+ * 执行者按Ape-X的方式使用各不相同的固定探索率 ε_i = ε^(1 + 7i/(N-1))。
+ * 2. REINFORCEAgent：执行者采集完整回合放入有界队列，学习者逐个回合做策略梯度更新。
+ */
+public class ActorLearnerTrainer {
+
+    /**
+     * Ape-X探索率调度的基数
+     */
+    private static final float APEX_BASE_EPSILON = 0.4f;
+
+    private final Agent learner;
+    private final Supplier<? extends Agent> actorFactory;
+    private final Supplier<? extends Environment> environmentFactory;
+    private final int numActors;
+
+    private final ParameterServer parameterServer = new ParameterServer();
+
+    /**
+     * 执行者检查新权重的间隔（环境步数）
+     */
+    private int syncInterval = 50;
+
+    /**
+     * 学习者发布新权重的间隔（更新次数）
+     */
+    private int publishInterval = 10;
+
+    /**
+     * REINFORCE模式下回合队列的容量，队列满时执行者阻塞
+     */
+    private int episodeQueueCapacity = 16;
+
+    // 运行统计
+    private final AtomicLong envSteps = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong episodes = new AtomicLong();
+    private final AtomicLong actorSyncs = new AtomicLong();
+    private final List<Float> episodeReturns = new ArrayList<>();
+    private long elapsedNanos;
+
+    /**
+     * 构造函数
+     *
+     * @param learner            学习者，DQNAgent或REINFORCEAgent
+     * @param actorFactory       执行者策略副本工厂，网络结构必须与学习者一致
+     * @param environmentFactory 环境工厂，每个执行者一个实例
+     * @param numActors          执行者线程数
+     */
+    public ActorLearnerTrainer(Agent learner, Supplier<? extends Agent> actorFactory,
+                               Supplier<? extends Environment> environmentFactory, int numActors) {
+        if (!(learner instanceof DQNAgent) && !(learner instanceof REINFORCEAgent)) {
+            throw new IllegalArgumentException("异步训练仅支持DQNAgent与REINFORCEAgent: "
+                    + learner.getClass().getSimpleName());
+        }
+        if (numActors <= 0) {
+            throw new IllegalArgumentException("执行者数量必须大于0");
+        }
+        this.learner = learner;
+        this.actorFactory = actorFactory;
+        this.environmentFactory = environmentFactory;
+        this.numActors = numActors;
+    }
+
+    /**
+     * 运行训练，直到环境总步数或学习者更新次数达到上限
+     *
+     * @param maxEnvSteps 环境总步数上限
+     * @param maxUpdates  学习者更新次数上限
+     */
+    public void run(long maxEnvSteps, long maxUpdates) {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        BlockingQueue<Experience[]> episodeQueue = new ArrayBlockingQueue<>(episodeQueueCapacity);
+
+        // 执行者启动前先发布初始权重
+        parameterServer.publish(learner.getAllParams());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numActors; i++) {
+            int actorIndex = i;
+            threads.add(newThread("rl-actor-" + i, running, failure,
+                    () -> actorLoop(actorIndex, running, maxEnvSteps, episodeQueue)));
+        }
+        Thread learnerThread = newThread("rl-learner", running, failure,
+                () -> learnerLoop(running, maxUpdates, episodeQueue));
+        threads.add(learnerThread);
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            running.set(false);
+            Thread.currentThread().interrupt();
+        }
+        elapsedNanos += System.nanoTime() - start;
+
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new RuntimeException("异步训练失败: " + error.getMessage(), error);
+        }
+    }
+
+    private Thread newThread(String name, AtomicBoolean running, AtomicReference<Throwable> failure, Runnable body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                // 任一线程退出（完成或失败）都通知其他线程停止
+                running.set(false);
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void actorLoop(int actorIndex, AtomicBoolean running, long maxEnvSteps,
+                           BlockingQueue<Experience[]> episodeQueue) {
+        Agent actor = actorFactory.get();
+        Environment env = environmentFactory.get();
+        boolean replayMode = learner instanceof DQNAgent;
+        if (replayMode) {
+            actor.setEpsilon(actorEpsilon(actorIndex));
+        } else {
+            // REINFORCE执行者只采样，不积累本地回合数据
+            actor.setTraining(false);
+        }
+        TransitionBuffer buffer = replayMode ? ((DQNAgent) learner).getReplayBuffer() : null;
+
+        long seenVersion = -1;
+        long localSteps = 0;
+        float episodeReturn = 0f;
+        List<Experience> trajectory = new ArrayList<>();
+        Variable state = env.reset();
+
+        while (running.get()) {
+            if (localSteps % syncInterval == 0) {
+                WeightSnapshot snapshot = parameterServer.latest();
+                if (snapshot != null && snapshot.getVersion() != seenVersion) {
+                    snapshot.applyTo(actor.getAllParams());
+                    seenVersion = snapshot.getVersion();
+                    actorSyncs.incrementAndGet();
+                }
+            }
+
+            Variable action = actor.selectAction(state);
+            Environment.StepResult result = env.step(action);
+            Experience experience = new Experience(state, action, result.getReward(),
+                    result.getNextState(), result.isDone());
+            if (replayMode) {
+                buffer.push(experience);
+            } else {
+                trajectory.add(experience);
+            }
+            episodeReturn += result.getReward();
+            localSteps++;
+
+            if (result.isDone()) {
+                if (!replayMode && !offer(episodeQueue, trajectory.toArray(new Experience[0]), running)) {
+                    return;
+                }
+                trajectory.clear();
+                recordEpisode(episodeReturn);
+                episodeReturn = 0f;
+                state = env.reset();
+            } else {
+                state = result.getNextState();
+            }
+
+            if (envSteps.incrementAndGet() >= maxEnvSteps) {
+                running.set(false);
+            }
+        }
+    }
+
+    /**
+     * 带背压地放入回合，停止时返回false
+     */
+    private boolean offer(BlockingQueue<Experience[]> queue, Experience[] trajectory, AtomicBoolean running) {
+        try {
+            while (running.get()) {
+                if (queue.offer(trajectory, 10, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void learnerLoop(AtomicBoolean running, long maxUpdates, BlockingQueue<Experience[]> episodeQueue) {
+        try {
+            while (running.get()) {
+                boolean updated;
+                if (learner instanceof DQNAgent) {
+                    updated = learnFromReplay((DQNAgent) learner);
+                } else {
+                    Experience[] trajectory = episodeQueue.poll(10, TimeUnit.MILLISECONDS);
+                    updated = trajectory != null;
+                    if (updated) {
+                        ((REINFORCEAgent) learner).learnFromTrajectory(trajectory);
+                    }
+                }
+                if (!updated) {
+                    continue;
+                }
+                long count = updates.incrementAndGet();
+                if (count % publishInterval == 0) {
+                    parameterServer.publish(learner.getAllParams());
+                }
+                if (count >= maxUpdates) {
+                    running.set(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean learnFromReplay(DQNAgent agent) throws InterruptedException {
+        TransitionBuffer buffer = agent.getReplayBuffer();
+        if (!buffer.canSample(agent.getBatchSize())) {
+            // 缓冲区预热阶段，等待执行者写入
+            Thread.sleep(1);
+            return false;
+        }
+        agent.learnBatch(buffer.sample(agent.getBatchSize()));
+        return true;
+    }
+
+    /**
+     * Ape-X探索率调度：ε_i = 0.4^(1 + 7i/(N-1))
+     */
+    private float actorEpsilon(int actorIndex) {
+        if (numActors == 1) {
+            return APEX_BASE_EPSILON;
+        }
+        double exponent = 1.0 + 7.0 * actorIndex / (numActors - 1);
+        return (float) Math.pow(APEX_BASE_EPSILON, exponent);
+    }
+
+    private synchronized void recordEpisode(float episodeReturn) {
+        episodes.incrementAndGet();
+        episodeReturns.add(episodeReturn);
+    }
+
+    // ==================== 配置与统计 ====================
+
+    public void setSyncInterval(int syncInterval) {
+        this.syncInterval = Math.max(1, syncInterval);
+    }
+
+    public void setPublishInterval(int publishInterval) {
+        this.publishInterval = Math.max(1, publishInterval);
+    }
+
+    public void setEpisodeQueueCapacity(int episodeQueueCapacity) {
+        this.episodeQueueCapacity = Math.max(1, episodeQueueCapacity);
+    }
+
+    public long getEnvSteps() {
+        return envSteps.get();
+    }
+
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    public long getEpisodes() {
+        return episodes.get();
+    }
+
+    public long getActorSyncs() {
+        return actorSyncs.get();
+    }
+
+    public long getWeightVersion() {
+        return parameterServer.getVersion();
+    }
+
+    public ParameterServer getParameterServer() {
+        return parameterServer;
+    }
+
+    /**
+     * 环境交互吞吐（步/秒）
+     */
+    public double getStepsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : envSteps.get() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 学习吞吐（更新/秒）
+     */
+    public double getUpdatesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : updates.get() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 最近count个回合的平均回报
+     */
+    public synchronized float getRecentAverageReturn(int count) {
+        int from = Math.max(0, episodeReturns.size() - count);
+        if (from == episodeReturns.size()) {
+            return 0f;
+        }
+        float sum = 0f;
+        for (int i = from; i < episodeReturns.size(); i++) {
+            sum += episodeReturns.get(i);
+        }
+        return sum / (episodeReturns.size() - from);
+    }
+
+    public String getThroughputReport() {
+        return String.format("执行者=%d, 环境步数=%d (%.1f 步/秒), 更新次数=%d (%.1f 次/秒), 回合数=%d, 权重版本=%d, 同步次数=%d",
+                numActors, getEnvSteps(), getStepsPerSecond(), getUpdates(), getUpdatesPerSecond(),
+                getEpisodes(), getWeightVersion(), getActorSyncs());
+    }
+}
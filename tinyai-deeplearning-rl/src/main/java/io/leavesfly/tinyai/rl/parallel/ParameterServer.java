@@ -0,0 +1,49 @@
+package io.leavesfly.tinyai.rl.parallel;
+
+import io.leavesfly.tinyai.nnet.Parameter;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 进程内参数服务器
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * 学习线程通过publish发布新版本的权重快照，执行线程通过latest读取最新快照。
+ * 快照整体替换，读写双方之间只有一次引用的原子发布，没有锁竞争。
+ */
+public class ParameterServer {
+
+    private final AtomicReference<WeightSnapshot> latest = new AtomicReference<>();
+
+    private long nextVersion;
+
+    /**
+     * 发布新版本权重（只应由学习线程调用）
+     *
+     * @param params 学习者的参数
+     * @return 新快照的版本号
+     */
+    public synchronized long publish(Map<String, Parameter> params) {
+        long version = nextVersion++;
+        latest.set(WeightSnapshot.capture(version, params));
+        return version;
+    }
+
+    /**
+     * 获取最新快照，尚未发布时为null
+     */
+    public WeightSnapshot latest() {
+        return latest.get();
+    }
+
+    /**
+     * 获取最新版本号，尚未发布时为-1
+     */
+    public long getVersion() {
+        WeightSnapshot snapshot = latest.get();
+        return snapshot == null ? -1 : snapshot.getVersion();
+    }
+}
@@ -0,0 +1,74 @@
+package io.leavesfly.tinyai.rl.parallel;
+
+import io.leavesfly.tinyai.nnet.Parameter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 带版本号的权重快照
+ *
+ * @author leavesfly
+ * @version 0.01
+ * <p>
+ * WeightSnapshot在学习线程上一次性拷贝全部参数，创建后不再修改。
+ * 执行线程只读取完整的快照对象，因此不会看到学习线程更新到一半的参数。
+ */
+public class WeightSnapshot {
+
+    private final long version;
+
+    /**
+     * 参数名到参数值的拷贝
+     */
+    private final Map<String, float[]> weights;
+
+    private WeightSnapshot(long version, Map<String, float[]> weights) {
+        this.version = version;
+        this.weights = Collections.unmodifiableMap(weights);
+    }
+
+    /**
+     * 拷贝参数生成快照，应在唯一修改这些参数的线程上调用
+     *
+     * @param version 版本号
+     * @param params  参数名到参数
+     * @return 权重快照
+     */
+    public static WeightSnapshot capture(long version, Map<String, Parameter> params) {
+        Map<String, float[]> weights = new LinkedHashMap<>();
+        for (Map.Entry<String, Parameter> entry : params.entrySet()) {
+            weights.put(entry.getKey(), entry.getValue().getValue().getArray().clone());
+        }
+        return new WeightSnapshot(version, weights);
+    }
+
+    /**
+     * 把快照中的权重原地拷贝到目标参数中
+     *
+     * @param params 目标参数，名称与形状必须与快照一致
+     */
+    public void applyTo(Map<String, Parameter> params) {
+        for (Map.Entry<String, Parameter> entry : params.entrySet()) {
+            float[] source = weights.get(entry.getKey());
+            if (source == null) {
+                throw new IllegalArgumentException("快照中不存在参数: " + entry.getKey());
+            }
+            float[] target = entry.getValue().getValue().getArray();
+            if (target.length != source.length) {
+                throw new IllegalArgumentException("参数 " + entry.getKey() + " 的大小与快照不一致: "
+                        + target.length + " vs " + source.length);
+            }
+            System.arraycopy(source, 0, target, 0, source.length);
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getParameterCount() {
+        return weights.size();
+    }
+}
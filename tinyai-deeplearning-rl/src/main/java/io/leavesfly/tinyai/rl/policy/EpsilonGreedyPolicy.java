@@ -60,6 +60,47 @@ public class EpsilonGreedyPolicy extends Policy {
         }
     }
 
+    /**
+     * 为一批状态选择动作：只做一次Q值计算，每一行独立进行ε-贪婪选择
+     *
+     * @param states 状态批次，形状为 (N, stateDim)
+     * @return 每个状态对应的动作索引
+     */
+    public int[] selectActions(NdArray states) {
+        int batchSize = states.getShape().getDimension(0);
+        float[] qValues = qFunction.getQValues(new Variable(states)).getValue().getArray();
+        int[] actions = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            if (random.nextFloat() < epsilon) {
+                actions[i] = random.nextInt(actionDim);
+            } else {
+                actions[i] = argmaxRow(qValues, i, actionDim);
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * 行主序Q值矩阵中第row行的最大值下标
+     *
+     * @param qValues   展平的Q值矩阵
+     * @param row       行号
+     * @param actionDim 动作个数（列数）
+     * @return 最优动作索引
+     */
+    public static int argmaxRow(float[] qValues, int row, int actionDim) {
+        int offset = row * actionDim;
+        int bestAction = 0;
+        float maxQValue = qValues[offset];
+        for (int i = 1; i < actionDim; i++) {
+            if (qValues[offset + i] > maxQValue) {
+                maxQValue = qValues[offset + i];
+                bestAction = i;
+            }
+        }
+        return bestAction;
+    }
+
     @Override
     public Variable getActionProbabilities(Variable state) {
         // 计算每个动作的选择概率
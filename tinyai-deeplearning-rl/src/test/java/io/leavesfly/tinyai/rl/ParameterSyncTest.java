@@ -0,0 +1,86 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ml.Model;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.nnet.Parameter;
+import io.leavesfly.tinyai.nnet.block.MlpBlock;
+import io.leavesfly.tinyai.rl.agent.DQNAgent;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ParameterSync类的单元测试
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class ParameterSyncTest {
+
+    private static Model mlp(String name, int... sizes) {
+        return new Model(name, new MlpBlock(name + "_block", 1, null, sizes));
+    }
+
+    @Test
+    public void testHardAndSoftUpdate() {
+        Model online = mlp("online", 3, 4, 2);
+        Model target = mlp("target", 3, 4, 2);
+        ParameterSync sync = new ParameterSync(online, target);
+        assertEquals(3 * 4 + 4 + 4 * 2 + 2, sync.getParameterCount());
+
+        Map<String, Parameter> onlineParams = online.getAllParams();
+        Map<String, Parameter> targetParams = target.getAllParams();
+        float[] targetArrayBefore = targetParams.values().iterator().next().getValue().getArray();
+
+        sync.hardUpdate();
+        for (String name : onlineParams.keySet()) {
+            assertArrayEquals(onlineParams.get(name).getValue().getArray(),
+                    targetParams.get(name).getValue().getArray(), 0f);
+        }
+        // 原地改写目标网络的数组
+        assertSame(targetArrayBefore, targetParams.values().iterator().next().getValue().getArray());
+
+        String name = onlineParams.keySet().iterator().next();
+        float[] source = onlineParams.get(name).getValue().getArray();
+        float[] old = targetParams.get(name).getValue().getArray().clone();
+        for (int i = 0; i < source.length; i++) {
+            source[i] += 1f;
+        }
+        sync.softUpdate(0.25f);
+        float[] updated = targetParams.get(name).getValue().getArray();
+        for (int i = 0; i < updated.length; i++) {
+            assertEquals(old[i] + 0.25f, updated[i], 1e-5f);
+        }
+        assertEquals(1, sync.getHardUpdates());
+        assertEquals(1, sync.getSoftUpdates());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedStructureRejected() {
+        new ParameterSync(mlp("a", 3, 4, 2), mlp("b", 3, 5, 2));
+    }
+
+    @Test
+    public void testDqnTargetStartsInSyncAndTracksWithTau() {
+        DQNAgent agent = new DQNAgent("dqn", 2, 3, new int[]{8}, 0.01f, 0.1f, 0.9f, 4, 50, 1000);
+        agent.setTargetTau(0.5f);
+        Map<String, Parameter> onlineParams = agent.getAllParams();
+        Map<String, Parameter> targetParams = agent.getTargetModel().getAllParams();
+        for (String name : onlineParams.keySet()) {
+            assertArrayEquals(onlineParams.get(name).getValue().getArray(),
+                    targetParams.get(name).getValue().getArray(), 0f);
+        }
+
+        Experience[] batch = new Experience[4];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Experience(
+                    new Variable(NdArray.of(new float[][]{{i, 1f}})), new Variable(NdArray.of(i % 3)), 1f,
+                    new Variable(NdArray.of(new float[][]{{i + 1f, 1f}})), false);
+        }
+        agent.learnBatch(batch);
+        assertEquals(1, agent.getTargetSync().getSoftUpdates());
+    }
+}
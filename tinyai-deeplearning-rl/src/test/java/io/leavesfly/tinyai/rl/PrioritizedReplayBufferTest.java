@@ -0,0 +1,99 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * TransitionBuffer、PrioritizedReplayBuffer与SumTree的单元测试
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class PrioritizedReplayBufferTest {
+
+    private static float[] state(float v) {
+        return new float[]{v, v + 0.5f};
+    }
+
+    @Test
+    public void testSumTreePrefixSearch() {
+        SumTree tree = new SumTree(5);
+        float[] priorities = {1f, 0f, 3f, 2f, 4f};
+        for (int i = 0; i < priorities.length; i++) {
+            tree.set(i, priorities[i]);
+        }
+        assertEquals(10f, tree.total(), 1e-6f);
+        assertEquals(0f, tree.min(), 0f);
+        assertEquals(0, tree.find(0.5f));
+        assertEquals(2, tree.find(1f));
+        assertEquals(2, tree.find(3.9f));
+        assertEquals(3, tree.find(4f));
+        assertEquals(4, tree.find(9.99f));
+
+        tree.set(2, 0.5f);
+        assertEquals(7.5f, tree.total(), 1e-6f);
+        assertEquals(0.5f, tree.get(2), 0f);
+    }
+
+    @Test
+    public void testRingBufferGatherIntoBatch() {
+        TransitionBuffer buffer = new TransitionBuffer(3, 2);
+        for (int i = 0; i < 5; i++) {
+            buffer.push(state(i), i % 2, i * 10f, state(i + 1), i == 4);
+        }
+        assertEquals(3, buffer.size());
+        assertTrue(buffer.isFull());
+
+        // 槽位0、1被第3、4条覆盖，槽位2保留第2条
+        TransitionBatch batch = buffer.gather(new int[]{0, 2, 1}, new float[]{1f, 1f, 1f});
+        assertEquals(Shape.of(3, 2), batch.getStates().getShape());
+        assertArrayEquals(new float[]{3f, 3.5f, 2f, 2.5f, 4f, 4.5f}, batch.getStates().getArray(), 0f);
+        assertArrayEquals(new float[]{4f, 4.5f, 3f, 3.5f, 5f, 5.5f}, batch.getNextStates().getArray(), 0f);
+        assertArrayEquals(new float[]{30f, 20f, 40f}, batch.getRewards(), 0f);
+        assertArrayEquals(new int[]{1, 0, 0}, batch.getActionIndices());
+        assertTrue(batch.getDones()[2]);
+
+        Experience experience = new Experience(
+                new Variable(NdArray.of(state(7), Shape.of(1, 2))), new Variable(NdArray.of(1)), 1f,
+                new Variable(NdArray.of(state(8), Shape.of(1, 2))), false);
+        int slot = buffer.push(experience);
+        assertEquals(2, slot);
+        assertEquals(3, buffer.sample(3).size());
+    }
+
+    @Test
+    public void testPrioritiesDriveSamplingAndWeights() {
+        PrioritizedReplayBuffer buffer = new PrioritizedReplayBuffer(4, 2, 1f, 0.5f, 0);
+        buffer.setSeed(42L);
+        for (int i = 0; i < 4; i++) {
+            buffer.push(state(i), 0, 0f, state(i), false);
+        }
+        // 新样本使用最大优先级
+        assertEquals(1f, buffer.getPriority(3), 0f);
+
+        buffer.updatePriorities(new int[]{0, 1, 2, 3}, new float[]{0f, 0f, 9f, 0f});
+        int hits = 0;
+        for (int round = 0; round < 50; round++) {
+            for (int index : buffer.sample(4).getIndices()) {
+                if (index == 2) {
+                    hits++;
+                }
+            }
+        }
+        assertTrue("高优先级样本应占绝大多数: " + hits, hits > 190);
+
+        TransitionBatch batch = buffer.sample(4);
+        // 重要性采样权重：高优先级样本权重最小，归一化后最大权重不超过1
+        for (int i = 0; i < batch.size(); i++) {
+            float w = batch.getWeights()[i];
+            assertTrue(w > 0f && w <= 1f + 1e-6f);
+            if (batch.getIndices()[i] == 2) {
+                assertTrue(w < 1e-2f);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.leavesfly.tinyai.rl;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.rl.agent.DQNAgent;
+import io.leavesfly.tinyai.rl.agent.REINFORCEAgent;
+import io.leavesfly.tinyai.rl.environment.CartPoleEnvironment;
+import io.leavesfly.tinyai.rl.environment.GridWorldEnvironment;
+import io.leavesfly.tinyai.rl.environment.MultiArmedBanditEnvironment;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * VectorEnvironment类的单元测试
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class VectorEnvironmentTest {
+
+    @Test
+    public void testStepMatchesIndependentEnvironments() {
+        int n = 4;
+        long[] seeds = {1L, 2L, 3L, 4L};
+        Environment[] envs = new Environment[n];
+        CartPoleEnvironment[] references = new CartPoleEnvironment[n];
+        for (int i = 0; i < n; i++) {
+            envs[i] = new CartPoleEnvironment(seeds[i]);
+            references[i] = new CartPoleEnvironment(seeds[i]);
+        }
+
+        try (VectorEnvironment vecEnv = new VectorEnvironment(envs, 2)) {
+            NdArray states = vecEnv.reset();
+            assertEquals(n, states.getShape().getDimension(0));
+            assertEquals(4, states.getShape().getDimension(1));
+            for (int i = 0; i < n; i++) {
+                float[] expected = references[i].reset().getValue().getArray();
+                for (int j = 0; j < 4; j++) {
+                    assertEquals(expected[j], states.getArray()[i * 4 + j], 0f);
+                }
+            }
+
+            int[] actions = {0, 1, 1, 0};
+            VectorEnvironment.VectorStepResult result = vecEnv.step(actions);
+            for (int i = 0; i < n; i++) {
+                Environment.StepResult expected = references[i].step(
+                        new Variable(NdArray.of(new float[]{actions[i]}, Shape.of(1))));
+                assertEquals(expected.getReward(), result.getRewards()[i], 0f);
+                assertArrayEquals(expected.getNextState().getValue().getArray(),
+                        result.getTransitionNextState(i).getValue().getArray(), 0f);
+            }
+            assertEquals(n, vecEnv.getTotalSteps());
+        }
+    }
+
+    @Test
+    public void testAutoResetOnDone() {
+        float[] rewards = {0.1f, 0.9f};
+        try (VectorEnvironment vecEnv = new VectorEnvironment(
+                () -> new MultiArmedBanditEnvironment(rewards, 3), 3)) {
+            vecEnv.reset();
+            for (int step = 0; step < 3; step++) {
+                VectorEnvironment.VectorStepResult result = vecEnv.step(new int[]{1, 0, 1});
+                for (int i = 0; i < 3; i++) {
+                    assertEquals(step == 2, result.getDones()[i]);
+                    assertEquals(step == 2, result.getFinalStates()[i] != null);
+                }
+            }
+            assertEquals(3, vecEnv.getCompletedLengths().size());
+            assertEquals(Integer.valueOf(3), vecEnv.getCompletedLengths().get(0));
+            assertEquals(3, vecEnv.drainCompletedReturns().size());
+
+            // 自动重置后可以继续推进而不抛出回合结束异常
+            VectorEnvironment.VectorStepResult next = vecEnv.step(new int[]{0, 0, 0});
+            assertFalse(next.getDones()[0]);
+        }
+    }
+
+    @Test
+    public void testBatchedActionSelection() {
+        try (VectorEnvironment vecEnv = new VectorEnvironment(() -> new GridWorldEnvironment(4, 4), 5)) {
+            NdArray states = vecEnv.reset();
+
+            DQNAgent dqn = new DQNAgent("dqn", 2, 4, new int[]{8}, 0.01f, 0.0f, 0.99f, 4, 100, 10);
+            dqn.setTraining(false);
+            int[] greedy = dqn.selectActions(states);
+            assertEquals(5, greedy.length);
+            // 批量贪婪动作应与逐个选择一致
+            for (int i = 0; i < greedy.length; i++) {
+                int single = (int) dqn.selectAction(rowOf(states, i)).getValue().getNumber().floatValue();
+                assertEquals(single, greedy[i]);
+            }
+
+            REINFORCEAgent reinforce = new REINFORCEAgent("pg", 2, 4, new int[]{8}, 0.01f, 0.99f, false);
+            int[] sampled = reinforce.selectActions(states);
+            for (int action : sampled) {
+                assertTrue(action >= 0 && action < 4);
+            }
+
+            VectorEnvironment.VectorStepResult result = vecEnv.step(sampled);
+            assertEquals(5, result.getRewards().length);
+        }
+    }
+
+    private static Variable rowOf(NdArray states, int row) {
+        int dim = states.getShape().getDimension(1);
+        float[] data = new float[dim];
+        System.arraycopy(states.getArray(), row * dim, data, 0, dim);
+        return new Variable(NdArray.of(data, Shape.of(1, dim)));
+    }
+}
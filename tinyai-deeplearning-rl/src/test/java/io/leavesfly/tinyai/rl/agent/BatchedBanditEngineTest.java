@@ -0,0 +1,146 @@
+package io.leavesfly.tinyai.rl.agent;
+
+import io.leavesfly.tinyai.func.Variable;
+import io.leavesfly.tinyai.ndarr.NdArray;
+import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.rl.Experience;
+import io.leavesfly.tinyai.rl.environment.MultiArmedBanditEnvironment;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * BatchedBanditEngine类的单元测试
+ *
+ * @author leavesfly
+ */
+public class BatchedBanditEngineTest {
+
+    private Experience createExperience(int action, float reward) {
+        Variable state = new Variable(NdArray.of(new float[]{0.0f}, Shape.of(1)));
+        Variable actionVar = new Variable(NdArray.of(new float[]{action}, Shape.of(1)));
+        return new Experience(state, actionVar, reward, state, false);
+    }
+
+    @Test
+    public void testThompsonPosteriorMatchesSingleAgent() {
+        BatchedBanditEngine engine = new BatchedBanditEngine(3, 4, BatchedBanditEngine.Strategy.THOMPSON);
+        engine.setThompsonPrior(0.5f, 2.0f, 1.5f);
+        ThompsonSamplingBanditAgent agent = new ThompsonSamplingBanditAgent("ts", 4, 0.5f, 2.0f, 1.5f);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int arm = random.nextInt(4);
+            float reward = (float) random.nextGaussian() + arm;
+            engine.update(1, arm, reward);
+            agent.learn(createExperience(arm, reward));
+        }
+        for (int arm = 0; arm < 4; arm++) {
+            assertEquals(agent.getPosteriorMean(arm), engine.getPosteriorMean(1, arm), 1e-4);
+            assertEquals(agent.getActionCount(arm), engine.getCount(1, arm));
+            assertEquals(agent.getEstimatedReward(arm), engine.getEstimatedReward(1, arm), 1e-4);
+        }
+        assertEquals(0, engine.getTotalPulls(0));
+        assertEquals(200, engine.getTotalPulls(1));
+    }
+
+    @Test
+    public void testConcurrentUpdatesAreNotLost() throws InterruptedException {
+        BatchedBanditEngine engine = new BatchedBanditEngine(4, 3, BatchedBanditEngine.Strategy.UCB);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    engine.update(i % 4, i % 3, 0.5f);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = 0;
+        for (int experiment = 0; experiment < 4; experiment++) {
+            total += engine.getTotalPulls(experiment);
+            for (int arm = 0; arm < 3; arm++) {
+                assertEquals(0.5f, engine.getEstimatedReward(experiment, arm), 1e-6);
+            }
+        }
+        assertEquals(40000, total);
+    }
+
+    @Test
+    public void testBatchedSelectionFindsBestArmPerExperiment() {
+        int numExperiments = 20;
+        int numArms = 5;
+        for (BatchedBanditEngine.Strategy strategy : BatchedBanditEngine.Strategy.values()) {
+            BatchedBanditEngine engine = new BatchedBanditEngine(numExperiments, numArms, strategy);
+            List<MultiArmedBanditEnvironment> environments = new ArrayList<>();
+            for (int experiment = 0; experiment < numExperiments; experiment++) {
+                float[] trueRewards = new float[numArms];
+                trueRewards[experiment % numArms] = 1.0f;
+                MultiArmedBanditEnvironment environment = new MultiArmedBanditEnvironment(trueRewards,
+                        new float[]{0.1f, 0.1f, 0.1f, 0.1f, 0.1f}, 10000);
+                environment.setSeed(experiment);
+                environment.reset();
+                environments.add(environment);
+            }
+
+            // 每批为每个实验发出4个请求
+            int[] experiments = new int[numExperiments * 4];
+            for (int r = 0; r < experiments.length; r++) {
+                experiments[r] = r % numExperiments;
+            }
+            int[] arms = new int[experiments.length];
+            Random random = new Random(9);
+            for (int round = 0; round < 100; round++) {
+                engine.selectArms(experiments, arms, random);
+                for (int r = 0; r < experiments.length; r++) {
+                    float[] reward = new float[1];
+                    environments.get(experiments[r]).pullArms(new int[]{arms[r]}, reward);
+                    engine.update(experiments[r], arms[r], reward[0]);
+                }
+            }
+
+            for (int experiment = 0; experiment < numExperiments; experiment++) {
+                assertEquals(strategy + " 实验 " + experiment,
+                        experiment % numArms, engine.bestArm(experiment));
+                assertEquals(environments.get(experiment).getOptimalArm(), engine.bestArm(experiment));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExperimentRejected() {
+        new BatchedBanditEngine(2, 2, BatchedBanditEngine.Strategy.EPSILON_GREEDY).update(2, 0, 1.0f);
+    }
+
+    @Test
+    public void testBatchSelectionMatchesSingleSelectionOnSparseExperiments() {
+        int numExperiments = 200_000;
+        BatchedBanditEngine engine = new BatchedBanditEngine(numExperiments, 3, BatchedBanditEngine.Strategy.UCB);
+        Random random = new Random(17);
+        // 批次只涉及少数实验，且包含重复实验和哈希冲突的情况
+        int[] experiments = new int[64];
+        for (int r = 0; r < experiments.length; r++) {
+            experiments[r] = r % 2 == 0 ? random.nextInt(numExperiments) : (r % 5) * 40_000;
+        }
+        for (int i = 0; i < 2000; i++) {
+            int experiment = experiments[random.nextInt(experiments.length)];
+            int arm = random.nextInt(3);
+            engine.update(experiment, arm, (float) random.nextGaussian() + (experiment + arm) % 3);
+        }
+
+        int[] arms = new int[experiments.length];
+        engine.selectArms(experiments, arms, random);
+        for (int r = 0; r < experiments.length; r++) {
+            assertEquals(engine.selectArm(experiments[r], random), arms[r]);
+        }
+    }
+}
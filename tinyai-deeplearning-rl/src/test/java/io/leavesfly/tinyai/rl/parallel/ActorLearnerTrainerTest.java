@@ -0,0 +1,93 @@
+package io.leavesfly.tinyai.rl.parallel;
+
+import io.leavesfly.tinyai.nnet.Parameter;
+import io.leavesfly.tinyai.rl.agent.DQNAgent;
+import io.leavesfly.tinyai.rl.agent.EpsilonGreedyBanditAgent;
+import io.leavesfly.tinyai.rl.agent.REINFORCEAgent;
+import io.leavesfly.tinyai.rl.environment.CartPoleEnvironment;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ActorLearnerTrainer与WeightSnapshot的单元测试
+ *
+ * @author leavesfly
+ * @version 0.01
+ */
+public class ActorLearnerTrainerTest {
+
+    private static DQNAgent dqn(String name, int bufferSize) {
+        return new DQNAgent(name, 4, 2, new int[]{16}, 0.001f, 0.1f, 0.99f, 8, bufferSize, 20);
+    }
+
+    @Test
+    public void testSnapshotIsIsolatedFromLaterUpdates() {
+        DQNAgent source = dqn("source", 10);
+        DQNAgent target = dqn("target", 10);
+        ParameterServer server = new ParameterServer();
+        assertEquals(-1, server.getVersion());
+
+        long version = server.publish(source.getAllParams());
+        assertEquals(0, version);
+        WeightSnapshot snapshot = server.latest();
+
+        // 发布之后修改源参数，不影响已发布的快照
+        for (Parameter parameter : source.getAllParams().values()) {
+            parameter.getValue().getArray()[0] += 100f;
+        }
+        snapshot.applyTo(target.getAllParams());
+
+        Map<String, Parameter> sourceParams = source.getAllParams();
+        for (Map.Entry<String, Parameter> entry : target.getAllParams().entrySet()) {
+            float[] copied = entry.getValue().getValue().getArray();
+            float[] current = sourceParams.get(entry.getKey()).getValue().getArray();
+            assertEquals(current[0] - 100f, copied[0], 1e-4f);
+        }
+        assertEquals(1, server.publish(source.getAllParams()));
+    }
+
+    @Test
+    public void testDqnActorsFeedSharedReplay() {
+        DQNAgent learner = dqn("learner", 2000);
+        ActorLearnerTrainer trainer = new ActorLearnerTrainer(learner, () -> dqn("actor", 1),
+                CartPoleEnvironment::new, 3);
+        trainer.setPublishInterval(5);
+        trainer.setSyncInterval(10);
+        trainer.run(1500, 30);
+
+        assertTrue(trainer.getEnvSteps() > 0);
+        assertTrue(trainer.getUpdates() > 0);
+        assertTrue(learner.getReplayBuffer().size() >= learner.getBatchSize());
+        assertTrue(trainer.getActorSyncs() >= 3);
+        assertTrue(trainer.getStepsPerSecond() > 0);
+        assertNotNull(trainer.getThroughputReport());
+    }
+
+    @Test
+    public void testReinforceLearnsFromActorEpisodes() {
+        REINFORCEAgent learner = new REINFORCEAgent("pg", 4, 2, new int[]{16}, 0.01f, 0.99f, true);
+        String name = learner.getAllParams().keySet().iterator().next();
+        float[] initial = learner.getAllParams().get(name).getValue().getArray().clone();
+
+        ActorLearnerTrainer trainer = new ActorLearnerTrainer(learner,
+                () -> new REINFORCEAgent("actor", 4, 2, new int[]{16}, 0.01f, 0.99f, false),
+                CartPoleEnvironment::new, 2);
+        trainer.setPublishInterval(1);
+        trainer.run(100000, 5);
+
+        assertEquals(5, trainer.getUpdates());
+        assertTrue(trainer.getEpisodes() >= 5);
+        assertTrue(trainer.getWeightVersion() >= 5);
+        assertFalse(Arrays.equals(initial, learner.getAllParams().get(name).getValue().getArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedLearnerRejected() {
+        new ActorLearnerTrainer(new EpsilonGreedyBanditAgent("bandit", 3, 0.1f),
+                () -> null, CartPoleEnvironment::new, 1);
+    }
+}
@@ -10,6 +10,7 @@ import io.leavesfly.tinyai.ml.loss.Loss;
 import io.leavesfly.tinyai.ml.optimize.Optimizer;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.rl.ParameterSync;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -44,6 +45,13 @@ public class RLTrainer extends Trainer {
     private float reflectionRewardWeight = 0.2f;
     private float consistencyRewardWeight = 0.1f;
     
+    // 参考模型：策略模型的滞后副本，通过扁平数组同步维护
+    private DeepSeekR1Model referenceModel;
+    private ParameterSync referenceSync;
+    private float referenceTau = 1.0f;
+    private int referenceSyncInterval = 1;
+    private int rlStepCount = 0;
+    
     // 训练统计
     private List<Float> rewardHistory;
     private List<Float> qualityHistory;
@@ -168,6 +176,7 @@ public class RLTrainer extends Trainer {
         // 更新参数
         // 这里需要访问optimizer，但由于父类封装，我们用一个简化方法
         performParameterUpdate();
+        syncReferenceModel();
         
         // 9. 更新统计信息
         updateTrainingMetrics(rewards, policyLoss, valueLoss, entropyLoss, totalReward);
@@ -435,6 +444,42 @@ public class RLTrainer extends Trainer {
         // 这是一个简化的占位符实现
     }
     
+    /**
+     * 设置参考模型
+     * 
+     * 参考模型与策略模型结构相同，设置时先与策略模型完全同步，
+     * 之后每referenceSyncInterval个训练步以τ做一次Polyak平均（τ=1为硬拷贝），
+     * 可用于KL约束或一致性比较等需要稳定参考策略的场景。
+     * 
+     * @param reference 参考模型（与策略模型结构一致）
+     * @param tau Polyak平均系数，取值 (0, 1]
+     * @param syncInterval 同步间隔（训练步数）
+     */
+    public void setReferenceModel(DeepSeekR1Model reference, float tau, int syncInterval) {
+        if (deepseekModel == null) {
+            throw new IllegalStateException("请先调用init初始化策略模型");
+        }
+        this.referenceModel = reference;
+        this.referenceSync = new ParameterSync(deepseekModel, reference);
+        this.referenceTau = tau;
+        this.referenceSyncInterval = Math.max(1, syncInterval);
+        referenceSync.hardUpdate();
+    }
+    
+    /**
+     * 按间隔同步参考模型
+     */
+    private void syncReferenceModel() {
+        rlStepCount++;
+        if (referenceSync != null && rlStepCount % referenceSyncInterval == 0) {
+            referenceSync.softUpdate(referenceTau);
+        }
+    }
+    
+    public DeepSeekR1Model getReferenceModel() {
+        return referenceModel;
+    }
+    
     /**
      * 更新训练指标
      */
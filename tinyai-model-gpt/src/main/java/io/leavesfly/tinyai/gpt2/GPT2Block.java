@@ -4,9 +4,15 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.LayerAble;
+import io.leavesfly.tinyai.nnet.block.CheckpointBlock;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
 import io.leavesfly.tinyai.nnet.layer.transformer.LayerNorm;
+import io.leavesfly.tinyai.nnet.layer.transformer.MultiHeadAttention;
+import io.leavesfly.tinyai.nnet.layer.transformer.PrefixKVCache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -41,12 +47,18 @@ public class GPT2Block extends Block {
     /** Transformer块列表 */
     private List<GPT2TransformerBlock> transformerBlocks;
     
+    /** 启用激活检查点后前向实际执行的块，部分块被包装为CheckpointBlock；为null表示未启用 */
+    private LayerAble[] checkpointedBlocks;
+    
     /** 最终层归一化 */
     private LayerNorm finalLayerNorm;
     
     /** 输出头 */
     private GPT2OutputHead outputHead;
     
+    /** 跨请求共享的前缀KV缓存，为null表示不复用前缀 */
+    private PrefixKVCache prefixCache;
+    
     /**
      * 构造GPT-2 Block
      * 
@@ -138,8 +150,14 @@ public class GPT2Block extends Block {
         
         // 2. 通过所有Transformer块
         Variable hidden = embeddings;
-        for (GPT2TransformerBlock transformerBlock : transformerBlocks) {
-            hidden = transformerBlock.layerForward(hidden);
+        if (checkpointedBlocks != null) {
+            for (LayerAble block : checkpointedBlocks) {
+                hidden = block.layerForward(hidden);
+            }
+        } else {
+            for (GPT2TransformerBlock transformerBlock : transformerBlocks) {
+                hidden = transformerBlock.layerForward(hidden);
+            }
         }
         
         // 3. 最终层归一化
@@ -243,6 +261,119 @@ public class GPT2Block extends Block {
         return newSequence;
     }
     
+    /**
+     * 创建与本模型结构匹配的空KV缓存
+     * 
+     * @return KV缓存
+     */
+    public KVCache createKVCache() {
+        MultiHeadAttention attention = transformerBlocks.get(0).getAttention();
+        return new KVCache(transformerBlocks.size(), attention.getNumHeads(), attention.getHeadDim());
+    }
+    
+    /**
+     * 带KV缓存的增量前向传播（仅推理，batch_size = 1）
+     * 
+     * 只计算新token，历史token的键值从缓存读取，新token的位置从缓存长度开始编号
+     * 
+     * @param tokenIds 新token序列 (1, new_len)
+     * @param cache KV缓存，调用后长度增加new_len
+     * @return 新token的logits (1, new_len, vocab_size)
+     */
+    public Variable forwardWithCache(NdArray tokenIds, KVCache cache) {
+        Variable hidden = tokenEmbedding.forwardWithOffset(new Variable(tokenIds), cache.getLength());
+        for (GPT2TransformerBlock transformerBlock : transformerBlocks) {
+            hidden = transformerBlock.forwardWithCache(hidden, cache);
+        }
+        return outputHead.layerForward(finalLayerNorm.layerForward(hidden));
+    }
+    
+    /**
+     * 预填充提示词：从前缀缓存中复用最长的已缓存前缀，只计算剩余部分，完成后把整条提示词放入前缀缓存
+     * 
+     * @param tokens 提示词token序列
+     * @param cache 空的KV缓存，返回时包含整条提示词的键值
+     * @return 未复用部分的logits (1, len - reused, vocab_size)，最后一行为下一个token的预测
+     */
+    public Variable prefill(int[] tokens, KVCache cache) {
+        if (tokens.length == 0) {
+            throw new IllegalArgumentException("提示词不能为空");
+        }
+        if (cache.getLength() != 0) {
+            throw new IllegalArgumentException("预填充需要空的KV缓存");
+        }
+        int reused = 0;
+        if (prefixCache != null) {
+            // 至少保留一个token计算，才能得到下一个token的logits
+            PrefixKVCache.Match match = prefixCache.lookup(tokens, tokens.length - 1);
+            if (match.getLength() > 0) {
+                cache.copyFrom(match.getCache());
+                reused = match.getLength();
+            }
+        }
+        Variable logits = forwardWithCache(toTokenArray(tokens, reused, tokens.length), cache);
+        if (prefixCache != null) {
+            prefixCache.insert(tokens, cache);
+        }
+        return logits;
+    }
+    
+    /**
+     * 使用KV缓存的贪心生成：提示词预填充一次，之后每步只计算一个新token
+     * 
+     * @param promptTokens 提示词token序列
+     * @param maxNewTokens 最多生成的token数
+     * @return 提示词加生成结果的完整序列
+     */
+    public int[] generateWithCache(int[] promptTokens, int maxNewTokens) {
+        KVCache cache = createKVCache();
+        int[] sequence = Arrays.copyOf(promptTokens, promptTokens.length + Math.max(0, maxNewTokens));
+        int length = promptTokens.length;
+        Variable logits = prefill(promptTokens, cache);
+        for (int i = 0; i < maxNewTokens && length < config.getNPositions(); i++) {
+            sequence[length++] = argmaxLast(logits.getValue());
+            if (i + 1 < maxNewTokens && length < config.getNPositions()) {
+                logits = forwardWithCache(toTokenArray(sequence, length - 1, length), cache);
+            }
+        }
+        if (prefixCache != null && cache.getLength() > promptTokens.length) {
+            // 多轮对话时下一轮的提示词通常以本轮的完整对话开头
+            prefixCache.insert(Arrays.copyOf(sequence, cache.getLength()), cache);
+        }
+        return Arrays.copyOf(sequence, length);
+    }
+    
+    private static NdArray toTokenArray(int[] tokens, int from, int to) {
+        NdArray result = NdArray.of(Shape.of(1, to - from));
+        for (int i = from; i < to; i++) {
+            result.set(tokens[i], 0, i - from);
+        }
+        return result;
+    }
+    
+    private static int argmaxLast(NdArray logits) {
+        int last = logits.getShape().getDimension(1) - 1;
+        int vocabSize = logits.getShape().getDimension(2);
+        int best = 0;
+        for (int v = 1; v < vocabSize; v++) {
+            if (logits.get(0, last, v) > logits.get(0, last, best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * 设置跨请求共享的前缀KV缓存，为null时关闭前缀复用
+     */
+    public void setPrefixCache(PrefixKVCache prefixCache) {
+        this.prefixCache = prefixCache;
+    }
+    
+    public PrefixKVCache getPrefixCache() {
+        return prefixCache;
+    }
+    
     /**
      * 获取模型参数数量
      * 
@@ -313,6 +444,25 @@ public class GPT2Block extends Block {
         return transformerBlocks.get(index);
     }
     
+    /**
+     * 启用激活检查点：每隔everyN个Transformer块对一个块做检查点，
+     * 该块的中间激活在前向后释放，反向时重算
+     * 
+     * @param everyN 间隔，1表示每个块都启用，小于等于0表示关闭
+     */
+    public void setActivationCheckpointing(int everyN) {
+        checkpointedBlocks = everyN > 0 ? CheckpointBlock.wrapEvery(transformerBlocks, everyN) : null;
+    }
+    
+    /**
+     * 获取激活检查点的显存与计算权衡统计
+     * 
+     * @return 统计信息，未启用时返回null
+     */
+    public String getCheckpointReport() {
+        return checkpointedBlocks != null ? CheckpointBlock.summarize(checkpointedBlocks) : null;
+    }
+    
     /**
      * 获取最终层归一化
      * 
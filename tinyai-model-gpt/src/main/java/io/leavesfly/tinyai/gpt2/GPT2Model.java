@@ -4,6 +4,7 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ml.Model;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.layer.transformer.PrefixKVCache;
 
 /**
  * GPT-2模型类
@@ -98,6 +99,24 @@ public class GPT2Model extends Model {
         return gpt2Block.generateSequence(startTokenIds, maxLength);
     }
     
+    /**
+     * 使用KV缓存的贪心生成，配合 {@link #setPrefixCache} 可跨请求复用相同前缀
+     */
+    public int[] generateWithCache(int[] promptTokens, int maxNewTokens) {
+        return gpt2Block.generateWithCache(promptTokens, maxNewTokens);
+    }
+    
+    /**
+     * 设置跨请求共享的前缀KV缓存
+     */
+    public void setPrefixCache(PrefixKVCache prefixCache) {
+        gpt2Block.setPrefixCache(prefixCache);
+    }
+    
+    public PrefixKVCache getPrefixCache() {
+        return gpt2Block.getPrefixCache();
+    }
+    
     /**
      * 验证输入序列的有效性
      */
@@ -123,16 +123,26 @@ public class GPT2TokenEmbedding extends Layer {
     
     @Override
     public Variable layerForward(Variable... inputs) {
-        Variable tokenIds = inputs[0];  // shape: (batchSize, sequenceLength)
+        return forwardWithOffset(inputs[0], 0);
+    }
+    
+    /**
+     * 从指定位置开始的嵌入（增量解码时新token的位置从已缓存长度开始）
+     * 
+     * @param tokenIds Token ID，形状 (batchSize, sequenceLength)
+     * @param positionOffset 第一个token的绝对位置
+     * @return 嵌入结果，形状 (batchSize, sequenceLength, nEmbd)
+     */
+    public Variable forwardWithOffset(Variable tokenIds, int positionOffset) {
         NdArray tokenData = tokenIds.getValue();
         
         int batchSize = tokenData.getShape().getDimension(0);
         int sequenceLength = tokenData.getShape().getDimension(1);
         
         // 验证序列长度
-        if (sequenceLength > nPositions) {
+        if (positionOffset + sequenceLength > nPositions) {
             throw new IllegalArgumentException(
-                String.format("输入序列长度(%d)超过最大位置数(%d)", sequenceLength, nPositions)
+                String.format("输入序列长度(%d)超过最大位置数(%d)", positionOffset + sequenceLength, nPositions)
             );
         }
         
@@ -142,7 +152,7 @@ public class GPT2TokenEmbedding extends Layer {
         // 2. 获取位置嵌入（如果使用）
         Variable result = tokenEmbeds;
         if (usePositionEmbedding) {
-            Variable positionEmbeds = getPositionEmbeddings(sequenceLength, batchSize);
+            Variable positionEmbeds = getPositionEmbeddings(sequenceLength, batchSize, positionOffset);
             // 相加组合Token和位置嵌入
             result = new Variable(tokenEmbeds.getValue().add(positionEmbeds.getValue()));
         }
@@ -185,16 +195,17 @@ public class GPT2TokenEmbedding extends Layer {
      * 
      * @param sequenceLength 序列长度
      * @param batchSize 批次大小
+     * @param positionOffset 起始位置
      * @return 位置嵌入变量
      */
-    private Variable getPositionEmbeddings(int sequenceLength, int batchSize) {
+    private Variable getPositionEmbeddings(int sequenceLength, int batchSize, int positionOffset) {
         NdArray posEmbeds = NdArray.of(Shape.of(batchSize, sequenceLength, nEmbd));
         
         // 为每个位置添加位置嵌入
         for (int b = 0; b < batchSize; b++) {
             for (int s = 0; s < sequenceLength; s++) {
                 // 复制对应位置的嵌入向量
-                copyPositionVector(posEmbeds, s, b, s);
+                copyPositionVector(posEmbeds, positionOffset + s, b, s);
             }
         }
         
@@ -4,6 +4,7 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
 import io.leavesfly.tinyai.nnet.layer.transformer.LayerNorm;
 import io.leavesfly.tinyai.nnet.layer.transformer.MultiHeadAttention;
 import io.leavesfly.tinyai.nnet.layer.transformer.FeedForward;
@@ -130,6 +131,23 @@ public class GPT2TransformerBlock extends Block {
         return result;
     }
     
+    /**
+     * 带键值缓存的增量前向传播（仅推理，batch_size = 1），结构与 {@link #layerForward} 相同
+     * 
+     * @param x 新token的隐藏状态 (1, new_len, n_embd)
+     * @param cache 键值缓存，使用第 layerIdx 层
+     * @return 新token的输出 (1, new_len, n_embd)
+     */
+    public Variable forwardWithCache(Variable x, KVCache cache) {
+        Variable ln1Output = layerNorm1.layerForward(x);
+        Variable attnOutput = attention.forwardWithCache(ln1Output, cache, layerIdx);
+        Variable residual1 = addResidualConnection(x, attnOutput);
+        
+        Variable ln2Output = layerNorm2.layerForward(residual1);
+        Variable ffnOutput = feedForward.layerForward(ln2Output);
+        return addResidualConnection(residual1, ffnOutput);
+    }
+    
     /**
      * 添加残差连接
      * 
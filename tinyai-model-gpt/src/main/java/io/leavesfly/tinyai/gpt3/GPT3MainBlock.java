@@ -7,6 +7,8 @@ import io.leavesfly.tinyai.gpt2.GPT2TokenEmbedding;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.LayerAble;
+import io.leavesfly.tinyai.nnet.block.CheckpointBlock;
 import io.leavesfly.tinyai.nnet.layer.transformer.LayerNorm;
 
 import java.util.ArrayList;
@@ -38,6 +40,11 @@ class GPT3MainBlock extends Block {
      */
     private List<GPT3TransformerBlock> transformerBlocks;
 
+    /**
+     * 启用激活检查点后前向实际执行的块，为null表示未启用
+     */
+    private LayerAble[] checkpointedBlocks;
+
     /**
      * 最终层归一化
      */
@@ -122,8 +129,14 @@ class GPT3MainBlock extends Block {
 
         // 2. 通过所有GPT-3 Transformer块
         Variable hidden = embeddings;
-        for (GPT3TransformerBlock transformerBlock : transformerBlocks) {
-            hidden = transformerBlock.layerForward(hidden);
+        if (checkpointedBlocks != null) {
+            for (LayerAble block : checkpointedBlocks) {
+                hidden = block.layerForward(hidden);
+            }
+        } else {
+            for (GPT3TransformerBlock transformerBlock : transformerBlocks) {
+                hidden = transformerBlock.layerForward(hidden);
+            }
         }
 
         // 3. 最终层归一化
@@ -234,6 +247,22 @@ class GPT3MainBlock extends Block {
         return totalParams;
     }
 
+    /**
+     * 启用激活检查点：每隔everyN个Transformer块对一个块做检查点
+     *
+     * @param everyN 间隔，1表示每个块都启用，小于等于0表示关闭
+     */
+    public void setActivationCheckpointing(int everyN) {
+        checkpointedBlocks = everyN > 0 ? CheckpointBlock.wrapEvery(transformerBlocks, everyN) : null;
+    }
+
+    /**
+     * 获取激活检查点的显存与计算权衡统计，未启用时返回null
+     */
+    public String getCheckpointReport() {
+        return checkpointedBlocks != null ? CheckpointBlock.summarize(checkpointedBlocks) : null;
+    }
+
     // ==================== Getter方法 ====================
 
     public GPT3Config getConfig() {
@@ -3,6 +3,8 @@ package io.leavesfly.tinyai.gpt2;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
+import io.leavesfly.tinyai.nnet.layer.transformer.PrefixKVCache;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -195,4 +197,51 @@ public class GPT2ModelTest {
         GPT2Config largeConfig = GPT2Config.createLargeConfig();
         assertEquals("大型配置嵌入维度应该正确", 1280, largeConfig.getNEmbd());
     }
+
+    @Test
+    public void testPrefixKVCacheMatchesFullForward() {
+        GPT2Block block = model.getGPT2Block();
+        int[] prompt = {5, 17, 42, 8, 23, 61};
+        NdArray input = NdArray.of(Shape.of(1, prompt.length));
+        for (int i = 0; i < prompt.length; i++) {
+            input.set(prompt[i], 0, i);
+        }
+        NdArray full = model.predict(input).getValue();
+        
+        // 冷启动：整条提示词一次预填充
+        block.setPrefixCache(new PrefixKVCache(1 << 22));
+        KVCache cold = block.createKVCache();
+        NdArray coldLogits = block.prefill(prompt, cold).getValue();
+        assertEquals("预填充后缓存长度应等于提示词长度", prompt.length, cold.getLength());
+        assertLastLogitsEqual(full, coldLogits);
+        
+        // 热启动：共享前4个token，只计算剩余部分
+        int[] sharedPrefix = {5, 17, 42, 8, 99, 3};
+        NdArray sharedInput = NdArray.of(Shape.of(1, sharedPrefix.length));
+        for (int i = 0; i < sharedPrefix.length; i++) {
+            sharedInput.set(sharedPrefix[i], 0, i);
+        }
+        NdArray sharedFull = model.predict(sharedInput).getValue();
+        KVCache warm = block.createKVCache();
+        NdArray warmLogits = block.prefill(sharedPrefix, warm).getValue();
+        assertEquals("只应计算未命中的2个token", 2, warmLogits.getShape().getDimension(1));
+        assertLastLogitsEqual(sharedFull, warmLogits);
+        assertEquals("第二次查找应命中", 1, block.getPrefixCache().getHits());
+        
+        // 增量生成与无缓存的逐步生成结果一致
+        NdArray expected = model.generateSequence(input, 3);
+        int[] generated = model.generateWithCache(prompt, 3);
+        assertEquals(expected.getShape().getDimension(1), generated.length);
+        for (int i = 0; i < generated.length; i++) {
+            assertEquals("第" + i + "个token应一致", (int) expected.get(0, i), generated[i]);
+        }
+    }
+    
+    private void assertLastLogitsEqual(NdArray full, NdArray cached) {
+        int fullLast = full.getShape().getDimension(1) - 1;
+        int cachedLast = cached.getShape().getDimension(1) - 1;
+        for (int v = 0; v < config.getVocabSize(); v++) {
+            assertEquals(full.get(0, fullLast, v), cached.get(0, cachedLast, v), 1e-3f);
+        }
+    }
 }
\ No newline at end of file
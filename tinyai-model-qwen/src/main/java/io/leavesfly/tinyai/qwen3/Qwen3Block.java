@@ -4,11 +4,17 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.LayerAble;
+import io.leavesfly.tinyai.nnet.block.CheckpointBlock;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
 import io.leavesfly.tinyai.nnet.layer.embedd.Embedding;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
+import io.leavesfly.tinyai.nnet.layer.transformer.PrefixKVCache;
 import io.leavesfly.tinyai.qwen3.block.Qwen3DecoderBlock;
 import io.leavesfly.tinyai.qwen3.layer.RMSNormLayer;
 
+import java.util.Arrays;
+
 /**
  * Qwen3Block - Qwen3模型的核心网络块
  * 
@@ -34,6 +40,9 @@ public class Qwen3Block extends Block {
     /** 解码器块列表 */
     private Qwen3DecoderBlock[] decoderBlocks;
     
+    /** 启用激活检查点后前向实际执行的解码器块，为null表示未启用 */
+    private LayerAble[] checkpointedBlocks;
+    
     /** 最终归一化层 */
     private RMSNormLayer finalNorm;
     
@@ -43,6 +52,9 @@ public class Qwen3Block extends Block {
     /** 语言模型头（词汇表投影层） */
     private LinearLayer lmHead;
     
+    /** 跨请求共享的前缀KV缓存，为null表示不复用前缀 */
+    private PrefixKVCache prefixCache;
+    
     /**
      * 构造Qwen3Block（不含语言模型头）
      * 
@@ -175,7 +187,8 @@ public class Qwen3Block extends Block {
         Variable hiddenStates = embedTokens.layerForward(inputIds);
         
         // 2. 通过所有解码器块
-        for (Qwen3DecoderBlock decoderBlock : decoderBlocks) {
+        LayerAble[] blocks = checkpointedBlocks != null ? checkpointedBlocks : decoderBlocks;
+        for (LayerAble decoderBlock : blocks) {
             if (attentionMask != null) {
                 hiddenStates = decoderBlock.layerForward(hiddenStates, attentionMask);
             } else {
@@ -188,24 +201,160 @@ public class Qwen3Block extends Block {
         
         // 4. 如果有语言模型头，进行最终投影
         if (withLMHead && lmHead != null) {
-            // 将3D输入重塑为2D进行线性变换
-            NdArray hiddenData = hiddenStates.getValue();
-            Shape hiddenShape = hiddenData.getShape();
-            int batchSize = hiddenShape.getDimension(0);
-            int seqLen = hiddenShape.getDimension(1);
-            int hiddenSize = hiddenShape.getDimension(2);
-            
-            NdArray hidden2D = reshape3DTo2D(hiddenData, batchSize, seqLen, hiddenSize);
-            Variable logits = lmHead.layerForward(new Variable(hidden2D));
-            
-            // 重塑回3D：[batch_size, seq_len, vocab_size]
-            NdArray logits3D = reshape2DTo3D(logits.getValue(), batchSize, seqLen, config.getVocabSize());
-            hiddenStates = new Variable(logits3D);
+            hiddenStates = projectToVocab(hiddenStates);
         }
         
         return hiddenStates;
     }
     
+    /**
+     * 语言模型头投影：[batch_size, seq_len, hidden_size] -> [batch_size, seq_len, vocab_size]
+     */
+    private Variable projectToVocab(Variable hiddenStates) {
+        // 将3D输入重塑为2D进行线性变换
+        NdArray hiddenData = hiddenStates.getValue();
+        Shape hiddenShape = hiddenData.getShape();
+        int batchSize = hiddenShape.getDimension(0);
+        int seqLen = hiddenShape.getDimension(1);
+        int hiddenSize = hiddenShape.getDimension(2);
+        
+        NdArray hidden2D = reshape3DTo2D(hiddenData, batchSize, seqLen, hiddenSize);
+        Variable logits = lmHead.layerForward(new Variable(hidden2D));
+        
+        // 重塑回3D：[batch_size, seq_len, vocab_size]
+        NdArray logits3D = reshape2DTo3D(logits.getValue(), batchSize, seqLen, config.getVocabSize());
+        return new Variable(logits3D);
+    }
+    
+    /**
+     * 创建与本模型结构匹配的空KV缓存（按键值头数缓存，分组查询注意力下比查询头数更省内存）
+     * 
+     * @return KV缓存
+     */
+    public KVCache createKVCache() {
+        return new KVCache(decoderBlocks.length, config.getNumKeyValueHeads(), config.getHeadDim());
+    }
+    
+    /**
+     * 带KV缓存的增量前向传播（仅推理，batch_size = 1）
+     * 
+     * 只计算新token，历史token的键值从缓存读取，RoPE位置从缓存长度开始编号
+     * 
+     * @param tokenIds 新token序列 [1, new_len]
+     * @param cache KV缓存，调用后长度增加new_len
+     * @return 新token的输出（有语言模型头时为logits [1, new_len, vocab_size]）
+     */
+    public Variable forwardWithCache(NdArray tokenIds, KVCache cache) {
+        Variable hiddenStates = embedTokens.layerForward(new Variable(tokenIds));
+        if (hiddenStates.getValue().getShape().getDimNum() == 2) {
+            // 单个token时嵌入层输出 [1, hidden_size]，补回序列维度
+            hiddenStates = new Variable(hiddenStates.getValue().reshape(
+                Shape.of(1, tokenIds.getShape().getDimension(1), config.getHiddenSize())));
+        }
+        for (int i = 0; i < decoderBlocks.length; i++) {
+            hiddenStates = decoderBlocks[i].forwardWithCache(hiddenStates, cache, i);
+        }
+        hiddenStates = finalNorm.layerForward(hiddenStates);
+        if (withLMHead && lmHead != null) {
+            hiddenStates = projectToVocab(hiddenStates);
+        }
+        return hiddenStates;
+    }
+    
+    /**
+     * 预填充提示词：从前缀缓存中复用最长的已缓存前缀，只计算剩余部分，完成后把整条提示词放入前缀缓存
+     * 
+     * @param tokens 提示词token序列
+     * @param cache 空的KV缓存，返回时包含整条提示词的键值
+     * @return 未复用部分的输出 [1, len - reused, ...]，最后一行对应下一个token的预测
+     */
+    public Variable prefill(int[] tokens, KVCache cache) {
+        if (tokens.length == 0) {
+            throw new IllegalArgumentException("提示词不能为空");
+        }
+        if (cache.getLength() != 0) {
+            throw new IllegalArgumentException("预填充需要空的KV缓存");
+        }
+        int reused = 0;
+        if (prefixCache != null) {
+            // 至少保留一个token计算，才能得到下一个token的logits
+            PrefixKVCache.Match match = prefixCache.lookup(tokens, tokens.length - 1);
+            if (match.getLength() > 0) {
+                cache.copyFrom(match.getCache());
+                reused = match.getLength();
+            }
+        }
+        Variable output = forwardWithCache(toTokenArray(tokens, reused, tokens.length), cache);
+        if (prefixCache != null) {
+            prefixCache.insert(tokens, cache);
+        }
+        return output;
+    }
+    
+    /**
+     * 使用KV缓存的贪心生成：提示词预填充一次，之后每步只计算一个新token
+     * 
+     * @param promptTokens 提示词token序列
+     * @param maxNewTokens 最多生成的token数
+     * @return 提示词加生成结果的完整序列
+     */
+    public int[] generateWithCache(int[] promptTokens, int maxNewTokens) {
+        if (!withLMHead || lmHead == null) {
+            throw new IllegalStateException("生成需要语言模型头");
+        }
+        int maxPositions = config.getMaxPositionEmbeddings();
+        KVCache cache = createKVCache();
+        int[] sequence = Arrays.copyOf(promptTokens, promptTokens.length + Math.max(0, maxNewTokens));
+        int length = promptTokens.length;
+        Variable logits = prefill(promptTokens, cache);
+        for (int i = 0; i < maxNewTokens && length < maxPositions; i++) {
+            int nextToken = argmaxLast(logits.getValue());
+            sequence[length++] = nextToken;
+            if (nextToken == config.getEosTokenId()) {
+                break;
+            }
+            if (i + 1 < maxNewTokens && length < maxPositions) {
+                logits = forwardWithCache(toTokenArray(sequence, length - 1, length), cache);
+            }
+        }
+        if (prefixCache != null && cache.getLength() > promptTokens.length) {
+            // 多轮对话时下一轮的提示词通常以本轮的完整对话开头
+            prefixCache.insert(Arrays.copyOf(sequence, cache.getLength()), cache);
+        }
+        return Arrays.copyOf(sequence, length);
+    }
+    
+    private static NdArray toTokenArray(int[] tokens, int from, int to) {
+        NdArray result = NdArray.of(Shape.of(1, to - from));
+        for (int i = from; i < to; i++) {
+            result.set(tokens[i], 0, i - from);
+        }
+        return result;
+    }
+    
+    private static int argmaxLast(NdArray logits) {
+        int last = logits.getShape().getDimension(1) - 1;
+        int vocabSize = logits.getShape().getDimension(2);
+        int best = 0;
+        for (int v = 1; v < vocabSize; v++) {
+            if (logits.get(0, last, v) > logits.get(0, last, best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * 设置跨请求共享的前缀KV缓存，为null时关闭前缀复用
+     */
+    public void setPrefixCache(PrefixKVCache prefixCache) {
+        this.prefixCache = prefixCache;
+    }
+    
+    public PrefixKVCache getPrefixCache() {
+        return prefixCache;
+    }
+    
     /**
      * 将3D张量重塑为2D
      */
@@ -287,6 +436,24 @@ public class Qwen3Block extends Block {
         return totalParams;
     }
     
+    /**
+     * 启用激活检查点：每隔everyN个解码器块对一个块做检查点，
+     * 该块的中间激活在前向后释放，反向时重算
+     * 
+     * @param everyN 间隔，1表示每个块都启用，小于等于0表示关闭
+     */
+    public void setActivationCheckpointing(int everyN) {
+        checkpointedBlocks = everyN > 0
+                ? CheckpointBlock.wrapEvery(Arrays.asList(decoderBlocks), everyN) : null;
+    }
+    
+    /**
+     * 获取激活检查点的显存与计算权衡统计，未启用时返回null
+     */
+    public String getCheckpointReport() {
+        return checkpointedBlocks != null ? CheckpointBlock.summarize(checkpointedBlocks) : null;
+    }
+    
     // Getter方法
     public Qwen3Config getConfig() { return config; }
     public Embedding getEmbedTokens() { return embedTokens; }
@@ -1,6 +1,7 @@
 package io.leavesfly.tinyai.qwen3;
 
 import io.leavesfly.tinyai.ml.Model;
+import io.leavesfly.tinyai.nnet.layer.transformer.PrefixKVCache;
 
 /**
  * Qwen3模型 - 完整的因果语言模型
@@ -225,6 +226,35 @@ public class Qwen3Model extends Model {
         );
     }
     
+    /**
+     * 使用KV缓存的贪心生成，配合 {@link #setPrefixCache} 可跨请求复用相同前缀（如共享的系统提示词）
+     * 
+     * @param promptTokens 提示词token序列
+     * @param maxNewTokens 最多生成的token数
+     * @return 提示词加生成结果的完整序列
+     */
+    public int[] generateWithCache(int[] promptTokens, int maxNewTokens) {
+        return qwen3Block.generateWithCache(promptTokens, maxNewTokens);
+    }
+    
+    /**
+     * 设置跨请求共享的前缀KV缓存
+     * 
+     * @param prefixCache 前缀缓存，为null时关闭前缀复用
+     */
+    public void setPrefixCache(PrefixKVCache prefixCache) {
+        qwen3Block.setPrefixCache(prefixCache);
+    }
+    
+    /**
+     * 获取前缀KV缓存
+     * 
+     * @return 前缀缓存，未设置时为null
+     */
+    public PrefixKVCache getPrefixCache() {
+        return qwen3Block.getPrefixCache();
+    }
+    
     /**
      * 验证输入数据
      * 
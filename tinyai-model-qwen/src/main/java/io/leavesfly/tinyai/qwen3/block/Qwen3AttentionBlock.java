@@ -5,6 +5,7 @@ import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
 import io.leavesfly.tinyai.qwen3.Qwen3Config;
 import io.leavesfly.tinyai.qwen3.layer.RotaryPositionalEmbeddingLayer;
 
@@ -184,6 +185,90 @@ public class Qwen3AttentionBlock extends Block {
         return new Variable(result);
     }
     
+    /**
+     * 带键值缓存的增量注意力计算（仅推理，batch_size = 1）
+     * 
+     * 只为新token计算Q、K、V，RoPE从已缓存长度处继续编号；旋转后的键和值（按键值头数，
+     * 未重复）追加到缓存，新token对缓存中的全部历史位置和自身之前的位置做注意力。
+     * 
+     * @param hiddenStates 新token的隐藏状态 [1, new_len, hidden_size]
+     * @param cache 键值缓存（头数为numKeyValueHeads）
+     * @param layerIdx 当前层索引
+     * @return 新token的注意力输出 [1, new_len, hidden_size]
+     */
+    public Variable forwardWithCache(Variable hiddenStates, KVCache cache, int layerIdx) {
+        NdArray input = hiddenStates.getValue();
+        Shape inputShape = input.getShape();
+        int batchSize = inputShape.getDimension(0);
+        int seqLen = inputShape.getDimension(1);
+        int hiddenSize = inputShape.getDimension(2);
+        if (batchSize != 1) {
+            throw new IllegalArgumentException("KV缓存推理只支持batch_size=1，实际为: " + batchSize);
+        }
+        int pastLen = cache.getLength(layerIdx);
+        
+        NdArray input2D = reshape3DTo2D(input, batchSize, seqLen, hiddenSize);
+        Variable queryStates = queryProjection.layerForward(new Variable(input2D));
+        Variable keyStates = keyProjection.layerForward(new Variable(input2D));
+        Variable valueStates = valueProjection.layerForward(new Variable(input2D));
+        
+        NdArray query = reshape2DToMultiHead(queryStates.getValue(), batchSize, seqLen, numHeads, headDim);
+        NdArray key = reshape2DToMultiHead(keyStates.getValue(), batchSize, seqLen, numKeyValueHeads, headDim);
+        NdArray value = reshape2DToMultiHead(valueStates.getValue(), batchSize, seqLen, numKeyValueHeads, headDim);
+        
+        NdArray[] rotatedQK = rotary.applyRotaryPosEmb(query, key, seqLen, pastLen);
+        cache.append(layerIdx, rotatedQK[1], value);
+        
+        NdArray expandedKey = repeatKeyValueHeads(cache.getKeys(layerIdx), numKeyValueGroups);
+        NdArray expandedValue = repeatKeyValueHeads(cache.getValues(layerIdx), numKeyValueGroups);
+        
+        NdArray attentionOutput = computeCachedAttention(rotatedQK[0], expandedKey, expandedValue, pastLen, seqLen);
+        
+        NdArray concatenated = concatenateHeads(attentionOutput, batchSize, seqLen, numHeads, headDim);
+        NdArray concat2D = reshape3DTo2D(concatenated, batchSize, seqLen, numHeads * headDim);
+        Variable output = outputProjection.layerForward(new Variable(concat2D));
+        return new Variable(reshape2DTo3D(output.getValue(), batchSize, seqLen, hiddenSize));
+    }
+    
+    /**
+     * 新token对 [0, pastLen + i] 范围内的位置做缩放点积注意力
+     */
+    private NdArray computeCachedAttention(NdArray query, NdArray key, NdArray value, int pastLen, int newLen) {
+        int totalLen = pastLen + newLen;
+        double scale = 1.0 / Math.sqrt(headDim);
+        NdArray attentionOutput = NdArray.of(Shape.of(1, numHeads, newLen, headDim));
+        float[] weights = new float[totalLen];
+        
+        for (int h = 0; h < numHeads; h++) {
+            for (int i = 0; i < newLen; i++) {
+                int visible = pastLen + i + 1;
+                float maxVal = Float.NEGATIVE_INFINITY;
+                for (int j = 0; j < visible; j++) {
+                    float score = 0.0f;
+                    for (int d = 0; d < headDim; d++) {
+                        score += query.get(0, h, i, d) * key.get(0, h, j, d);
+                    }
+                    weights[j] = (float) (score * scale);
+                    maxVal = Math.max(maxVal, weights[j]);
+                }
+                float sum = 0.0f;
+                for (int j = 0; j < visible; j++) {
+                    weights[j] = (float) Math.exp(weights[j] - maxVal);
+                    sum += weights[j];
+                }
+                for (int d = 0; d < headDim; d++) {
+                    float output = 0.0f;
+                    for (int j = 0; j < visible; j++) {
+                        output += weights[j] / sum * value.get(0, h, j, d);
+                    }
+                    attentionOutput.set(output, 0, h, i, d);
+                }
+            }
+        }
+        
+        return attentionOutput;
+    }
+    
     /**
      * 将3D张量重塑为2D用于线性变换
      */
@@ -4,6 +4,7 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
 import io.leavesfly.tinyai.qwen3.Qwen3Config;
 import io.leavesfly.tinyai.qwen3.layer.RMSNormLayer;
 
@@ -131,6 +132,24 @@ public class Qwen3DecoderBlock extends Block {
         return finalOutput;
     }
     
+    /**
+     * 带键值缓存的增量前向传播（仅推理），结构与 {@link #forwardDecoder} 相同
+     * 
+     * @param hiddenStates 新token的隐藏状态 [1, new_len, hidden_size]
+     * @param cache 键值缓存
+     * @param layerIdx 当前层索引
+     * @return 解码器块输出
+     */
+    public Variable forwardWithCache(Variable hiddenStates, KVCache cache, int layerIdx) {
+        Variable normalizedInput = inputLayerNorm.layerForward(hiddenStates);
+        Variable attentionOutput = selfAttention.forwardWithCache(normalizedInput, cache, layerIdx);
+        Variable hiddenStatesAfterAttention = addResidualConnection(hiddenStates, attentionOutput);
+        
+        Variable normalizedForMLP = postAttentionLayerNorm.layerForward(hiddenStatesAfterAttention);
+        Variable mlpOutput = mlp.layerForward(normalizedForMLP);
+        return addResidualConnection(hiddenStatesAfterAttention, mlpOutput);
+    }
+    
     /**
      * 执行残差连接：output = input + residual
      * 
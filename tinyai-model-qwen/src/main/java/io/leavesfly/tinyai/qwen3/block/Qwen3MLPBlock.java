@@ -4,8 +4,10 @@ import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
 import io.leavesfly.tinyai.nnet.Block;
+import io.leavesfly.tinyai.nnet.block.FusionBlock;
 import io.leavesfly.tinyai.nnet.layer.dnn.LinearLayer;
 import io.leavesfly.tinyai.qwen3.Qwen3Config;
+import io.leavesfly.tinyai.qwen3.layer.SwiGLULayer;
 
 /**
  * Qwen3 多层感知机 (MLP) 块
@@ -46,6 +48,9 @@ public class Qwen3MLPBlock extends Block {
     /** 下投影层：intermediate_size -> hidden_size */
     private LinearLayer downProjection;
     
+    /** SwiGLU激活，按形状融合为单个逐元素内核 */
+    private FusionBlock swiGLU;
+    
     /**
      * 构造Qwen3 MLP块
      * 
@@ -73,11 +78,14 @@ public class Qwen3MLPBlock extends Block {
                 name + "_up", hiddenSize, intermediateSize, false);
             downProjection = new LinearLayer(
                 name + "_down", intermediateSize, hiddenSize, false);
+            swiGLU = new FusionBlock(name + "_swiglu",
+                new SwiGLULayer(name + "_swiglu_act", intermediateSize, intermediateSize));
             
             // 添加到Block的层列表中
             addLayer(gateProjection);
             addLayer(upProjection);  
             addLayer(downProjection);
+            addLayer(swiGLU);
             
             alreadyInit = true;
         }
@@ -110,7 +118,7 @@ public class Qwen3MLPBlock extends Block {
         Variable upOutput = upProjection.layerForward(new Variable(input2D));
         
         // 3. 应用SwiGLU激活：Swish(gate) ⊙ up
-        NdArray swiGLUOutput = applySwiGLU(gateOutput.getValue(), upOutput.getValue());
+        NdArray swiGLUOutput = swiGLU.layerForward(gateOutput, upOutput).getValue();
         
         // 4. 下投影
         Variable downOutput = downProjection.layerForward(new Variable(swiGLUOutput));
@@ -121,73 +129,6 @@ public class Qwen3MLPBlock extends Block {
         return new Variable(result);
     }
     
-    /**
-     * 应用SwiGLU激活函数
-     * 
-     * @param gate 门控输入
-     * @param up 上投影输入
-     * @return SwiGLU激活结果
-     */
-    private NdArray applySwiGLU(NdArray gate, NdArray up) {
-        // 验证输入形状一致
-        if (!gate.getShape().equals(up.getShape())) {
-            throw new IllegalArgumentException(
-                String.format("gate形状 %s 必须与up形状 %s 一致", 
-                    gate.getShape(), up.getShape()));
-        }
-        
-        Shape shape = gate.getShape();
-        NdArray result = NdArray.of(shape);
-        
-        // SwiGLU计算：Swish(gate) ⊙ up
-        int rows = shape.getDimension(0);
-        int cols = shape.getDimension(1);
-        
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                float gateValue = gate.get(i, j);
-                float upValue = up.get(i, j);
-                
-                // Swish激活：x * sigmoid(x)
-                float swishValue = swish(gateValue);
-                
-                // 门控乘法
-                float swiGLUValue = swishValue * upValue;
-                
-                result.set(swiGLUValue, i, j);
-            }
-        }
-        
-        return result;
-    }
-    
-    /**
-     * Swish激活函数：swish(x) = x * sigmoid(x)
-     * 
-     * @param x 输入值
-     * @return swish激活结果
-     */
-    private float swish(float x) {
-        return x * sigmoid(x);
-    }
-    
-    /**
-     * Sigmoid激活函数：sigmoid(x) = 1 / (1 + exp(-x))
-     * 
-     * @param x 输入值
-     * @return sigmoid激活结果
-     */
-    private float sigmoid(float x) {
-        // 数值稳定性处理
-        if (x > 20) {
-            return 1.0f;
-        } else if (x < -20) {
-            return 0.0f;
-        } else {
-            return (float) (1.0 / (1.0 + Math.exp(-x)));
-        }
-    }
-    
     /**
      * 将3D张量重塑为2D用于线性变换
      * 
@@ -268,4 +209,11 @@ public class Qwen3MLPBlock extends Block {
     public LinearLayer getDownProjection() {
         return downProjection;
     }
+    
+    /**
+     * 获取融合的SwiGLU激活块
+     */
+    public FusionBlock getSwiGLU() {
+        return swiGLU;
+    }
 }
\ No newline at end of file
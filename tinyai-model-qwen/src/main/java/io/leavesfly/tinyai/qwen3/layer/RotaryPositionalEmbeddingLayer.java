@@ -95,8 +95,21 @@ public class RotaryPositionalEmbeddingLayer extends Layer {
      * @return 应用RoPE后的查询和键向量数组 [rotated_query, rotated_key]
      */
     public NdArray[] applyRotaryPosEmb(NdArray query, NdArray key, int seqLen) {
+        return applyRotaryPosEmb(query, key, seqLen, 0);
+    }
+    
+    /**
+     * 从指定位置开始应用旋转位置编码（增量解码时新token的位置从已缓存长度开始）
+     * 
+     * @param query 查询向量 [batch_size, num_heads, seq_len, head_dim]
+     * @param key 键向量 [batch_size, num_heads, seq_len, head_dim]
+     * @param seqLen 序列长度
+     * @param positionOffset 第一个token的绝对位置
+     * @return 应用RoPE后的查询和键向量数组 [rotated_query, rotated_key]
+     */
+    public NdArray[] applyRotaryPosEmb(NdArray query, NdArray key, int seqLen, int positionOffset) {
         // 计算位置编码
-        NdArray[] cosAndSin = computePositionalEncoding(seqLen);
+        NdArray[] cosAndSin = computePositionalEncoding(seqLen, positionOffset);
         NdArray cos = cosAndSin[0];
         NdArray sin = cosAndSin[1];
         
@@ -111,15 +124,16 @@ public class RotaryPositionalEmbeddingLayer extends Layer {
      * 计算位置编码的cos和sin值
      * 
      * @param seqLen 序列长度
+     * @param positionOffset 起始位置
      * @return [cos, sin]数组
      */
-    private NdArray[] computePositionalEncoding(int seqLen) {
+    private NdArray[] computePositionalEncoding(int seqLen, int positionOffset) {
         int freqDim = headDim / 2;
         
-        // 生成位置索引 [0, 1, 2, ..., seqLen-1]
+        // 生成位置索引 [offset, offset+1, ..., offset+seqLen-1]
         NdArray positions = NdArray.of(Shape.of(seqLen));
         for (int i = 0; i < seqLen; i++) {
-            positions.set(i, i);
+            positions.set(positionOffset + i, i);
         }
         
         // 计算频率矩阵：pos * inv_freq
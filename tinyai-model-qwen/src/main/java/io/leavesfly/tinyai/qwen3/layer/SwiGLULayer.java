@@ -64,10 +64,14 @@ public class SwiGLULayer extends Layer {
         
         Variable gate = inputs[0];  // 门控输入
         Variable up = inputs[1];    // 上投影输入
+        if (!gate.getValue().getShape().equals(up.getValue().getShape())) {
+            throw new IllegalArgumentException(
+                String.format("gate形状 %s 必须与up形状 %s 一致", 
+                    gate.getValue().getShape(), up.getValue().getShape()));
+        }
         
-        // 应用SwiGLU激活
-        NdArray result = applySwiGLU(gate.getValue(), up.getValue());
-        return new Variable(result);
+        // 用逐元素函数表达 Swish(gate) ⊙ up：计算图保持连通，可反向传播，也可被FusionBlock融合为单次遍历
+        return gate.mul(gate.sigmoid()).mul(up);
     }
     
     /**
@@ -86,55 +90,20 @@ public class SwiGLULayer extends Layer {
         }
         
         Shape inputShape = gate.getShape();
-        NdArray result = NdArray.of(inputShape);
-        
-        // 应用SwiGLU：Swish(gate) ⊙ up
-        if (inputShape.getDimNum() == 2) {
-            // 2D输入：(batch_size, hidden_size)
-            int batchSize = inputShape.getDimension(0);
-            int hiddenSize = inputShape.getDimension(1);
-            
-            for (int i = 0; i < batchSize; i++) {
-                for (int j = 0; j < hiddenSize; j++) {
-                    float gateValue = gate.get(i, j);
-                    float upValue = up.get(i, j);
-                    
-                    // Swish激活：x * sigmoid(x)
-                    float swishValue = gateValue * sigmoid(gateValue);
-                    
-                    // 门控乘法
-                    float swiGLUValue = swishValue * upValue;
-                    
-                    result.set(swiGLUValue, i, j);
-                }
-            }
-        } else if (inputShape.getDimNum() == 3) {
-            // 3D输入：(batch_size, seq_len, hidden_size)
-            int batchSize = inputShape.getDimension(0);
-            int seqLen = inputShape.getDimension(1);
-            int hiddenSize = inputShape.getDimension(2);
-            
-            for (int i = 0; i < batchSize; i++) {
-                for (int s = 0; s < seqLen; s++) {
-                    for (int j = 0; j < hiddenSize; j++) {
-                        float gateValue = gate.get(i, s, j);
-                        float upValue = up.get(i, s, j);
-                        
-                        // Swish激活：x * sigmoid(x)
-                        float swishValue = gateValue * sigmoid(gateValue);
-                        
-                        // 门控乘法
-                        float swiGLUValue = swishValue * upValue;
-                        
-                        result.set(swiGLUValue, i, s, j);
-                    }
-                }
-            }
-        } else {
+        if (inputShape.getDimNum() != 2 && inputShape.getDimNum() != 3) {
             throw new IllegalArgumentException(
                 String.format("SwiGLU不支持%dD输入", inputShape.getDimNum()));
         }
         
+        // 逐元素计算与维度无关，直接在扁平缓冲区上单次遍历：Swish(gate) ⊙ up
+        float[] gateData = gate.getArray();
+        float[] upData = up.getArray();
+        float[] out = new float[gateData.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = swish(gateData[i]) * upData[i];
+        }
+        NdArray result = NdArray.of(out, inputShape);
+        
         return result;
     }
     
@@ -173,36 +142,18 @@ public class SwiGLULayer extends Layer {
      */
     public static NdArray applySwish(NdArray input) {
         Shape inputShape = input.getShape();
-        NdArray result = NdArray.of(inputShape);
-        
-        if (inputShape.getDimNum() == 2) {
-            int rows = inputShape.getDimension(0);
-            int cols = inputShape.getDimension(1);
-            
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
-                    float value = input.get(i, j);
-                    result.set(swish(value), i, j);
-                }
-            }
-        } else if (inputShape.getDimNum() == 3) {
-            int dim0 = inputShape.getDimension(0);
-            int dim1 = inputShape.getDimension(1);
-            int dim2 = inputShape.getDimension(2);
-            
-            for (int i = 0; i < dim0; i++) {
-                for (int j = 0; j < dim1; j++) {
-                    for (int k = 0; k < dim2; k++) {
-                        float value = input.get(i, j, k);
-                        result.set(swish(value), i, j, k);
-                    }
-                }
-            }
-        } else {
+        if (inputShape.getDimNum() != 2 && inputShape.getDimNum() != 3) {
             throw new IllegalArgumentException(
                 String.format("Swish不支持%dD输入", inputShape.getDimNum()));
         }
         
+        float[] data = input.getArray();
+        float[] out = new float[data.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = swish(data[i]);
+        }
+        NdArray result = NdArray.of(out, inputShape);
+        
         return result;
     }
     
@@ -3,6 +3,8 @@ package io.leavesfly.tinyai.qwen3;
 import io.leavesfly.tinyai.func.Variable;
 import io.leavesfly.tinyai.ndarr.NdArray;
 import io.leavesfly.tinyai.ndarr.Shape;
+import io.leavesfly.tinyai.nnet.layer.transformer.KVCache;
+import io.leavesfly.tinyai.nnet.layer.transformer.PrefixKVCache;
 import io.leavesfly.tinyai.qwen3.block.*;
 import io.leavesfly.tinyai.qwen3.layer.*;
 
@@ -39,9 +41,11 @@ public class Qwen3ModelTest {
             testSwiGLULayer();
             testQwen3AttentionBlock();
             testQwen3MLPBlock();
+            testFusedSwiGLUMatchesEager();
             testQwen3DecoderBlock();
             testQwen3Block();
             testQwen3Model();
+            testKVCacheConsistency();
             testModelInfo();
             testInputValidation();
             testParameterCounting();
@@ -280,6 +284,37 @@ public class Qwen3ModelTest {
         System.out.println("✓ Qwen3MLPBlock测试通过");
     }
     
+    public void testFusedSwiGLUMatchesEager() {
+        System.out.println("\n=== 测试融合SwiGLU与逐步计算一致 ===");
+        
+        Qwen3MLPBlock mlp = new Qwen3MLPBlock("fused_mlp", testConfig);
+        int batchSize = 2, seqLen = 4, hiddenSize = testConfig.getHiddenSize();
+        
+        // 同形状的两组不同输入：第二次调用复用第一次编译的内核，输出必须随输入变化
+        for (int round = 0; round < 2; round++) {
+            NdArray input = NdArray.likeRandomN(Shape.of(batchSize, seqLen, hiddenSize));
+            NdArray fused = mlp.layerForward(new Variable(input)).getValue();
+            
+            NdArray input2D = input.reshape(Shape.of(batchSize * seqLen, hiddenSize));
+            NdArray gate = mlp.getGateProjection().layerForward(new Variable(input2D)).getValue();
+            NdArray up = mlp.getUpProjection().layerForward(new Variable(input2D)).getValue();
+            NdArray eager = mlp.getDownProjection()
+                .layerForward(new Variable(SwiGLULayer.applySwiGLU(gate, up))).getValue();
+            
+            float[] expected = eager.getArray();
+            float[] actual = fused.getArray();
+            assertTrue(expected.length == actual.length, "融合输出大小应一致");
+            for (int i = 0; i < expected.length; i++) {
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-4f,
+                    "第" + round + "组输入的融合输出与逐步计算不一致: " + expected[i] + " vs " + actual[i]);
+            }
+            assertTrue(mlp.getSwiGLU().isFused(new Variable(gate), new Variable(up)), "SwiGLU应被融合");
+        }
+        assertTrue(mlp.getSwiGLU().getTraceCount() == 1, "同形状只应追踪一次");
+        
+        System.out.println("✓ 融合SwiGLU测试通过");
+    }
+    
     public void testQwen3DecoderBlock() {
         System.out.println("\n=== 测试Qwen3DecoderBlock ===");
         
@@ -389,6 +424,80 @@ public class Qwen3ModelTest {
         System.out.println("✓ Qwen3Model测试通过");
     }
     
+    public void testKVCacheConsistency() {
+        System.out.println("\n=== 测试KV缓存与前缀复用 ===");
+        
+        // 使用分组查询注意力配置，缓存按键值头数存储
+        Qwen3Config gqaConfig = new Qwen3Config();
+        gqaConfig.setVocabSize(100);
+        gqaConfig.setHiddenSize(64);
+        gqaConfig.setIntermediateSize(128);
+        gqaConfig.setNumHiddenLayers(2);
+        gqaConfig.setNumAttentionHeads(4);
+        gqaConfig.setNumKeyValueHeads(2);
+        gqaConfig.setMaxPositionEmbeddings(128);
+        Qwen3Model model = new Qwen3Model("test_qwen3_kv", gqaConfig);
+        Qwen3Block block = model.getQwen3Block();
+        
+        int[] prompt = {3, 14, 15, 92, 65, 35};
+        NdArray full = model.forward(new Variable(toInput(prompt))).getValue();
+        
+        // 冷启动：整条提示词一次预填充，每个位置的logits与完整前向一致
+        block.setPrefixCache(new PrefixKVCache(1 << 22));
+        KVCache cold = block.createKVCache();
+        assertTrue(cold.getNumHeads() == 2, "缓存头数应为键值头数");
+        NdArray coldLogits = block.prefill(prompt, cold).getValue();
+        assertTrue(cold.getLength() == prompt.length, "预填充后缓存长度应等于提示词长度");
+        for (int s = 0; s < prompt.length; s++) {
+            assertLogitsClose(full, s, coldLogits, s);
+        }
+        
+        // 热启动：复用前4个token的缓存，RoPE从位置4继续
+        int[] shared = {3, 14, 15, 92, 7, 21};
+        NdArray sharedFull = model.forward(new Variable(toInput(shared))).getValue();
+        KVCache warm = block.createKVCache();
+        NdArray warmLogits = block.prefill(shared, warm).getValue();
+        assertTrue(warmLogits.getShape().getDimension(1) == 2, "只应计算未命中的2个token");
+        assertLogitsClose(sharedFull, 4, warmLogits, 0);
+        assertLogitsClose(sharedFull, 5, warmLogits, 1);
+        assertTrue(block.getPrefixCache().getHits() == 1, "第二次查找应命中前缀缓存");
+        
+        // 逐token增量解码与完整前向一致
+        int[] generated = model.generateWithCache(prompt, 2);
+        NdArray generatedFull = model.forward(new Variable(toInput(generated))).getValue();
+        for (int s = prompt.length; s < generated.length; s++) {
+            assertTrue(generated[s] == argmax(generatedFull, s - 1), "增量解码结果应与完整前向一致");
+        }
+        
+        System.out.println("✓ KV缓存测试通过: " + block.getPrefixCache());
+    }
+    
+    private NdArray toInput(int[] tokens) {
+        NdArray input = NdArray.of(Shape.of(1, tokens.length));
+        for (int i = 0; i < tokens.length; i++) {
+            input.set(tokens[i], 0, i);
+        }
+        return input;
+    }
+    
+    private void assertLogitsClose(NdArray expected, int expectedPos, NdArray actual, int actualPos) {
+        int vocabSize = expected.getShape().getDimension(2);
+        for (int v = 0; v < vocabSize; v++) {
+            float diff = Math.abs(expected.get(0, expectedPos, v) - actual.get(0, actualPos, v));
+            assertTrue(diff < 1e-3f, "位置" + expectedPos + "的logits不一致，差值: " + diff);
+        }
+    }
+    
+    private int argmax(NdArray logits, int pos) {
+        int best = 0;
+        for (int v = 1; v < logits.getShape().getDimension(2); v++) {
+            if (logits.get(0, pos, v) > logits.get(0, pos, best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+    
     public void testModelInfo() {
         System.out.println("\n=== 测试模型信息 ===");
         